@@ -0,0 +1,95 @@
+package com.challenge.benchmarks;
+
+import com.challenge.ping.ratelimit.RateLimitAlgorithm;
+import com.challenge.ping.ratelimit.RateLimiterBackend;
+import com.challenge.ping.service.GlobalRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GlobalRateLimiter.tryAcquire() 的单线程与多线程开销
+ * limit 较小时绝大多数调用走拒绝路径，较大时大部分调用成功并写回状态
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GlobalRateLimiterBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class CasLimiter {
+        @Param({"MMAP", "MEMORY"})
+        public RateLimiterBackend.Type backend;
+
+        @Param({"FIXED_WINDOW", "TOKEN_BUCKET", "SLIDING_LOG", "GCRA"})
+        public RateLimitAlgorithm.Type algorithm;
+
+        @Param({"2", "1000"})
+        public int limit;
+
+        GlobalRateLimiter limiter;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            limiter = new GlobalRateLimiter(limit, Duration.ofSeconds(1), backend, algorithm);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            limiter.cleanup();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FileLockLimiter {
+        GlobalRateLimiter limiter;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            limiter = new GlobalRateLimiter(2, Duration.ofSeconds(1), RateLimiterBackend.Type.FILE_LOCK);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            limiter.cleanup();
+        }
+    }
+
+    @Benchmark
+    public boolean tryAcquire(CasLimiter state) {
+        return state.limiter.tryAcquire();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean tryAcquireContended(CasLimiter state) {
+        return state.limiter.tryAcquire();
+    }
+
+    @Benchmark
+    public boolean fileLockTryAcquire(FileLockLimiter state) {
+        return state.limiter.tryAcquire();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean fileLockTryAcquireContended(FileLockLimiter state) {
+        return state.limiter.tryAcquire();
+    }
+}
@@ -0,0 +1,82 @@
+package com.challenge.benchmarks;
+
+import com.challenge.ping.config.RocketMQConfig;
+import com.challenge.ping.model.PingRecord;
+import com.challenge.pong.config.MessageConverterConfig;
+import com.challenge.pong.model.PongRecord;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.spring.support.RocketMQMessageConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PING_TOPIC 消息的编解码开销：ping 端 PingRecord 编码，pong 端按 contentType 解码为 PongRecord
+ * 两端都使用服务中实际注册的组合转换器
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageConverterBenchmark {
+
+    @Param({"json", "binary"})
+    public String codec;
+
+    private MessageConverter pingConverter;
+    private MessageConverter pongConverter;
+    private PingRecord record;
+    private Message<?> encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        RocketMQConfig config = new RocketMQConfig();
+        Benchmarks.setField(config, "codec", codec);
+        pingConverter = config.rocketMQTemplate(new DefaultMQProducer()).getMessageConverter();
+        pongConverter = new MessageConverterConfig().pongRecordMessageConverter(new RocketMQMessageConverter());
+
+        record = new PingRecord();
+        record.setRequestId(UUID.randomUUID().toString());
+        record.setTimestamp(LocalDateTime.now());
+        record.setStatus(200);
+        record.setMessage("World");
+
+        // 与消费端一致：消息体为原始字节，contentType 来自消息的用户属性
+        Message<?> message = pingConverter.toMessage(record, null);
+        encoded = MessageBuilder.withPayload(message.getPayload())
+            .setHeader(MessageHeaders.CONTENT_TYPE, String.valueOf(message.getHeaders().get(MessageHeaders.CONTENT_TYPE)))
+            .build();
+        if (pongConverter.fromMessage(encoded, PongRecord.class) == null) {
+            throw new IllegalStateException("pong converter cannot decode " + codec + " messages");
+        }
+    }
+
+    @Benchmark
+    public Message<?> encodePing() {
+        return pingConverter.toMessage(record, null);
+    }
+
+    @Benchmark
+    public Object decodePong() {
+        return pongConverter.fromMessage(encoded, PongRecord.class);
+    }
+}
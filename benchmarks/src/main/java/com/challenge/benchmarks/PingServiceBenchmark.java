@@ -0,0 +1,104 @@
+package com.challenge.benchmarks;
+
+import com.challenge.ping.model.PingRecord;
+import com.challenge.ping.ratelimit.RateLimiterBackend;
+import com.challenge.ping.service.GlobalRateLimiter;
+import com.challenge.ping.service.PingMessageService;
+import com.challenge.ping.service.PingService;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PingService.sendPing() 端到端开销：限流判断、WebClient 请求本机桩 pong 服务、构造记录并发布
+ * publisher=noop 时发布直接完成；publisher=batching 时经过 PingMessageService 的攒批队列，
+ * RocketMQTemplate 为立即确认的桩，不连接 Broker
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PingServiceBenchmark {
+
+    @Param({"noop", "batching"})
+    public String publisher;
+
+    private DisposableServer pongServer;
+    private PingMessageService messageService;
+    private PingService pingService;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        pongServer = HttpServer.create()
+            .host("127.0.0.1")
+            .port(0)
+            .route(routes -> routes.get("/api/pong", (request, response) -> response.sendString(Mono.just("World"))))
+            .bindNow();
+        if ("batching".equals(publisher)) {
+            messageService = new PingMessageService(new AcknowledgingTemplate());
+            Benchmarks.setField(messageService, "linger", Duration.ZERO);
+        } else {
+            messageService = new PingMessageService((RocketMQTemplate) null) {
+                @Override
+                public Mono<Void> publish(PingRecord record) {
+                    return Mono.empty();
+                }
+            };
+        }
+        // 限流阈值足够大，每次调用都会真正请求 pong
+        GlobalRateLimiter rateLimiter = new GlobalRateLimiter(Integer.MAX_VALUE, Duration.ofSeconds(1),
+            RateLimiterBackend.Type.MEMORY);
+        pingService = new PingService(WebClient.builder(), rateLimiter,
+            "http://127.0.0.1:" + pongServer.port(), messageService);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        messageService.shutdown();
+        pongServer.disposeNow();
+    }
+
+    @Benchmark
+    public PingService.PingResult sendPing() {
+        return pingService.sendPing().block();
+    }
+
+    /**
+     * 不连接 Broker，批量异步发送立即回调成功
+     */
+    private static class AcknowledgingTemplate extends RocketMQTemplate {
+        @Override
+        public <T extends Message> void asyncSend(String destination, Collection<T> messages,
+                                                  SendCallback sendCallback, long timeout) {
+            SendResult result = new SendResult();
+            result.setSendStatus(SendStatus.SEND_OK);
+            result.setMsgId("benchmark");
+            sendCallback.onSuccess(result);
+        }
+    }
+}
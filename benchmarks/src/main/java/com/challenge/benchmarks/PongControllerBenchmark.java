@@ -0,0 +1,66 @@
+package com.challenge.benchmarks;
+
+import com.challenge.pong.controller.PongController;
+import com.challenge.pong.ratelimit.KeyedRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PongController.handlePing() 的限流判断与响应构造，不经过 HTTP 层
+ * callers 表示轮流请求的调用方数量，用于观察按调用方限流表的开销
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PongControllerBenchmark {
+
+    @Param({"1", "1000"})
+    public int callers;
+
+    private PongController controller;
+    private String[] instanceIds;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        KeyedRateLimiter rateLimiter = new KeyedRateLimiter(KeyedRateLimiter.Rate.parse("1/1s"), Map.of(),
+            Math.max(1024, callers * 2), Duration.ofMinutes(5));
+        controller = new PongController();
+        Benchmarks.setField(controller, "rateLimiter", rateLimiter);
+        instanceIds = new String[callers];
+        for (int i = 0; i < callers; i++) {
+            instanceIds[i] = "ping-" + i;
+        }
+    }
+
+    @Benchmark
+    public ResponseEntity<String> handlePing() {
+        String instanceId = instanceIds[ThreadLocalRandom.current().nextInt(instanceIds.length)];
+        return controller.handlePing(instanceId).block();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ResponseEntity<String> handlePingContended() {
+        return handlePing();
+    }
+}
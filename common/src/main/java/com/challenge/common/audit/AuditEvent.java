@@ -0,0 +1,107 @@
+package com.challenge.common.audit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * 定长二进制审计记录及其解码结果，只在读取时创建
+ * 记录格式（大端序，共 128 字节）：
+ * <pre>
+ * 0   sequence(8)      进程内递增序号
+ * 8   epochMillis(8)
+ * 16  type(2) status(2)
+ * 20  requestId 长度(1) key 长度(1) 保留(2)
+ * 24  value(8)
+ * 32  requestId(40)    ISO-8859-1，超长截断
+ * 72  key(56)          ISO-8859-1，超长截断
+ * </pre>
+ */
+public record AuditEvent(long sequence, Instant timestamp, AuditEventType type, int status,
+                         String requestId, String key, long value) {
+
+    public static final int SIZE = 128;
+
+    static final int SEQUENCE_OFFSET = 0;
+    static final int TIMESTAMP_OFFSET = 8;
+    static final int TYPE_OFFSET = 16;
+    static final int STATUS_OFFSET = 18;
+    static final int REQUEST_ID_LENGTH_OFFSET = 20;
+    static final int KEY_LENGTH_OFFSET = 21;
+    static final int VALUE_OFFSET = 24;
+    static final int REQUEST_ID_OFFSET = 32;
+    static final int REQUEST_ID_CAPACITY = 40;
+    static final int KEY_OFFSET = 72;
+    static final int KEY_CAPACITY = 56;
+
+    /**
+     * 按上面的格式写入一条记录，不分配对象
+     */
+    static void write(ByteBuffer buffer, int offset, long sequence, long epochMillis, AuditEventType type,
+                      int status, CharSequence requestId, CharSequence key, long value) {
+        buffer.putLong(offset + SEQUENCE_OFFSET, sequence);
+        buffer.putLong(offset + TIMESTAMP_OFFSET, epochMillis);
+        buffer.putShort(offset + TYPE_OFFSET, type.code());
+        buffer.putShort(offset + STATUS_OFFSET, (short) status);
+        buffer.put(offset + REQUEST_ID_LENGTH_OFFSET,
+            (byte) writeChars(buffer, offset + REQUEST_ID_OFFSET, REQUEST_ID_CAPACITY, requestId));
+        buffer.put(offset + KEY_LENGTH_OFFSET, (byte) writeChars(buffer, offset + KEY_OFFSET, KEY_CAPACITY, key));
+        buffer.putShort(offset + KEY_LENGTH_OFFSET + 1, (short) 0);
+        buffer.putLong(offset + VALUE_OFFSET, value);
+    }
+
+    private static int writeChars(ByteBuffer buffer, int offset, int capacity, CharSequence chars) {
+        int length = chars == null ? 0 : Math.min(capacity, chars.length());
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            buffer.put(offset + i, c <= 0xFF ? (byte) c : (byte) '?');
+        }
+        return length;
+    }
+
+    /**
+     * @return 读取到未写入的位置（type 为 0）或未知类型时返回 null
+     */
+    static AuditEvent read(ByteBuffer buffer, int offset) {
+        AuditEventType type = AuditEventType.fromCode(buffer.getShort(offset + TYPE_OFFSET));
+        if (type == null) {
+            return null;
+        }
+        return new AuditEvent(
+            buffer.getLong(offset + SEQUENCE_OFFSET),
+            Instant.ofEpochMilli(buffer.getLong(offset + TIMESTAMP_OFFSET)),
+            type,
+            buffer.getShort(offset + STATUS_OFFSET),
+            readChars(buffer, offset + REQUEST_ID_OFFSET, buffer.get(offset + REQUEST_ID_LENGTH_OFFSET)),
+            readChars(buffer, offset + KEY_OFFSET, buffer.get(offset + KEY_LENGTH_OFFSET)),
+            buffer.getLong(offset + VALUE_OFFSET));
+    }
+
+    private static String readChars(ByteBuffer buffer, int offset, int length) {
+        if (length <= 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder(160)
+            .append(timestamp).append(" #").append(sequence).append(' ').append(type);
+        if (status != 0) {
+            line.append(" status=").append(status);
+        }
+        if (requestId != null) {
+            line.append(" requestId=").append(requestId);
+        }
+        if (key != null) {
+            line.append(" key=").append(key);
+        }
+        if (value != 0) {
+            line.append(" value=").append(value);
+        }
+        return line.toString();
+    }
+}
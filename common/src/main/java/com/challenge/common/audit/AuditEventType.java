@@ -0,0 +1,40 @@
+package com.challenge.common.audit;
+
+/**
+ * 审计事件类型，code 写入日志文件，已发布的值不能修改
+ */
+public enum AuditEventType {
+    PING_SENT(1),          // ping 开始发送
+    PING_RESULT(2),        // ping 结果已发布，status 为记录状态码，key 为结果类型，value 为耗时（纳秒）
+    PONG_ACCEPTED(3),      // pong 处理了请求，key 为调用方实例ID
+    PONG_RATE_LIMITED(4);  // pong 拒绝了请求，key 为调用方实例ID
+
+    private static final AuditEventType[] BY_CODE = new AuditEventType[5];
+
+    static {
+        for (AuditEventType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final short code;
+
+    AuditEventType(int code) {
+        this.code = (short) code;
+    }
+
+    public short code() {
+        return code;
+    }
+
+    /**
+     * @return 未知的 code 返回 null
+     */
+    public static AuditEventType fromCode(int code) {
+        return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+    public static AuditEventType from(String value) {
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
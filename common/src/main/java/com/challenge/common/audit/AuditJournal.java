@@ -0,0 +1,209 @@
+package com.challenge.common.audit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步二进制审计日志
+ * 调用方只把定长记录写入预分配的环形缓冲区，后台线程把记录追加到内存映射的分段文件中，
+ * 分段写满后切换到下一个文件，只保留最近 maxSegments 个分段。
+ * 文件格式见 {@link AuditSegments}，内容可以用 {@link AuditReader} 转换为文本
+ */
+@Slf4j
+public class AuditJournal implements AutoCloseable {
+    private static final AuditJournal DISABLED = new AuditJournal();
+
+    private final AuditRingBuffer ring;
+    private final Path directory;
+    private final long segmentSize;
+    private final int maxSegments;
+    private final long idleNanos;
+
+    private volatile boolean running;
+    private Thread writer;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long nextSegmentIndex;
+
+    /**
+     * @param directory 分段文件目录，不存在时创建
+     * @param ringCapacity 环形缓冲区槽位数，写入速度长时间超过落盘速度时新记录被丢弃
+     * @param segmentSize 单个分段文件大小
+     * @param maxSegments 保留的分段数，不大于0表示不删除
+     * @param idleInterval 缓冲区为空时写线程的等待时间
+     */
+    public AuditJournal(Path directory, int ringCapacity, long segmentSize, int maxSegments, Duration idleInterval) {
+        this.ring = new AuditRingBuffer(ringCapacity);
+        this.directory = directory;
+        this.segmentSize = Math.max(AuditSegments.HEADER_SIZE + AuditEvent.SIZE,
+            AuditSegments.HEADER_SIZE + (segmentSize - AuditSegments.HEADER_SIZE) / AuditEvent.SIZE * AuditEvent.SIZE);
+        this.maxSegments = maxSegments;
+        this.idleNanos = Math.max(1, idleInterval.toNanos());
+    }
+
+    private AuditJournal() {
+        this.ring = null;
+        this.directory = null;
+        this.segmentSize = 0;
+        this.maxSegments = 0;
+        this.idleNanos = 0;
+    }
+
+    /**
+     * @return 丢弃所有记录的实例
+     */
+    public static AuditJournal disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return ring != null;
+    }
+
+    /**
+     * 打开下一个分段并启动后台写线程
+     */
+    public synchronized AuditJournal start() {
+        if (ring == null || writer != null) {
+            return this;
+        }
+        try {
+            Files.createDirectories(directory);
+            nextSegmentIndex = AuditSegments.lastIndex(directory) + 1;
+            openSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot open audit journal in " + directory, e);
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "audit-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Audit journal started in {}: ring capacity {}, segment size {} bytes, keeping {} segments",
+            directory.toAbsolutePath(), ring.capacity(), segmentSize, maxSegments);
+        return this;
+    }
+
+    /**
+     * 记录一个审计事件，不阻塞、不分配对象
+     * @param requestId 最多保留 40 个字符
+     * @param key 最多保留 56 个字符
+     * @return 未启用或缓冲区已满时返回 false
+     */
+    public boolean append(AuditEventType type, int status, CharSequence requestId, CharSequence key, long value) {
+        return ring != null && running && ring.offer(type, status, requestId, key, value);
+    }
+
+    public long dropped() {
+        return ring == null ? 0 : ring.dropped();
+    }
+
+    private void writeLoop() {
+        try {
+            while (running || ring.pending() > 0) {
+                // 有待写记录时才切换分段，避免留下空分段
+                if (segment.remaining() < AuditEvent.SIZE && ring.pending() > 0) {
+                    rotate();
+                }
+                if (ring.drainTo(segment) == 0) {
+                    if (!running) {
+                        // 已认领的记录还没写完，稍后再取
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    LockSupport.parkNanos(idleNanos);
+                }
+            }
+        } catch (IOException e) {
+            running = false;
+            log.error("Audit journal stopped: {}", e.getMessage(), e);
+        } finally {
+            closeSegment();
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeSegment();
+        openSegment();
+        deleteOldSegments();
+    }
+
+    private void openSegment() throws IOException {
+        Path path = directory.resolve(AuditSegments.name(nextSegmentIndex++));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.putInt(0, AuditSegments.MAGIC);
+        segment.putShort(4, AuditSegments.VERSION);
+        segment.putShort(6, (short) AuditEvent.SIZE);
+        segment.putLong(8, System.currentTimeMillis());
+        segment.position(AuditSegments.HEADER_SIZE);
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.force();
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close audit segment: {}", e.getMessage());
+        }
+        segment = null;
+        channel = null;
+    }
+
+    private void deleteOldSegments() throws IOException {
+        if (maxSegments <= 0) {
+            return;
+        }
+        List<Path> segments = AuditSegments.list(directory);
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    /**
+     * 停止接收新记录，写完缓冲区中剩余的记录后关闭当前分段
+     */
+    @Override
+    public void close() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = writer;
+            running = false;
+        }
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+        if (ring.dropped() > 0) {
+            log.warn("Audit journal dropped {} events because the ring buffer was full", ring.dropped());
+        }
+    }
+
+    /**
+     * 测试用：等待缓冲区中的记录全部写入分段
+     */
+    boolean awaitDrained(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (ring.pending() > 0) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+}
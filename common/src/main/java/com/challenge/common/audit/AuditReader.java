@@ -0,0 +1,137 @@
+package com.challenge.common.audit;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 审计日志读取工具，把 {@link AuditJournal} 写入的分段文件转换为文本
+ * <pre>
+ * java -cp pingpong-common.jar com.challenge.common.audit.AuditReader [选项] 目录或分段文件...
+ *   --type=PING_RESULT,PONG_RATE_LIMITED  按事件类型过滤
+ *   --status=429                          按状态码过滤
+ *   --request-id=...                      按请求ID过滤
+ *   --key=...                             按 key 过滤（例如调用方实例ID）
+ *   --from=2024-01-01T00:00:00Z           起始时间（含）
+ *   --to=2024-01-01T01:00:00Z             结束时间（不含）
+ *   --count                               只输出匹配的记录数
+ * </pre>
+ */
+public class AuditReader {
+
+    public static void main(String[] args) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        Predicate<AuditEvent> filter = event -> true;
+        boolean countOnly = false;
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                paths.add(Path.of(arg));
+                continue;
+            }
+            int separator = arg.indexOf('=');
+            String name = separator < 0 ? arg.substring(2) : arg.substring(2, separator);
+            String value = separator < 0 ? null : arg.substring(separator + 1);
+            switch (name) {
+                case "type" -> {
+                    Set<AuditEventType> types = EnumSet.noneOf(AuditEventType.class);
+                    for (String type : value.split(",")) {
+                        types.add(AuditEventType.from(type));
+                    }
+                    filter = filter.and(event -> types.contains(event.type()));
+                }
+                case "status" -> {
+                    int status = Integer.parseInt(value);
+                    filter = filter.and(event -> event.status() == status);
+                }
+                case "request-id" -> filter = filter.and(event -> value.equals(event.requestId()));
+                case "key" -> filter = filter.and(event -> value.equals(event.key()));
+                case "from" -> {
+                    Instant from = Instant.parse(value);
+                    filter = filter.and(event -> !event.timestamp().isBefore(from));
+                }
+                case "to" -> {
+                    Instant to = Instant.parse(value);
+                    filter = filter.and(event -> event.timestamp().isBefore(to));
+                }
+                case "count" -> countOnly = true;
+                default -> {
+                    usage(System.err);
+                    System.exit(2);
+                }
+            }
+        }
+        if (paths.isEmpty()) {
+            usage(System.err);
+            System.exit(2);
+        }
+
+        long[] matched = {0};
+        boolean printEvents = !countOnly;
+        Predicate<AuditEvent> matches = filter;
+        for (Path path : paths) {
+            List<Path> segments = Files.isDirectory(path) ? AuditSegments.list(path) : List.of(path);
+            for (Path segment : segments) {
+                read(segment, event -> {
+                    if (matches.test(event)) {
+                        matched[0]++;
+                        if (printEvents) {
+                            System.out.println(event);
+                        }
+                    }
+                });
+            }
+        }
+        if (countOnly) {
+            System.out.println(matched[0]);
+        }
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("Usage: AuditReader [--type=T1,T2] [--status=N] [--request-id=ID] [--key=KEY]"
+            + " [--from=INSTANT] [--to=INSTANT] [--count] <journal directory or segment files>...");
+    }
+
+    /**
+     * 按写入顺序读取一个分段中的全部记录，遇到未写入的位置即停止
+     */
+    public static void read(Path segment, Consumer<AuditEvent> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < AuditSegments.HEADER_SIZE || buffer.getInt(0) != AuditSegments.MAGIC) {
+                throw new IOException("not an audit journal segment: " + segment);
+            }
+            if (buffer.getShort(4) != AuditSegments.VERSION || buffer.getShort(6) != AuditEvent.SIZE) {
+                throw new IOException("unsupported audit journal version " + buffer.getShort(4) + ": " + segment);
+            }
+            for (int offset = AuditSegments.HEADER_SIZE; offset + AuditEvent.SIZE <= buffer.limit(); offset += AuditEvent.SIZE) {
+                AuditEvent event = AuditEvent.read(buffer, offset);
+                if (event == null) {
+                    return;
+                }
+                consumer.accept(event);
+            }
+        }
+    }
+
+    /**
+     * 读取目录下全部分段中的记录
+     */
+    public static List<AuditEvent> readAll(Path directory) throws IOException {
+        List<AuditEvent> events = new ArrayList<>();
+        for (Path segment : AuditSegments.list(directory)) {
+            read(segment, events::add);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,91 @@
+package com.challenge.common.audit;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 预分配的多生产者、单消费者审计记录环形缓冲区
+ * 生产者 CAS 认领序号后直接写入对应槽位，写完再标记发布；缓冲区满时丢弃并计数，从不阻塞调用方。
+ * 消费者按序号顺序取出已发布的槽位，某个槽位尚未写完时停在该位置等待下一轮
+ */
+public class AuditRingBuffer {
+    private final ByteBuffer slots;
+    // 每个槽位最近一次发布的序号加一，用于区分不同轮次
+    private final AtomicLongArray published;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    // 下一个待消费的序号，只由消费者线程写入
+    private volatile long consumed;
+
+    /**
+     * @param capacity 槽位数，向上取整为2的幂
+     */
+    public AuditRingBuffer(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.slots = ByteBuffer.allocateDirect(this.capacity * AuditEvent.SIZE);
+        this.published = new AtomicLongArray(this.capacity);
+    }
+
+    /**
+     * 写入一条记录，不分配对象
+     * @return 缓冲区已满时返回 false，记录被丢弃
+     */
+    public boolean offer(AuditEventType type, int status, CharSequence requestId, CharSequence key, long value) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= capacity) {
+                dropped.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        int index = (int) (sequence & mask);
+        AuditEvent.write(slots, index * AuditEvent.SIZE, sequence, System.currentTimeMillis(),
+            type, status, requestId, key, value);
+        published.set(index, sequence + 1);
+        return true;
+    }
+
+    /**
+     * 按顺序把已发布的记录复制到 target 的当前位置，只能由一个线程调用
+     * @return 复制的记录数
+     */
+    public int drainTo(ByteBuffer target) {
+        int count = 0;
+        long next = consumed;
+        while (target.remaining() >= AuditEvent.SIZE) {
+            int index = (int) (next & mask);
+            if (published.get(index) != next + 1) {
+                break;
+            }
+            int position = target.position();
+            target.put(position, slots, index * AuditEvent.SIZE, AuditEvent.SIZE);
+            target.position(position + AuditEvent.SIZE);
+            next++;
+            count++;
+            // 逐条推进，生产者可以尽早复用已复制的槽位
+            consumed = next;
+        }
+        return count;
+    }
+
+    /**
+     * @return 已认领但尚未被消费的记录数
+     */
+    public long pending() {
+        return claimed.get() - consumed;
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,53 @@
+package com.challenge.common.audit;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 审计日志分段文件的命名与文件头格式，读写两端共用，不依赖日志框架以便 AuditReader 单独运行
+ * <pre>
+ * 文件头（大端序，64 字节）：magic(4) version(2) recordSize(2) createdMillis(8) 保留(48)
+ * </pre>
+ */
+final class AuditSegments {
+    static final int MAGIC = 0x50504A31; // "PPJ1"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("audit-(\\d{10})\\.journal");
+
+    private AuditSegments() {
+    }
+
+    static String name(long index) {
+        return String.format("audit-%010d.journal", index);
+    }
+
+    /**
+     * @return 目录下的分段文件，按写入顺序排列
+     */
+    static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> SEGMENT_NAME.matcher(path.getFileName().toString()).matches())
+                .sorted()
+                .toList();
+        }
+    }
+
+    /**
+     * @return 目录下最大的分段序号，没有分段时返回0
+     */
+    static long lastIndex(Path directory) throws IOException {
+        List<Path> segments = list(directory);
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        Matcher matcher = SEGMENT_NAME.matcher(segments.get(segments.size() - 1).getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+}
@@ -0,0 +1,162 @@
+package com.challenge.common.codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+/**
+ * Ping/Pong 记录的二进制编解码
+ * 第 1 版格式（大端序）：
+ * <pre>
+ * magic(1) version(1) flags(1)
+ * requestId: UUID 格式时为 16 字节，否则为 长度(4) + UTF-8 字节
+ * timestamp: epoch 微秒(8)，按 UTC 换算 LocalDateTime
+ * status(2)
+ * message: 长度(4) + UTF-8 字节，长度为 -1 表示 null
+ * </pre>
+ * 第 2 版在 timestamp 之后增加记录的生成时刻 createdAt: epoch 微秒(8)，由 flags 标记是否存在。
+ * 不带生成时刻的记录仍按第 1 版编码，未升级的解码端可以继续读取
+ */
+public final class RecordCodec {
+    public static final byte MAGIC = (byte) 0xB7;
+    public static final byte VERSION = 2;
+    private static final byte VERSION_1 = 1;
+
+    // requestId 为标准 UUID，以 16 字节存储
+    private static final int FLAG_UUID = 1;
+    private static final int FLAG_NULL_REQUEST_ID = 1 << 1;
+    private static final int FLAG_NULL_TIMESTAMP = 1 << 2;
+    private static final int FLAG_CREATED_AT = 1 << 3;
+
+    private static final int HEADER_SIZE = 3;
+    private static final int NULL_LENGTH = -1;
+
+    /**
+     * 记录中参与传输的字段
+     * @param createdAtMicros 记录生成时刻的 epoch 微秒，为 null 表示未记录
+     */
+    public record Fields(String requestId, LocalDateTime timestamp, int status, String message, Long createdAtMicros) {
+        public Fields(String requestId, LocalDateTime timestamp, int status, String message) {
+            this(requestId, timestamp, status, message, null);
+        }
+    }
+
+    private RecordCodec() {
+    }
+
+    public static byte[] encode(Fields fields) {
+        UUID uuid = parseUuid(fields.requestId());
+        byte[] requestId = uuid == null && fields.requestId() != null
+            ? fields.requestId().getBytes(StandardCharsets.UTF_8) : null;
+        byte[] message = fields.message() == null ? null : fields.message().getBytes(StandardCharsets.UTF_8);
+
+        int flags = 0;
+        int size = HEADER_SIZE + Long.BYTES + Short.BYTES + Integer.BYTES + (message == null ? 0 : message.length);
+        if (uuid != null) {
+            flags |= FLAG_UUID;
+            size += 2 * Long.BYTES;
+        } else if (requestId != null) {
+            size += Integer.BYTES + requestId.length;
+        } else {
+            flags |= FLAG_NULL_REQUEST_ID;
+        }
+        if (fields.timestamp() == null) {
+            flags |= FLAG_NULL_TIMESTAMP;
+        }
+        if (fields.createdAtMicros() != null) {
+            flags |= FLAG_CREATED_AT;
+            size += Long.BYTES;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC).put(fields.createdAtMicros() == null ? VERSION_1 : VERSION).put((byte) flags);
+        if (uuid != null) {
+            buffer.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+        } else if (requestId != null) {
+            buffer.putInt(requestId.length).put(requestId);
+        }
+        buffer.putLong(fields.timestamp() == null ? 0 : toEpochMicros(fields.timestamp()));
+        if (fields.createdAtMicros() != null) {
+            buffer.putLong(fields.createdAtMicros());
+        }
+        buffer.putShort((short) fields.status());
+        if (message == null) {
+            buffer.putInt(NULL_LENGTH);
+        } else {
+            buffer.putInt(message.length).put(message);
+        }
+        return buffer.array();
+    }
+
+    public static Fields decode(byte[] bytes) {
+        if (!isEncoded(bytes)) {
+            throw new IllegalArgumentException("not a binary record");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.get();
+        byte version = buffer.get();
+        if (version != VERSION_1 && version != VERSION) {
+            throw new IllegalArgumentException("unsupported record version: " + version);
+        }
+        try {
+            int flags = buffer.get();
+            String requestId = null;
+            if ((flags & FLAG_UUID) != 0) {
+                requestId = new UUID(buffer.getLong(), buffer.getLong()).toString();
+            } else if ((flags & FLAG_NULL_REQUEST_ID) == 0) {
+                requestId = readString(buffer, buffer.getInt());
+            }
+            long micros = buffer.getLong();
+            LocalDateTime timestamp = (flags & FLAG_NULL_TIMESTAMP) != 0 ? null : fromEpochMicros(micros);
+            Long createdAt = version != VERSION_1 && (flags & FLAG_CREATED_AT) != 0 ? buffer.getLong() : null;
+            int status = buffer.getShort();
+            int length = buffer.getInt();
+            String message = length == NULL_LENGTH ? null : readString(buffer, length);
+            return new Fields(requestId, timestamp, status, message, createdAt);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("truncated binary record", e);
+        }
+    }
+
+    /**
+     * 判断字节内容是否为二进制记录，JSON 内容不会以 magic 字节开头
+     */
+    public static boolean isEncoded(byte[] bytes) {
+        return bytes != null && bytes.length >= HEADER_SIZE && bytes[0] == MAGIC;
+    }
+
+    private static UUID parseUuid(String value) {
+        // 只接受标准的 36 位小写形式，保证解码后与原字符串完全一致
+        if (value == null || value.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(value);
+            return uuid.toString().equals(value) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("invalid string length: " + length);
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static long toEpochMicros(LocalDateTime timestamp) {
+        return ChronoUnit.MICROS.between(LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC), timestamp);
+    }
+
+    private static LocalDateTime fromEpochMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+            (int) Math.floorMod(micros, 1_000_000L) * 1000, ZoneOffset.UTC);
+    }
+}
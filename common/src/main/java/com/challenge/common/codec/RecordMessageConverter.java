@@ -0,0 +1,56 @@
+package com.challenge.common.codec;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.util.MimeType;
+
+import java.util.function.Function;
+
+/**
+ * 使用 {@link RecordCodec} 的 Spring 消息转换器
+ * 发送时写入 contentType 头，接收时按 contentType 协商：声明为二进制记录，
+ * 或未声明但内容以 magic 字节开头时才由本转换器解码，其余消息留给后面的 JSON 转换器，
+ * 滚动升级期间 JSON 与二进制生产者可以共存
+ */
+public class RecordMessageConverter<T> extends AbstractMessageConverter {
+    public static final MimeType BINARY_RECORD = new MimeType("application", "x-pingpong-record");
+
+    private final Class<T> recordType;
+    private final Function<T, RecordCodec.Fields> toFields;
+    private final Function<RecordCodec.Fields, T> fromFields;
+
+    public RecordMessageConverter(Class<T> recordType,
+                                  Function<T, RecordCodec.Fields> toFields,
+                                  Function<RecordCodec.Fields, T> fromFields) {
+        super(BINARY_RECORD);
+        this.recordType = recordType;
+        this.toFields = toFields;
+        this.fromFields = fromFields;
+        setSerializedPayloadClass(byte[].class);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return recordType.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canConvertFrom(Message<?> message, Class<?> targetClass) {
+        if (!supports(targetClass) || !(message.getPayload() instanceof byte[] payload)) {
+            return false;
+        }
+        MimeType mimeType = getMimeType(message.getHeaders());
+        return mimeType == null ? RecordCodec.isEncoded(payload) : BINARY_RECORD.equalsTypeAndSubtype(mimeType);
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        return fromFields.apply(RecordCodec.decode((byte[]) message.getPayload()));
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        return RecordCodec.encode(toFields.apply(recordType.cast(payload)));
+    }
+}
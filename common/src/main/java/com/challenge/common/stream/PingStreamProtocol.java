@@ -0,0 +1,73 @@
+package com.challenge.common.stream;
+
+/**
+ * Ping 与 Pong 之间流式通道（WebSocket）的帧格式
+ * 一个连接上可以同时有多个 ping 在途，以序号对应请求和结果；每帧是一条文本消息：
+ * <pre>
+ *   P &lt;seq&gt;                                      ping -> pong，一次 ping
+ *   N &lt;n&gt;                                        pong -> ping，允许再发送 n 个 ping（request-n）
+ *   V &lt;seq&gt; &lt;status&gt; &lt;retryAfter&gt; &lt;message&gt;     pong -> ping，处理结果，retryAfter 以秒为单位
+ * </pre>
+ * Pong 按处理进度发放额度，Ping 只在有额度时发送，因此 Pong 处理变慢时积压留在 Ping 一侧
+ */
+public final class PingStreamProtocol {
+    /**
+     * Pong 提供流式通道的路径
+     */
+    public static final String PATH = "/api/pong/stream";
+
+    private PingStreamProtocol() {
+    }
+
+    public sealed interface Frame permits Ping, RequestN, Verdict {}
+
+    public record Ping(long seq) implements Frame {}
+
+    public record RequestN(long n) implements Frame {}
+
+    public record Verdict(long seq, int status, long retryAfterSeconds, String message) implements Frame {}
+
+    public static String encode(Frame frame) {
+        if (frame instanceof Ping ping) {
+            return "P " + ping.seq();
+        }
+        if (frame instanceof RequestN request) {
+            return "N " + request.n();
+        }
+        Verdict verdict = (Verdict) frame;
+        return "V " + verdict.seq() + " " + verdict.status() + " " + verdict.retryAfterSeconds() + " "
+            + verdict.message();
+    }
+
+    /**
+     * @throws IllegalArgumentException 无法识别的帧
+     */
+    public static Frame decode(String text) {
+        String[] parts = text.split(" ", 5);
+        try {
+            switch (parts[0]) {
+                case "P":
+                    if (parts.length == 2) {
+                        return new Ping(Long.parseLong(parts[1]));
+                    }
+                    break;
+                case "N":
+                    if (parts.length == 2) {
+                        return new RequestN(Long.parseLong(parts[1]));
+                    }
+                    break;
+                case "V":
+                    if (parts.length >= 4) {
+                        return new Verdict(Long.parseLong(parts[1]), Integer.parseInt(parts[2]),
+                            Long.parseLong(parts[3]), parts.length == 5 ? parts[4] : "");
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed stream frame: " + text, e);
+        }
+        throw new IllegalArgumentException("Malformed stream frame: " + text);
+    }
+}
@@ -0,0 +1,47 @@
+package com.challenge.common.trace;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * 端到端延迟追踪使用的时钟和消息属性
+ * 时间为 epoch 微秒，由启动时的墙上时间加上 System.nanoTime 的增量得到，同一进程内单调递增、精度不受系统时钟调整影响；
+ * 跨进程比较的准确度取决于主机之间的时钟同步（NTP），因此差值可能略有负数
+ */
+public final class TraceClock {
+    // ping 生成记录的时刻，pong 据此统计记录从生成到保存的延迟
+    public static final String CREATED_AT = "TRACE_CREATED_AT";
+    // ping 向 pong 发出请求的时刻
+    public static final String SENT_AT = "TRACE_SENT_AT";
+    // ping 收到 pong 响应（或超时、失败）的时刻
+    public static final String RESPONDED_AT = "TRACE_RESPONDED_AT";
+    // ping 把记录交给 RocketMQ 发送的时刻
+    public static final String PUBLISHED_AT = "TRACE_PUBLISHED_AT";
+
+    private static final long ANCHOR_MICROS = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+    private static final long ANCHOR_NANOS = System.nanoTime();
+
+    private TraceClock() {
+    }
+
+    /**
+     * @return 当前时刻的 epoch 微秒
+     */
+    public static long nowMicros() {
+        return ANCHOR_MICROS + (System.nanoTime() - ANCHOR_NANOS) / 1000;
+    }
+
+    /**
+     * @return 消息属性中的时刻，缺失或格式错误时返回 null
+     */
+    public static Long parse(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.challenge.common.audit
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Duration
+
+class AuditJournalSpec extends Specification {
+
+    @TempDir
+    Path directory
+
+    AuditJournal journal
+
+    def cleanup() {
+        journal?.close()
+    }
+
+    def open(long segmentSize = 1 << 20, int maxSegments = 0) {
+        journal = new AuditJournal(directory, 1024, segmentSize, maxSegments, Duration.ofMillis(1)).start()
+    }
+
+    def "should write appended events to a segment"() {
+        given:
+        open()
+
+        when:
+        journal.append(AuditEventType.PONG_ACCEPTED, 200, "req-1", "ping-a", 0)
+        journal.append(AuditEventType.PONG_RATE_LIMITED, 429, "req-2", "ping-b", 0)
+        journal.awaitDrained(Duration.ofSeconds(5))
+        def events = AuditReader.readAll(directory)
+
+        then:
+        events*.type == [AuditEventType.PONG_ACCEPTED, AuditEventType.PONG_RATE_LIMITED]
+        events*.requestId == ["req-1", "req-2"]
+        events*.key == ["ping-a", "ping-b"]
+        events*.status == [200, 429]
+    }
+
+    def "should rotate full segments and keep only the newest ones"() {
+        given: "每个分段只能容纳 4 条记录"
+        open(AuditSegments.HEADER_SIZE + 4 * AuditEvent.SIZE, 2)
+
+        when:
+        20.times { journal.append(AuditEventType.PING_SENT, 0, "id-$it", null, 0) }
+        journal.close()
+        def segments = AuditSegments.list(directory)
+        def events = AuditReader.readAll(directory)
+
+        then:
+        segments*.fileName*.toString() == ["audit-0000000004.journal", "audit-0000000005.journal"]
+        events*.requestId == (12..19).collect { "id-$it" }
+    }
+
+    def "should continue numbering segments after a restart"() {
+        given:
+        open()
+        journal.append(AuditEventType.PING_SENT, 0, "before", null, 0)
+        journal.close()
+
+        when:
+        open()
+        journal.append(AuditEventType.PING_SENT, 0, "after", null, 0)
+        journal.close()
+
+        then:
+        AuditSegments.list(directory)*.fileName*.toString() == ["audit-0000000001.journal", "audit-0000000002.journal"]
+        AuditReader.readAll(directory)*.requestId == ["before", "after"]
+    }
+
+    def "should write remaining events on close and reject later ones"() {
+        given:
+        open()
+        100.times { journal.append(AuditEventType.PING_SENT, 0, "id-$it", null, 0) }
+
+        when:
+        journal.close()
+
+        then:
+        AuditReader.readAll(directory).size() == 100
+        !journal.append(AuditEventType.PING_SENT, 0, "late", null, 0)
+    }
+
+    def "should ignore events when disabled"() {
+        given:
+        def disabled = AuditJournal.disabled()
+
+        expect:
+        !disabled.isEnabled()
+        !disabled.append(AuditEventType.PING_SENT, 0, "id", null, 0)
+        disabled.dropped() == 0
+        disabled.start().is(disabled)
+
+        cleanup:
+        disabled.close()
+    }
+
+    def "should fail to start when the directory cannot be created"() {
+        given:
+        def file = Files.createFile(directory.resolve("not-a-directory"))
+
+        when:
+        new AuditJournal(file.resolve("audit"), 16, 1 << 20, 0, Duration.ofMillis(1)).start()
+
+        then:
+        thrown(UncheckedIOException)
+    }
+}
@@ -0,0 +1,76 @@
+package com.challenge.common.audit
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Duration
+
+class AuditReaderSpec extends Specification {
+
+    @TempDir
+    Path directory
+
+    def setup() {
+        def journal = new AuditJournal(directory, 64, 1 << 20, 0, Duration.ofMillis(1)).start()
+        journal.append(AuditEventType.PONG_ACCEPTED, 200, "req-1", "ping-a", 0)
+        journal.append(AuditEventType.PONG_RATE_LIMITED, 429, "req-2", "ping-a", 0)
+        journal.append(AuditEventType.PONG_RATE_LIMITED, 429, "req-3", "ping-b", 0)
+        journal.append(AuditEventType.PING_RESULT, 200, "req-4", "SUCCESS", 1500)
+        journal.close()
+    }
+
+    def run(String... args) {
+        def out = new ByteArrayOutputStream()
+        def original = System.out
+        System.out = new PrintStream(out, true, "UTF-8")
+        try {
+            AuditReader.main(args)
+        } finally {
+            System.out = original
+        }
+        out.toString("UTF-8").readLines()
+    }
+
+    def "should render every event of a directory as text"() {
+        when:
+        def lines = run(directory.toString())
+
+        then:
+        lines.size() == 4
+        lines[0] ==~ /\S+Z #0 PONG_ACCEPTED status=200 requestId=req-1 key=ping-a/
+        lines[3].endsWith("PING_RESULT status=200 requestId=req-4 key=SUCCESS value=1500")
+    }
+
+    def "should filter events"() {
+        expect:
+        run(*(args + [directory.toString()])).collect { (it =~ /requestId=(\S+)/)[0][1] } == expected
+
+        where:
+        args                                        | expected
+        ["--type=pong-rate-limited"]                | ["req-2", "req-3"]
+        ["--type=PONG_ACCEPTED,PING_RESULT"]        | ["req-1", "req-4"]
+        ["--status=429", "--key=ping-a"]            | ["req-2"]
+        ["--request-id=req-3"]                      | ["req-3"]
+        ["--from=2000-01-01T00:00:00Z"]             | ["req-1", "req-2", "req-3", "req-4"]
+        ["--to=2000-01-01T00:00:00Z"]               | []
+    }
+
+    def "should only print the number of matching events with --count"() {
+        expect:
+        run("--count", "--type=PONG_RATE_LIMITED", AuditSegments.list(directory)[0].toString()) == ["2"]
+    }
+
+    def "should reject files that are not journal segments"() {
+        given:
+        def file = Files.write(directory.resolve("other.log"), ("hello world" * 10).bytes)
+
+        when:
+        AuditReader.read(file) { }
+
+        then:
+        thrown(IOException)
+    }
+
+}
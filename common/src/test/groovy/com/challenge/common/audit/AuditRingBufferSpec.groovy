@@ -0,0 +1,143 @@
+package com.challenge.common.audit
+
+import spock.lang.Specification
+
+import java.lang.management.ManagementFactory
+import java.nio.ByteBuffer
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class AuditRingBufferSpec extends Specification {
+
+    def drainAll(AuditRingBuffer ring) {
+        def buffer = ByteBuffer.allocate(ring.capacity() * AuditEvent.SIZE)
+        int count = ring.drainTo(buffer)
+        (0..<count).collect { AuditEvent.read(buffer, it * AuditEvent.SIZE) }
+    }
+
+    def "should round the capacity up to a power of two"() {
+        expect:
+        new AuditRingBuffer(requested).capacity() == expected
+
+        where:
+        requested | expected
+        0         | 2
+        3         | 4
+        64        | 64
+        1000      | 1024
+    }
+
+    def "should drain published events in order with all fields"() {
+        given:
+        def ring = new AuditRingBuffer(8)
+        def requestId = UUID.randomUUID().toString()
+
+        when:
+        ring.offer(AuditEventType.PING_SENT, 0, requestId, null, 0)
+        ring.offer(AuditEventType.PING_RESULT, 429, requestId, "RATE_LIMITED_LOCAL", 1234)
+        def events = drainAll(ring)
+
+        then:
+        events*.sequence == [0L, 1L]
+        events*.type == [AuditEventType.PING_SENT, AuditEventType.PING_RESULT]
+        events[1].status == 429
+        events[1].requestId == requestId
+        events[1].key == "RATE_LIMITED_LOCAL"
+        events[1].value == 1234
+        events[0].key == null
+        Math.abs(events[0].timestamp.toEpochMilli() - System.currentTimeMillis()) < 5000
+        ring.pending() == 0
+    }
+
+    def "should truncate long identifiers and replace non latin-1 characters"() {
+        given:
+        def ring = new AuditRingBuffer(2)
+
+        when:
+        ring.offer(AuditEventType.PONG_ACCEPTED, 200, "r" * 100, "实例-1", 0)
+        def event = drainAll(ring)[0]
+
+        then:
+        event.requestId == "r" * 40
+        event.key == "??-1"
+    }
+
+    def "should drop events instead of blocking when full"() {
+        given:
+        def ring = new AuditRingBuffer(4)
+
+        when:
+        def accepted = (1..6).collect { ring.offer(AuditEventType.PING_SENT, 0, "id-$it", null, 0) }
+
+        then:
+        accepted == [true, true, true, true, false, false]
+        ring.dropped() == 2
+
+        when: "消费后槽位可以复用"
+        def drained = drainAll(ring)
+
+        then:
+        drained*.requestId == ["id-1", "id-2", "id-3", "id-4"]
+        ring.offer(AuditEventType.PING_SENT, 0, "id-7", null, 0)
+        drainAll(ring)*.sequence == [4L]
+    }
+
+    def "should only drain as many events as fit in the target"() {
+        given:
+        def ring = new AuditRingBuffer(8)
+        5.times { ring.offer(AuditEventType.PING_SENT, 0, "id-$it", null, 0) }
+        def target = ByteBuffer.allocate(AuditEvent.SIZE * 2 + 10)
+
+        expect:
+        ring.drainTo(target) == 2
+        ring.pending() == 3
+    }
+
+    def "should keep every event from concurrent producers"() {
+        given:
+        def ring = new AuditRingBuffer(1 << 16)
+        def threads = 4
+        def perThread = 5000
+        def pool = Executors.newFixedThreadPool(threads)
+        def start = new CountDownLatch(1)
+
+        when:
+        threads.times { t ->
+            pool.submit {
+                start.await()
+                perThread.times { ring.offer(AuditEventType.PONG_ACCEPTED, 200, "t$t-$it", "caller-$t", it) }
+            }
+        }
+        start.countDown()
+        pool.shutdown()
+        pool.awaitTermination(10, TimeUnit.SECONDS)
+        def events = drainAll(ring)
+
+        then:
+        events.size() == threads * perThread
+        events*.sequence == (0..<(threads * perThread)).collect { it as long }
+        events*.requestId.toSet().size() == threads * perThread
+        ring.dropped() == 0
+    }
+
+    def "should not allocate on the offer path"() {
+        given:
+        def threadBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        def ring = new AuditRingBuffer(1 << 14)
+        def target = ByteBuffer.allocateDirect(ring.capacity() * AuditEvent.SIZE)
+        def requestId = UUID.randomUUID().toString()
+        // 预热，让 JIT 编译 offer 路径
+        AllocationProbe.offerAndDrain(ring, target, requestId, 20, 1000)
+
+        when:
+        long threadId = Thread.currentThread().getId()
+        long before = threadBean.getThreadAllocatedBytes(threadId)
+        AllocationProbe.offerAndDrain(ring, target, requestId, 10, 10_000)
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before
+
+        then:
+        // 只允许测量本身和 JIT 的少量开销，100000 条记录逐条分配时至少数 MB
+        allocated < 64 * 1024
+    }
+}
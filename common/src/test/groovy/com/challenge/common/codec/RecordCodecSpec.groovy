@@ -0,0 +1,82 @@
+package com.challenge.common.codec
+
+import spock.lang.Specification
+import java.time.LocalDateTime
+
+class RecordCodecSpec extends Specification {
+
+    def "should round trip all fields"() {
+        given:
+        def fields = new RecordCodec.Fields(requestId, timestamp, 429, message)
+
+        expect:
+        RecordCodec.decode(RecordCodec.encode(fields)) == fields
+
+        where:
+        requestId                              | timestamp                                   | message
+        "3f2504e0-4f89-41d3-9a0c-0305e82c3301" | LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123456000) | "World"
+        "not-a-uuid"                           | LocalDateTime.of(1969, 12, 31, 23, 59, 59, 1000)     | "你好"
+        "3F2504E0-4F89-41D3-9A0C-0305E82C3301" | LocalDateTime.of(2024, 5, 1, 0, 0)                  | ""
+        null                                   | null                                                 | null
+    }
+
+    def "should store a UUID request id in 16 bytes"() {
+        given:
+        def uuid = RecordCodec.encode(new RecordCodec.Fields(UUID.randomUUID().toString(), LocalDateTime.now(), 200, "World"))
+        def text = RecordCodec.encode(new RecordCodec.Fields("request-1", LocalDateTime.now(), 200, "World"))
+
+        expect:
+        uuid.length == 3 + 16 + 8 + 2 + 4 + 5
+        text.length == 3 + 4 + 9 + 8 + 2 + 4 + 5
+    }
+
+    def "should carry the creation time in version 2 and keep version 1 for records without it"() {
+        given:
+        def timestamp = LocalDateTime.of(2024, 5, 1, 12, 0)
+        def created = RecordCodec.encode(new RecordCodec.Fields("id", timestamp, 200, "World", 1_714_564_800_000_000L))
+        def plain = RecordCodec.encode(new RecordCodec.Fields("id", timestamp, 200, "World"))
+
+        expect:
+        created[1] == RecordCodec.VERSION
+        plain[1] == (byte) 1
+        created.length == plain.length + 8
+        RecordCodec.decode(created).createdAtMicros() == 1_714_564_800_000_000L
+        RecordCodec.decode(plain).createdAtMicros() == null
+        RecordCodec.decode(created).message() == "World"
+    }
+
+    def "should truncate timestamps to microseconds"() {
+        given:
+        def timestamp = LocalDateTime.of(2024, 5, 1, 12, 0, 0, 123456789)
+
+        when:
+        def decoded = RecordCodec.decode(RecordCodec.encode(new RecordCodec.Fields("id", timestamp, 200, "World")))
+
+        then:
+        decoded.timestamp() == LocalDateTime.of(2024, 5, 1, 12, 0, 0, 123456000)
+    }
+
+    def "should detect binary records by the magic byte"() {
+        expect:
+        RecordCodec.isEncoded(RecordCodec.encode(new RecordCodec.Fields("id", null, 200, null)))
+        !RecordCodec.isEncoded('{"requestId":"id"}'.bytes)
+        !RecordCodec.isEncoded(null)
+        !RecordCodec.isEncoded([RecordCodec.MAGIC] as byte[])
+    }
+
+    def "should reject malformed input"() {
+        when:
+        RecordCodec.decode(bytes as byte[])
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        bytes << [
+            '{"requestId":"id"}'.bytes,
+            [RecordCodec.MAGIC, 3, 0],
+            [RecordCodec.MAGIC, RecordCodec.VERSION, 1, 0, 0],
+            [RecordCodec.MAGIC, RecordCodec.VERSION, 0, 0x7f, 0, 0, 0]
+        ]
+    }
+}
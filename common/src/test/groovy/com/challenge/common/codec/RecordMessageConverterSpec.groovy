@@ -0,0 +1,84 @@
+package com.challenge.common.codec
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializationFeature
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
+import org.springframework.messaging.MessageHeaders
+import org.springframework.messaging.converter.CompositeMessageConverter
+import org.springframework.messaging.converter.MappingJackson2MessageConverter
+import org.springframework.messaging.support.MessageBuilder
+import spock.lang.Specification
+import java.time.LocalDateTime
+
+class RecordMessageConverterSpec extends Specification {
+
+    static class TestRecord {
+        String requestId
+        LocalDateTime timestamp
+        int status
+        String message
+    }
+
+    RecordMessageConverter<TestRecord> binary = new RecordMessageConverter<>(TestRecord,
+        { r -> new RecordCodec.Fields(r.requestId, r.timestamp, r.status, r.message) },
+        { f -> new TestRecord(requestId: f.requestId(), timestamp: f.timestamp(), status: f.status(), message: f.message()) })
+    MappingJackson2MessageConverter json = new MappingJackson2MessageConverter()
+    CompositeMessageConverter converter
+
+    def setup() {
+        def objectMapper = new ObjectMapper()
+        objectMapper.registerModule(new JavaTimeModule())
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        json.objectMapper = objectMapper
+        converter = new CompositeMessageConverter([binary, json])
+    }
+
+    def record() {
+        new TestRecord(requestId: UUID.randomUUID().toString(), timestamp: LocalDateTime.of(2024, 5, 1, 12, 0), status: 200, message: "World")
+    }
+
+    def "should encode records as binary with a content type header"() {
+        when:
+        def message = binary.toMessage(record(), null)
+
+        then:
+        message.payload instanceof byte[]
+        RecordCodec.isEncoded(message.payload as byte[])
+        message.headers[MessageHeaders.CONTENT_TYPE] == RecordMessageConverter.BINARY_RECORD
+    }
+
+    def "should decode binary and JSON producers side by side"() {
+        given:
+        def original = record()
+        def binaryMessage = MessageBuilder.withPayload(binary.toMessage(original, null).payload)
+            .setHeader(MessageHeaders.CONTENT_TYPE, "application/x-pingpong-record").build()
+        def jsonMessage = MessageBuilder.withPayload(json.toMessage(original, null).payload)
+            .setHeader(MessageHeaders.CONTENT_TYPE, "application/json").build()
+
+        when:
+        TestRecord fromBinary = converter.fromMessage(binaryMessage, TestRecord)
+        TestRecord fromJson = converter.fromMessage(jsonMessage, TestRecord)
+
+        then:
+        [fromBinary, fromJson].every {
+            it.requestId == original.requestId && it.timestamp == original.timestamp &&
+                it.status == 200 && it.message == "World"
+        }
+    }
+
+    def "should sniff binary payloads without a content type"() {
+        given:
+        def original = record()
+
+        expect:
+        converter.fromMessage(MessageBuilder.withPayload(binary.toMessage(original, null).payload).build(), TestRecord).requestId == original.requestId
+        converter.fromMessage(MessageBuilder.withPayload(json.toMessage(original, null).payload).build(), TestRecord).requestId == original.requestId
+    }
+
+    def "should not handle other payload types"() {
+        expect:
+        binary.toMessage("text", null) == null
+        binary.fromMessage(MessageBuilder.withPayload("text").build(), TestRecord) == null
+        binary.fromMessage(MessageBuilder.withPayload(new byte[0]).build(), String) == null
+    }
+}
@@ -0,0 +1,73 @@
+package com.challenge.common.id
+
+import com.challenge.common.codec.RecordCodec
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+
+class RequestIdGeneratorSpec extends Specification {
+
+    def generator = new RequestIdGenerator("ping-1")
+
+    def "should generate version 7 ids in increasing order within a thread"() {
+        when: "超过每毫秒 4096 个时借用下一毫秒"
+        def ids = (1..20_000).collect { generator.next() }
+        def uuids = ids.collect { UUID.fromString(it) }
+
+        then:
+        ids == ids.toSorted()
+        ids.toSet().size() == ids.size()
+        uuids.every { it.version() == 7 && it.variant() == 2 }
+        Math.abs(RequestIdGenerator.timestampOf(ids.first()) - System.currentTimeMillis()) < 1000
+    }
+
+    def "should never repeat ids across threads"() {
+        given:
+        def ids = ConcurrentHashMap.newKeySet()
+        def start = new CountDownLatch(1)
+        def threads = (1..8).collect {
+            Thread.start {
+                start.await()
+                10_000.times { ids << generator.next() }
+            }
+        }
+
+        when:
+        start.countDown()
+        threads*.join()
+
+        then:
+        ids.size() == 80_000
+    }
+
+    def "should tag ids with the instance and keep them separate from other instances"() {
+        given:
+        def other = new RequestIdGenerator("ping-2")
+        def instanceBits = { String id -> UUID.fromString(id).leastSignificantBits >>> 30 & 0xFFFFFFFFL }
+
+        expect:
+        instanceBits(generator.next()) == instanceBits(new RequestIdGenerator("ping-1").next())
+        instanceBits(generator.next()) != instanceBits(other.next())
+        RequestIdGenerator.local().next() != RequestIdGenerator.local().next()
+        new RequestIdGenerator("").next() != null
+    }
+
+    def "should keep the 16 byte binary form in the record codec"() {
+        given:
+        def id = generator.next()
+        def fields = new RecordCodec.Fields(id, LocalDateTime.of(2024, 5, 1, 12, 0), 200, "World")
+
+        expect:
+        RecordCodec.encode(fields).length == 3 + 16 + 8 + 2 + 4 + 5
+        RecordCodec.decode(RecordCodec.encode(fields)).requestId() == id
+    }
+
+    def "should only read timestamps from time ordered ids"() {
+        expect:
+        RequestIdGenerator.timestampOf(UUID.randomUUID().toString()) == -1
+        RequestIdGenerator.timestampOf("not-an-id") == -1
+        RequestIdGenerator.timestampOf(null) == -1
+    }
+}
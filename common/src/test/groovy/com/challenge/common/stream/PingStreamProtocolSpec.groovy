@@ -0,0 +1,31 @@
+package com.challenge.common.stream
+
+import spock.lang.Specification
+
+class PingStreamProtocolSpec extends Specification {
+
+    def "should round-trip every frame type"() {
+        expect:
+        PingStreamProtocol.encode(frame) == text
+        PingStreamProtocol.decode(text) == frame
+
+        where:
+        frame                                                                    | text
+        new PingStreamProtocol.Ping(42)                                          | "P 42"
+        new PingStreamProtocol.RequestN(128)                                     | "N 128"
+        new PingStreamProtocol.Verdict(7, 200, 0, "World")                       | "V 7 200 0 World"
+        new PingStreamProtocol.Verdict(8, 429, 1, "Rate limited by Pong service") | "V 8 429 1 Rate limited by Pong service"
+        new PingStreamProtocol.Verdict(9, 500, 0, "")                            | "V 9 500 0 "
+    }
+
+    def "should reject malformed frames"() {
+        when:
+        PingStreamProtocol.decode(text)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        text << ["", "P", "P x", "N 1 2", "V 1 200", "X 1"]
+    }
+}
@@ -0,0 +1,31 @@
+package com.challenge.common.trace
+
+import spock.lang.Specification
+
+import java.time.Instant
+import java.time.temporal.ChronoUnit
+
+class TraceClockSpec extends Specification {
+
+    def "should tick monotonically close to the wall clock in microseconds"() {
+        when:
+        def samples = (1..1000).collect { TraceClock.nowMicros() }
+        def wall = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now())
+
+        then:
+        [samples, samples.tail()].transpose().every { a, b -> a <= b }
+        Math.abs(wall - samples.last()) < 1_000_000
+    }
+
+    def "should parse message properties leniently"() {
+        expect:
+        TraceClock.parse(value) == expected
+
+        where:
+        value              | expected
+        "1714565415123456" | 1714565415123456L
+        null               | null
+        ""                 | null
+        "soon"             | null
+    }
+}
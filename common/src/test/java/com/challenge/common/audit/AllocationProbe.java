@@ -0,0 +1,22 @@
+package com.challenge.common.audit;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 以 Java 循环调用 offer 和 drainTo，避免 Groovy 动态调用本身产生的分配影响测量
+ */
+final class AllocationProbe {
+
+    private AllocationProbe() {
+    }
+
+    static void offerAndDrain(AuditRingBuffer ring, ByteBuffer target, String requestId, int rounds, int count) {
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < count; i++) {
+                ring.offer(AuditEventType.PING_RESULT, 200, requestId, "SUCCESS", i);
+            }
+            target.clear();
+            ring.drainTo(target);
+        }
+    }
+}
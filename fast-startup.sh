@@ -0,0 +1,117 @@
+#!/bin/bash
+#
+# 以快速启动方式运行 ping/pong 服务（Spring AOT + AppCDS 归档），并与默认方式比较启动时间
+#
+#   mvn clean package -Pfast-startup -DskipTests      # 生成 AOT 代码并打包（同一个 jar 也能按默认方式运行）
+#   ./fast-startup.sh prepare ping                      # 解压 jar 并通过一次训练运行生成 CDS 归档
+#   ./fast-startup.sh run ping [参数...]                # 以快速启动方式运行
+#   ./fast-startup.sh benchmark ping 5                  # 默认方式和快速启动方式各启动 5 次，输出启动耗时
+#
+# 训练运行在上下文刷新完成后立即退出，不启动 Web 服务器和 RocketMQ 消费者；pong 训练时不执行建表脚本，
+# 因此生成归档时不需要数据库和 Broker。JDK 或 jar 变化后需要重新 prepare，否则 JVM 会忽略归档。
+# benchmark 的 ping 需要可访问的 Pong（PONG_SERVICE_URL），pong 需要数据库和 Broker。
+
+set -e
+
+COMMAND=$1
+SERVICE=$2
+case "$SERVICE" in
+    ping) PORT=${SERVER_PORT:-8081}; MODULE=ping-service ;;
+    pong) PORT=${SERVER_PORT:-8080}; MODULE=pong-service ;;
+    *) echo "用法: $0 prepare|run|benchmark ping|pong [参数...]"; exit 1 ;;
+esac
+shift 2
+
+ROOT=$(cd "$(dirname "$0")" && pwd)
+JAR=$(ls "$ROOT/$MODULE"/target/*-exec.jar)
+DIR="$ROOT/$MODULE/target/fast-startup"
+APP="$DIR/$(basename "$JAR")"
+ARCHIVE="$DIR/application.jsa"
+FAST_OPTS="-Dspring.aot.enabled=true -Dspring.profiles.active=fast-startup"
+
+prepare() {
+    if ! grep -aq "__ApplicationContextInitializer" "$JAR"; then
+        echo "$JAR 中没有 AOT 代码，请先执行 mvn package -Pfast-startup"
+        exit 1
+    fi
+    rm -rf "$DIR"
+    # CDS 只能归档从目录中的 jar 加载的类，不能归档可执行 jar 内嵌的 jar
+    java -Djarmode=tools -jar "$JAR" extract --destination "$DIR"
+    # 训练时同步初始化 Hibernate，使其类也进入归档
+    java $JAVA_OPTS $FAST_OPTS -XX:ArchiveClassesAtExit="$ARCHIVE" -Dspring.context.exit=onRefresh \
+        -Dspring.sql.init.mode=never -Dpong.startup.background-jpa=false -Dping.mq.lazy-producer=false \
+        -jar "$APP" > "$DIR/training.log" 2>&1 || true
+    if [ ! -f "$ARCHIVE" ]; then
+        echo "生成 CDS 归档失败，见 $DIR/training.log"
+        exit 1
+    fi
+    echo "CDS 归档: $ARCHIVE"
+}
+
+run() {
+    if [ ! -f "$ARCHIVE" ]; then
+        prepare
+    fi
+    exec java $JAVA_OPTS $FAST_OPTS -XX:SharedArchiveFile="$ARCHIVE" -jar "$APP" "$@"
+}
+
+now_ms() {
+    echo $(($(date +%s%N) / 1000000))
+}
+
+# 启动一次服务，输出从启动进程到 /actuator/health 为 UP、到第一次成功 ping 的毫秒数
+measure() {
+    local mode=$1
+    local log="$DIR/benchmark-$mode.log"
+    local start
+    start=$(now_ms)
+    # 在 target 目录中运行，日志、审计和落盘文件不留在仓库中
+    if [ "$mode" = "fast" ]; then
+        (cd "$DIR" && exec java $JAVA_OPTS $FAST_OPTS -XX:SharedArchiveFile="$ARCHIVE" -jar "$APP" \
+            --server.port="$PORT" > "$log" 2>&1) &
+    else
+        (cd "$DIR" && exec java $JAVA_OPTS -jar "$JAR" --server.port="$PORT" > "$log" 2>&1) &
+    fi
+    local pid=$!
+    local ready="" first=""
+    local deadline=$((start + 120000))
+    while [ -z "$first" ] && [ "$(now_ms)" -lt "$deadline" ] && kill -0 $pid 2>/dev/null; do
+        if [ -z "$ready" ] && curl -sf "http://localhost:$PORT/actuator/health" 2>/dev/null | grep -q '"UP"'; then
+            ready=$(($(now_ms) - start))
+        fi
+        if [ -n "$ready" ]; then
+            if [ "$SERVICE" = "ping" ]; then
+                # Ping 记录的 JVM 启动到第一次成功 ping 的时间
+                first=$(curl -sf "http://localhost:$PORT/actuator/prometheus" 2>/dev/null \
+                    | awk '/^ping_startup_first_success_seconds/ && $2 != "NaN" { printf "%d", $2 * 1000 }')
+            elif [ "$(curl -s -o /dev/null -w '%{http_code}' "http://localhost:$PORT/api/pong")" = "200" ]; then
+                first=$(($(now_ms) - start))
+            fi
+        fi
+        [ -n "$first" ] || sleep 0.05
+    done
+    kill $pid 2>/dev/null || true
+    wait $pid 2>/dev/null || true
+    echo "${ready:--} ${first:--}"
+}
+
+benchmark() {
+    local runs=${1:-5}
+    if [ ! -f "$ARCHIVE" ]; then
+        prepare
+    fi
+    printf "%-8s %-4s %12s %16s\n" mode run ready_ms first_ping_ms
+    for mode in default fast; do
+        for i in $(seq 1 "$runs"); do
+            # shellcheck disable=SC2046
+            printf "%-8s %-4s %12s %16s\n" "$mode" "$i" $(measure "$mode")
+        done
+    done
+}
+
+case "$COMMAND" in
+    prepare) prepare ;;
+    run) run "$@" ;;
+    benchmark) benchmark "$@" ;;
+    *) echo "用法: $0 prepare|run|benchmark ping|pong [参数...]"; exit 1 ;;
+esac
@@ -0,0 +1,44 @@
+package com.challenge.ping.config;
+
+import com.challenge.common.audit.AuditJournal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * 审计日志配置，每个实例写入独立的目录，用 AuditReader 查看
+ */
+@Configuration
+public class AuditConfig {
+
+    @Value("${ping.audit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ping.audit.directory:logs/ping-service/audit}")
+    private String directory;
+
+    @Value("${ping.audit.ring-capacity:65536}")
+    private int ringCapacity;
+
+    @Value("${ping.audit.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${ping.audit.max-segments:16}")
+    private int maxSegments;
+
+    @Value("${ping.audit.idle-interval:10ms}")
+    private Duration idleInterval;
+
+    @Bean(destroyMethod = "close")
+    public AuditJournal auditJournal() {
+        if (!enabled) {
+            return AuditJournal.disabled();
+        }
+        return new AuditJournal(Path.of(directory), ringCapacity, segmentSize.toBytes(), maxSegments, idleInterval)
+            .start();
+    }
+}
@@ -0,0 +1,53 @@
+package com.challenge.ping.config;
+
+import com.challenge.ping.load.LoadGenerator;
+import com.challenge.ping.load.LoadProfile;
+import com.challenge.ping.service.PingService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 压测模式配置，ping.load.enabled=true 时启用，并停止每秒一次的定时 ping
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "ping.load", name = "enabled", havingValue = "true")
+public class LoadGeneratorConfig {
+
+    @Value("${ping.load.profile:constant}")
+    private String profile;
+
+    @Value("${ping.load.start-rate:1}")
+    private double startRate;
+
+    @Value("${ping.load.target-rate:100}")
+    private double targetRate;
+
+    @Value("${ping.load.ramp-duration:30s}")
+    private Duration rampDuration;
+
+    @Value("${ping.load.step-rate:10}")
+    private double stepRate;
+
+    @Value("${ping.load.step-interval:10s}")
+    private Duration stepInterval;
+
+    @Value("${ping.load.duration:60s}")
+    private Duration duration;
+
+    @Value("${ping.load.max-concurrency:256}")
+    private int maxConcurrency;
+
+    @Value("${ping.load.report-interval:5s}")
+    private Duration reportInterval;
+
+    @Bean
+    public LoadGenerator loadGenerator(PingService pingService) {
+        LoadProfile loadProfile = new LoadProfile(LoadProfile.Type.from(profile), startRate, targetRate,
+            rampDuration, stepRate, stepInterval, duration);
+        return new LoadGenerator(pingService, loadProfile, maxConcurrency, reportInterval);
+    }
+}
@@ -0,0 +1,74 @@
+package com.challenge.ping.config;
+
+import com.challenge.common.stream.PingStreamProtocol;
+import com.challenge.ping.service.PongStreamClient;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * 访问 Pong 的传输方式，每个实例单独选择
+ * http: 每次 ping 一个 GET /api/pong 请求（默认）；
+ * stream: 所有 ping 复用一个到 /api/pong/stream 的 WebSocket 长连接
+ */
+@Slf4j
+@Configuration
+public class PongStreamConfig {
+
+    @Value("${ping.pong-service.transport:http}")
+    private String transport = "http";
+
+    @Value("${ping.pong-service.url}")
+    private String pongServiceUrl;
+
+    @Value("${spring.application.instance-id}")
+    private String instanceId;
+
+    @Value("${ping.http.connect-timeout:1s}")
+    private Duration connectTimeout = Duration.ofSeconds(1);
+
+    // 与 HTTP 方式相同，超时的 ping 记为 TIMEOUT
+    @Value("${ping.http.response-timeout:2s}")
+    private Duration responseTimeout = Duration.ofSeconds(2);
+
+    // 等待额度和在途的 ping 数上限，超出后直接失败
+    @Value("${ping.stream.max-pending:1024}")
+    private int maxPending = 1024;
+
+    // 连接失败后多久内不再重连，期间的 ping 直接失败
+    @Value("${ping.stream.reconnect-backoff:1s}")
+    private Duration reconnectBackoff = Duration.ofSeconds(1);
+
+    @Bean(destroyMethod = "close")
+    public PongStreamClient pongStreamClient() {
+        if (!"stream".equalsIgnoreCase(transport.trim())) {
+            return PongStreamClient.disabled();
+        }
+        URI uri = streamUri(pongServiceUrl);
+        log.info("Pong transport: stream {}, max pending {}, response timeout {}", uri, maxPending, responseTimeout);
+        HttpClient httpClient = HttpClient.create()
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+            .option(ChannelOption.SO_KEEPALIVE, true);
+        return new PongStreamClient(new ReactorNettyWebSocketClient(httpClient), uri,
+            WebClientConfig.INSTANCE_HEADER, instanceId, responseTimeout, maxPending, reconnectBackoff);
+    }
+
+    /**
+     * 由 Pong 的 HTTP 地址得到流式通道地址，http 对应 ws，https 对应 wss
+     */
+    static URI streamUri(String pongServiceUrl) {
+        // 配置多个地址时只连接第一个
+        String base = pongServiceUrl.split(",")[0].trim().replaceAll("/+$", "");
+        if (base.startsWith("http")) {
+            base = "ws" + base.substring("http".length());
+        }
+        return URI.create(base + PingStreamProtocol.PATH);
+    }
+}
@@ -0,0 +1,64 @@
+package com.challenge.ping.config;
+
+import com.challenge.ping.ratelimit.RateLimitAlgorithm;
+import com.challenge.ping.ratelimit.RateLimiterBackend;
+import com.challenge.ping.service.AdaptiveThrottle;
+import com.challenge.ping.service.GlobalRateLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class RateLimiterConfig {
+
+    @Value("${ping.rate-limiter.backend:file-lock}")
+    private String backend;
+
+    @Value("${ping.rate-limiter.algorithm:fixed-window}")
+    private String algorithm;
+
+    @Value("${ping.rate-limiter.limit:2}")
+    private int limit;
+
+    @Value("${ping.rate-limiter.window:1s}")
+    private Duration window;
+
+    // 根据 Pong 的 429 反馈自适应调整发送速率
+    @Value("${ping.adaptive.enabled:true}")
+    private boolean adaptiveEnabled;
+
+    @Value("${ping.adaptive.min-rate:0.2}")
+    private double adaptiveMinRate;
+
+    @Value("${ping.adaptive.max-rate:100}")
+    private double adaptiveMaxRate;
+
+    @Value("${ping.adaptive.increase:1}")
+    private double adaptiveIncrease;
+
+    @Value("${ping.adaptive.decrease-factor:0.5}")
+    private double adaptiveDecreaseFactor;
+
+    @Value("${ping.adaptive.decrease-interval:1s}")
+    private Duration adaptiveDecreaseInterval;
+
+    @Value("${ping.adaptive.max-retry-after:30s}")
+    private Duration adaptiveMaxRetryAfter;
+
+    @Bean
+    public AdaptiveThrottle adaptiveThrottle() {
+        if (!adaptiveEnabled) {
+            return AdaptiveThrottle.disabled();
+        }
+        return new AdaptiveThrottle(adaptiveMinRate, adaptiveMaxRate, adaptiveIncrease, adaptiveDecreaseFactor,
+            adaptiveDecreaseInterval, adaptiveMaxRetryAfter);
+    }
+
+    @Bean
+    public GlobalRateLimiter globalRateLimiter() {
+        return new GlobalRateLimiter(limit, window,
+            RateLimiterBackend.Type.from(backend), RateLimitAlgorithm.Type.from(algorithm));
+    }
+}
@@ -1,15 +1,23 @@
 package com.challenge.ping.config;
 
+import com.challenge.common.codec.RecordCodec;
+import com.challenge.common.codec.RecordMessageConverter;
+import com.challenge.ping.model.PingRecord;
 import org.apache.rocketmq.spring.core.RocketMQTemplate;
 import org.apache.rocketmq.client.producer.DefaultMQProducer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.converter.CompositeMessageConverter;
 import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
+import java.util.List;
+
 @Configuration
 public class RocketMQConfig {
     
@@ -19,7 +27,13 @@ public class RocketMQConfig {
     @Value("${rocketmq.producer.group}")
     private String producerGroup;
     
+    // 消息体编码：json 或 binary，两种转换器都会注册，这里只决定发送时使用哪一种
+    @Value("${ping.mq.codec:json}")
+    private String codec = "json";
+    
+    // 生产者和模板都延迟创建，由 PingMessageService 决定在启动时还是在发送线程上创建（ping.mq.lazy-producer）
     @Bean
+    @Lazy
     public DefaultMQProducer producer() {
         DefaultMQProducer producer = new DefaultMQProducer();
         producer.setNamesrvAddr(nameServer);
@@ -40,6 +54,7 @@ public class RocketMQConfig {
     }
     
     @Bean
+    @Lazy
     public RocketMQTemplate rocketMQTemplate(DefaultMQProducer producer) {
         
         // 创建并配置消息转换器
@@ -52,8 +67,30 @@ public class RocketMQConfig {
         // 创建并配置RocketMQTemplate
         RocketMQTemplate rocketMQTemplate = new RocketMQTemplate();
         rocketMQTemplate.setProducer(producer);
-        rocketMQTemplate.setMessageConverter(converter);
+        rocketMQTemplate.setMessageConverter(messageConverter(converter));
         
         return rocketMQTemplate;
     }
+    
+    /**
+     * 组合二进制与 JSON 转换器，排在前面的转换器负责发送时的编码
+     */
+    MessageConverter messageConverter(MappingJackson2MessageConverter jsonConverter) {
+        RecordMessageConverter<PingRecord> binaryConverter = new RecordMessageConverter<>(PingRecord.class,
+            record -> new RecordCodec.Fields(record.getRequestId(), record.getTimestamp(),
+                record.getStatus(), record.getMessage()),
+            RocketMQConfig::toPingRecord);
+        return "binary".equalsIgnoreCase(codec.trim())
+            ? new CompositeMessageConverter(List.of(binaryConverter, jsonConverter))
+            : new CompositeMessageConverter(List.of(jsonConverter, binaryConverter));
+    }
+    
+    private static PingRecord toPingRecord(RecordCodec.Fields fields) {
+        PingRecord record = new PingRecord();
+        record.setRequestId(fields.requestId());
+        record.setTimestamp(fields.timestamp());
+        record.setStatus(fields.status());
+        record.setMessage(fields.message());
+        return record;
+    }
 } 
\ No newline at end of file
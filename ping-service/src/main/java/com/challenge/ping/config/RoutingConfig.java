@@ -0,0 +1,78 @@
+package com.challenge.ping.config;
+
+import com.challenge.ping.routing.EndpointDiscovery;
+import com.challenge.ping.routing.PongRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * 多个 Pong 实例之间的请求分配，地址来源依次为 dns、endpoints-file 和 url（逗号分隔），使用第一个配置的来源
+ * 只作用于 HTTP 方式，stream 方式只连接 url 中的第一个地址
+ */
+@Slf4j
+@Configuration
+public class RoutingConfig {
+
+    @Value("${ping.pong-service.url}")
+    private String pongServiceUrl;
+
+    // 每行一个地址的文件
+    @Value("${ping.pong-service.endpoints-file:}")
+    private String endpointsFile = "";
+
+    // 解析出多个地址的域名和端口，如 k8s headless service: pong-service-peers:8080
+    @Value("${ping.pong-service.dns:}")
+    private String dns = "";
+
+    @Value("${ping.pong-service.dns-scheme:http}")
+    private String dnsScheme = "http";
+
+    // 重新读取文件或解析域名的间隔
+    @Value("${ping.pong-service.refresh-interval:10s}")
+    private Duration refreshInterval = Duration.ofSeconds(10);
+
+    @Value("${ping.routing.enabled:true}")
+    private boolean enabled = true;
+
+    // p2c 或 least-outstanding
+    @Value("${ping.routing.policy:p2c}")
+    private String policy = "p2c";
+
+    // 连续失败（连接失败、超时、5xx）多少次后摘除
+    @Value("${ping.routing.failure-threshold:3}")
+    private int failureThreshold = 3;
+
+    // 首次摘除的时间，连续摘除时加倍直到上限
+    @Value("${ping.routing.ejection-time:10s}")
+    private Duration ejectionTime = Duration.ofSeconds(10);
+
+    @Value("${ping.routing.max-ejection-time:2m}")
+    private Duration maxEjectionTime = Duration.ofMinutes(2);
+
+    @Bean(destroyMethod = "close")
+    public PongRouter pongRouter() {
+        if (!enabled) {
+            return PongRouter.disabled();
+        }
+        EndpointDiscovery discovery = discovery();
+        PongRouter router = new PongRouter(discovery, PongRouter.Policy.parse(policy), failureThreshold,
+            ejectionTime, maxEjectionTime);
+        log.info("Routing pings across pong endpoints from {} with {} policy", discovery, policy);
+        return router.start(refreshInterval);
+    }
+
+    EndpointDiscovery discovery() {
+        if (!dns.isBlank()) {
+            return EndpointDiscovery.dns(dnsScheme, dns);
+        }
+        if (!endpointsFile.isBlank()) {
+            return EndpointDiscovery.file(Path.of(endpointsFile));
+        }
+        return EndpointDiscovery.of(pongServiceUrl);
+    }
+}
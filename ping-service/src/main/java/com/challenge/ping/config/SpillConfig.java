@@ -0,0 +1,44 @@
+package com.challenge.ping.config;
+
+import com.challenge.ping.spill.SpillLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+/**
+ * Broker 不可用时的本地落盘日志配置
+ * 目录需要在重启后保持不变才能重放上次遗留的记录，同一目录同时只能被一个实例使用
+ */
+@Slf4j
+@Configuration
+public class SpillConfig {
+
+    @Value("${ping.mq.spill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ping.mq.spill.directory:data/ping-service/spill}")
+    private String directory;
+
+    @Value("${ping.mq.spill.segment-size:16MB}")
+    private DataSize segmentSize;
+
+    @Value("${ping.mq.spill.max-segments:64}")
+    private int maxSegments;
+
+    @Bean(destroyMethod = "close")
+    public SpillLog spillLog() {
+        if (!enabled) {
+            return SpillLog.disabled();
+        }
+        try {
+            return new SpillLog(Path.of(directory), segmentSize.toBytes(), maxSegments).open();
+        } catch (IllegalStateException e) {
+            log.warn("{}, records that cannot be sent will not be spilled to disk", e.getMessage());
+            return SpillLog.disabled();
+        }
+    }
+}
@@ -1,23 +1,114 @@
 package com.challenge.ping.config;
 
+import com.challenge.ping.routing.PongRouter;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.time.Duration;
+
+/**
+ * 访问 Pong 服务的 WebClient 配置
+ * 连接池限制连接数和等待获取连接的请求数，Pong 变慢时多余的请求很快失败，而不是无限堆积；
+ * h2c 模式下通过少量连接多路复用并发请求（Pong 需开启 server.http2.enabled）
+ */
+@Slf4j
 @Configuration
 public class WebClientConfig {
-    
+    // 调用方身份请求头，Pong 服务据此按实例分别限流
+    public static final String INSTANCE_HEADER = "X-Instance-Id";
+
+    @Value("${spring.application.instance-id}")
+    private String instanceId;
+
+    // 在多个 Pong 实例之间分配请求，未注入时按 baseUrl 发送
+    @Autowired
+    private PongRouter pongRouter = PongRouter.disabled();
+
+    // 传输协议：h2c（HTTP/2 明文，直接协商）或 http1
+    @Value("${ping.http.protocol:h2c}")
+    private String protocol = "h2c";
+
+    // 连接池最大连接数，h2c 模式下每个连接可同时承载多个请求
+    @Value("${ping.http.pool.max-connections:16}")
+    private int maxConnections = 16;
+
+    // 等待获取连接的请求数上限，超出后立即失败
+    @Value("${ping.http.pool.pending-acquire-max-count:256}")
+    private int pendingAcquireMaxCount = 256;
+
+    // 等待获取连接的最长时间
+    @Value("${ping.http.pool.pending-acquire-timeout:1s}")
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(1);
+
+    // 连接空闲超过该时间后关闭
+    @Value("${ping.http.pool.max-idle-time:30s}")
+    private Duration maxIdleTime = Duration.ofSeconds(30);
+
+    // 连接最长存活时间，定期重建连接以便负载均衡能感知新的 Pong 实例
+    @Value("${ping.http.pool.max-life-time:5m}")
+    private Duration maxLifeTime = Duration.ofMinutes(5);
+
+    // 后台清理空闲和过期连接的间隔
+    @Value("${ping.http.pool.evict-interval:30s}")
+    private Duration evictInterval = Duration.ofSeconds(30);
+
+    @Value("${ping.http.connect-timeout:1s}")
+    private Duration connectTimeout = Duration.ofSeconds(1);
+
+    // 每个请求从发出到收到响应的最长时间，超时的 ping 记为 TIMEOUT
+    @Value("${ping.http.response-timeout:2s}")
+    private Duration responseTimeout = Duration.ofSeconds(2);
+
+    // h2c 模式下每个连接的最大并发流数
+    @Value("${ping.http.h2.max-concurrent-streams:100}")
+    private long maxConcurrentStreams = 100;
+
+    @Bean(destroyMethod = "disposeLater")
+    public ConnectionProvider pongConnectionProvider() {
+        return ConnectionProvider.builder("pong")
+            .maxConnections(Math.max(1, maxConnections))
+            .pendingAcquireMaxCount(pendingAcquireMaxCount)
+            .pendingAcquireTimeout(pendingAcquireTimeout)
+            .maxIdleTime(maxIdleTime)
+            .maxLifeTime(maxLifeTime)
+            .evictInBackground(evictInterval)
+            .build();
+    }
+
     @Bean
     public WebClient.Builder webClientBuilder() {
-        return WebClient.builder();
+        WebClient.Builder builder = WebClient.builder()
+            .clientConnector(new ReactorClientHttpConnector(httpClient(pongConnectionProvider())))
+            .filter(pongRouter);
+        if (instanceId != null) {
+            builder.defaultHeader(INSTANCE_HEADER, instanceId);
+        }
+        return builder;
     }
-    
-    @Value("${spring.application.instance-id}")
-    private String instanceId;
-    
+
+    HttpClient httpClient(ConnectionProvider connectionProvider) {
+        HttpProtocol httpProtocol = "http1".equalsIgnoreCase(protocol.trim()) ? HttpProtocol.HTTP11 : HttpProtocol.H2C;
+        log.info("Pong transport: {}, max connections {}, pending acquire {}, response timeout {}",
+            httpProtocol, maxConnections, pendingAcquireMaxCount, responseTimeout);
+        return HttpClient.create(connectionProvider)
+            .protocol(httpProtocol)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+            .option(ChannelOption.SO_KEEPALIVE, true)
+            .responseTimeout(responseTimeout)
+            .http2Settings(settings -> settings.maxConcurrentStreams(maxConcurrentStreams));
+    }
+
     @Bean
     public String instanceId() {
         return instanceId;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,96 @@
+package com.challenge.ping.load;
+
+import com.challenge.ping.service.PingService.PingStatus;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按结果状态分别记录延迟的 HdrHistogram
+ * 延迟以微秒记录；Recorder 支持多线程无锁写入，报告线程按周期取出区间直方图并累加到总直方图
+ */
+public class LatencyRecorder {
+    // 可记录的最大延迟：1 小时
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Map<PingStatus, Recorder> recorders = new EnumMap<>(PingStatus.class);
+    private final Map<PingStatus, Histogram> totals = new EnumMap<>(PingStatus.class);
+    private final Map<PingStatus, Histogram> intervals = new EnumMap<>(PingStatus.class);
+    private final LongAdder errors = new LongAdder();
+
+    public LatencyRecorder() {
+        for (PingStatus status : PingStatus.values()) {
+            recorders.put(status, new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS));
+            totals.put(status, new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS));
+        }
+    }
+
+    public void record(PingStatus status, long latencyNanos) {
+        long micros = Math.min(HIGHEST_TRACKABLE_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+        recorders.get(status).recordValue(micros);
+    }
+
+    /**
+     * 记录未能得到结果的请求（例如消息发布失败）
+     */
+    public void recordError() {
+        errors.increment();
+    }
+
+    public long errors() {
+        return errors.sum();
+    }
+
+    /**
+     * 取出上次调用以来的区间直方图并累加到总直方图，只应由一个线程调用
+     * @param intervalSeconds 区间长度，用于计算吞吐
+     */
+    public synchronized String intervalReport(double intervalSeconds) {
+        StringBuilder report = new StringBuilder();
+        for (PingStatus status : PingStatus.values()) {
+            Histogram interval = recorders.get(status).getIntervalHistogram(intervals.get(status));
+            intervals.put(status, interval);
+            totals.get(status).add(interval);
+            if (interval.getTotalCount() > 0) {
+                report.append(format(status, interval, intervalSeconds));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * 汇总整个压测期间的结果，调用前应先取出最后一个区间
+     */
+    public synchronized String summary(double elapsedSeconds) {
+        StringBuilder report = new StringBuilder();
+        for (PingStatus status : PingStatus.values()) {
+            report.append(format(status, totals.get(status), elapsedSeconds));
+        }
+        report.append(String.format("%n  ERRORS count=%d", errors()));
+        return report.toString();
+    }
+
+    /**
+     * @return 截至上次取出区间时某个状态的累计直方图副本
+     */
+    public synchronized Histogram total(PingStatus status) {
+        return totals.get(status).copy();
+    }
+
+    private static String format(PingStatus status, Histogram histogram, double seconds) {
+        return String.format("%n  %-19s count=%d rate=%.1f/s p50=%.3fms p90=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms",
+            status, histogram.getTotalCount(), seconds > 0 ? histogram.getTotalCount() / seconds : 0,
+            millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+            millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+            millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,162 @@
+package com.challenge.ping.load;
+
+import com.challenge.ping.service.PingService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 开环压测发生器
+ * 按 LoadProfile 给出的到达速率排定每个请求的计划发送时刻，与响应快慢无关；
+ * 在途请求达到上限时发送线程等待，但延迟始终从计划时刻算起，
+ * 因此排队等待也计入延迟，避免协同遗漏（coordinated omission）
+ */
+@Slf4j
+public class LoadGenerator {
+    // 速率为0时的检查间隔
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final PingService pingService;
+    private final LoadProfile profile;
+    private final int maxConcurrency;
+    private final Duration reportInterval;
+    private final Semaphore inFlight;
+    private final LatencyRecorder recorder = new LatencyRecorder();
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private volatile boolean running;
+    private Thread generator;
+    private ScheduledExecutorService reporter;
+    private long startNanos;
+    private long lastReportNanos;
+
+    public LoadGenerator(PingService pingService, LoadProfile profile, int maxConcurrency, Duration reportInterval) {
+        this.pingService = pingService;
+        this.profile = profile;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.reportInterval = reportInterval;
+        this.inFlight = new Semaphore(this.maxConcurrency);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        start();
+    }
+
+    public synchronized void start() {
+        if (generator != null) {
+            return;
+        }
+        log.info("Starting load generator: {}, max concurrency {}", profile, maxConcurrency);
+        running = true;
+        startNanos = System.nanoTime();
+        lastReportNanos = startNanos;
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ping-load-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(1, reportInterval.toMillis());
+        reporter.scheduleAtFixedRate(this::report, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        generator = new Thread(this::generate, "ping-load-generator");
+        generator.setDaemon(true);
+        generator.start();
+    }
+
+    private void generate() {
+        long intended = startNanos;
+        try {
+            while (running) {
+                long elapsed = intended - startNanos;
+                if (profile.isFinished(elapsed)) {
+                    break;
+                }
+                double rate = profile.rateAt(elapsed);
+                if (rate <= 0) {
+                    intended += IDLE_PARK_NANOS;
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    continue;
+                }
+                inFlight.acquire();
+                send(intended);
+                intended += (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            }
+            // 等待在途请求完成后输出最终结果
+            if (!inFlight.tryAcquire(maxConcurrency, 30, TimeUnit.SECONDS)) {
+                log.warn("Load generator stopped with requests still in flight");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+            reporter.shutdown();
+            report();
+            log.info("Load test summary after {} s:{}", String.format("%.1f", elapsedSeconds(System.nanoTime())),
+                recorder.summary(elapsedSeconds(System.nanoTime())));
+            finished.countDown();
+        }
+    }
+
+    private void send(long intendedNanos) {
+        try {
+            pingService.sendPing()
+                .doFinally(signal -> inFlight.release())
+                .subscribe(
+                    result -> recorder.record(result.status(), System.nanoTime() - intendedNanos),
+                    error -> recorder.recordError());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            recorder.recordError();
+        }
+    }
+
+    private synchronized void report() {
+        long now = System.nanoTime();
+        double seconds = (now - lastReportNanos) / 1e9;
+        lastReportNanos = now;
+        String report = recorder.intervalReport(seconds);
+        if (!report.isEmpty()) {
+            log.info("Load test interval, target rate {}/s:{}",
+                String.format("%.1f", profile.rateAt(now - startNanos)), report);
+        }
+    }
+
+    private double elapsedSeconds(long now) {
+        return (now - startNanos) / 1e9;
+    }
+
+    public LatencyRecorder recorder() {
+        return recorder;
+    }
+
+    /**
+     * 等待压测结束
+     * @return 在 timeout 内结束返回 true
+     */
+    public boolean awaitCompletion(Duration timeout) throws InterruptedException {
+        return finished.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (generator != null) {
+            generator.interrupt();
+            finished.await(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.challenge.ping.load;
+
+import java.time.Duration;
+
+/**
+ * 压测到达速率曲线
+ * constant: 始终为 targetRate；
+ * ramp: 在 rampDuration 内从 startRate 线性增长到 targetRate，之后保持；
+ * step: 从 startRate 开始，每隔 stepInterval 增加 stepRate，直到 targetRate
+ *
+ * @param duration 压测总时长，不大于0表示一直运行到手动停止
+ */
+public record LoadProfile(Type type, double startRate, double targetRate,
+                          Duration rampDuration, double stepRate, Duration stepInterval, Duration duration) {
+
+    public enum Type {
+        CONSTANT, RAMP, STEP;
+
+        public static Type from(String value) {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    public static LoadProfile constant(double rate, Duration duration) {
+        return new LoadProfile(Type.CONSTANT, rate, rate, Duration.ZERO, 0, Duration.ZERO, duration);
+    }
+
+    /**
+     * @return 压测开始 elapsedNanos 后的目标速率（次/秒）
+     */
+    public double rateAt(long elapsedNanos) {
+        return switch (type) {
+            case CONSTANT -> targetRate;
+            case RAMP -> {
+                long rampNanos = rampDuration.toNanos();
+                if (rampNanos <= 0 || elapsedNanos >= rampNanos) {
+                    yield targetRate;
+                }
+                yield startRate + (targetRate - startRate) * elapsedNanos / rampNanos;
+            }
+            case STEP -> {
+                long intervalNanos = stepInterval.toNanos();
+                if (intervalNanos <= 0) {
+                    yield targetRate;
+                }
+                double rate = startRate + stepRate * (elapsedNanos / intervalNanos);
+                yield stepRate >= 0 ? Math.min(rate, targetRate) : Math.max(rate, targetRate);
+            }
+        };
+    }
+
+    public boolean isFinished(long elapsedNanos) {
+        return !duration.isZero() && !duration.isNegative() && elapsedNanos >= duration.toNanos();
+    }
+}
@@ -1,5 +1,6 @@
 package com.challenge.ping.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import java.time.LocalDateTime;
 
@@ -11,4 +12,13 @@ public class PingRecord {
     private int status;
     private LocalDateTime timestamp;
     private String requestId;
-} 
\ No newline at end of file
+    
+    // 延迟追踪：向 pong 发出请求和收到响应的时刻（epoch 微秒，见 TraceClock），放在消息属性中而不是消息体中
+    @JsonIgnore
+    private Long sentAtMicros;
+    @JsonIgnore
+    private Long respondedAtMicros;
+    // 生成记录的时刻（epoch 微秒），timestamp 是不带时区的本地时间，不能用于跨主机计算延迟
+    @JsonIgnore
+    private Long createdAtMicros;
+} 
@@ -0,0 +1,28 @@
+package com.challenge.ping.ratelimit;
+
+/**
+ * 在 CAS 状态上运行限流算法的后端，状态可以是进程内的，也可以是内存映射共享的
+ */
+public class CasRateLimiterBackend implements RateLimiterBackend {
+    private final RateLimitState state;
+    private final RateLimitAlgorithm algorithm;
+
+    public CasRateLimiterBackend(RateLimitState state, RateLimitAlgorithm algorithm) {
+        if (state.size() < algorithm.slots()) {
+            throw new IllegalArgumentException("Rate limit state has " + state.size()
+                + " slots but algorithm needs " + algorithm.slots());
+        }
+        this.state = state;
+        this.algorithm = algorithm;
+    }
+
+    @Override
+    public long reserve(long maxWaitMillis) {
+        return algorithm.reserve(state, System.currentTimeMillis(), maxWaitMillis);
+    }
+
+    @Override
+    public void cleanup() {
+        state.cleanup();
+    }
+}
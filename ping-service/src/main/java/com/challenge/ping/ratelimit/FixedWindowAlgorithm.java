@@ -0,0 +1,54 @@
+package com.challenge.ping.ratelimit;
+
+/**
+ * 固定窗口计数算法
+ * 单个槽位打包保存窗口起始时间（高位，毫秒）和窗口内计数（低 COUNT_BITS 位）。
+ * 当前窗口已满时，预约会落到下一个窗口
+ */
+public class FixedWindowAlgorithm implements RateLimitAlgorithm {
+    static final int COUNT_BITS = 20;
+    static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final int limit;
+    private final long windowMillis;
+
+    public FixedWindowAlgorithm(int limit, long windowMillis) {
+        // 计数只有 COUNT_BITS 位可用
+        this.limit = (int) Math.min(limit, COUNT_MASK);
+        this.windowMillis = windowMillis;
+    }
+
+    @Override
+    public int slots() {
+        return 1;
+    }
+
+    @Override
+    public long reserve(RateLimitState state, long now, long maxWaitMillis) {
+        while (true) {
+            long current = state.get(0);
+            long windowStart = current >>> COUNT_BITS;
+            long count = current & COUNT_MASK;
+
+            // 如果已经超过时间窗口，开启新窗口
+            if (now - windowStart >= windowMillis) {
+                windowStart = now;
+                count = 0;
+            }
+            // 窗口已满（包括已被预约占满的未来窗口），顺延到下一个窗口
+            if (count >= limit) {
+                windowStart += windowMillis;
+                count = 0;
+            }
+
+            long wait = Math.max(0, windowStart - now);
+            if (wait > maxWaitMillis) {
+                return -1;
+            }
+            if (state.compareAndSet(0, current, (windowStart << COUNT_BITS) | (count + 1))) {
+                return wait;
+            }
+            // CAS 失败说明其他线程或进程已更新状态，重新读取后再试
+        }
+    }
+}
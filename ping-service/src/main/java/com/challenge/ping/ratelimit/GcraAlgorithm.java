@@ -0,0 +1,44 @@
+package com.challenge.ping.ratelimit;
+
+/**
+ * GCRA（通用信元速率算法）
+ * 单个槽位保存理论到达时间 TAT（微秒）。每个许可把 TAT 推后一个发射间隔 window/limit，
+ * 允许的突发量为 limit，请求在 TAT - 突发容差 之前到达时需要等待
+ */
+public class GcraAlgorithm implements RateLimitAlgorithm {
+    private static final long MICROS_PER_MILLI = 1000;
+
+    // 发射间隔（微秒）
+    private final long emissionInterval;
+    // 突发容差（微秒）
+    private final long burstTolerance;
+
+    public GcraAlgorithm(int limit, long windowMillis) {
+        this.emissionInterval = Math.max(1, windowMillis * MICROS_PER_MILLI / limit);
+        this.burstTolerance = emissionInterval * (limit - 1);
+    }
+
+    @Override
+    public int slots() {
+        return 1;
+    }
+
+    @Override
+    public long reserve(RateLimitState state, long now, long maxWaitMillis) {
+        long nowMicros = now * MICROS_PER_MILLI;
+        while (true) {
+            long tat = state.get(0);
+            long effectiveTat = Math.max(tat, nowMicros);
+            long allowAt = effectiveTat - burstTolerance;
+
+            long waitMicros = Math.max(0, allowAt - nowMicros);
+            long wait = (waitMicros + MICROS_PER_MILLI - 1) / MICROS_PER_MILLI;
+            if (wait > maxWaitMillis) {
+                return -1;
+            }
+            if (state.compareAndSet(0, tat, effectiveTat + emissionInterval)) {
+                return wait;
+            }
+        }
+    }
+}
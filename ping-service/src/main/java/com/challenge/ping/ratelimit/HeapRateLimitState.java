@@ -0,0 +1,29 @@
+package com.challenge.ping.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 进程内的限流状态，只在当前 JVM 内共享
+ */
+public class HeapRateLimitState implements RateLimitState {
+    private final AtomicLongArray slots;
+
+    public HeapRateLimitState(int size) {
+        this.slots = new AtomicLongArray(size);
+    }
+
+    @Override
+    public int size() {
+        return slots.length();
+    }
+
+    @Override
+    public long get(int slot) {
+        return slots.get(slot);
+    }
+
+    @Override
+    public boolean compareAndSet(int slot, long expect, long update) {
+        return slots.compareAndSet(slot, expect, update);
+    }
+}
@@ -0,0 +1,79 @@
+package com.challenge.ping.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * 基于内存映射文件的限流状态
+ * 启动时将数据文件映射一次，之后通过 VarHandle 对映射区域做 CAS 更新，
+ * 同一主机上的多个 ping 进程共享同一块页缓存，读写状态时不产生系统调用
+ */
+@Slf4j
+public class MappedRateLimitState implements RateLimitState {
+    // 映射区域按缓存行对齐
+    private static final int CACHE_LINE = 64;
+
+    private static final VarHandle LONG_VIEW =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    // 数据文件路径
+    private final Path dataPath;
+    // 槽位数量
+    private final int size;
+    // 共享状态所在的映射区域
+    private final MappedByteBuffer region;
+
+    public MappedRateLimitState(Path dataPath, int size) {
+        this.dataPath = dataPath;
+        this.size = size;
+        int length = (size * Long.BYTES + CACHE_LINE - 1) / CACHE_LINE * CACHE_LINE;
+        try (FileChannel channel = FileChannel.open(dataPath,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // 映射在通道关闭后依然有效；文件长度不足时会被自动扩展并以0填充
+            this.region = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map rate limiter file " + dataPath, e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long get(int slot) {
+        return (long) LONG_VIEW.getVolatile(region, offset(slot));
+    }
+
+    @Override
+    public boolean compareAndSet(int slot, long expect, long update) {
+        return LONG_VIEW.compareAndSet(region, offset(slot), expect, update);
+    }
+
+    private int offset(int slot) {
+        return Objects.checkIndex(slot, size) * Long.BYTES;
+    }
+
+    @Override
+    public void cleanup() {
+        try {
+            Files.deleteIfExists(dataPath);
+        } catch (IOException e) {
+            // 记录清理错误日志
+            log.error("Error cleaning up rate limiter", e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.challenge.ping.ratelimit;
+
+import java.time.Duration;
+
+/**
+ * 限流算法策略，所有状态都保存在 {@link RateLimitState} 的槽位中并通过 CAS 更新，
+ * 因此同一个算法实例可以在进程内共享，也可以配合内存映射状态在多个进程间共享
+ */
+public interface RateLimitAlgorithm {
+
+    /**
+     * 算法类型，对应配置项 ping.rate-limiter.algorithm
+     */
+    enum Type {
+        FIXED_WINDOW,  // 固定窗口计数（旧实现）
+        TOKEN_BUCKET,  // 令牌桶
+        SLIDING_LOG,   // 滑动日志
+        GCRA;          // 通用信元速率算法
+
+        public static Type from(String value) {
+            return Type.valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    /**
+     * 根据类型创建算法实例
+     * @param limit 每个时间窗口允许的请求数
+     * @param window 时间窗口
+     */
+    static RateLimitAlgorithm create(Type type, int limit, Duration window) {
+        // 时间窗口至少为1毫秒，避免除零
+        long windowMillis = Math.max(1, window.toMillis());
+        return switch (type) {
+            case FIXED_WINDOW -> new FixedWindowAlgorithm(limit, windowMillis);
+            case TOKEN_BUCKET -> new TokenBucketAlgorithm(limit, windowMillis);
+            case SLIDING_LOG -> new SlidingLogAlgorithm(limit, windowMillis);
+            case GCRA -> new GcraAlgorithm(limit, windowMillis);
+        };
+    }
+
+    /**
+     * @return 算法所需的状态槽位数量
+     */
+    int slots();
+
+    /**
+     * 预约一个许可
+     * @param state 共享状态
+     * @param now 当前时间（毫秒）
+     * @param maxWaitMillis 可接受的最长等待时间，0 表示只接受立即可用的许可
+     * @return 许可可用前需要等待的毫秒数；无法在 maxWaitMillis 内获得许可时返回 -1，且不占用配额
+     */
+    long reserve(RateLimitState state, long now, long maxWaitMillis);
+}
@@ -0,0 +1,29 @@
+package com.challenge.ping.ratelimit;
+
+/**
+ * 限流算法的共享状态：若干个可独立 CAS 更新的 long 槽位
+ */
+public interface RateLimitState {
+
+    /**
+     * @return 槽位数量
+     */
+    int size();
+
+    /**
+     * 以 volatile 语义读取槽位
+     */
+    long get(int slot);
+
+    /**
+     * 当槽位当前值等于 expect 时原子地更新为 update
+     * @return 更新成功返回true
+     */
+    boolean compareAndSet(int slot, long expect, long update);
+
+    /**
+     * 释放状态占用的外部资源（如数据文件）
+     */
+    default void cleanup() {
+    }
+}
@@ -0,0 +1,40 @@
+package com.challenge.ping.ratelimit;
+
+/**
+ * 限流状态存储后端，决定多个 ping 实例之间如何共享限流状态
+ */
+public interface RateLimiterBackend {
+
+    /**
+     * 后端类型，对应配置项 ping.rate-limiter.backend
+     */
+    enum Type {
+        FILE_LOCK,  // 每次调用加文件锁并读写文件（旧实现，仅支持固定窗口）
+        MMAP,       // 启动时映射一次共享内存，通过 CAS 无锁更新
+        MEMORY;     // 进程内状态，不与其他 ping 实例共享
+
+        public static Type from(String value) {
+            return Type.valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    /**
+     * 尝试获取请求许可
+     * @return 获取成功返回true，否则返回false
+     */
+    default boolean tryAcquire() {
+        return reserve(0) == 0;
+    }
+
+    /**
+     * 预约一个许可
+     * @param maxWaitMillis 可接受的最长等待时间（毫秒）
+     * @return 许可可用前需要等待的毫秒数；无法在 maxWaitMillis 内获得许可时返回 -1
+     */
+    long reserve(long maxWaitMillis);
+
+    /**
+     * 清理后端使用的数据文件
+     */
+    void cleanup();
+}
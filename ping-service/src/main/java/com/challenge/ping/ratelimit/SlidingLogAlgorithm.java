@@ -0,0 +1,47 @@
+package com.challenge.ping.ratelimit;
+
+/**
+ * 滑动日志算法
+ * 使用 limit 个槽位记录最近 limit 次许可的时间。每次获取许可时替换最早的一条记录，
+ * 新时间不早于被替换时间 + window，因此任意长度为 window 的区间内最多只有 limit 次许可。
+ * 每次获取需要扫描全部槽位，适合 limit 较小的场景
+ */
+public class SlidingLogAlgorithm implements RateLimitAlgorithm {
+    private final int limit;
+    private final long windowMillis;
+
+    public SlidingLogAlgorithm(int limit, long windowMillis) {
+        this.limit = limit;
+        this.windowMillis = windowMillis;
+    }
+
+    @Override
+    public int slots() {
+        return limit;
+    }
+
+    @Override
+    public long reserve(RateLimitState state, long now, long maxWaitMillis) {
+        while (true) {
+            // 找到最早的一条记录
+            int oldestSlot = 0;
+            long oldest = state.get(0);
+            for (int i = 1; i < limit; i++) {
+                long value = state.get(i);
+                if (value < oldest) {
+                    oldest = value;
+                    oldestSlot = i;
+                }
+            }
+
+            long grantAt = Math.max(now, oldest + windowMillis);
+            long wait = grantAt - now;
+            if (wait > maxWaitMillis) {
+                return -1;
+            }
+            if (state.compareAndSet(oldestSlot, oldest, grantAt)) {
+                return wait;
+            }
+        }
+    }
+}
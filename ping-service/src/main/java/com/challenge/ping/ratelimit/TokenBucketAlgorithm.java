@@ -0,0 +1,65 @@
+package com.challenge.ping.ratelimit;
+
+/**
+ * 令牌桶算法
+ * 桶容量为 limit，每 window/limit 毫秒补充一个令牌。单个槽位打包保存上次补充时间（高位，毫秒）
+ * 和令牌数（低 TOKEN_BITS 位，有符号）；令牌数为负表示已被预约透支的令牌
+ */
+public class TokenBucketAlgorithm implements RateLimitAlgorithm {
+    static final int TOKEN_BITS = 20;
+    static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+
+    private final int capacity;
+    private final long windowMillis;
+
+    public TokenBucketAlgorithm(int limit, long windowMillis) {
+        // 有符号令牌数只有 TOKEN_BITS - 1 位可用
+        this.capacity = (int) Math.min(limit, TOKEN_MASK >> 1);
+        this.windowMillis = windowMillis;
+    }
+
+    @Override
+    public int slots() {
+        return 1;
+    }
+
+    @Override
+    public long reserve(RateLimitState state, long now, long maxWaitMillis) {
+        while (true) {
+            long current = state.get(0);
+            long lastRefill = current >>> TOKEN_BITS;
+            // 符号扩展还原令牌数
+            long tokens = (current << (Long.SIZE - TOKEN_BITS)) >> (Long.SIZE - TOKEN_BITS);
+
+            // 按流逝时间补充令牌，只把已兑换成令牌的那部分时间计入补充时间，保留零头
+            long elapsed = Math.max(0, now - lastRefill);
+            long added = elapsed * capacity / windowMillis;
+            if (tokens + added >= capacity) {
+                tokens = capacity;
+                lastRefill = now;
+            } else if (added > 0) {
+                tokens += added;
+                lastRefill += added * windowMillis / capacity;
+            }
+
+            long wait = 0;
+            if (tokens < 1) {
+                // 距离令牌数回到1还需要的时间，扣除已积累的零头
+                long needed = ceilDiv((1 - tokens) * windowMillis, capacity);
+                wait = Math.max(0, needed - (now - lastRefill));
+            }
+            if (wait > maxWaitMillis || tokens - 1 < -(TOKEN_MASK >> 1)) {
+                return -1;
+            }
+
+            long next = (lastRefill << TOKEN_BITS) | ((tokens - 1) & TOKEN_MASK);
+            if (state.compareAndSet(0, current, next)) {
+                return wait;
+            }
+        }
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+}
@@ -0,0 +1,127 @@
+package com.challenge.ping.routing;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pong 地址来源：配置中的地址列表、本地文件或 DNS
+ * 查询失败或结果为空时返回 null，由调用方保留上一次的地址
+ */
+@Slf4j
+public abstract class EndpointDiscovery {
+
+    /**
+     * @return 当前的 Pong 地址，去重且只保留 scheme、host 和 port；无法获取时返回 null
+     */
+    public abstract List<URI> resolve();
+
+    /**
+     * 逗号分隔的固定地址
+     */
+    public static EndpointDiscovery of(String urls) {
+        List<URI> endpoints = parse(Arrays.asList(urls.split(",")));
+        return new EndpointDiscovery() {
+            @Override
+            public List<URI> resolve() {
+                return endpoints;
+            }
+
+            @Override
+            public String toString() {
+                return endpoints.toString();
+            }
+        };
+    }
+
+    /**
+     * 每行一个地址的文件，忽略空行和 # 开头的注释行，文件可以由部署工具随时替换
+     */
+    public static EndpointDiscovery file(Path path) {
+        return new EndpointDiscovery() {
+            @Override
+            public List<URI> resolve() {
+                try {
+                    return parse(Files.readAllLines(path).stream()
+                        .filter(line -> !line.trim().startsWith("#"))
+                        .toList());
+                } catch (IOException e) {
+                    log.warn("Failed to read pong endpoints from {}: {}", path, e.getMessage());
+                    return null;
+                }
+            }
+
+            @Override
+            public String toString() {
+                return "file:" + path;
+            }
+        };
+    }
+
+    /**
+     * 把域名解析出的每个地址作为一个 Pong 实例，例如 k8s headless service
+     * @param hostAndPort 域名和端口，如 pong-service-peers:8080
+     */
+    public static EndpointDiscovery dns(String scheme, String hostAndPort) {
+        int colon = hostAndPort.lastIndexOf(':');
+        String host = colon < 0 ? hostAndPort.trim() : hostAndPort.substring(0, colon).trim();
+        int port = colon < 0 ? -1 : Integer.parseInt(hostAndPort.substring(colon + 1).trim());
+        return new EndpointDiscovery() {
+            @Override
+            public List<URI> resolve() {
+                try {
+                    Set<URI> endpoints = new LinkedHashSet<>();
+                    for (InetAddress address : InetAddress.getAllByName(host)) {
+                        endpoints.add(new URI(scheme, null, address.getHostAddress(), port, null, null, null));
+                    }
+                    return endpoints.isEmpty() ? null : List.copyOf(endpoints);
+                } catch (UnknownHostException | URISyntaxException e) {
+                    log.warn("Failed to resolve pong endpoints from {}: {}", host, e.getMessage());
+                    return null;
+                }
+            }
+
+            @Override
+            public String toString() {
+                return "dns:" + hostAndPort;
+            }
+        };
+    }
+
+    static List<URI> parse(List<String> urls) {
+        Set<URI> endpoints = new LinkedHashSet<>();
+        for (String url : urls) {
+            String trimmed = url.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            URI endpoint = endpoint(trimmed);
+            if (endpoint == null) {
+                log.warn("Ignoring invalid pong endpoint: {}", trimmed);
+            } else {
+                endpoints.add(endpoint);
+            }
+        }
+        return endpoints.isEmpty() ? null : List.copyOf(endpoints);
+    }
+
+    private static URI endpoint(String url) {
+        try {
+            URI uri = new URI(url);
+            return uri.getScheme() == null || uri.getHost() == null
+                ? null : new URI(uri.getScheme(), null, uri.getHost(), uri.getPort(), null, null, null);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.challenge.ping.routing;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一个 Pong 地址及其被动观测到的负载和健康状态
+ * 延迟和 429 比例为指数加权平均，并发更新时可能丢失个别样本，只用于选择地址，不影响正确性
+ */
+public class PongEndpoint {
+    // 新样本的权重
+    private static final double ALPHA = 0.2;
+    // 429 比例的上限，避免代价无穷大，全部限流的地址仍会偶尔被选中以便感知恢复
+    private static final double MAX_REJECT_RATE = 0.9;
+
+    private final URI uri;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile double latencyMillis;
+    private volatile double rejectRate;
+
+    // 以下状态只在 PongRouter 的同步块中修改
+    private int consecutiveFailures;
+    private int ejections;
+    private boolean probation;
+    private volatile long ejectedUntil;
+
+    PongEndpoint(URI uri) {
+        this.uri = uri;
+    }
+
+    public URI uri() {
+        return uri;
+    }
+
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    public double latencyMillis() {
+        return latencyMillis;
+    }
+
+    public double rejectRate() {
+        return rejectRate;
+    }
+
+    /**
+     * @return 当前是否被摘除
+     */
+    public boolean ejected(long now) {
+        return now - ejectedUntil < 0;
+    }
+
+    /**
+     * 选择地址时的代价：在途请求越多、延迟越高、429 越多代价越高
+     */
+    double cost() {
+        return (outstanding.get() + 1) * (latencyMillis + 1) / (1 - Math.min(rejectRate, MAX_REJECT_RATE));
+    }
+
+    void started() {
+        outstanding.incrementAndGet();
+    }
+
+    void finished() {
+        outstanding.decrementAndGet();
+    }
+
+    void observe(long elapsedNanos, boolean rejected) {
+        latencyMillis += ALPHA * (elapsedNanos / 1_000_000.0 - latencyMillis);
+        rejectRate += ALPHA * ((rejected ? 1 : 0) - rejectRate);
+    }
+
+    /**
+     * 请求成功（包括 429），重新接入后的首个成功请求结束观察期
+     */
+    void succeeded() {
+        consecutiveFailures = 0;
+        if (probation) {
+            probation = false;
+            ejections = 0;
+        }
+    }
+
+    /**
+     * @return 连续失败达到阈值或观察期内失败时需要摘除
+     */
+    boolean failed(int failureThreshold) {
+        return ++consecutiveFailures >= failureThreshold || probation;
+    }
+
+    /**
+     * 摘除一段时间，连续摘除时时间加倍；到期后重新接入并进入观察期
+     * @return 本次摘除的时长
+     */
+    long eject(long now, long baseNanos, long maxNanos) {
+        long duration = Math.min(maxNanos, baseNanos << Math.min(ejections, 20));
+        ejections++;
+        consecutiveFailures = 0;
+        probation = true;
+        ejectedUntil = now + duration;
+        return duration;
+    }
+
+    @Override
+    public String toString() {
+        return uri.toString();
+    }
+}
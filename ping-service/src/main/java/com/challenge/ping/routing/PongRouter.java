@@ -0,0 +1,261 @@
+package com.challenge.ping.routing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 在多个 Pong 实例之间分配 ping 请求，作为 WebClient 的过滤器改写每个请求的目标地址
+ * 按在途请求数、延迟和 429 比例选择地址（p2c: 随机取两个选代价低的；least-outstanding: 在途请求最少的）。
+ * 连接失败、超时和 5xx 连续达到阈值时摘除该地址，到期后重新接入并观察首个请求，再次失败时摘除时间加倍；
+ * 429 只提高代价，不算失败。所有地址都被摘除时仍在全部地址中选择，避免完全不可用。
+ * 地址由 EndpointDiscovery 定期刷新，已有地址保留其统计
+ */
+@Slf4j
+public class PongRouter implements ExchangeFilterFunction, MeterBinder, AutoCloseable {
+
+    /**
+     * 选择策略
+     */
+    public enum Policy {
+        P2C, LEAST_OUTSTANDING;
+
+        public static Policy parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private static final PongRouter DISABLED = new PongRouter(new EndpointDiscovery() {
+        @Override
+        public List<URI> resolve() {
+            return null;
+        }
+    }, Policy.P2C, 1, Duration.ofSeconds(1), Duration.ofSeconds(1));
+
+    private final EndpointDiscovery discovery;
+    private final Policy policy;
+    private final int failureThreshold;
+    private final long ejectionNanos;
+    private final long maxEjectionNanos;
+    private final LongSupplier nanoTime;
+
+    private volatile List<PongEndpoint> endpoints = List.of();
+    private final Map<URI, List<Meter>> endpointMeters = new ConcurrentHashMap<>();
+    private final Map<URI, Counter> ejectionCounters = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry = new CompositeMeterRegistry();
+    private ScheduledExecutorService scheduler;
+
+    public PongRouter(EndpointDiscovery discovery, Policy policy, int failureThreshold,
+                      Duration ejectionTime, Duration maxEjectionTime) {
+        this(discovery, policy, failureThreshold, ejectionTime, maxEjectionTime, System::nanoTime);
+    }
+
+    PongRouter(EndpointDiscovery discovery, Policy policy, int failureThreshold,
+               Duration ejectionTime, Duration maxEjectionTime, LongSupplier nanoTime) {
+        this.discovery = discovery;
+        this.policy = policy;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.ejectionNanos = Math.max(1, ejectionTime.toNanos());
+        this.maxEjectionNanos = Math.max(ejectionNanos, maxEjectionTime.toNanos());
+        this.nanoTime = nanoTime;
+        refresh();
+    }
+
+    /**
+     * @return 没有地址的路由器，请求按 WebClient 的 baseUrl 发送
+     */
+    public static PongRouter disabled() {
+        return DISABLED;
+    }
+
+    @Override
+    public synchronized void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        endpointMeters.clear();
+        ejectionCounters.clear();
+        endpoints.forEach(this::registerMeters);
+    }
+
+    private void registerMeters(PongEndpoint endpoint) {
+        String tag = endpoint.uri().toString();
+        endpointMeters.put(endpoint.uri(), List.of(
+            Gauge.builder("ping.pong.endpoint.outstanding", endpoint, PongEndpoint::outstanding)
+                .description("Requests in flight to a pong endpoint")
+                .tag("endpoint", tag)
+                .register(registry),
+            Gauge.builder("ping.pong.endpoint.ejected", endpoint, e -> e.ejected(nanoTime.getAsLong()) ? 1 : 0)
+                .description("Whether a pong endpoint is ejected after consecutive failures")
+                .tag("endpoint", tag)
+                .register(registry)));
+        ejectionCounters.put(endpoint.uri(), Counter.builder("ping.pong.endpoint.ejections")
+            .description("Times a pong endpoint was ejected")
+            .tag("endpoint", tag)
+            .register(registry));
+    }
+
+    public synchronized PongRouter start(Duration refreshInterval) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ping-pong-discovery");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = Math.max(1, refreshInterval.toMillis());
+            scheduler.scheduleWithFixedDelay(this::refresh, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * 重新获取地址，无法获取时保留当前地址
+     */
+    public synchronized void refresh() {
+        List<URI> uris = discovery.resolve();
+        if (uris == null) {
+            return;
+        }
+        Map<URI, PongEndpoint> current = new HashMap<>();
+        endpoints.forEach(endpoint -> current.put(endpoint.uri(), endpoint));
+        List<PongEndpoint> next = new ArrayList<>(uris.size());
+        for (URI uri : uris) {
+            PongEndpoint endpoint = current.remove(uri);
+            if (endpoint == null) {
+                endpoint = new PongEndpoint(uri);
+                registerMeters(endpoint);
+            }
+            next.add(endpoint);
+        }
+        current.keySet().forEach(uri -> {
+            endpointMeters.remove(uri).forEach(registry::remove);
+            registry.remove(ejectionCounters.remove(uri));
+        });
+        if (!current.isEmpty() || next.size() != endpoints.size()) {
+            log.info("Pong endpoints from {}: {}", discovery, uris);
+        }
+        endpoints = List.copyOf(next);
+    }
+
+    public List<PongEndpoint> endpoints() {
+        return endpoints;
+    }
+
+    /**
+     * @return 按策略选择的地址，没有地址时返回 null
+     */
+    public PongEndpoint choose() {
+        List<PongEndpoint> all = endpoints;
+        if (all.size() <= 1) {
+            return all.isEmpty() ? null : all.get(0);
+        }
+        long now = nanoTime.getAsLong();
+        List<PongEndpoint> healthy = new ArrayList<>(all.size());
+        for (PongEndpoint endpoint : all) {
+            if (!endpoint.ejected(now)) {
+                healthy.add(endpoint);
+            }
+        }
+        List<PongEndpoint> candidates = healthy.isEmpty() ? all : healthy;
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (policy == Policy.P2C) {
+            int first = random.nextInt(candidates.size());
+            int second = random.nextInt(candidates.size() - 1);
+            PongEndpoint a = candidates.get(first);
+            PongEndpoint b = candidates.get(second >= first ? second + 1 : second);
+            return a.cost() <= b.cost() ? a : b;
+        }
+        // 从随机位置开始找在途请求最少的地址，相同时比较延迟，避免总是选中第一个
+        int offset = random.nextInt(candidates.size());
+        PongEndpoint best = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            PongEndpoint endpoint = candidates.get((offset + i) % candidates.size());
+            if (best == null || endpoint.outstanding() < best.outstanding()
+                    || endpoint.outstanding() == best.outstanding() && endpoint.latencyMillis() < best.latencyMillis()) {
+                best = endpoint;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            PongEndpoint endpoint = choose();
+            if (endpoint == null) {
+                return next.exchange(request);
+            }
+            URI target = UriComponentsBuilder.fromUri(request.url())
+                .scheme(endpoint.uri().getScheme())
+                .host(endpoint.uri().getHost())
+                .port(endpoint.uri().getPort())
+                .build(true)
+                .toUri();
+            long start = nanoTime.getAsLong();
+            endpoint.started();
+            return next.exchange(ClientRequest.from(request).url(target).build())
+                .doOnNext(response -> onResponse(endpoint, response.statusCode().value(), start))
+                .doOnError(e -> onFailure(endpoint, start))
+                .doFinally(signal -> endpoint.finished());
+        });
+    }
+
+    void onResponse(PongEndpoint endpoint, int status, long start) {
+        if (status >= 500) {
+            onFailure(endpoint, start);
+            return;
+        }
+        endpoint.observe(nanoTime.getAsLong() - start, status == 429);
+        synchronized (endpoint) {
+            endpoint.succeeded();
+        }
+    }
+
+    void onFailure(PongEndpoint endpoint, long start) {
+        long now = nanoTime.getAsLong();
+        endpoint.observe(now - start, false);
+        synchronized (endpoint) {
+            if (!endpoint.ejected(now) && endpoint.failed(failureThreshold)) {
+                long duration = endpoint.eject(now, ejectionNanos, maxEjectionNanos);
+                Counter ejections = ejectionCounters.get(endpoint.uri());
+                if (ejections != null) {
+                    ejections.increment();
+                }
+                log.warn("Ejected pong endpoint {} for {} ms", endpoint, TimeUnit.NANOSECONDS.toMillis(duration));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.challenge.ping.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 根据 Pong 的 429 反馈自适应调整发送速率的 AIMD 控制器
+ * 成功响应时速率每秒约增加 increase（加性增），429 或超时时速率乘以 decreaseFactor（乘性减），
+ * 同一 decreaseInterval 内的多次拒绝只算一次拥塞；429 带有 Retry-After 时在该时间内暂停发送。
+ * 控制器作用在 GlobalRateLimiter 之前，预计会被 Pong 拒绝的请求在本地直接抑制，不占用全局许可
+ */
+@Slf4j
+public class AdaptiveThrottle implements MeterBinder {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final AdaptiveThrottle DISABLED = new AdaptiveThrottle();
+
+    private final boolean enabled;
+    private final double minRate;
+    private final double maxRate;
+    private final double increase;
+    private final double decreaseFactor;
+    private final long decreaseIntervalNanos;
+    private final long maxRetryAfterNanos;
+    private final LongSupplier nanoClock;
+
+    // 当前允许的发送速率（次/秒）以及按该速率补充的令牌
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+    // Retry-After 到期前暂停发送
+    private long blockedUntil;
+    private long lastDecrease;
+
+    // 指标：放行与抑制次数、收到的反馈信号
+    private Counter admittedCounter;
+    private Counter throttledCounter;
+    private Counter successCounter;
+    private Counter rejectedCounter;
+    private Counter timeoutCounter;
+
+    private AdaptiveThrottle() {
+        this.enabled = false;
+        this.minRate = 0;
+        this.maxRate = 0;
+        this.increase = 0;
+        this.decreaseFactor = 1;
+        this.decreaseIntervalNanos = 0;
+        this.maxRetryAfterNanos = 0;
+        this.nanoClock = System::nanoTime;
+        registerMeters(new CompositeMeterRegistry());
+    }
+
+    public AdaptiveThrottle(double minRate, double maxRate, double increase, double decreaseFactor,
+                            Duration decreaseInterval, Duration maxRetryAfter) {
+        this(minRate, maxRate, increase, decreaseFactor, decreaseInterval, maxRetryAfter, System::nanoTime);
+    }
+
+    AdaptiveThrottle(double minRate, double maxRate, double increase, double decreaseFactor,
+                     Duration decreaseInterval, Duration maxRetryAfter, LongSupplier nanoClock) {
+        if (minRate <= 0 || maxRate < minRate) {
+            throw new IllegalArgumentException("Adaptive throttle requires 0 < min-rate <= max-rate");
+        }
+        if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+            throw new IllegalArgumentException("Adaptive throttle decrease-factor must be between 0 and 1");
+        }
+        this.enabled = true;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.increase = Math.max(0, increase);
+        this.decreaseFactor = decreaseFactor;
+        this.decreaseIntervalNanos = decreaseInterval.toNanos();
+        this.maxRetryAfterNanos = maxRetryAfter.toNanos();
+        this.nanoClock = nanoClock;
+        long now = nanoClock.getAsLong();
+        this.rate = maxRate;
+        this.tokens = burst();
+        this.lastRefill = now;
+        this.blockedUntil = now;
+        this.lastDecrease = now - decreaseIntervalNanos;
+        log.info("Initialized adaptive throttle: rate {}..{}/s, increase {}/s, decrease factor {}",
+            minRate, maxRate, increase, decreaseFactor);
+        registerMeters(new CompositeMeterRegistry());
+    }
+
+    /**
+     * @return 总是放行、忽略反馈的控制器
+     */
+    public static AdaptiveThrottle disabled() {
+        return DISABLED;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        registerMeters(registry);
+    }
+
+    private void registerMeters(MeterRegistry registry) {
+        admittedCounter = decisionCounter(registry, "admitted");
+        throttledCounter = decisionCounter(registry, "throttled");
+        successCounter = feedbackCounter(registry, "success");
+        rejectedCounter = feedbackCounter(registry, "rejected");
+        timeoutCounter = feedbackCounter(registry, "timeout");
+        if (enabled) {
+            Gauge.builder("ping.throttle.rate", this, AdaptiveThrottle::rate)
+                .description("Send rate currently allowed by the adaptive throttle, per second")
+                .register(registry);
+            Gauge.builder("ping.throttle.blocked", this, throttle -> throttle.blockedFor().toNanos() / 1e9)
+                .description("Remaining Retry-After pause requested by the pong service, in seconds")
+                .baseUnit("seconds")
+                .register(registry);
+        }
+    }
+
+    private static Counter decisionCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("ping.throttle.decisions")
+            .description("Adaptive throttle admission decisions")
+            .tag("outcome", outcome)
+            .register(registry);
+    }
+
+    private static Counter feedbackCounter(MeterRegistry registry, String signal) {
+        return Counter.builder("ping.throttle.feedback")
+            .description("Pong responses fed back into the adaptive throttle")
+            .tag("signal", signal)
+            .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 判断本次请求是否发往 Pong
+     * @return 当前速率下有剩余额度且不在 Retry-After 暂停期内时返回 true
+     */
+    public boolean tryAcquire() {
+        if (!enabled) {
+            return true;
+        }
+        boolean admitted;
+        synchronized (this) {
+            long now = nanoClock.getAsLong();
+            refill(now);
+            admitted = now - blockedUntil >= 0 && tokens >= 1;
+            if (admitted) {
+                tokens -= 1;
+            }
+        }
+        (admitted ? admittedCounter : throttledCounter).increment();
+        return admitted;
+    }
+
+    /**
+     * Pong 正常响应：加性增，每秒的成功次数约等于 rate，因此每秒约增加 increase
+     */
+    public void onSuccess() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            refill(nanoClock.getAsLong());
+            rate = Math.min(maxRate, rate + increase / rate);
+        }
+        successCounter.increment();
+    }
+
+    /**
+     * Pong 返回 429：乘性减，并在 Retry-After 期间暂停发送
+     * @param retryAfter Pong 建议的等待时间，可以为 null
+     */
+    public void onRejected(Duration retryAfter) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            long now = nanoClock.getAsLong();
+            decrease(now);
+            if (retryAfter != null && !retryAfter.isNegative()) {
+                long until = now + Math.min(retryAfter.toNanos(), maxRetryAfterNanos);
+                if (until - blockedUntil > 0) {
+                    blockedUntil = until;
+                }
+            }
+        }
+        rejectedCounter.increment();
+    }
+
+    /**
+     * Pong 响应超时，同样视为拥塞信号
+     */
+    public void onTimeout() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            decrease(nanoClock.getAsLong());
+        }
+        timeoutCounter.increment();
+    }
+
+    /**
+     * @return 当前允许的发送速率（次/秒）
+     */
+    public synchronized double rate() {
+        return rate;
+    }
+
+    /**
+     * @return Retry-After 暂停的剩余时间
+     */
+    public synchronized Duration blockedFor() {
+        return Duration.ofNanos(Math.max(0, blockedUntil - nanoClock.getAsLong()));
+    }
+
+    private void decrease(long now) {
+        refill(now);
+        if (now - lastDecrease < decreaseIntervalNanos) {
+            return;
+        }
+        lastDecrease = now;
+        rate = Math.max(minRate, rate * decreaseFactor);
+        tokens = Math.min(tokens, burst());
+        log.debug("Pong pushed back, adaptive rate lowered to {}/s", rate);
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(burst(), tokens + rate * elapsed / NANOS_PER_SECOND);
+            lastRefill = now;
+        }
+    }
+
+    // 最多积攒一秒的额度，且至少能放行一个请求
+    private double burst() {
+        return Math.max(1, rate);
+    }
+
+    /**
+     * 解析 Retry-After 头，支持秒数和 HTTP 日期两种格式
+     * @return 无法解析时返回 null
+     */
+    public static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(trimmed)));
+        } catch (NumberFormatException e) {
+            try {
+                Duration wait = Duration.between(ZonedDateTime.now(),
+                    ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME));
+                return wait.isNegative() ? Duration.ZERO : wait;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+}
@@ -1,39 +1,95 @@
 package com.challenge.ping.service;
 
+import com.challenge.ping.ratelimit.CasRateLimiterBackend;
+import com.challenge.ping.ratelimit.FileLockRateLimiterBackend;
+import com.challenge.ping.ratelimit.HeapRateLimitState;
+import com.challenge.ping.ratelimit.MappedRateLimitState;
+import com.challenge.ping.ratelimit.RateLimitAlgorithm;
+import com.challenge.ping.ratelimit.RateLimiterBackend;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.stereotype.Component;
-import java.io.IOException;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
-import java.nio.ByteBuffer;
-import java.time.Duration;
+import reactor.core.publisher.Mono;
 import java.io.File;
-import java.nio.file.StandardOpenOption;
-import java.nio.file.Path;
-import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
-@Component
-public class GlobalRateLimiter {
+public class GlobalRateLimiter implements MeterBinder {
     // 定义存储限流数据的文件名
     private static final String DATA_FILE = "ping-rate.data";
-    // 速率限制次数
-    private final int rateLimit;
-    // 时间窗口
-    private final Duration duration;
-    // 数据文件路径
-    private final Path dataPath;
-    
+    // mmap 后端按算法使用独立的数据文件，避免不同数据格式混用
+    private static final String MAPPED_DATA_FILE = "ping-rate-%s.mmap";
+    // 实际执行限流判断的后端
+    private final RateLimiterBackend backend;
+    private final RateLimiterBackend.Type backendType;
+    private final RateLimitAlgorithm.Type algorithmType;
+
+    // 限流判断耗时，按判断结果区分；绑定注册表之前记录到空的组合注册表，不产生开销
+    private Timer acquiredTimer;
+    private Timer delayedTimer;
+    private Timer rejectedTimer;
+
     // 默认构造函数：每秒最多2次请求
     public GlobalRateLimiter() {
         this(2, Duration.ofSeconds(1));
     }
 
     public GlobalRateLimiter(int rateLimit, Duration duration) {
+        this(rateLimit, duration, RateLimiterBackend.Type.FILE_LOCK);
+    }
+
+    public GlobalRateLimiter(int rateLimit, Duration duration, RateLimiterBackend.Type backendType) {
+        this(rateLimit, duration, backendType, RateLimitAlgorithm.Type.FIXED_WINDOW);
+    }
+
+    public GlobalRateLimiter(int rateLimit, Duration duration,
+                             RateLimiterBackend.Type backendType, RateLimitAlgorithm.Type algorithmType) {
         // 确保速率限制至少为1
-        this.rateLimit = Math.max(1, rateLimit);
-        this.duration = duration;
-        this.dataPath = new File(DATA_FILE).toPath();
+        int limit = Math.max(1, rateLimit);
+        this.backendType = backendType;
+        this.algorithmType = algorithmType;
+        RateLimitAlgorithm algorithm = RateLimitAlgorithm.create(algorithmType, limit, duration);
+        this.backend = switch (backendType) {
+            case FILE_LOCK -> {
+                if (algorithmType != RateLimitAlgorithm.Type.FIXED_WINDOW) {
+                    throw new IllegalArgumentException("file-lock backend only supports the fixed-window algorithm");
+                }
+                yield new FileLockRateLimiterBackend(new File(DATA_FILE).toPath(), limit, duration);
+            }
+            case MMAP -> new CasRateLimiterBackend(
+                new MappedRateLimitState(mappedDataFile(algorithmType).toPath(), algorithm.slots()), algorithm);
+            case MEMORY -> new CasRateLimiterBackend(new HeapRateLimitState(algorithm.slots()), algorithm);
+        };
+        log.info("Initialized rate limiter with backend {} and algorithm {}: {} requests per {}",
+            backendType, algorithmType, limit, duration);
+        registerMeters(new CompositeMeterRegistry());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        registerMeters(registry);
+    }
+
+    private void registerMeters(MeterRegistry registry) {
+        acquiredTimer = decisionTimer(registry, "acquired");
+        delayedTimer = decisionTimer(registry, "delayed");
+        rejectedTimer = decisionTimer(registry, "rejected");
+    }
+
+    private Timer decisionTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("ping.limiter.acquire")
+            .description("Local rate limiter decision latency")
+            .tag("backend", backendType.name().toLowerCase())
+            .tag("algorithm", algorithmType.name().toLowerCase())
+            .tag("outcome", outcome)
+            .register(registry);
+    }
+
+    private static File mappedDataFile(RateLimitAlgorithm.Type algorithmType) {
+        return new File(String.format(MAPPED_DATA_FILE, algorithmType.name().toLowerCase().replace('_', '-')));
     }
 
     /**
@@ -41,82 +97,35 @@ public class GlobalRateLimiter {
      * @return 如果成功获取请求权限，返回true；否则返回false
      */
     public boolean tryAcquire() {
-        // 使用try-with-resources确保资源自动关闭
-        try (
-            // 打开文件通道，支持创建、读写操作
-            FileChannel channel = FileChannel.open(dataPath, 
-                StandardOpenOption.CREATE,
-                StandardOpenOption.READ,
-                StandardOpenOption.WRITE)) {
-                
-            // 获取文件锁以确保线程安全
-            try (FileLock lock = channel.tryLock()) {
-                // 分配16字节的缓冲区（存储两个long值）
-                ByteBuffer buffer = ByteBuffer.allocate(16);
-                channel.position(0);
-                // 读取文件内容
-                int bytesRead = channel.read(buffer);
-                buffer.flip();
-                
-                // 声明上次请求时间和请求计数变量
-                long lastRequestTime;
-                long requestCount;
-                
-                // 如果读取了完整的数据（16字节）
-                if (bytesRead == 16) {
-                    // 解析已存储的数据
-                    lastRequestTime = buffer.getLong();
-                    requestCount = buffer.getLong();
-                } else {
-                    // 如果是首次使用，初始化数据
-                    lastRequestTime = System.currentTimeMillis();
-                    requestCount = 0;
-                }
-                
-                // 获取当前时间
-                long now = System.currentTimeMillis();
-                // 如果已经超过时间窗口，重置计数器
-                if (now - lastRequestTime >= duration.toMillis()) {
-                    lastRequestTime = now;
-                    requestCount = 0;
-                }
-                
-                // 如果未超过速率限制
-                if (requestCount < rateLimit) {
-                    // 增加请求计数
-                    requestCount++;
-                    // 清空缓冲区
-                    buffer.clear();
-                    // 写入新的数据
-                    buffer.putLong(lastRequestTime);
-                    buffer.putLong(requestCount);
-                    buffer.flip();
-                    
-                    // 将更新后的数据写回文件
-                    channel.position(0);
-                    channel.write(buffer);
-                    // 强制写入磁盘
-                    channel.force(true);
-                    return true;
-                }
-                
-                // 如果超过速率限制，返回false
-                return false;
+        long start = System.nanoTime();
+        boolean acquired = backend.tryAcquire();
+        (acquired ? acquiredTimer : rejectedTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return acquired;
+    }
+
+    /**
+     * 预约下一个可用许可，不阻塞调用线程
+     * @param maxWait 可接受的最长等待时间
+     * @return 在 maxWait 内预约成功时，等到许可时刻后发出 true；否则立即发出 false
+     */
+    public Mono<Boolean> acquire(Duration maxWait) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            long wait = backend.reserve(maxWait.toMillis());
+            Timer timer = wait < 0 ? rejectedTimer : wait == 0 ? acquiredTimer : delayedTimer;
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (wait < 0) {
+                return Mono.just(false);
+            }
+            if (wait == 0) {
+                return Mono.just(true);
             }
-        } catch (Exception e) {
-            // 记录错误日志
-            log.error("Error while trying to acquire rate limit", e);
-            return false;
-        }
+            return Mono.delay(Duration.ofMillis(wait)).thenReturn(true);
+        });
     }
 
     // 清理方法：删除数据文件
     public void cleanup() {
-        try {
-            Files.deleteIfExists(dataPath);
-        } catch (IOException e) {
-            // 记录清理错误日志
-            log.error("Error cleaning up rate limiter", e);
-        }
+        backend.cleanup();
     }
-} 
\ No newline at end of file
+}
@@ -1,33 +1,487 @@
 package com.challenge.ping.service;
 
+import com.challenge.common.codec.RecordCodec;
+import com.challenge.common.trace.TraceClock;
 import com.challenge.ping.model.PingRecord;
-import lombok.RequiredArgsConstructor;
+import com.challenge.ping.spill.SpillLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
 import org.apache.rocketmq.spring.core.RocketMQTemplate;
 import org.apache.rocketmq.spring.support.RocketMQHeaders;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Ping 记录消息发布服务
+ * 调用方只把记录放入有界队列，由后台线程按数量或等待时间攒批，
+ * 以 RocketMQ 批量消息异步发送，不会阻塞调用方所在的事件循环线程。
+ * 发送失败的批次写入本地落盘日志 SpillLog；日志中有积压时新批次直接落盘，不再等待不可用的 Broker，
+ * 由后台重放线程按写入顺序重新发送，Broker 恢复并清空积压后回到直接发送
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
-public class PingMessageService {
-    private final RocketMQTemplate rocketMQTemplate;
+public class PingMessageService implements MeterBinder {
     private static final String TOPIC = "PING_TOPIC";
-    
-    public void sendPingMessage(PingRecord record) {
+
+    /**
+     * 等待发送的记录及其完成通知
+     * @param startNanos 调用 publish 的时刻，用于统计发布耗时
+     */
+    private record Pending(PingRecord record, MonoSink<Void> sink, long startNanos) {}
+
+    private final Supplier<RocketMQTemplate> rocketMQTemplate;
+
+    // 为 true 时不在启动过程中创建 RocketMQ 生产者，上下文刷新完成后由发送线程创建
+    @Value("${ping.mq.lazy-producer:false}")
+    private boolean lazyProducer = false;
+
+    // 每批最多包含的消息数
+    @Value("${ping.mq.batch-size:32}")
+    private int batchSize = 32;
+
+    // 攒批的最长等待时间
+    @Value("${ping.mq.linger:20ms}")
+    private Duration linger = Duration.ofMillis(20);
+
+    // 待发送队列容量，队列满时直接拒绝
+    @Value("${ping.mq.queue-capacity:1024}")
+    private int queueCapacity = 1024;
+
+    // 同时在途的批次数上限
+    @Value("${ping.mq.max-in-flight-batches:4}")
+    private int maxInFlightBatches = 4;
+
+    // 单批发送超时
+    @Value("${ping.mq.send-timeout:3s}")
+    private Duration sendTimeout = Duration.ofSeconds(3);
+
+    // Broker 不可用时落盘的本地日志，未注入时不落盘，发送失败的记录以错误结束
+    @Autowired
+    private SpillLog spillLog = SpillLog.disabled();
+
+    // 重放失败后的重试间隔，连续失败时加倍直到上限；落盘日志为空时也按该间隔检查
+    @Value("${ping.mq.spill.replay-backoff:1s}")
+    private Duration replayBackoff = Duration.ofSeconds(1);
+
+    @Value("${ping.mq.spill.max-replay-backoff:30s}")
+    private Duration maxReplayBackoff = Duration.ofSeconds(30);
+
+    private volatile boolean running = true;
+    private volatile BlockingQueue<Pending> queue;
+    private Semaphore inFlight;
+    private volatile Thread flusher;
+    private volatile Thread replayer;
+
+    // 指标：从调用 publish 到 Broker 确认的耗时、按原因区分的失败数、每批条数
+    private Timer publishSuccessTimer;
+    private Timer publishFailureTimer;
+    private Counter queueFullFailures;
+    private Counter shutdownFailures;
+    private Counter sendFailures;
+    private Counter spillFullFailures;
+    private DistributionSummary batchSizeSummary;
+    // 指标：落盘和重放的记录数
+    private Timer publishSpilledTimer;
+    private Counter spilledRecords;
+    private Counter replayedRecords;
+    private Counter corruptedRecords;
+
+    public PingMessageService(RocketMQTemplate rocketMQTemplate) {
+        this(() -> rocketMQTemplate);
+    }
+
+    /**
+     * RocketMQTemplate 为延迟创建的 Bean，首次取用时创建并启动生产者
+     */
+    @Autowired
+    public PingMessageService(ObjectProvider<RocketMQTemplate> rocketMQTemplate) {
+        this(rocketMQTemplate::getObject);
+    }
+
+    private PingMessageService(Supplier<RocketMQTemplate> rocketMQTemplate) {
+        this.rocketMQTemplate = rocketMQTemplate;
+        registerMeters(new CompositeMeterRegistry());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        registerMeters(registry);
+    }
+
+    private void registerMeters(MeterRegistry registry) {
+        publishSuccessTimer = publishTimer(registry, "success");
+        publishFailureTimer = publishTimer(registry, "failure");
+        queueFullFailures = failureCounter(registry, "queue_full");
+        shutdownFailures = failureCounter(registry, "shutdown");
+        sendFailures = failureCounter(registry, "send_failed");
+        spillFullFailures = failureCounter(registry, "spill_full");
+        publishSpilledTimer = publishTimer(registry, "spilled");
+        spilledRecords = spillCounter(registry, "spilled");
+        replayedRecords = spillCounter(registry, "replayed");
+        corruptedRecords = spillCounter(registry, "corrupted");
+        Gauge.builder("ping.mq.spill.backlog", this, service -> service.spillLog.pending())
+            .description("Records in the local spill log waiting to be replayed to the broker")
+            .register(registry);
+        Gauge.builder("ping.mq.spill.disk.usage", this, service -> service.spillLog.diskUsage())
+            .description("Disk space used by spill log segments")
+            .baseUnit("bytes")
+            .register(registry);
+        batchSizeSummary = DistributionSummary.builder("ping.mq.batch.size")
+            .description("Records per batch message sent to the broker")
+            .register(registry);
+        Gauge.builder("ping.mq.queue.size", this, service -> service.queue == null ? 0 : service.queue.size())
+            .description("Records waiting to be batched")
+            .register(registry);
+        Gauge.builder("ping.mq.batches.in.flight", this, service -> service.inFlight == null
+                ? 0 : Math.max(1, service.maxInFlightBatches) - service.inFlight.availablePermits())
+            .description("Batches sent and not yet acknowledged by the broker")
+            .register(registry);
+    }
+
+    private static Timer publishTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("ping.mq.publish")
+            .description("Latency from publish until the broker acknowledges the batch")
+            .tag("outcome", outcome)
+            .register(registry);
+    }
+
+    private static Counter failureCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("ping.mq.publish.failures")
+            .description("Ping records that could not be published")
+            .tag("reason", reason)
+            .register(registry);
+    }
+
+    private static Counter spillCounter(MeterRegistry registry, String event) {
+        return Counter.builder("ping.mq.spill.records")
+            .description("Ping records written to, replayed from or skipped as corrupted in the local spill log")
+            .tag("event", event)
+            .register(registry);
+    }
+
+    /**
+     * 发布一条 ping 记录
+     * @return 记录随所在批次被 Broker 确认或写入落盘日志后完成；队列已满或无法发送也无法落盘时以错误结束
+     */
+    public Mono<Void> publish(PingRecord record) {
+        return Mono.create(sink -> {
+            ensureStarted();
+            Pending pending = new Pending(record, sink, System.nanoTime());
+            if (!running) {
+                fail(pending, shutdownFailures, new RejectedExecutionException("消息发送服务已关闭"));
+            } else if (!queue.offer(pending)) {
+                log.warn("消息发送队列已满，丢弃 RequestId: {}", record.getRequestId());
+                fail(pending, queueFullFailures, new RejectedExecutionException("消息发送队列已满"));
+            } else if (!running && queue.remove(pending)) {
+                // 入队前服务已关闭，发送线程可能已经退出，不再等待
+                fail(pending, shutdownFailures, new RejectedExecutionException("消息发送服务已关闭"));
+            }
+        });
+    }
+
+    /**
+     * 启动时创建生产者，并立即开始重放上次运行遗留在落盘日志中的记录
+     */
+    @PostConstruct
+    public void start() {
+        if (!lazyProducer) {
+            rocketMQTemplate.get();
+            ensureStarted();
+        }
+    }
+
+    /**
+     * 延迟创建生产者时，上下文刷新完成后再启动发送线程和重放线程
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void onContextRefreshed() {
+        ensureStarted();
+    }
+
+    /**
+     * 首次发布时按注入的配置创建队列并启动后台发送线程和重放线程
+     */
+    private void ensureStarted() {
+        if (flusher == null) {
+            synchronized (this) {
+                if (flusher == null) {
+                    inFlight = new Semaphore(Math.max(1, maxInFlightBatches));
+                    queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+                    if (spillLog.isEnabled()) {
+                        Thread thread = new Thread(this::replayLoop, "ping-mq-replayer");
+                        thread.setDaemon(true);
+                        thread.start();
+                        replayer = thread;
+                    }
+                    Thread thread = new Thread(this::flushLoop, "ping-mq-flusher");
+                    thread.setDaemon(true);
+                    thread.start();
+                    flusher = thread;
+                }
+            }
+        }
+    }
+
+    /**
+     * 后台攒批循环：取到第一条记录后，在 linger 时间内尽量凑满一批再发送
+     */
+    private void flushLoop() {
+        // 延迟创建生产者时在这里创建，与第一次 Pong 请求并行；创建失败时发送会再次尝试，失败的批次落盘
         try {
-            Message<PingRecord> message = MessageBuilder.withPayload(record)
-                .setHeader(RocketMQHeaders.KEYS, record.getRequestId())
-                .build();
-                
-            rocketMQTemplate.send(TOPIC, message);
-            log.info("消息发送成功 - RequestId: {}", record.getRequestId());
+            rocketMQTemplate.get();
         } catch (Exception e) {
-            log.error("消息发送失败: {}", e.getMessage(), e);
-            throw new RuntimeException("消息发送失败", e);
+            log.warn("创建 RocketMQ 生产者失败: {}", e.getMessage());
+        }
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + linger.toNanos();
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // 落盘日志中还有积压时说明 Broker 尚未恢复，直接落盘以保持顺序并避免等待超时
+                if (spillLog.pending() > 0) {
+                    spill(List.copyOf(batch), null);
+                    continue;
+                }
+                // 在途批次达到上限时在此等待，队列随之积压并向调用方施加背压
+                inFlight.acquire();
+                sendBatch(List.copyOf(batch));
+            } catch (InterruptedException e) {
+                // 先处理剩余记录再恢复中断标记，避免创建落盘分段时被中断
+                abandon(batch);
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+        abandon(batch);
+    }
+
+    /**
+     * 发送线程退出时处理当前批次和队列中剩余的记录，保证每条记录的发布结果都会完成：
+     * 能写入落盘日志的落盘，下次启动后重放，其余以错误结束
+     */
+    private void abandon(List<Pending> batch) {
+        queue.drainTo(batch);
+        for (Pending pending : batch) {
+            if (spillLog.append(encode(pending.record()))) {
+                spilledRecords.increment();
+                publishSpilledTimer.record(System.nanoTime() - pending.startNanos(), TimeUnit.NANOSECONDS);
+                pending.sink().success();
+            } else {
+                fail(pending, shutdownFailures, new RejectedExecutionException("消息发送服务已关闭"));
+            }
+        }
+        batch.clear();
+    }
+
+    private void sendBatch(List<Pending> batch) {
+        batchSizeSummary.record(batch.size());
+        List<Message<PingRecord>> messages = batch.stream()
+            .map(pending -> toMessage(pending.record()))
+            .toList();
+        try {
+            rocketMQTemplate.get().asyncSend(TOPIC, messages, new SendCallback() {
+                @Override
+                public void onSuccess(SendResult sendResult) {
+                    inFlight.release();
+                    log.info("批量消息发送成功 - 条数: {}, MsgId: {}", batch.size(), sendResult.getMsgId());
+                    long now = System.nanoTime();
+                    batch.forEach(pending -> {
+                        publishSuccessTimer.record(now - pending.startNanos(), TimeUnit.NANOSECONDS);
+                        pending.sink().success();
+                    });
+                }
+
+                @Override
+                public void onException(Throwable e) {
+                    inFlight.release();
+                    log.error("批量消息发送失败: {}", e.getMessage(), e);
+                    spill(batch, e);
+                }
+            }, sendTimeout.toMillis());
+        } catch (Exception e) {
+            inFlight.release();
+            log.error("批量消息发送失败: {}", e.getMessage(), e);
+            spill(batch, e);
+        }
+    }
+
+    /**
+     * 把无法发送的记录写入落盘日志，写入成功即视为发布完成
+     * @param cause 发送失败的原因，为 null 表示因为已有积压而直接落盘
+     */
+    private void spill(List<Pending> batch, Throwable cause) {
+        for (Pending pending : batch) {
+            if (spillLog.append(encode(pending.record()))) {
+                spilledRecords.increment();
+                publishSpilledTimer.record(System.nanoTime() - pending.startNanos(), TimeUnit.NANOSECONDS);
+                pending.sink().success();
+            } else if (cause != null) {
+                fail(pending, sendFailures, new RuntimeException("消息发送失败", cause));
+            } else {
+                log.warn("落盘日志已满，丢弃 RequestId: {}", pending.record().getRequestId());
+                fail(pending, spillFullFailures, new RejectedExecutionException("落盘日志已满"));
+            }
+        }
+    }
+
+    /**
+     * 后台重放循环：按写入顺序读取落盘记录并同步发送，Broker 确认后才提交游标，
+     * 因此进程在发送后、提交前退出时，重启后会再次发送这一批（至少一次）
+     */
+    private void replayLoop() {
+        long backoff = replayBackoff.toMillis();
+        while (running) {
+            SpillLog.Batch batch = spillLog.read(Math.max(1, batchSize));
+            try {
+                if (batch.isEmpty()) {
+                    Thread.sleep(replayBackoff.toMillis());
+                    continue;
+                }
+                List<Message<PingRecord>> messages = new ArrayList<>(batch.size());
+                for (byte[] payload : batch.payloads()) {
+                    PingRecord record = decode(payload);
+                    if (record != null) {
+                        messages.add(toMessage(record));
+                    }
+                }
+                if (!messages.isEmpty()) {
+                    rocketMQTemplate.get().syncSend(TOPIC, messages, sendTimeout.toMillis());
+                }
+                spillLog.commit(batch);
+                replayedRecords.increment(messages.size());
+                corruptedRecords.increment(batch.skipped());
+                log.info("重放落盘消息 - 条数: {}, 剩余: {}", messages.size(), spillLog.pending());
+                backoff = replayBackoff.toMillis();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("重放落盘消息失败，{} ms 后重试: {}", backoff, e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, Math.max(backoff, maxReplayBackoff.toMillis()));
+            }
+        }
+    }
+
+    /**
+     * 落盘格式为 RecordCodec 编码，生成时刻随记录一起保存
+     */
+    private static byte[] encode(PingRecord record) {
+        return RecordCodec.encode(new RecordCodec.Fields(record.getRequestId(), record.getTimestamp(),
+            record.getStatus(), record.getMessage(), record.getCreatedAtMicros()));
+    }
+
+    /**
+     * @return 无法解码的记录返回 null 并跳过
+     */
+    private static PingRecord decode(byte[] payload) {
+        try {
+            RecordCodec.Fields fields = RecordCodec.decode(payload);
+            PingRecord record = new PingRecord();
+            record.setCreatedAtMicros(fields.createdAtMicros());
+            record.setRequestId(fields.requestId());
+            record.setTimestamp(fields.timestamp());
+            record.setStatus(fields.status());
+            record.setMessage(fields.message());
+            return record;
+        } catch (RuntimeException e) {
+            log.warn("跳过无法解码的落盘记录: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void fail(Pending pending, Counter reason, Throwable error) {
+        reason.increment();
+        publishFailureTimer.record(System.nanoTime() - pending.startNanos(), TimeUnit.NANOSECONDS);
+        pending.sink().error(error);
+    }
+
+    /**
+     * 消息属性中带上生成记录、请求、响应和发送的时刻，pong 据此统计 HTTP、发布、Broker 和入库各阶段的延迟；
+     * 落盘日志只保存消息体和生成时刻，重放的记录没有请求和响应的时刻，发送时刻为重放时刻
+     */
+    private static Message<PingRecord> toMessage(PingRecord record) {
+        MessageBuilder<PingRecord> builder = MessageBuilder.withPayload(record)
+            .setHeader(RocketMQHeaders.KEYS, record.getRequestId())
+            .setHeader(TraceClock.PUBLISHED_AT, TraceClock.nowMicros());
+        if (record.getCreatedAtMicros() != null) {
+            builder.setHeader(TraceClock.CREATED_AT, record.getCreatedAtMicros());
+        }
+        if (record.getSentAtMicros() != null) {
+            builder.setHeader(TraceClock.SENT_AT, record.getSentAtMicros());
+        }
+        if (record.getRespondedAtMicros() != null) {
+            builder.setHeader(TraceClock.RESPONDED_AT, record.getRespondedAtMicros());
+        }
+        return builder.build();
+    }
+
+    /**
+     * 停止接收新记录，并在退出前发送队列中剩余的记录；落盘日志中未重放的记录留到下次启动
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (replayer != null) {
+            replayer.interrupt();
+            replayer.join(sendTimeout.toMillis());
+        }
+        if (flusher != null) {
+            flusher.join(sendTimeout.toMillis() + linger.toMillis());
+            // 超时仍未退出时中断发送线程，等待它把剩余记录落盘或以错误结束，之后落盘日志才会关闭
+            flusher.interrupt();
+            flusher.join(sendTimeout.toMillis());
         }
     }
-    
-} 
\ No newline at end of file
+}
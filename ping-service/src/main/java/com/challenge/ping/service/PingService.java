@@ -1,20 +1,40 @@
 package com.challenge.ping.service;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.netty.handler.timeout.ReadTimeoutException;
 import lombok.extern.slf4j.Slf4j;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
+import com.challenge.common.audit.AuditEventType;
+import com.challenge.common.audit.AuditJournal;
+import com.challenge.common.id.RequestIdGenerator;
+import com.challenge.common.stream.PingStreamProtocol.Verdict;
+import com.challenge.common.trace.TraceClock;
 import com.challenge.ping.model.PingRecord;
 
 import reactor.core.publisher.Mono;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import java.util.UUID;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Ping 服务类，负责向 Pong 服务发送定期的 ping 请求
@@ -22,8 +42,7 @@ import java.util.UUID;
  */
 @Service
 @Slf4j
-public class PingService {
-    private static final Logger auditLogger = LoggerFactory.getLogger("AUDIT");
+public class PingService implements MeterBinder {
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
     
     /**
@@ -32,7 +51,9 @@ public class PingService {
     public enum PingStatus {
         SUCCESS("Pong responded successfully"),           // Pong 服务成功响应
         RATE_LIMITED_REMOTE("Rate limited by Pong service"), // 被 Pong 服务限流
-        RATE_LIMITED_LOCAL("Rate limited by Ping service");  // 被 Ping 服务限流
+        RATE_LIMITED_LOCAL("Rate limited by Ping service"),  // 被 Ping 服务限流
+        THROTTLED("Throttled by adaptive controller"),       // 预计会被 Pong 拒绝，本地抑制
+        TIMEOUT("Pong response timed out");                  // 等待连接或响应超时
         
         private final String description;
         
@@ -45,10 +66,15 @@ public class PingService {
         }
     }
     
+    /**
+     * 请求完成后待发布的状态和记录
+     */
+    private record PingOutcome(PingStatus status, PingRecord record) {}
+    
     /**
      * Ping 结果记录类，存储每次 ping 请求的结果信息
      */
-    private final record PingResult(PingStatus status, String response, String timestamp) {
+    public record PingResult(PingStatus status, String response, String timestamp) {
         PingResult(PingStatus status, String response) {
             this(status, response, LocalDateTime.now().format(formatter));
         }
@@ -70,6 +96,40 @@ public class PingService {
     @Value("${ping.pong-service.url}")
     private String pongServiceUrl;
     
+    // 拿不到本地许可时最多等待的时间，为0时直接记为本地限流
+    @Value("${ping.rate-limiter.max-wait:0ms}")
+    private Duration maxWait = Duration.ZERO;
+    
+    // 审计日志，未注入时不记录
+    @Autowired
+    private AuditJournal auditJournal = AuditJournal.disabled();
+    
+    // 根据 Pong 的 429 反馈调整发送速率，未注入时不限制
+    @Autowired
+    private AdaptiveThrottle adaptiveThrottle = AdaptiveThrottle.disabled();
+    
+    // 选择 stream 传输方式时通过长连接发送 ping，未启用时每次 ping 一个 HTTP 请求
+    @Autowired
+    private PongStreamClient pongStreamClient = PongStreamClient.disabled();
+    
+    // 按时间排序的请求ID，写入 pong_records 时索引保持局部性
+    @Autowired
+    private RequestIdGenerator requestIdGenerator = RequestIdGenerator.local();
+    
+    // 压测模式下由 LoadGenerator 按目标速率发送，定时任务不再发送
+    @Value("${ping.load.enabled:false}")
+    private boolean loadMode;
+    
+    // 指标：在途的 ping 与 Pong 请求数、按结果区分的 ping 总耗时、按状态码区分的 HTTP 往返耗时
+    private final AtomicInteger activePings = new AtomicInteger();
+    private final AtomicInteger activePongRequests = new AtomicInteger();
+    // JVM 启动到第一次成功 ping 的毫秒数，用于比较不同的启动方式，-1 表示还没有成功过
+    private final AtomicLong firstSuccessMillis = new AtomicLong(-1);
+    private final Map<PingStatus, Timer> pingTimers = new EnumMap<>(PingStatus.class);
+    private final Map<String, Timer> pongTimers = new ConcurrentHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+    private volatile Timer pingErrorTimer;
+    
     /**
      * 构造函数，初始化 WebClient 和其他必要组件
      */
@@ -79,82 +139,281 @@ public class PingService {
             @Value("${ping.pong-service.url}") String pongServiceUrl,
             PingMessageService messageService) {
         this.globalRateLimiter = globalRateLimiter;
+        // 配置多个地址时以第一个作为 baseUrl，实际地址由 WebClient 上的 PongRouter 按负载选择
         this.webClient = webClientBuilder
-            .baseUrl(pongServiceUrl)
+            .baseUrl(pongServiceUrl.split(",")[0].trim())
             .build();
         log.info("Initialized WebClient with pong service URL: {}", pongServiceUrl);
         this.messageService = messageService;
+        registerMeters(new CompositeMeterRegistry());
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        registerMeters(registry);
+    }
+    
+    private void registerMeters(MeterRegistry registry) {
+        for (PingStatus status : PingStatus.values()) {
+            pingTimers.put(status, pingTimer(registry, status.name()));
+        }
+        pingErrorTimer = pingTimer(registry, "ERROR");
+        Gauge.builder("ping.requests.active", activePings, AtomicInteger::get)
+            .description("Ping requests in flight, including limiter wait and publishing")
+            .register(registry);
+        Gauge.builder("ping.pong.requests.active", activePongRequests, AtomicInteger::get)
+            .description("HTTP requests to the pong service in flight")
+            .register(registry);
+        Gauge.builder("ping.startup.first.success", firstSuccessMillis,
+                millis -> millis.get() < 0 ? Double.NaN : millis.get() / 1000.0)
+            .description("Time from JVM start until the first successful ping")
+            .baseUnit("seconds")
+            .register(registry);
+        pongTimers.clear();
+        meterRegistry = registry;
+    }
+    
+    private static Timer pingTimer(MeterRegistry registry, String result) {
+        return Timer.builder("ping.requests")
+            .description("End-to-end ping latency until the record is published")
+            .tag("result", result)
+            .register(registry);
     }
     
     /**
      * 定时任务，每秒执行一次 ping 请求
+     * 记录发布失败（发送队列已满、落盘日志已满等）已按 result=ERROR 计入耗时，这里只记录日志
      */
     @Scheduled(fixedRate = 1000)
     public void schedulePeriodicPing() {
-        sendPing().subscribe();
+        if (loadMode) {
+            return;
+        }
+        sendPing().subscribe(
+            result -> { },
+            error -> log.warn("Failed to publish the periodic ping record: {}", error.toString()));
     }
     
     /**
      * 发送 ping 请求的主要方法
      * 包含以下功能：
-     * 1. 本地速率限制检查
-     * 2. 发送 HTTP 请求到 Pong 服务
-     * 3. 处理响应结果
-     * 4. 错误处理
-     * 5. 记录审计日志
+     * 1. 自适应限速检查，预计会被 Pong 拒绝时直接抑制
+     * 2. 本地速率限制检查（可配置为延迟到下一个可用许可）
+     * 3. 发送 HTTP 请求或通过流式通道发送到 Pong 服务
+     * 4. 处理响应结果并反馈给自适应限速
+     * 5. 错误处理
+     * 6. 记录审计日志
      * 
      * @return Mono<PingResult> 包含 ping 请求的结果
      */
     public Mono<PingResult> sendPing() {
-        auditLogger.info("Try to send ping request to Pong service");
-        String requestId = UUID.randomUUID().toString();
-        
-        // 检查速率限制
-        if (!globalRateLimiter.tryAcquire()) {
-            PingRecord record = new PingRecord();
-            record.setMessage(PingStatus.RATE_LIMITED_LOCAL.getDescription());
-            record.setStatus(429);
-            record.setTimestamp(LocalDateTime.now());
-            record.setRequestId(requestId);
-            messageService.sendPingMessage(record);
-            auditLogger.info("Result: {}", record);
+        return Mono.defer(() -> {
+            String requestId = requestIdGenerator.next();
+            long start = System.nanoTime();
+            auditJournal.append(AuditEventType.PING_SENT, 0, requestId, null, 0);
             
-            return Mono.just(new PingResult(PingStatus.RATE_LIMITED_LOCAL, 
-                PingStatus.RATE_LIMITED_LOCAL.getDescription()));
+            Mono<PingResult> result;
+            // 先检查自适应限速，被抑制的请求不占用全局许可
+            if (!adaptiveThrottle.tryAcquire()) {
+                result = throttled(requestId, start);
+            } else if (maxWait == null || maxWait.isZero() || maxWait.isNegative()) {
+                result = globalRateLimiter.tryAcquire() ? requestPong(requestId, start) : rateLimitedLocally(requestId, start);
+            } else {
+                // 否则预约下一个可用许可，延迟到许可时刻再发送
+                result = globalRateLimiter.acquire(maxWait)
+                    .flatMap(acquired -> acquired ? requestPong(requestId, start) : rateLimitedLocally(requestId, start));
+            }
+            return result
+                .doOnNext(ping -> {
+                    pingTimers.get(ping.status()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    if (ping.status() == PingStatus.SUCCESS && firstSuccessMillis.get() < 0) {
+                        recordFirstSuccess();
+                    }
+                })
+                .doOnError(e -> pingErrorTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        })
+        .doFirst(activePings::incrementAndGet)
+        .doFinally(signal -> activePings.decrementAndGet());
+    }
+    
+    private void recordFirstSuccess() {
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        if (firstSuccessMillis.compareAndSet(-1, uptime)) {
+            log.info("First successful ping {} ms after JVM start", uptime);
         }
+    }
 
+    /**
+     * 本地限流时记录结果
+     */
+    private Mono<PingResult> rateLimitedLocally(String requestId, long start) {
+        return publish(PingStatus.RATE_LIMITED_LOCAL, 
+            createRecord(PingStatus.RATE_LIMITED_LOCAL.getDescription(), 429, requestId), start);
+    }
+    
+    /**
+     * 被自适应限速抑制时只记录指标和审计日志，不发布记录：抑制发生在 Broker 或 Pong 过载时，发布只会加重负载
+     */
+    private Mono<PingResult> throttled(String requestId, long start) {
+        return Mono.fromSupplier(() -> {
+            auditJournal.append(AuditEventType.PING_RESULT, 429, requestId,
+                PingStatus.THROTTLED.name(), System.nanoTime() - start);
+            return new PingResult(PingStatus.THROTTLED, PingStatus.THROTTLED.getDescription());
+        });
+    }
+    
+    /**
+     * 向 Pong 服务发送请求并处理响应
+     */
+    private Mono<PingResult> requestPong(String requestId, long start) {
+        if (pongStreamClient.isEnabled()) {
+            return requestPongOverStream(requestId, start);
+        }
+        long sentAt = TraceClock.nowMicros();
         // 发送请求并处理响应
-        return webClient.get()
-            .uri("/api/pong")
-            .retrieve()
-            // 处理 4xx 错误响应
-            .onStatus(status -> status.is4xxClientError(), response -> 
-                Mono.just(new RuntimeException(PingStatus.RATE_LIMITED_REMOTE.getDescription())))
-            .toEntity(String.class)
+        return Mono.defer(() -> {
+            long requestStart = System.nanoTime();
+            activePongRequests.incrementAndGet();
+            return webClient.get()
+                .uri("/api/pong")
+                .retrieve()
+                // 处理 4xx 错误响应，异常中保留状态码用于指标
+                .onStatus(status -> status.is4xxClientError(), response -> response.createException())
+                .toEntity(String.class)
+                .doOnNext(response -> {
+                    recordPongRequest(requestStart, String.valueOf(response.getStatusCode().value()), "none");
+                    adaptiveThrottle.onSuccess();
+                })
+                .doOnError(e -> {
+                    recordPongRequest(requestStart, statusOf(e), e.getClass().getSimpleName());
+                    feedback(e);
+                })
+                .doFinally(signal -> activePongRequests.decrementAndGet());
+        })
             // 处理成功响应
-            .map(response -> {
-                PingRecord record = new PingRecord();
-                record.setMessage(response.getBody());
-                record.setStatus(response.getStatusCode().value());
-                record.setTimestamp(LocalDateTime.now());
-                record.setRequestId(requestId);
-                messageService.sendPingMessage(record);
-                auditLogger.info("Result: {}", record);
-                
-                return new PingResult(PingStatus.SUCCESS, response.getBody());
-            })
-            // 处理错误情况
-            .onErrorResume(e -> {
-                PingRecord record = new PingRecord();
-                record.setMessage(PingStatus.RATE_LIMITED_REMOTE.getDescription());
-                record.setStatus(429);
-                record.setTimestamp(LocalDateTime.now());
-                record.setRequestId(requestId);
-                messageService.sendPingMessage(record);
-                auditLogger.info("Result: {}", record);
-                
-                return Mono.just(new PingResult(PingStatus.RATE_LIMITED_REMOTE, 
-                    PingStatus.RATE_LIMITED_REMOTE.getDescription()));
-            });
-    }
-} 
\ No newline at end of file
+            .map(response -> new PingOutcome(PingStatus.SUCCESS, 
+                createRecord(response.getBody(), response.getStatusCode().value(), requestId)))
+            // 处理错误情况：超时单独记录，其余错误按远程限流处理
+            .onErrorResume(e -> Mono.just(failedOutcome(e, requestId)))
+            .doOnNext(outcome -> traced(outcome.record(), sentAt))
+            // 发布记录，发布失败不会被当作远程限流处理
+            .flatMap(outcome -> publish(outcome.status(), outcome.record(), start));
+    }
+    
+    /**
+     * 通过流式通道发送 ping，结果的处理与 HTTP 方式相同
+     */
+    private Mono<PingResult> requestPongOverStream(String requestId, long start) {
+        long sentAt = TraceClock.nowMicros();
+        return Mono.defer(() -> {
+            long requestStart = System.nanoTime();
+            activePongRequests.incrementAndGet();
+            return pongStreamClient.ping()
+                .doOnNext(verdict -> {
+                    recordPongRequest(requestStart, String.valueOf(verdict.status()), "none");
+                    if (verdict.status() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+                        adaptiveThrottle.onRejected(Duration.ofSeconds(verdict.retryAfterSeconds()));
+                    } else if (verdict.status() == HttpStatus.OK.value()) {
+                        adaptiveThrottle.onSuccess();
+                    }
+                })
+                .doOnError(e -> {
+                    recordPongRequest(requestStart, statusOf(e), e.getClass().getSimpleName());
+                    feedback(e);
+                })
+                .doFinally(signal -> activePongRequests.decrementAndGet());
+        })
+            .map(verdict -> verdict.status() == HttpStatus.OK.value()
+                ? new PingOutcome(PingStatus.SUCCESS, createRecord(verdict.message(), verdict.status(), requestId))
+                : new PingOutcome(PingStatus.RATE_LIMITED_REMOTE,
+                    createRecord(PingStatus.RATE_LIMITED_REMOTE.getDescription(), 429, requestId)))
+            .onErrorResume(e -> Mono.just(failedOutcome(e, requestId)))
+            .doOnNext(outcome -> traced(outcome.record(), sentAt))
+            .flatMap(outcome -> publish(outcome.status(), outcome.record(), start));
+    }
+    
+    private static PingOutcome failedOutcome(Throwable e, String requestId) {
+        return isTimeout(e)
+            ? new PingOutcome(PingStatus.TIMEOUT,
+                createRecord(PingStatus.TIMEOUT.getDescription(), 504, requestId))
+            : new PingOutcome(PingStatus.RATE_LIMITED_REMOTE, 
+                createRecord(PingStatus.RATE_LIMITED_REMOTE.getDescription(), 429, requestId));
+    }
+    
+    /**
+     * 429 和超时作为拥塞信号反馈给自适应限速，连接失败等其他错误不调整速率
+     */
+    private void feedback(Throwable e) {
+        if (e instanceof WebClientResponseException response
+                && response.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            adaptiveThrottle.onRejected(
+                AdaptiveThrottle.parseRetryAfter(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)));
+        } else if (isTimeout(e)) {
+            adaptiveThrottle.onTimeout();
+        }
+    }
+    
+    private void recordPongRequest(long start, String status, String exception) {
+        MeterRegistry registry = meterRegistry;
+        pongTimers.computeIfAbsent(status + "|" + exception, key -> Timer.builder("ping.pong.requests")
+                .description("HTTP round-trip latency to the pong service")
+                .tag("status", status)
+                .tag("exception", exception)
+                .register(registry))
+            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * 响应异常取其状态码，超时记为 TIMEOUT，连接失败等其他没有响应的异常记为 IO_ERROR
+     */
+    private static String statusOf(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return String.valueOf(response.getStatusCode().value());
+        }
+        return isTimeout(e) ? "TIMEOUT" : "IO_ERROR";
+    }
+    
+    /**
+     * 响应超时（ReadTimeoutException）或等待连接池超时（TimeoutException），
+     * WebClient 会把传输层异常包装在 WebClientRequestException 中
+     */
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ReadTimeoutException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static PingRecord createRecord(String message, int status, String requestId) {
+        PingRecord record = new PingRecord();
+        record.setMessage(message);
+        record.setStatus(status);
+        record.setTimestamp(LocalDateTime.now());
+        record.setRequestId(requestId);
+        record.setCreatedAtMicros(TraceClock.nowMicros());
+        return record;
+    }
+    
+    /**
+     * 记录请求发出和收到结果的时刻，随消息属性传给 pong 统计各阶段延迟
+     */
+    private static void traced(PingRecord record, long sentAt) {
+        record.setSentAtMicros(sentAt);
+        record.setRespondedAtMicros(TraceClock.nowMicros());
+    }
+    
+    /**
+     * 异步发布 ping 记录，Broker 确认后写入审计事件并返回结果
+     * @param start sendPing 开始的时刻，审计事件记录从开始到确认的耗时
+     */
+    private Mono<PingResult> publish(PingStatus status, PingRecord record, long start) {
+        return messageService.publish(record)
+            .then(Mono.fromSupplier(() -> {
+                auditJournal.append(AuditEventType.PING_RESULT, record.getStatus(), record.getRequestId(),
+                    status.name(), System.nanoTime() - start);
+                return new PingResult(status, record.getMessage());
+            }));
+    }
+}
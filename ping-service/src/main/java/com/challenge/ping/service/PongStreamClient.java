@@ -0,0 +1,246 @@
+package com.challenge.ping.service;
+
+import com.challenge.common.stream.PingStreamProtocol;
+import com.challenge.common.stream.PingStreamProtocol.Frame;
+import com.challenge.common.stream.PingStreamProtocol.Ping;
+import com.challenge.common.stream.PingStreamProtocol.RequestN;
+import com.challenge.common.stream.PingStreamProtocol.Verdict;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.client.WebSocketClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 通过一个长连接（WebSocket）向 Pong 发送 ping 的客户端
+ * 所有 ping 复用同一个连接，以序号对应结果；Pong 通过 request-n 帧发放额度，
+ * 没有额度时 ping 在本地排队，排队的 ping 数超过上限时直接拒绝。
+ * 连接断开时在途的 ping 以错误结束，下一次 ping 重新建立连接；建立失败后在 reconnectBackoff 内直接失败
+ */
+@Slf4j
+public class PongStreamClient implements AutoCloseable {
+    private static final PongStreamClient DISABLED = new PongStreamClient();
+
+    /**
+     * 一次连接的状态，连接断开后整体丢弃
+     */
+    private static final class Connection {
+        final Sinks.Many<String> outbound = Sinks.many().unicast().onBackpressureBuffer();
+        // 等待额度的 ping 序号
+        final Queue<Long> waiting = new ArrayDeque<>();
+        // 在这个连接上排队或在途的 ping 序号，连接断开时以错误结束
+        final Set<Long> members = ConcurrentHashMap.newKeySet();
+        long credits;
+        Disposable subscription;
+    }
+
+    private final boolean enabled;
+    private final WebSocketClient client;
+    private final URI uri;
+    private final HttpHeaders headers = new HttpHeaders();
+    private final Duration responseTimeout;
+    private final int maxPending;
+    private final long reconnectBackoffNanos;
+
+    private final AtomicLong nextSeq = new AtomicLong();
+    private final Map<Long, Sinks.One<Verdict>> pending = new ConcurrentHashMap<>();
+    // 以下状态由 this 保护
+    private Connection connection;
+    private long retryAt = System.nanoTime();
+    private boolean closed;
+
+    private PongStreamClient() {
+        this.enabled = false;
+        this.client = null;
+        this.uri = null;
+        this.responseTimeout = Duration.ZERO;
+        this.maxPending = 0;
+        this.reconnectBackoffNanos = 0;
+    }
+
+    /**
+     * @param instanceHeader 握手请求中携带调用方身份的请求头，Pong 据此按实例限流
+     * @param responseTimeout 每个 ping 从发出到收到结果的最长时间，包含等待额度的时间
+     * @param maxPending 排队和在途的 ping 数上限
+     * @param reconnectBackoff 建立连接失败后多久内不再重试
+     */
+    public PongStreamClient(WebSocketClient client, URI uri, String instanceHeader, String instanceId,
+                            Duration responseTimeout, int maxPending, Duration reconnectBackoff) {
+        this.enabled = true;
+        this.client = client;
+        this.uri = uri;
+        if (instanceId != null) {
+            headers.set(instanceHeader, instanceId);
+        }
+        this.responseTimeout = responseTimeout;
+        this.maxPending = Math.max(1, maxPending);
+        this.reconnectBackoffNanos = reconnectBackoff.toNanos();
+    }
+
+    public static PongStreamClient disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 发送一次 ping
+     * @return Pong 返回的处理结果；超时以 TimeoutException 结束，连接失败或断开以 IOException 结束
+     */
+    public Mono<Verdict> ping() {
+        return Mono.defer(() -> {
+            if (!enabled) {
+                return Mono.error(new IllegalStateException("Pong stream transport is disabled"));
+            }
+            if (pending.size() >= maxPending) {
+                return Mono.error(new RejectedExecutionException("Too many pings waiting on the pong stream"));
+            }
+            long seq = nextSeq.incrementAndGet();
+            Sinks.One<Verdict> sink = Sinks.one();
+            pending.put(seq, sink);
+            Throwable failure = enqueue(seq);
+            if (failure != null) {
+                pending.remove(seq);
+                return Mono.<Verdict>error(failure);
+            }
+            return sink.asMono()
+                .timeout(responseTimeout)
+                .doFinally(signal -> pending.remove(seq));
+        });
+    }
+
+    /**
+     * @return 排队和在途的 ping 数
+     */
+    public int pending() {
+        return pending.size();
+    }
+
+    private synchronized Throwable enqueue(long seq) {
+        if (closed) {
+            return new IllegalStateException("Pong stream client is closed");
+        }
+        if (connection == null) {
+            if (System.nanoTime() - retryAt < 0) {
+                return new IOException("Pong stream unavailable");
+            }
+            connection = connect();
+        }
+        connection.members.add(seq);
+        connection.waiting.add(seq);
+        drain(connection);
+        return null;
+    }
+
+    private Connection connect() {
+        log.info("Opening pong stream to {}", uri);
+        Connection c = new Connection();
+        connection = c;
+        c.subscription = client.execute(uri, headers, session -> session.send(c.outbound.asFlux().map(session::textMessage))
+                .and(session.receive()
+                    .map(WebSocketMessage::getPayloadAsText)
+                    .doOnNext(text -> onFrame(c, text))
+                    // Pong 关闭连接后结束发送，让整个会话结束
+                    .doFinally(signal -> complete(c))
+                    .then()))
+            .subscribe(null, e -> onClosed(c, e), () -> onClosed(c, null));
+        return c;
+    }
+
+    /**
+     * 用完额度前依次发出等待中的 ping，已超时的 ping 不再发送
+     */
+    private void drain(Connection c) {
+        while (c.credits > 0) {
+            Long seq = c.waiting.poll();
+            if (seq == null) {
+                return;
+            }
+            if (pending.containsKey(seq)) {
+                c.credits--;
+                c.outbound.tryEmitNext(PingStreamProtocol.encode(new Ping(seq)));
+            }
+        }
+    }
+
+    private void onFrame(Connection c, String text) {
+        Frame frame;
+        try {
+            frame = PingStreamProtocol.decode(text);
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring pong stream frame: {}", e.getMessage());
+            return;
+        }
+        if (frame instanceof RequestN request) {
+            synchronized (this) {
+                c.credits += request.n();
+                drain(c);
+            }
+        } else if (frame instanceof Verdict verdict) {
+            c.members.remove(verdict.seq());
+            Sinks.One<Verdict> sink = pending.remove(verdict.seq());
+            if (sink != null) {
+                sink.tryEmitValue(verdict);
+            }
+        }
+    }
+
+    private synchronized void complete(Connection c) {
+        c.outbound.tryEmitComplete();
+    }
+
+    private void onClosed(Connection c, Throwable error) {
+        synchronized (this) {
+            if (connection == c) {
+                connection = null;
+                if (error != null) {
+                    retryAt = System.nanoTime() + reconnectBackoffNanos;
+                }
+            }
+            c.outbound.tryEmitComplete();
+        }
+        if (error != null) {
+            log.warn("Pong stream to {} failed: {}", uri, error.toString());
+        } else {
+            log.info("Pong stream to {} closed", uri);
+        }
+        IOException failure = new IOException("Pong stream closed", error);
+        for (Long seq : c.members) {
+            Sinks.One<Verdict> sink = pending.remove(seq);
+            if (sink != null) {
+                sink.tryEmitError(failure);
+            }
+        }
+        c.members.clear();
+    }
+
+    @Override
+    public void close() {
+        Connection c;
+        synchronized (this) {
+            closed = true;
+            c = connection;
+            connection = null;
+        }
+        if (c != null) {
+            complete(c);
+            c.subscription.dispose();
+            onClosed(c, null);
+        }
+    }
+}
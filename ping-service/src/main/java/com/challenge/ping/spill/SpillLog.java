@@ -0,0 +1,438 @@
+package com.challenge.ping.spill;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 消息无法发送时使用的本地落盘日志
+ * 记录按写入顺序追加到内存映射的分段文件，读取位置保存在单独的游标文件中，
+ * 重放成功并提交后才推进游标并删除已经读完的分段，进程重启后从游标处继续重放。
+ * 分段数达到 maxSegments 后拒绝写入，磁盘占用不超过 segmentSize * maxSegments。
+ * <pre>
+ * 分段文件 spill-%010d.log: magic(4) version(4) reserved(8)，之后为若干条记录
+ * 记录: length(4) crc32(4) payload(length)，length 为 0 表示分段中已写入的数据到此为止
+ * 游标文件 spill.cursor: segment(8) offset(8)
+ * </pre>
+ * 记录先写内容再写长度，进程崩溃时最多丢失未写完的最后一条；运行中读到损坏的记录时跳过并计数，
+ * 无法确定下一条记录的边界时放弃该分段剩余的数据，避免游标卡在损坏处导致积压永远无法清空。
+ * 所有方法都在同一把锁上串行执行
+ */
+@Slf4j
+public class SpillLog implements AutoCloseable {
+    static final int MAGIC = 0x50534C31;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 8;
+    private static final int CURSOR_SIZE = 16;
+    private static final String CURSOR_FILE = "spill.cursor";
+    private static final String LOCK_FILE = "spill.lock";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("spill-(\\d{10})\\.log");
+    private static final SpillLog DISABLED = new SpillLog();
+
+    /**
+     * 一次读取的记录，提交后游标移动到最后一条记录之后
+     * @param skipped 读取时跳过的损坏记录数
+     */
+    public record Batch(List<byte[]> payloads, long segment, int offset, int skipped) {
+        /**
+         * @return 没有可重放的记录，也没有需要越过的损坏记录
+         */
+        public boolean isEmpty() {
+            return payloads.isEmpty() && skipped == 0;
+        }
+
+        public int size() {
+            return payloads.size();
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final boolean enabled;
+
+    // 分段编号 -> 映射，只保留未读完的分段
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private MappedByteBuffer cursor;
+    private long writeSegment;
+    private int writeOffset;
+    private long readSegment;
+    private int readOffset;
+    private long pending;
+    private long corrupted;
+    private boolean closed;
+
+    /**
+     * @param directory 日志目录，不存在时创建；同一时刻只能被一个进程使用
+     * @param segmentSize 单个分段文件大小
+     * @param maxSegments 最多保留的分段数
+     */
+    public SpillLog(Path directory, long segmentSize, int maxSegments) {
+        this.directory = directory;
+        this.segmentSize = (int) Math.min(Integer.MAX_VALUE, Math.max(HEADER_SIZE + RECORD_HEADER_SIZE + 1024, segmentSize));
+        this.maxSegments = Math.max(2, maxSegments);
+        this.enabled = true;
+    }
+
+    private SpillLog() {
+        this.directory = null;
+        this.segmentSize = 0;
+        this.maxSegments = 0;
+        this.enabled = false;
+    }
+
+    /**
+     * @return 不落盘、总是拒绝写入的日志
+     */
+    public static SpillLog disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 打开日志目录，恢复游标和写入位置
+     * @throws IllegalStateException 目录已被其他进程使用
+     */
+    public synchronized SpillLog open() {
+        if (!enabled || lock != null) {
+            return this;
+        }
+        try {
+            Files.createDirectories(directory);
+            lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                lockChannel.close();
+                throw new IllegalStateException("Spill directory " + directory + " is in use by another process");
+            }
+            try (FileChannel channel = FileChannel.open(directory.resolve(CURSOR_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                cursor = channel.map(FileChannel.MapMode.READ_WRITE, 0, CURSOR_SIZE);
+            }
+            recover();
+            log.info("Opened spill log {}: {} records pending in {} segments", directory, pending, segments.size());
+            return this;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open spill log " + directory, e);
+        }
+    }
+
+    private void recover() throws IOException {
+        long cursorSegment = cursor.getLong(0);
+        int cursorOffset = (int) cursor.getLong(8);
+        for (Map.Entry<Long, Path> entry : list().entrySet()) {
+            if (entry.getKey() < cursorSegment) {
+                Files.deleteIfExists(entry.getValue());
+                continue;
+            }
+            MappedByteBuffer buffer = map(entry.getValue(), false);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                log.warn("Deleting spill segment {} with an unknown header", entry.getValue());
+                Files.deleteIfExists(entry.getValue());
+                continue;
+            }
+            segments.put(entry.getKey(), buffer);
+        }
+        if (segments.isEmpty()) {
+            long first = Math.max(1, cursorSegment);
+            segments.put(first, create(first));
+            readSegment = first;
+            readOffset = HEADER_SIZE;
+        } else if (segments.firstKey() == cursorSegment) {
+            readSegment = cursorSegment;
+            readOffset = Math.max(HEADER_SIZE, cursorOffset);
+        } else {
+            readSegment = segments.firstKey();
+            readOffset = HEADER_SIZE;
+        }
+        // 在最后一个分段中找到写入位置，并统计待重放的记录数
+        writeSegment = segments.lastKey();
+        writeOffset = end(segments.lastEntry().getValue(),
+            writeSegment == readSegment ? readOffset : HEADER_SIZE);
+        pending = count();
+        // 最后一条记录可能只写了一半，清除后续内容以免把残留数据当成新记录
+        MappedByteBuffer last = segments.get(writeSegment);
+        if (writeOffset + RECORD_HEADER_SIZE <= segmentSize) {
+            last.putInt(writeOffset, 0);
+        }
+        saveCursor();
+    }
+
+    /**
+     * 追加一条记录
+     * @return 超过单条大小上限、分段数已满或日志已关闭时返回 false
+     */
+    public synchronized boolean append(byte[] payload) {
+        if (!enabled || closed || lock == null) {
+            return false;
+        }
+        int size = RECORD_HEADER_SIZE + payload.length;
+        if (size > segmentSize - HEADER_SIZE) {
+            return false;
+        }
+        try {
+            if (writeOffset + size > segmentSize) {
+                if (segments.size() >= maxSegments) {
+                    return false;
+                }
+                writeSegment++;
+                segments.put(writeSegment, create(writeSegment));
+                writeOffset = HEADER_SIZE;
+            }
+        } catch (IOException e) {
+            log.error("Failed to create spill segment in {}", directory, e);
+            return false;
+        }
+        MappedByteBuffer buffer = segments.get(writeSegment);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        buffer.put(writeOffset + RECORD_HEADER_SIZE, payload);
+        buffer.putInt(writeOffset + 4, (int) crc.getValue());
+        // 下一条记录的长度先置0，再写入本条长度作为完成标记
+        if (writeOffset + size + RECORD_HEADER_SIZE <= segmentSize) {
+            buffer.putInt(writeOffset + size, 0);
+        }
+        buffer.putInt(writeOffset, payload.length);
+        writeOffset += size;
+        pending++;
+        return true;
+    }
+
+    /**
+     * 从游标处读取最多 max 条记录，不移动游标
+     */
+    public synchronized Batch read(int max) {
+        List<byte[]> payloads = new ArrayList<>();
+        if (!enabled || closed || lock == null) {
+            return new Batch(payloads, 0, 0, 0);
+        }
+        long segment = readSegment;
+        int offset = readOffset;
+        int skipped = 0;
+        while (payloads.size() < max) {
+            MappedByteBuffer buffer = segments.get(segment);
+            int next = nextRecord(buffer, offset);
+            if (next > 0) {
+                byte[] payload = new byte[next - offset - RECORD_HEADER_SIZE];
+                buffer.get(offset + RECORD_HEADER_SIZE, payload);
+                payloads.add(payload);
+                offset = next;
+                continue;
+            }
+            // 写入分段中写入位置之前不应出现长度为0的记录
+            if (next < 0 || segment == writeSegment && offset < writeOffset) {
+                int resumed = skip(segment, buffer, offset);
+                log.warn("Skipping corrupted spill record in segment {} at offset {}, resuming at {}",
+                    segment, offset, resumed);
+                skipped++;
+                offset = resumed;
+                continue;
+            }
+            Long following = segments.higherKey(segment);
+            if (following == null) {
+                break;
+            }
+            segment = following;
+            offset = HEADER_SIZE;
+        }
+        return new Batch(payloads, segment, offset, skipped);
+    }
+
+    /**
+     * 越过 offset 处损坏的记录：长度字段看起来有效时按长度跳过这一条，否则放弃该分段剩余的数据
+     * @return 继续读取的位置，总是大于 offset
+     */
+    private int skip(long segment, MappedByteBuffer buffer, int offset) {
+        int end = segment == writeSegment ? writeOffset : segmentSize;
+        int length = buffer.getInt(offset);
+        long next = (long) offset + RECORD_HEADER_SIZE + length;
+        return length > 0 && next <= end ? (int) next : end;
+    }
+
+    /**
+     * 提交已成功重放的记录，移动游标并删除读完的分段
+     */
+    public synchronized void commit(Batch batch) {
+        if (!enabled || closed || lock == null || batch.isEmpty()) {
+            return;
+        }
+        readSegment = batch.segment();
+        readOffset = batch.offset();
+        // 已读到末尾的旧分段不会再有新记录，游标直接移到下一个分段，以便及时删除腾出空间
+        Long following = segments.higherKey(readSegment);
+        if (following != null && nextRecord(segments.get(readSegment), readOffset) == 0) {
+            readSegment = following;
+            readOffset = HEADER_SIZE;
+        }
+        if (batch.skipped() > 0) {
+            // 放弃的数据中有多少条记录无从得知，从新的游标处重新统计
+            corrupted += batch.skipped();
+            pending = count();
+        } else {
+            pending = Math.max(0, pending - batch.size());
+        }
+        saveCursor();
+        while (segments.firstKey() < readSegment) {
+            long index = segments.pollFirstEntry().getKey();
+            try {
+                Files.deleteIfExists(directory.resolve(name(index)));
+            } catch (IOException e) {
+                log.warn("Failed to delete spill segment {}", index, e);
+            }
+        }
+    }
+
+    /**
+     * @return 等待重放的记录数
+     */
+    public synchronized long pending() {
+        return pending;
+    }
+
+    /**
+     * @return 读取时跳过的损坏记录总数
+     */
+    public synchronized long corrupted() {
+        return corrupted;
+    }
+
+    /**
+     * @return 分段文件占用的磁盘空间（字节）
+     */
+    public synchronized long diskUsage() {
+        return (long) segments.size() * segmentSize;
+    }
+
+    /**
+     * @return offset 处完整记录之后的位置；没有记录时返回0，记录损坏时返回-1
+     */
+    private int nextRecord(MappedByteBuffer buffer, int offset) {
+        if (offset + RECORD_HEADER_SIZE > segmentSize) {
+            return 0;
+        }
+        int length = buffer.getInt(offset);
+        if (length == 0) {
+            return 0;
+        }
+        // 损坏的长度可能接近 Integer.MAX_VALUE，按 long 计算以免溢出
+        long next = (long) offset + RECORD_HEADER_SIZE + length;
+        if (length < 0 || next > segmentSize) {
+            return -1;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(offset + RECORD_HEADER_SIZE, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == buffer.getInt(offset + 4) ? (int) next : -1;
+    }
+
+    /**
+     * @return 从 offset 开始连续的完整记录之后的位置
+     */
+    private int end(MappedByteBuffer buffer, int offset) {
+        int next;
+        while ((next = nextRecord(buffer, offset)) > 0) {
+            offset = next;
+        }
+        return offset;
+    }
+
+    /**
+     * @return 从游标到写入位置之间可以读出的完整记录数
+     */
+    private long count() {
+        long count = 0;
+        for (Map.Entry<Long, MappedByteBuffer> entry : segments.tailMap(readSegment, true).entrySet()) {
+            int offset = entry.getKey() == readSegment ? readOffset : HEADER_SIZE;
+            int next;
+            while ((next = nextRecord(entry.getValue(), offset)) > 0) {
+                count++;
+                offset = next;
+            }
+        }
+        return count;
+    }
+
+    private void saveCursor() {
+        cursor.putLong(0, readSegment);
+        cursor.putLong(8, readOffset);
+    }
+
+    private MappedByteBuffer create(long index) throws IOException {
+        MappedByteBuffer buffer = map(directory.resolve(name(index)), true);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        return buffer;
+    }
+
+    private MappedByteBuffer map(Path path, boolean createNew) throws IOException {
+        try (FileChannel channel = createNew
+                ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private TreeMap<Long, Path> list() throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.forEach(path -> {
+                Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    files.put(Long.parseLong(matcher.group(1)), path);
+                }
+            });
+        }
+        return files;
+    }
+
+    static String name(long index) {
+        return String.format("spill-%010d.log", index);
+    }
+
+    /**
+     * 把映射内容刷到磁盘并释放目录锁，未重放的记录在下次打开时继续重放
+     */
+    @Override
+    public synchronized void close() {
+        if (!enabled || closed || lock == null) {
+            return;
+        }
+        closed = true;
+        segments.values().forEach(MappedByteBuffer::force);
+        cursor.force();
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            log.warn("Failed to release spill log lock {}", directory, e);
+        }
+        log.info("Closed spill log {} with {} records pending", directory, pending);
+    }
+}
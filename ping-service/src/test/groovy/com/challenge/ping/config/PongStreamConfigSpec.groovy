@@ -0,0 +1,36 @@
+package com.challenge.ping.config
+
+import spock.lang.Specification
+
+class PongStreamConfigSpec extends Specification {
+
+    def "should derive the stream address from the pong url"() {
+        expect:
+        PongStreamConfig.streamUri(url).toString() == expected
+
+        where:
+        url                          | expected
+        "http://localhost:8080"      | "ws://localhost:8080/api/pong/stream"
+        "https://pong.example.com/"  | "wss://pong.example.com/api/pong/stream"
+        " http://pong-service:8080 " | "ws://pong-service:8080/api/pong/stream"
+    }
+
+    def "should only create a stream client when the stream transport is selected"() {
+        given:
+        def config = new PongStreamConfig(transport: transport, pongServiceUrl: "http://localhost:8080", instanceId: "ping-1")
+
+        when:
+        def client = config.pongStreamClient()
+
+        then:
+        client.isEnabled() == enabled
+
+        cleanup:
+        client?.close()
+
+        where:
+        transport  | enabled
+        "http"     | false
+        " Stream " | true
+    }
+}
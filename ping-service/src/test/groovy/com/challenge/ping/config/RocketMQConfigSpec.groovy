@@ -1,10 +1,14 @@
 package com.challenge.ping.config
 
+import com.challenge.common.codec.RecordCodec
+import com.challenge.ping.model.PingRecord
 import org.apache.rocketmq.client.producer.DefaultMQProducer
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.boot.test.context.SpringBootTest
 import org.springframework.test.context.TestPropertySource
+import org.springframework.messaging.MessageHeaders
 import spock.lang.Specification
+import java.time.LocalDateTime
 
 @SpringBootTest(classes = [RocketMQConfig])
 @TestPropertySource(properties = [
@@ -43,4 +47,37 @@ class RocketMQConfigSpec extends Specification {
         producer instanceof DefaultMQProducer
         producer.getNamesrvAddr() == "localhost:9876"
     }
-} 
\ No newline at end of file
+    
+    def "should encode ping records with the configured codec"() {
+        given:
+        def converter = new RocketMQConfig(codec: codec).rocketMQTemplate(new DefaultMQProducer()).messageConverter
+        def record = new PingRecord(message: "World", status: 200, timestamp: LocalDateTime.now(),
+            requestId: UUID.randomUUID().toString())
+        
+        when:
+        def message = converter.toMessage(record, null)
+        
+        then:
+        message.headers[MessageHeaders.CONTENT_TYPE].toString() == contentType
+        RecordCodec.isEncoded(message.payload as byte[]) == binary
+        
+        where:
+        codec    | contentType                     | binary
+        "json"   | "application/json"              | false
+        "binary" | "application/x-pingpong-record" | true
+    }
+    
+    def "should decode binary ping records"() {
+        given:
+        def converter = new RocketMQConfig(codec: "binary").rocketMQTemplate(new DefaultMQProducer()).messageConverter
+        def record = new PingRecord(message: "World", status: 429, timestamp: LocalDateTime.now(), requestId: "request-1")
+        
+        when:
+        PingRecord decoded = converter.fromMessage(converter.toMessage(record, null), PingRecord)
+        
+        then:
+        decoded.requestId == "request-1"
+        decoded.status == 429
+        decoded.message == "World"
+    }
+}
@@ -0,0 +1,32 @@
+package com.challenge.ping.config
+
+import com.challenge.ping.routing.PongRouter
+import spock.lang.Specification
+
+class RoutingConfigSpec extends Specification {
+
+    def "should choose the endpoint source by precedence dns, file and url"() {
+        expect:
+        new RoutingConfig(pongServiceUrl: "http://a:8080,http://b:8080", endpointsFile: file, dns: dns)
+            .discovery().toString() == expected
+
+        where:
+        dns                     | file         | expected
+        "pong-service-peers:80" | "/tmp/pongs" | "dns:pong-service-peers:80"
+        ""                      | "/tmp/pongs" | "file:/tmp/pongs"
+        ""                      | ""           | "[http://a:8080, http://b:8080]"
+    }
+
+    def "should route across the configured urls unless disabled"() {
+        when:
+        def router = new RoutingConfig(pongServiceUrl: "http://a:8080, http://b:8080", policy: "least-outstanding")
+            .pongRouter()
+
+        then:
+        router.endpoints()*.uri()*.toString() == ["http://a:8080", "http://b:8080"]
+        new RoutingConfig(pongServiceUrl: "http://a:8080", enabled: false).pongRouter().is(PongRouter.disabled())
+
+        cleanup:
+        router.close()
+    }
+}
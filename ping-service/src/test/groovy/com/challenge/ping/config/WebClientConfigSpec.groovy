@@ -1,10 +1,49 @@
 package com.challenge.ping.config
 
+import com.challenge.ping.routing.EndpointDiscovery
+import com.challenge.ping.routing.PongRouter
+import org.springframework.http.HttpStatus
+import org.springframework.web.reactive.function.client.ClientResponse
+import org.springframework.web.reactive.function.client.ExchangeFunction
 import org.springframework.web.reactive.function.client.WebClient
+import io.netty.handler.codec.http2.Http2StreamChannel
+import io.netty.handler.timeout.ReadTimeoutException
+import reactor.core.publisher.Mono
+import reactor.netty.DisposableServer
+import reactor.netty.http.HttpProtocol
+import reactor.netty.http.server.HttpServer
 import spock.lang.Specification
 
+import java.time.Duration
+
 class WebClientConfigSpec extends Specification {
 
+    DisposableServer server
+
+    def cleanup() {
+        server?.disposeNow()
+    }
+
+    def startServer(Duration delay = Duration.ZERO) {
+        server = HttpServer.create()
+            .host("127.0.0.1")
+            .port(0)
+            .protocol(HttpProtocol.H2C, HttpProtocol.HTTP11)
+            .route { routes ->
+                routes.get("/api/pong") { request, response ->
+                    // HTTP/2 的每个请求都在独立的子 Channel 上处理
+                    def http2 = false
+                    request.withConnection { connection -> http2 = connection.channel() instanceof Http2StreamChannel }
+                    response.sendString(Mono.delay(delay).thenReturn(http2 ? "HTTP/2.0" : "HTTP/1.1"))
+                }
+            }
+            .bindNow()
+    }
+
+    def pongClient(WebClientConfig config) {
+        config.webClientBuilder().baseUrl("http://127.0.0.1:${server.port()}").build()
+    }
+
     def "should create WebClient builder"() {
         given:
         def config = new WebClientConfig()
@@ -53,4 +92,90 @@ class WebClientConfigSpec extends Specification {
         then:
         webClient instanceof WebClient
     }
-} 
\ No newline at end of file
+
+    def "should send the instance id header with every request"() {
+        given:
+        def config = new WebClientConfig(instanceId: "ping-1")
+        def captured = null
+        def webClient = config.webClientBuilder()
+            .exchangeFunction({ request ->
+                captured = request
+                Mono.just(ClientResponse.create(HttpStatus.OK).build())
+            } as ExchangeFunction)
+            .build()
+        
+        when:
+        webClient.get().uri("http://localhost/api/pong").retrieve().toBodilessEntity().block()
+        
+        then:
+        captured.headers().getFirst(WebClientConfig.INSTANCE_HEADER) == "ping-1"
+    }
+
+    def "should multiplex requests over h2c by default and fall back to HTTP/1.1 when configured"() {
+        given:
+        startServer()
+
+        expect:
+        pongClient(new WebClientConfig(protocol: protocol)).get().uri("/api/pong")
+            .retrieve().bodyToMono(String).block(Duration.ofSeconds(5)) == expected
+
+        where:
+        protocol | expected
+        "h2c"    | "HTTP/2.0"
+        "http1"  | "HTTP/1.1"
+    }
+
+    def "should fail requests that exceed the response timeout"() {
+        given:
+        startServer(Duration.ofSeconds(2))
+        def client = pongClient(new WebClientConfig(responseTimeout: Duration.ofMillis(100)))
+
+        when:
+        client.get().uri("/api/pong").retrieve().bodyToMono(String).block(Duration.ofSeconds(5))
+
+        then:
+        def e = thrown(Exception)
+        e.cause instanceof ReadTimeoutException
+    }
+
+    def "should reject requests beyond the pending acquire limit instead of queueing them"() {
+        given: "只有一个连接，且最多一个请求等待连接"
+        startServer(Duration.ofMillis(500))
+        def client = pongClient(new WebClientConfig(protocol: "http1", maxConnections: 1, pendingAcquireMaxCount: 1))
+        def request = { client.get().uri("/api/pong").retrieve().bodyToMono(String) }
+
+        when:
+        def results = Mono.zip(
+            request(),
+            request(),
+            request().onErrorResume { Mono.just(it.cause?.class?.simpleName ?: it.class.simpleName) }
+        ).block(Duration.ofSeconds(5))
+
+        then:
+        results.t1 == "HTTP/1.1"
+        results.t2 == "HTTP/1.1"
+        results.t3 == "PoolAcquirePendingLimitException"
+    }
+
+    def "should spread requests across every pong endpoint through the router"() {
+        given:
+        def servers = (1..2).collect { i ->
+            HttpServer.create().host("127.0.0.1").port(0).protocol(HttpProtocol.H2C, HttpProtocol.HTTP11)
+                .route { routes -> routes.get("/api/pong") { request, response -> response.sendString(Mono.just("pong-$i".toString())) } }
+                .bindNow()
+        }
+        def router = new PongRouter(EndpointDiscovery.of(servers.collect { "http://127.0.0.1:${it.port()}" }.join(",")),
+            PongRouter.Policy.P2C, 3, Duration.ofSeconds(10), Duration.ofMinutes(1))
+        def client = new WebClientConfig(pongRouter: router).webClientBuilder().baseUrl("http://pong-service:8080").build()
+
+        when:
+        def bodies = (1..40).collect { client.get().uri("/api/pong").retrieve().bodyToMono(String).block(Duration.ofSeconds(5)) }
+
+        then:
+        bodies.toSet() == ["pong-1", "pong-2"] as Set
+        router.endpoints().every { it.outstanding() == 0 }
+
+        cleanup:
+        servers*.disposeNow()
+    }
+}
@@ -0,0 +1,60 @@
+package com.challenge.ping.load
+
+import com.challenge.ping.service.PingService.PingStatus
+import spock.lang.Specification
+import java.util.concurrent.TimeUnit
+
+class LatencyRecorderSpec extends Specification {
+
+    LatencyRecorder recorder = new LatencyRecorder()
+
+    def "should keep separate histograms per outcome"() {
+        given:
+        (1..100).each { recorder.record(PingStatus.SUCCESS, TimeUnit.MILLISECONDS.toNanos(it)) }
+        recorder.record(PingStatus.RATE_LIMITED_LOCAL, TimeUnit.MICROSECONDS.toNanos(50))
+
+        when:
+        def report = recorder.intervalReport(1.0)
+
+        then:
+        report.contains("SUCCESS")
+        report.contains("RATE_LIMITED_LOCAL")
+        !report.contains("RATE_LIMITED_REMOTE")
+        with(recorder.total(PingStatus.SUCCESS)) {
+            totalCount == 100
+            Math.abs(getValueAtPercentile(50) - 50_000) < 100
+            Math.abs(maxValue - 100_000) < 100
+        }
+        recorder.total(PingStatus.RATE_LIMITED_LOCAL).totalCount == 1
+    }
+
+    def "should only report values recorded since the last interval"() {
+        given:
+        recorder.record(PingStatus.SUCCESS, 1_000_000)
+        recorder.intervalReport(1.0)
+
+        when:
+        def report = recorder.intervalReport(1.0)
+        recorder.record(PingStatus.SUCCESS, 2_000_000)
+        recorder.intervalReport(1.0)
+
+        then:
+        report.isEmpty()
+        recorder.total(PingStatus.SUCCESS).totalCount == 2
+    }
+
+    def "should include every outcome and errors in the summary"() {
+        given:
+        recorder.record(PingStatus.RATE_LIMITED_REMOTE, TimeUnit.HOURS.toNanos(2))
+        recorder.recordError()
+        recorder.intervalReport(1.0)
+
+        when:
+        def summary = recorder.summary(10.0)
+
+        then:
+        PingStatus.values().every { summary.contains(it.name()) }
+        summary.contains("ERRORS count=1")
+        recorder.total(PingStatus.RATE_LIMITED_REMOTE).maxValue >= TimeUnit.HOURS.toMicros(1) * 0.99
+    }
+}
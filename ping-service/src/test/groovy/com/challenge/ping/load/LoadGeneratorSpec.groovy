@@ -0,0 +1,83 @@
+package com.challenge.ping.load
+
+import com.challenge.ping.service.PingService
+import com.challenge.ping.service.PingService.PingStatus
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class LoadGeneratorSpec extends Specification {
+
+    PingService pingService = Mock(PingService)
+    LoadGenerator generator
+
+    def cleanup() {
+        generator?.stop()
+    }
+
+    def "should send at the target rate independent of responses"() {
+        given:
+        def calls = new AtomicInteger()
+        pingService.sendPing() >> {
+            calls.incrementAndGet()
+            Mono.just(new PingService.PingResult(PingStatus.SUCCESS, "World"))
+        }
+        generator = new LoadGenerator(pingService, LoadProfile.constant(200, Duration.ofMillis(500)), 16, Duration.ofMillis(100))
+
+        when:
+        generator.start()
+
+        then:
+        generator.awaitCompletion(Duration.ofSeconds(5))
+        calls.get() in 95..101
+        generator.recorder().total(PingStatus.SUCCESS).totalCount == calls.get()
+    }
+
+    def "should measure latency from the intended send time when the concurrency cap is reached"() {
+        given:
+        pingService.sendPing() >> Mono.delay(Duration.ofMillis(100))
+            .thenReturn(new PingService.PingResult(PingStatus.RATE_LIMITED_REMOTE, "Rate limited by Pong service"))
+        generator = new LoadGenerator(pingService, LoadProfile.constant(20, Duration.ofMillis(300)), 1, Duration.ofSeconds(1))
+
+        when:
+        generator.start()
+
+        then:
+        generator.awaitCompletion(Duration.ofSeconds(5))
+        with(generator.recorder().total(PingStatus.RATE_LIMITED_REMOTE)) {
+            totalCount == 6
+            // 6 个请求串行执行，最后一个计划在 250ms 发送，约 600ms 才完成
+            maxValue >= TimeUnit.MILLISECONDS.toMicros(300)
+        }
+    }
+
+    def "should count failed requests as errors"() {
+        given:
+        pingService.sendPing() >>> [Mono.error(new RuntimeException("publish failed")), { throw new IllegalStateException() }] >>
+            Mono.just(new PingService.PingResult(PingStatus.RATE_LIMITED_LOCAL, "Rate limited by Ping service"))
+        generator = new LoadGenerator(pingService, LoadProfile.constant(100, Duration.ofMillis(50)), 4, Duration.ofSeconds(1))
+
+        when:
+        generator.start()
+
+        then:
+        generator.awaitCompletion(Duration.ofSeconds(5))
+        generator.recorder().errors() >= 1
+        generator.recorder().total(PingStatus.RATE_LIMITED_LOCAL).totalCount >= 1
+    }
+
+    def "should stop early when requested"() {
+        given:
+        pingService.sendPing() >> Mono.just(new PingService.PingResult(PingStatus.SUCCESS, "World"))
+        generator = new LoadGenerator(pingService, LoadProfile.constant(10, Duration.ZERO), 1, Duration.ofSeconds(1))
+        generator.start()
+
+        when:
+        generator.stop()
+
+        then:
+        generator.awaitCompletion(Duration.ofSeconds(1))
+    }
+}
@@ -0,0 +1,74 @@
+package com.challenge.ping.load
+
+import spock.lang.Specification
+import java.time.Duration
+
+class LoadProfileSpec extends Specification {
+
+    static long seconds(double value) {
+        (long) (value * 1_000_000_000L)
+    }
+
+    def "should keep a constant rate"() {
+        given:
+        def profile = LoadProfile.constant(50, Duration.ofSeconds(10))
+
+        expect:
+        profile.rateAt(0) == 50
+        profile.rateAt(seconds(9)) == 50
+    }
+
+    def "should ramp linearly and then hold the target rate"() {
+        given:
+        def profile = new LoadProfile(LoadProfile.Type.RAMP, 10, 110, Duration.ofSeconds(10), 0, Duration.ZERO, Duration.ofSeconds(30))
+
+        expect:
+        profile.rateAt(seconds(elapsed)) == rate
+
+        where:
+        elapsed | rate
+        0       | 10
+        5       | 60
+        10      | 110
+        20      | 110
+    }
+
+    def "should step up until the target rate"() {
+        given:
+        def profile = new LoadProfile(LoadProfile.Type.STEP, 10, 35, Duration.ZERO, 10, Duration.ofSeconds(5), Duration.ZERO)
+
+        expect:
+        profile.rateAt(seconds(elapsed)) == rate
+
+        where:
+        elapsed | rate
+        0       | 10
+        4.9     | 10
+        5       | 20
+        10      | 30
+        15      | 35
+        60      | 35
+    }
+
+    def "should step down when the step rate is negative"() {
+        given:
+        def profile = new LoadProfile(LoadProfile.Type.STEP, 100, 40, Duration.ZERO, -25, Duration.ofSeconds(1), Duration.ZERO)
+
+        expect:
+        profile.rateAt(seconds(1)) == 75
+        profile.rateAt(seconds(5)) == 40
+    }
+
+    def "should finish after the configured duration"() {
+        expect:
+        !LoadProfile.constant(1, Duration.ofSeconds(1)).isFinished(seconds(0.5))
+        LoadProfile.constant(1, Duration.ofSeconds(1)).isFinished(seconds(1))
+        !LoadProfile.constant(1, Duration.ZERO).isFinished(seconds(3600))
+    }
+
+    def "should parse profile types"() {
+        expect:
+        LoadProfile.Type.from(" Ramp ") == LoadProfile.Type.RAMP
+        LoadProfile.Type.from("step") == LoadProfile.Type.STEP
+    }
+}
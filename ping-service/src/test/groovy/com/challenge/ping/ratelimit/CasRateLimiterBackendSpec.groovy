@@ -0,0 +1,137 @@
+package com.challenge.ping.ratelimit
+
+import spock.lang.Specification
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class CasRateLimiterBackendSpec extends Specification {
+
+    Path dataPath
+
+    def setup() {
+        dataPath = Files.createTempFile("ping-rate", ".mmap")
+    }
+
+    def mappedBackend(int limit, Duration window) {
+        def algorithm = new FixedWindowAlgorithm(limit, window.toMillis())
+        new CasRateLimiterBackend(new MappedRateLimitState(dataPath, algorithm.slots()), algorithm)
+    }
+
+    def cleanup() {
+        Files.deleteIfExists(dataPath)
+    }
+
+    def "should allow requests within rate limit and reject the rest"() {
+        given:
+        def backend = mappedBackend(2, Duration.ofSeconds(1))
+
+        expect:
+        backend.tryAcquire()
+        backend.tryAcquire()
+        !backend.tryAcquire()
+    }
+
+    def "should reset after the window has passed"() {
+        given:
+        def backend = mappedBackend(1, Duration.ofMillis(100))
+
+        when:
+        def result1 = backend.tryAcquire()
+        def result2 = backend.tryAcquire()
+        Thread.sleep(150)
+        def result3 = backend.tryAcquire()
+
+        then:
+        result1
+        !result2
+        result3
+    }
+
+    def "should share the window between instances mapping the same file"() {
+        given: "两个实例模拟同一主机上的两个 ping 进程"
+        def first = mappedBackend(2, Duration.ofSeconds(1))
+        def second = mappedBackend(2, Duration.ofSeconds(1))
+
+        expect:
+        first.tryAcquire()
+        second.tryAcquire()
+        !first.tryAcquire()
+        !second.tryAcquire()
+    }
+
+    def "should grant exactly the limit under concurrent access"() {
+        given:
+        def backend = mappedBackend(5, Duration.ofSeconds(10))
+        def results = Collections.synchronizedList([])
+        def startLatch = new CountDownLatch(1)
+        def completionLatch = new CountDownLatch(20)
+
+        when:
+        20.times {
+            Thread.start {
+                try {
+                    startLatch.await(5, TimeUnit.SECONDS)
+                    results.add(backend.tryAcquire())
+                } finally {
+                    completionLatch.countDown()
+                }
+            }
+        }
+        startLatch.countDown()
+
+        then:
+        completionLatch.await(5, TimeUnit.SECONDS)
+        results.count { it } == 5
+        results.count { !it } == 15
+    }
+
+    def "should remove the data file on cleanup"() {
+        given:
+        def backend = mappedBackend(1, Duration.ofSeconds(1))
+
+        when:
+        backend.cleanup()
+
+        then:
+        !Files.exists(dataPath)
+    }
+
+    def "should return reservation delay when waiting is allowed"() {
+        given:
+        def backend = mappedBackend(1, Duration.ofSeconds(1))
+
+        when:
+        def first = backend.reserve(0)
+        def rejected = backend.reserve(0)
+        def reserved = backend.reserve(2000)
+
+        then:
+        first == 0
+        rejected == -1
+        reserved > 0
+        reserved <= 1000
+    }
+
+    def "should reject state with too few slots for the algorithm"() {
+        when:
+        new CasRateLimiterBackend(new HeapRateLimitState(1), new SlidingLogAlgorithm(3, 1000))
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should parse backend type from configuration value"() {
+        expect:
+        RateLimiterBackend.Type.from(value) == expected
+
+        where:
+        value       | expected
+        "mmap"      | RateLimiterBackend.Type.MMAP
+        "file-lock" | RateLimiterBackend.Type.FILE_LOCK
+        " MMAP "    | RateLimiterBackend.Type.MMAP
+        "memory"    | RateLimiterBackend.Type.MEMORY
+    }
+}
@@ -0,0 +1,163 @@
+package com.challenge.ping.ratelimit
+
+import spock.lang.Specification
+import spock.lang.Unroll
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class RateLimitAlgorithmSpec extends Specification {
+
+    static final long T0 = 1_700_000_000_000L
+
+    def newState(RateLimitAlgorithm algorithm) {
+        new HeapRateLimitState(algorithm.slots())
+    }
+
+    @Unroll
+    def "#type should admit a burst of limit requests and then reject"() {
+        given:
+        def algorithm = RateLimitAlgorithm.create(type, 2, Duration.ofSeconds(1))
+        def state = newState(algorithm)
+
+        expect:
+        algorithm.reserve(state, T0, 0) == 0
+        algorithm.reserve(state, T0, 0) == 0
+        algorithm.reserve(state, T0, 0) == -1
+
+        where:
+        type << RateLimitAlgorithm.Type.values()
+    }
+
+    @Unroll
+    def "#type should not consume quota when a reservation exceeds max wait"() {
+        given:
+        def algorithm = RateLimitAlgorithm.create(type, 1, Duration.ofSeconds(1))
+        def state = newState(algorithm)
+        algorithm.reserve(state, T0, 0)
+
+        when:
+        def rejected = algorithm.reserve(state, T0, 10)
+        def reserved = algorithm.reserve(state, T0, 5000)
+
+        then:
+        rejected == -1
+        reserved == 1000
+
+        where:
+        type << RateLimitAlgorithm.Type.values()
+    }
+
+    @Unroll
+    def "#type should queue consecutive reservations one slot apart"() {
+        given:
+        def algorithm = RateLimitAlgorithm.create(type, 1, Duration.ofMillis(100))
+        def state = newState(algorithm)
+
+        expect:
+        (1..4).collect { algorithm.reserve(state, T0, 10_000) } == [0L, 100L, 200L, 300L]
+
+        where:
+        type << RateLimitAlgorithm.Type.values()
+    }
+
+    def "fixed window should allow a boundary burst that smoother algorithms prevent"() {
+        given: "窗口末尾用完配额"
+        def window = Duration.ofSeconds(1)
+        def fixed = RateLimitAlgorithm.create(RateLimitAlgorithm.Type.FIXED_WINDOW, 2, window)
+        def sliding = RateLimitAlgorithm.create(RateLimitAlgorithm.Type.SLIDING_LOG, 2, window)
+        def fixedState = newState(fixed)
+        def slidingState = newState(sliding)
+        fixed.reserve(fixedState, T0, 0)
+        sliding.reserve(slidingState, T0 + 900, 0)
+        sliding.reserve(slidingState, T0 + 900, 0)
+        fixed.reserve(fixedState, T0 + 900, 0)
+
+        expect: "新窗口开始时固定窗口立即放行，滑动日志仍需等待"
+        fixed.reserve(fixedState, T0 + 1000, 0) == 0
+        fixed.reserve(fixedState, T0 + 1000, 0) == 0
+        sliding.reserve(slidingState, T0 + 1000, 0) == -1
+    }
+
+    def "gcra should space requests by the emission interval after the burst"() {
+        given:
+        def algorithm = new GcraAlgorithm(2, 1000)
+        def state = newState(algorithm)
+        algorithm.reserve(state, T0, 0)
+        algorithm.reserve(state, T0, 0)
+
+        expect:
+        algorithm.reserve(state, T0 + 499, 0) == -1
+        algorithm.reserve(state, T0 + 500, 0) == 0
+    }
+
+    def "token bucket should refill one token per interval up to capacity"() {
+        given:
+        def algorithm = new TokenBucketAlgorithm(4, 1000)
+        def state = newState(algorithm)
+        4.times { algorithm.reserve(state, T0, 0) }
+
+        expect:
+        algorithm.reserve(state, T0 + 249, 0) == -1
+        algorithm.reserve(state, T0 + 250, 0) == 0
+        algorithm.reserve(state, T0 + 250, 0) == -1
+        // 长时间空闲后最多只积累 capacity 个令牌
+        (1..5).collect { algorithm.reserve(state, T0 + 60_000, 0) } == [0L, 0L, 0L, 0L, -1L]
+    }
+
+    def "sliding log should free a slot exactly one window after it was used"() {
+        given:
+        def algorithm = new SlidingLogAlgorithm(2, 1000)
+        def state = newState(algorithm)
+        algorithm.reserve(state, T0, 0)
+        algorithm.reserve(state, T0 + 400, 0)
+
+        expect:
+        algorithm.reserve(state, T0 + 999, 0) == -1
+        algorithm.reserve(state, T0 + 1000, 0) == 0
+        algorithm.reserve(state, T0 + 1000, 0) == -1
+        algorithm.reserve(state, T0 + 1400, 0) == 0
+    }
+
+    @Unroll
+    def "#type should grant exactly the limit under concurrent access"() {
+        given:
+        def algorithm = RateLimitAlgorithm.create(type, 5, Duration.ofSeconds(10))
+        def state = newState(algorithm)
+        def granted = Collections.synchronizedList([])
+        def startLatch = new CountDownLatch(1)
+        def completionLatch = new CountDownLatch(20)
+
+        when:
+        20.times {
+            Thread.start {
+                try {
+                    startLatch.await(5, TimeUnit.SECONDS)
+                    granted.add(algorithm.reserve(state, T0, 0) == 0)
+                } finally {
+                    completionLatch.countDown()
+                }
+            }
+        }
+        startLatch.countDown()
+
+        then:
+        completionLatch.await(5, TimeUnit.SECONDS)
+        granted.count { it } == 5
+
+        where:
+        type << RateLimitAlgorithm.Type.values()
+    }
+
+    def "should parse algorithm type from configuration value"() {
+        expect:
+        RateLimitAlgorithm.Type.from(value) == expected
+
+        where:
+        value          | expected
+        "fixed-window" | RateLimitAlgorithm.Type.FIXED_WINDOW
+        "token-bucket" | RateLimitAlgorithm.Type.TOKEN_BUCKET
+        "sliding-log"  | RateLimitAlgorithm.Type.SLIDING_LOG
+        "GCRA"         | RateLimitAlgorithm.Type.GCRA
+    }
+}
@@ -0,0 +1,49 @@
+package com.challenge.ping.routing
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class EndpointDiscoverySpec extends Specification {
+
+    @TempDir
+    Path dir
+
+    def "should normalize and deduplicate configured urls"() {
+        expect:
+        EndpointDiscovery.of(" http://pong-1:8080/api , http://pong-2:8080,http://pong-1:8080,,not a url")
+            .resolve()*.toString() == ["http://pong-1:8080", "http://pong-2:8080"]
+        EndpointDiscovery.of("pong-1:8080, ").resolve() == null
+    }
+
+    def "should read endpoints from a file that may change between refreshes"() {
+        given:
+        def file = dir.resolve("pong-endpoints")
+        def discovery = EndpointDiscovery.file(file)
+
+        expect: "文件不存在时返回 null"
+        discovery.resolve() == null
+        discovery.toString() == "file:$file"
+
+        when:
+        Files.write(file, ["# pong 实例", "http://10.0.0.1:8080", "", "  http://10.0.0.2:8080  "])
+
+        then:
+        discovery.resolve()*.toString() == ["http://10.0.0.1:8080", "http://10.0.0.2:8080"]
+
+        when:
+        Files.write(file, ["http://10.0.0.3:8080"])
+
+        then:
+        discovery.resolve()*.toString() == ["http://10.0.0.3:8080"]
+    }
+
+    def "should use every address the name resolves to"() {
+        expect:
+        EndpointDiscovery.dns("http", "127.0.0.1:8080").resolve()*.toString() == ["http://127.0.0.1:8080"]
+        EndpointDiscovery.dns("http", "pong.invalid:8080").resolve() == null
+        EndpointDiscovery.dns("http", "pong.invalid:8080").toString() == "dns:pong.invalid:8080"
+    }
+}
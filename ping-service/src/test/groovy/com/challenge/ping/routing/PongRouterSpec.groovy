@@ -0,0 +1,249 @@
+package com.challenge.ping.routing
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.http.HttpMethod
+import org.springframework.http.HttpStatus
+import org.springframework.web.reactive.function.client.ClientRequest
+import org.springframework.web.reactive.function.client.ClientResponse
+import org.springframework.web.reactive.function.client.ExchangeFunction
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+
+import java.time.Duration
+
+class PongRouterSpec extends Specification {
+
+    static final URI A = URI.create("http://10.0.0.1:8080")
+    static final URI B = URI.create("http://10.0.0.2:8080")
+    static final URI C = URI.create("http://10.0.0.3:8080")
+    static final long MS = 1_000_000L
+
+    long now = 1_000 * MS
+    List<URI> discovered = [A, B]
+
+    def router(PongRouter.Policy policy = PongRouter.Policy.P2C, int failureThreshold = 2) {
+        def discovery = new EndpointDiscovery() {
+            List<URI> resolve() {
+                discovered
+            }
+        }
+        new PongRouter(discovery, policy, failureThreshold, Duration.ofSeconds(10), Duration.ofSeconds(30), { now })
+    }
+
+    def endpoint(PongRouter router, URI uri) {
+        router.endpoints().find { it.uri() == uri }
+    }
+
+    def request(String url = "http://pong-service:8080/api/pong?x=1") {
+        ClientRequest.create(HttpMethod.GET, URI.create(url)).build()
+    }
+
+    /**
+     * 记录目标地址并按地址返回状态码的 ExchangeFunction
+     */
+    def exchange(List<URI> targets, Map<String, Integer> statuses = [:]) {
+        { ClientRequest request ->
+            targets << request.url()
+            def status = statuses[request.url().host] ?: 200
+            status < 0 ? Mono.error(new IOException("connection refused"))
+                : Mono.just(ClientResponse.create(HttpStatus.valueOf(status)).build())
+        } as ExchangeFunction
+    }
+
+    def "should rewrite the request to the chosen endpoint and keep path and query"() {
+        given:
+        discovered = [A]
+        def router = router()
+        def targets = []
+
+        when:
+        def response = router.filter(request(), exchange(targets)).block()
+
+        then:
+        response.statusCode() == HttpStatus.OK
+        targets == [URI.create("http://10.0.0.1:8080/api/pong?x=1")]
+        endpoint(router, A).outstanding() == 0
+    }
+
+    def "should pass requests through when there are no endpoints"() {
+        given:
+        def targets = []
+
+        when:
+        PongRouter.disabled().filter(request(), exchange(targets)).block()
+
+        then:
+        PongRouter.disabled().endpoints().isEmpty()
+        targets == [URI.create("http://pong-service:8080/api/pong?x=1")]
+    }
+
+    def "should send to the endpoint with the fewest requests in flight"() {
+        given:
+        discovered = [A, B, C]
+        def router = router(PongRouter.Policy.LEAST_OUTSTANDING)
+        endpoint(router, A).started()
+        endpoint(router, B).started()
+        endpoint(router, C).started()
+        endpoint(router, C).started()
+
+        expect: "A 和 B 在途请求相同时选延迟低的 B"
+        router.onResponse(endpoint(router, A), 200, now - 50 * MS)
+        router.onResponse(endpoint(router, B), 200, now - 5 * MS)
+        (1..20).collect { router.choose().uri() }.toSet() == [B] as Set
+    }
+
+    def "should prefer endpoints with lower latency and fewer rate limited responses with p2c"() {
+        given: "两个地址时 P2C 总是比较这两个"
+        def router = router()
+        5.times {
+            router.onResponse(endpoint(router, A), status, now - latency * MS)
+            router.onResponse(endpoint(router, B), 200, now - 5 * MS)
+        }
+
+        expect:
+        (1..20).collect { router.choose().uri() }.toSet() == [B] as Set
+
+        where:
+        status | latency
+        200    | 50
+        429    | 5
+    }
+
+    def "should spread p2c choices across equally loaded endpoints"() {
+        given:
+        discovered = [A, B, C]
+        def router = router()
+
+        expect:
+        (1..200).collect { router.choose().uri() }.toSet() == [A, B, C] as Set
+    }
+
+    def "should eject an endpoint after consecutive failures and readmit it after the ejection time"() {
+        given:
+        def router = router(PongRouter.Policy.LEAST_OUTSTANDING)
+        def registry = new SimpleMeterRegistry()
+        router.bindTo(registry)
+        def targets = []
+        def statuses = ["10.0.0.1": 503]
+
+        when: "一次成功打断连续失败，429 不算失败"
+        router.onFailure(endpoint(router, A), now)
+        router.onResponse(endpoint(router, A), 429, now)
+        router.onFailure(endpoint(router, A), now)
+
+        then:
+        !endpoint(router, A).ejected(now)
+
+        when: "A 再次返回 503 后被摘除，之后只发往 B"
+        while (targets.size() < 100 && !targets.any { it.host == "10.0.0.1" }) {
+            router.filter(request(), exchange(targets, statuses)).block()
+        }
+        targets.clear()
+        20.times { router.filter(request(), exchange(targets, statuses)).block() }
+
+        then:
+        endpoint(router, A).ejected(now)
+        targets*.host.toSet() == ["10.0.0.2"] as Set
+        registry.get("ping.pong.endpoint.ejected").tag("endpoint", A.toString()).gauge().value() == 1
+        registry.get("ping.pong.endpoint.ejections").tag("endpoint", A.toString()).counter().count() == 1
+
+        when: "摘除到期后重新接入，首个请求成功即恢复"
+        now += 10_000 * MS
+        router.onResponse(endpoint(router, A), 200, now)
+        router.onFailure(endpoint(router, A), now)
+
+        then:
+        !endpoint(router, A).ejected(now)
+        registry.get("ping.pong.endpoint.ejected").tag("endpoint", A.toString()).gauge().value() == 0
+    }
+
+    def "should eject again on the first failure after readmission for twice as long up to the maximum"() {
+        given:
+        def router = router()
+        def a = endpoint(router, A)
+        2.times { router.onFailure(a, now) }
+        def ejections = []
+
+        when:
+        4.times {
+            def readmitted = now
+            while (a.ejected(now)) {
+                now += 1_000 * MS
+            }
+            ejections << (now - readmitted).intdiv(1_000 * MS)
+            router.onFailure(a, now)
+        }
+
+        then:
+        ejections == [10, 20, 30, 30]
+        a.ejected(now)
+    }
+
+    def "should still route to all endpoints when every endpoint is ejected"() {
+        given:
+        def router = router(PongRouter.Policy.LEAST_OUTSTANDING, 1)
+        def targets = []
+
+        when:
+        router.filter(request(), exchange(targets, ["10.0.0.1": -1, "10.0.0.2": -1])).onErrorResume { Mono.empty() }.block()
+        router.filter(request(), exchange(targets, ["10.0.0.1": -1, "10.0.0.2": -1])).onErrorResume { Mono.empty() }.block()
+
+        then:
+        targets*.host.toSet() == ["10.0.0.1", "10.0.0.2"] as Set
+        router.endpoints().every { it.ejected(now) }
+        router.choose() != null
+    }
+
+    def "should keep endpoint state across refreshes and drop the meters of removed endpoints"() {
+        given:
+        def router = router()
+        def registry = new SimpleMeterRegistry()
+        router.bindTo(registry)
+        def a = endpoint(router, A)
+        a.started()
+
+        when: "查询失败时保留原有地址"
+        discovered = null
+        router.refresh()
+
+        then:
+        router.endpoints()*.uri() == [A, B]
+
+        when:
+        discovered = [A, C]
+        router.refresh()
+
+        then:
+        router.endpoints()*.uri() == [A, C]
+        endpoint(router, A).is(a)
+        registry.get("ping.pong.endpoint.outstanding").tag("endpoint", A.toString()).gauge().value() == 1
+        registry.find("ping.pong.endpoint.outstanding").tag("endpoint", B.toString()).gauge() == null
+        registry.find("ping.pong.endpoint.ejections").tag("endpoint", B.toString()).counter() == null
+        registry.get("ping.pong.endpoint.ejections").tag("endpoint", C.toString()).counter().count() == 0
+    }
+
+    def "should refresh endpoints in the background until closed"() {
+        given:
+        def router = router()
+
+        when:
+        router.start(Duration.ofMillis(20))
+        discovered = [C]
+        def deadline = System.currentTimeMillis() + 5_000
+        while (router.endpoints()*.uri() != [C] && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+
+        then:
+        router.endpoints()*.uri() == [C]
+
+        cleanup:
+        router.close()
+    }
+
+    def "should parse policy names"() {
+        expect:
+        PongRouter.Policy.parse(" p2c") == PongRouter.Policy.P2C
+        PongRouter.Policy.parse("least-outstanding") == PongRouter.Policy.LEAST_OUTSTANDING
+    }
+}
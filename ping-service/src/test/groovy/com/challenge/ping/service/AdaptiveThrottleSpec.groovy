@@ -0,0 +1,201 @@
+package com.challenge.ping.service
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.ZonedDateTime
+import java.time.format.DateTimeFormatter
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+class AdaptiveThrottleSpec extends Specification {
+
+    AtomicLong now = new AtomicLong(1_000_000_000L)
+
+    def throttle(double minRate = 0.5, double maxRate = 10, double increase = 1, double decreaseFactor = 0.5,
+                 Duration decreaseInterval = Duration.ofSeconds(1), Duration maxRetryAfter = Duration.ofSeconds(30)) {
+        new AdaptiveThrottle(minRate, maxRate, increase, decreaseFactor, decreaseInterval, maxRetryAfter, now::get)
+    }
+
+    def advance(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis))
+    }
+
+    def "should admit up to one second of the current rate"() {
+        given:
+        def throttle = throttle(0.5, 4)
+
+        expect:
+        (1..4).every { throttle.tryAcquire() }
+        !throttle.tryAcquire()
+
+        when:
+        advance(250)
+
+        then:
+        throttle.tryAcquire()
+        !throttle.tryAcquire()
+    }
+
+    def "should halve the rate on rejection and count a burst of rejections once"() {
+        given:
+        def throttle = throttle()
+
+        when:
+        throttle.onRejected(null)
+        throttle.onRejected(null)
+        throttle.onTimeout()
+
+        then:
+        throttle.rate() == 5
+
+        when:
+        advance(1000)
+        throttle.onTimeout()
+
+        then:
+        throttle.rate() == 2.5
+    }
+
+    def "should never drop below the minimum rate"() {
+        given:
+        def throttle = throttle(0.5, 10)
+
+        when:
+        10.times {
+            throttle.onRejected(null)
+            advance(1000)
+        }
+
+        then:
+        throttle.rate() == 0.5
+    }
+
+    def "should grow the rate additively by about increase per second of successes"() {
+        given:
+        def throttle = throttle(0.5, 10, 1)
+        throttle.onRejected(null)
+
+        when:
+        5.times { throttle.onSuccess() }
+
+        then:
+        throttle.rate() > 5.9
+        throttle.rate() < 6
+
+        when:
+        100.times { throttle.onSuccess() }
+
+        then:
+        throttle.rate() == 10
+    }
+
+    def "should pause sending for the Retry-After period, capped by max-retry-after"() {
+        given:
+        def throttle = throttle(0.5, 10, 1, 0.5, Duration.ofSeconds(1), Duration.ofSeconds(5))
+
+        when:
+        throttle.onRejected(Duration.ofSeconds(2))
+
+        then:
+        !throttle.tryAcquire()
+        throttle.blockedFor() == Duration.ofSeconds(2)
+
+        when:
+        advance(2000)
+
+        then:
+        throttle.tryAcquire()
+
+        when:
+        throttle.onRejected(Duration.ofMinutes(10))
+
+        then:
+        throttle.blockedFor() == Duration.ofSeconds(5)
+    }
+
+    def "should converge several callers sharing a capacity"() {
+        given: "三个调用方共享每秒 3 次的容量，超出部分被拒绝"
+        def throttles = (1..3).collect { throttle(0.2, 20) }
+        def accepted = 0
+
+        when:
+        200.times { tick ->
+            advance(100)
+            def used = 0
+            throttles.each { throttle ->
+                while (throttle.tryAcquire()) {
+                    if (used < 1 || tick % 10 == 0 && used < 3) {
+                        used++
+                        accepted++
+                        throttle.onSuccess()
+                    } else {
+                        throttle.onRejected(Duration.ZERO)
+                    }
+                }
+            }
+        }
+
+        then: "最终每个调用方的速率都远低于初始的 20 次/秒"
+        throttles.every { it.rate() < 10 }
+        accepted > 0
+    }
+
+    def "should always admit and ignore feedback when disabled"() {
+        given:
+        def throttle = AdaptiveThrottle.disabled()
+
+        when:
+        throttle.onRejected(Duration.ofMinutes(1))
+        throttle.onTimeout()
+
+        then:
+        !throttle.isEnabled()
+        (1..100).every { throttle.tryAcquire() }
+    }
+
+    def "should expose rate, pause and decisions as meters"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        def throttle = throttle(0.5, 2)
+        throttle.bindTo(registry)
+
+        when:
+        3.times { throttle.tryAcquire() }
+        throttle.onSuccess()
+        throttle.onRejected(Duration.ofSeconds(3))
+
+        then:
+        registry.get("ping.throttle.decisions").tag("outcome", "admitted").counter().count() == 2
+        registry.get("ping.throttle.decisions").tag("outcome", "throttled").counter().count() == 1
+        registry.get("ping.throttle.feedback").tag("signal", "success").counter().count() == 1
+        registry.get("ping.throttle.feedback").tag("signal", "rejected").counter().count() == 1
+        registry.get("ping.throttle.rate").gauge().value() == 1
+        registry.get("ping.throttle.blocked").gauge().value() == 3
+    }
+
+    def "should parse Retry-After seconds and HTTP dates"() {
+        expect:
+        AdaptiveThrottle.parseRetryAfter("3") == Duration.ofSeconds(3)
+        AdaptiveThrottle.parseRetryAfter(" -1 ") == Duration.ZERO
+        AdaptiveThrottle.parseRetryAfter(null) == null
+        AdaptiveThrottle.parseRetryAfter("soon") == null
+        AdaptiveThrottle.parseRetryAfter(DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().minusHours(1))) == Duration.ZERO
+        AdaptiveThrottle.parseRetryAfter(DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().plusMinutes(1))).seconds >= 55
+    }
+
+    def "should reject invalid settings"() {
+        when:
+        throttle(minRate, maxRate, 1, factor)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        minRate | maxRate | factor
+        0       | 10      | 0.5
+        5       | 1       | 0.5
+        1       | 10      | 1
+    }
+}
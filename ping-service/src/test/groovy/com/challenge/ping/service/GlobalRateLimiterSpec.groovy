@@ -1,5 +1,8 @@
 package com.challenge.ping.service
 
+import com.challenge.ping.ratelimit.RateLimitAlgorithm
+import com.challenge.ping.ratelimit.RateLimiterBackend
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import spock.lang.Specification
 import java.time.Duration
 import java.nio.channels.FileChannel
@@ -13,6 +16,7 @@ class GlobalRateLimiterSpec extends Specification {
     def cleanup() {
         // 每个测试后清理文件
         new File("ping-rate.data").delete()
+        new File(".").listFiles({ f -> f.name ==~ /ping-rate-.*\.mmap/ } as FileFilter).each { it.delete() }
     }
     
     def "should create rate limiter with default constructor"() {
@@ -175,4 +179,103 @@ class GlobalRateLimiterSpec extends Specification {
         1         | Duration.ofMillis(-1)
     }
     
-} 
\ No newline at end of file
+    def "should enforce the same limit with the mmap backend"() {
+        given:
+        def rateLimiter = new GlobalRateLimiter(2, Duration.ofSeconds(1), RateLimiterBackend.Type.MMAP)
+        
+        when:
+        def results = (1..3).collect { rateLimiter.tryAcquire() }
+        
+        then:
+        results == [true, true, false]
+        !new File("ping-rate.data").exists()
+        
+        cleanup:
+        rateLimiter.cleanup()
+    }
+    
+    def "should support every algorithm on the shared memory backends"() {
+        given:
+        def rateLimiter = new GlobalRateLimiter(1, Duration.ofSeconds(1), backend, algorithm)
+        
+        expect:
+        rateLimiter.tryAcquire()
+        !rateLimiter.tryAcquire()
+        
+        cleanup:
+        rateLimiter.cleanup()
+        
+        where:
+        [backend, algorithm] << [
+            [RateLimiterBackend.Type.MMAP, RateLimiterBackend.Type.MEMORY],
+            RateLimitAlgorithm.Type.values()
+        ].combinations()
+    }
+    
+    def "should reject non fixed-window algorithms on the file-lock backend"() {
+        when:
+        new GlobalRateLimiter(1, Duration.ofSeconds(1), RateLimiterBackend.Type.FILE_LOCK, RateLimitAlgorithm.Type.GCRA)
+        
+        then:
+        thrown(IllegalArgumentException)
+    }
+    
+    def "should delay acquire until the reserved permit instead of rejecting"() {
+        given:
+        def rateLimiter = new GlobalRateLimiter(1, Duration.ofMillis(200),
+            RateLimiterBackend.Type.MEMORY, RateLimitAlgorithm.Type.GCRA)
+        rateLimiter.tryAcquire()
+        
+        when:
+        def start = System.nanoTime()
+        def acquired = rateLimiter.acquire(Duration.ofSeconds(1)).block()
+        def elapsedMillis = (System.nanoTime() - start) / 1_000_000
+        
+        then:
+        acquired
+        elapsedMillis >= 100
+    }
+    
+    def "should emit false when the next permit is beyond max wait"() {
+        given:
+        def rateLimiter = new GlobalRateLimiter(1, Duration.ofSeconds(10),
+            RateLimiterBackend.Type.MEMORY, RateLimitAlgorithm.Type.TOKEN_BUCKET)
+        rateLimiter.tryAcquire()
+        
+        expect:
+        rateLimiter.acquire(Duration.ofMillis(100)).block() == false
+    }
+    
+    def "should emit true immediately when a permit is available"() {
+        given:
+        def rateLimiter = new GlobalRateLimiter(1, Duration.ofSeconds(1))
+        
+        expect:
+        rateLimiter.acquire(Duration.ofSeconds(1)).block()
+        
+        cleanup:
+        rateLimiter.cleanup()
+    }
+    
+    def "should time limiter decisions by outcome"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        def rateLimiter = new GlobalRateLimiter(1, Duration.ofMillis(200),
+            RateLimiterBackend.Type.MEMORY, RateLimitAlgorithm.Type.GCRA)
+        rateLimiter.bindTo(registry)
+        
+        when:
+        rateLimiter.tryAcquire()
+        rateLimiter.tryAcquire()
+        rateLimiter.acquire(Duration.ofSeconds(1)).block()
+        
+        then:
+        def acquire = { outcome ->
+            registry.get("ping.limiter.acquire")
+                .tags("backend", "memory", "algorithm", "gcra", "outcome", outcome).timer().count()
+        }
+        acquire("acquired") == 1
+        acquire("rejected") == 1
+        acquire("delayed") == 1
+    }
+}
@@ -0,0 +1,433 @@
+package com.challenge.ping.service
+
+import com.challenge.common.codec.RecordCodec
+import com.challenge.common.trace.TraceClock
+import com.challenge.ping.model.PingRecord
+import com.challenge.ping.spill.SpillLog
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.apache.rocketmq.client.producer.SendCallback
+import org.apache.rocketmq.client.producer.SendResult
+import org.apache.rocketmq.spring.core.RocketMQTemplate
+import org.springframework.beans.factory.ObjectProvider
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+class PingMessageServiceSpec extends Specification {
+
+    RocketMQTemplate rocketMQTemplate
+    PingMessageService messageService
+    List<List> batches
+
+    @TempDir
+    Path spillDirectory
+
+    def setup() {
+        rocketMQTemplate = Mock(RocketMQTemplate)
+        messageService = new PingMessageService(rocketMQTemplate)
+        batches = new CopyOnWriteArrayList<>()
+    }
+
+    def cleanup() {
+        messageService.shutdown()
+    }
+
+    def record(String requestId) {
+        new PingRecord(message: "World", status: 200, requestId: requestId)
+    }
+
+    def "should group records published together into one batch"() {
+        given:
+        messageService.linger = Duration.ofMillis(200)
+        rocketMQTemplate.asyncSend("PING_TOPIC", _, _, _) >> { String topic, Collection messages, SendCallback callback, long timeout ->
+            batches << messages.collect { it.payload.requestId }
+            callback.onSuccess(new SendResult())
+        }
+
+        when:
+        Mono.when((1..5).collect { messageService.publish(record("id-$it")) }).block(Duration.ofSeconds(5))
+
+        then:
+        batches == [["id-1", "id-2", "id-3", "id-4", "id-5"]]
+    }
+
+    def "should flush as soon as a batch is full"() {
+        given:
+        messageService.batchSize = 2
+        messageService.linger = Duration.ofSeconds(10)
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { String topic, Collection messages, SendCallback callback, long timeout ->
+            batches << messages.size()
+            callback.onSuccess(new SendResult())
+        }
+
+        when:
+        Mono.when((1..4).collect { messageService.publish(record("id-$it")) }).block(Duration.ofSeconds(5))
+
+        then:
+        batches == [2, 2]
+    }
+
+    def "should create the producer at startup unless it is lazy"() {
+        given:
+        // 发送线程启动时也会取用生产者，只检查 start() 所在线程是否创建了生产者
+        def callers = new CopyOnWriteArrayList<String>()
+        def provider = Stub(ObjectProvider) {
+            getObject() >> { callers << Thread.currentThread().name; rocketMQTemplate }
+        }
+        def service = new PingMessageService(provider)
+        service.lazyProducer = lazy
+
+        when:
+        service.start()
+
+        then:
+        callers.contains(Thread.currentThread().name) == !lazy
+
+        cleanup:
+        service.shutdown()
+
+        where:
+        lazy << [false, true]
+    }
+
+    def "should create a lazy producer on the sender thread once the context is refreshed"() {
+        given:
+        def threads = new CopyOnWriteArrayList<String>()
+        def provider = Mock(ObjectProvider) {
+            getObject() >> {
+                threads << Thread.currentThread().name
+                rocketMQTemplate
+            }
+        }
+        def service = new PingMessageService(provider)
+        service.lazyProducer = true
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { String topic, Collection messages, SendCallback callback, long timeout ->
+            callback.onSuccess(new SendResult())
+        }
+
+        when:
+        service.start()
+        service.onContextRefreshed()
+        service.publish(record("id-1")).block(Duration.ofSeconds(5))
+
+        then:
+        !threads.isEmpty()
+        threads.every { it == "ping-mq-flusher" }
+
+        cleanup:
+        service.shutdown()
+    }
+
+    def "should set the request id as message key"() {
+        given:
+        def keys = []
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { String topic, Collection messages, SendCallback callback, long timeout ->
+            keys.addAll(messages.collect { it.headers.get("KEYS") })
+            callback.onSuccess(new SendResult())
+        }
+
+        when:
+        messageService.publish(record("id-1")).block(Duration.ofSeconds(5))
+
+        then:
+        keys == ["id-1"]
+    }
+
+    def "should carry the trace timestamps as message properties"() {
+        given:
+        def headers = []
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { String topic, Collection messages, SendCallback callback, long timeout ->
+            headers.addAll(messages*.headers)
+            callback.onSuccess(new SendResult())
+        }
+        def traced = record("id-1")
+        traced.sentAtMicros = 1_000
+        traced.respondedAtMicros = 2_000
+        traced.createdAtMicros = 3_000
+        def before = TraceClock.nowMicros()
+
+        when:
+        Mono.when(messageService.publish(traced), messageService.publish(record("id-2"))).block(Duration.ofSeconds(5))
+
+        then:
+        def (first, second) = headers.sort { it.get("KEYS") }
+        first.get(TraceClock.SENT_AT) == 1_000L
+        first.get(TraceClock.RESPONDED_AT) == 2_000L
+        first.get(TraceClock.CREATED_AT) == 3_000L
+        first.get(TraceClock.PUBLISHED_AT) >= before
+        !second.containsKey(TraceClock.SENT_AT)
+        !second.containsKey(TraceClock.CREATED_AT)
+        second.get(TraceClock.PUBLISHED_AT) >= before
+    }
+
+    def "should fail every record of a batch the broker rejects"() {
+        given:
+        messageService.linger = Duration.ofMillis(200)
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { String topic, Collection messages, SendCallback callback, long timeout ->
+            callback.onException(new RuntimeException("broker down"))
+        }
+
+        when:
+        def results = (1..3).collect {
+            messageService.publish(record("id-$it")).then(Mono.just("ok")).onErrorResume { Mono.just(it.message) }
+        }.collect { it.block(Duration.ofSeconds(5)) }
+
+        then:
+        results == ["消息发送失败"] * 3
+    }
+
+    def "should reject records without blocking when the queue is full"() {
+        given: "Broker 一直不确认，在途批次和队列都被占满"
+        messageService.queueCapacity = 1
+        messageService.maxInFlightBatches = 1
+        messageService.batchSize = 1
+        messageService.linger = Duration.ZERO
+        messageService.sendTimeout = Duration.ofMillis(100)
+        def sent = new CountDownLatch(1)
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { sent.countDown() }
+        messageService.publish(record("in-flight")).subscribe()
+        assert sent.await(5, TimeUnit.SECONDS)
+        // 等待发送线程取走下一条记录并阻塞在在途批次上限上
+        messageService.publish(record("waiting")).subscribe()
+        while (!messageService.queue.isEmpty()) {
+            Thread.sleep(10)
+        }
+        messageService.publish(record("queued")).subscribe()
+
+        when:
+        def start = System.nanoTime()
+        messageService.publish(record("overflow")).block(Duration.ofSeconds(5))
+
+        then:
+        thrown(RejectedExecutionException)
+        System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1)
+    }
+
+    def "should fail the batch when the template throws synchronously"() {
+        given:
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { throw new IllegalStateException("producer not started") }
+
+        when:
+        messageService.publish(record("id-1")).block(Duration.ofSeconds(5))
+
+        then:
+        def e = thrown(RuntimeException)
+        e.message == "消息发送失败"
+        e.cause instanceof IllegalStateException
+    }
+
+    def "should reject records after shutdown"() {
+        given:
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { String topic, Collection messages, SendCallback callback, long timeout ->
+            callback.onSuccess(new SendResult())
+        }
+        messageService.publish(record("id-1")).block(Duration.ofSeconds(5))
+        messageService.shutdown()
+
+        when:
+        messageService.publish(record("id-2")).block(Duration.ofSeconds(5))
+
+        then:
+        thrown(RejectedExecutionException)
+    }
+
+    def "should complete queued records when the sender is interrupted"() {
+        given:
+        def spillLog = spilled ? spillLog() : null
+        messageService.batchSize = 1
+        messageService.maxInFlightBatches = 1
+        messageService.linger = Duration.ZERO
+        messageService.sendTimeout = Duration.ofMillis(100)
+        def sent = new CountDownLatch(1)
+        // 第一批一直等待 Broker 确认，发送线程卡在在途批次上限处，其余记录留在队列中
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { sent.countDown() }
+        messageService.publish(record("id-1")).subscribe()
+        sent.await(5, TimeUnit.SECONDS)
+        def results = (2..4).collect { messageService.publish(record("id-$it")).toFuture() }
+
+        when:
+        messageService.shutdown()
+
+        then:
+        results.every { it.isDone() }
+        results.count { it.isCompletedExceptionally() } == (spilled ? 0 : 3)
+        !spilled || spillLog.pending() == 3
+
+        where:
+        spilled << [true, false]
+    }
+
+    def "should record publish latency, batch sizes and failures"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        messageService.bindTo(registry)
+        messageService.linger = Duration.ofMillis(200)
+        def sends = 0
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { String topic, Collection messages, SendCallback callback, long timeout ->
+            sends++ == 0 ? callback.onSuccess(new SendResult()) : callback.onException(new RuntimeException("broker down"))
+        }
+
+        when:
+        Mono.when((1..3).collect { messageService.publish(record("ok-$it")) }).block(Duration.ofSeconds(5))
+        messageService.publish(record("failed")).onErrorResume { Mono.empty() }.block(Duration.ofSeconds(5))
+
+        then:
+        registry.get("ping.mq.publish").tag("outcome", "success").timer().count() == 3
+        registry.get("ping.mq.publish").tag("outcome", "failure").timer().count() == 1
+        registry.get("ping.mq.publish.failures").tag("reason", "send_failed").counter().count() == 1
+        registry.get("ping.mq.batch.size").summary().count() == 2
+        registry.get("ping.mq.batch.size").summary().totalAmount() == 4
+        registry.get("ping.mq.queue.size").gauge().value() == 0
+        registry.get("ping.mq.batches.in.flight").gauge().value() == 0
+    }
+
+    def spillLog(int maxSegments = 4) {
+        def spillLog = new SpillLog(spillDirectory, 4096, maxSegments).open()
+        messageService.spillLog = spillLog
+        messageService.replayBackoff = Duration.ofMillis(20)
+        messageService.maxReplayBackoff = Duration.ofMillis(50)
+        spillLog
+    }
+
+    def "should spill records the broker rejects and complete them"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        def spillLog = spillLog()
+        messageService.bindTo(registry)
+        messageService.linger = Duration.ofMillis(200)
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { String topic, Collection messages, SendCallback callback, long timeout ->
+            callback.onException(new RuntimeException("broker down"))
+        }
+        rocketMQTemplate.syncSend(_, _, _) >> { throw new IllegalStateException("broker down") }
+
+        when:
+        Mono.when((1..3).collect { messageService.publish(record("id-$it")) }).block(Duration.ofSeconds(5))
+
+        then:
+        spillLog.pending() == 3
+        registry.get("ping.mq.spill.records").tag("event", "spilled").counter().count() == 3
+        registry.get("ping.mq.publish").tag("outcome", "spilled").timer().count() == 3
+        registry.get("ping.mq.spill.backlog").gauge().value() == 3
+        registry.get("ping.mq.spill.disk.usage").gauge().value() == 4096
+    }
+
+    def "should spill new records directly while a backlog exists"() {
+        given:
+        def spillLog = spillLog()
+        spillLog.append(PingMessageService.encode(record("id-0")))
+        rocketMQTemplate.syncSend(_, _, _) >> { throw new IllegalStateException("broker down") }
+
+        when:
+        messageService.publish(record("id-1")).block(Duration.ofSeconds(5))
+
+        then:
+        0 * rocketMQTemplate.asyncSend(_, _, _, _)
+        spillLog.pending() == 2
+    }
+
+    def "should replay spilled records in order once the broker recovers"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        def spillLog = spillLog()
+        messageService.bindTo(registry)
+        messageService.linger = Duration.ofMillis(200)
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { String topic, Collection messages, SendCallback callback, long timeout ->
+            callback.onException(new RuntimeException("broker down"))
+        }
+        def replayed = new CopyOnWriteArrayList<String>()
+        def attempts = 0
+        rocketMQTemplate.syncSend("PING_TOPIC", _, _) >> { String topic, Collection messages, long timeout ->
+            if (attempts++ < 2) {
+                throw new IllegalStateException("broker down")
+            }
+            replayed.addAll(messages.collect { it.payload.requestId })
+            new SendResult()
+        }
+
+        when:
+        Mono.when((1..3).collect { messageService.publish(record("id-$it")) }).block(Duration.ofSeconds(5))
+        def deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (spillLog.pending() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10)
+        }
+
+        then:
+        replayed == ["id-1", "id-2", "id-3"]
+        spillLog.pending() == 0
+        registry.get("ping.mq.spill.records").tag("event", "replayed").counter().count() == 3
+    }
+
+    def "should keep the creation time of spilled records in the record codec"() {
+        given:
+        def created = record("id-1")
+        created.createdAtMicros = 1_000
+        def spilled = [PingMessageService.encode(created), RecordCodec.encode(new RecordCodec.Fields("id-2", null, 200, "World"))]
+
+        when:
+        def decoded = spilled.collect { PingMessageService.decode(it) }
+
+        then:
+        spilled[0] == RecordCodec.encode(new RecordCodec.Fields("id-1", null, 200, "World", 1_000L))
+        decoded*.requestId == ["id-1", "id-2"]
+        decoded*.createdAtMicros == [1_000L, null]
+    }
+
+    def "should skip corrupted spilled records and still drain the backlog"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        def spillLog = spillLog()
+        messageService.bindTo(registry)
+        (1..2).each { spillLog.append(PingMessageService.encode(record("id-$it"))) }
+        // 破坏最后一条记录的长度字段
+        FileChannel.open(spillDirectory.resolve(SpillLog.name(1)), StandardOpenOption.WRITE).withCloseable { channel ->
+            channel.write(ByteBuffer.allocate(4).putInt(0, -1), SpillLog.HEADER_SIZE + SpillLog.RECORD_HEADER_SIZE
+                + PingMessageService.encode(record("id-1")).length)
+        }
+        def replayed = new CopyOnWriteArrayList<String>()
+        rocketMQTemplate.syncSend("PING_TOPIC", _, _) >> { String topic, Collection messages, long timeout ->
+            replayed.addAll(messages.collect { it.payload.requestId })
+            new SendResult()
+        }
+
+        when:
+        messageService.start()
+        def deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (spillLog.pending() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10)
+        }
+
+        then:
+        replayed == ["id-1"]
+        spillLog.pending() == 0
+        registry.get("ping.mq.spill.records").tag("event", "corrupted").counter().count() == 1
+    }
+
+    def "should fail records when the spill log is full"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        def spillLog = spillLog(1)
+        messageService.bindTo(registry)
+        messageService.batchSize = 1
+        // 占满唯一的段，并留下积压让新记录直接落盘
+        while (spillLog.append(PingMessageService.encode(record("id-0")))) {
+        }
+        rocketMQTemplate.syncSend(_, _, _) >> { throw new IllegalStateException("broker down") }
+
+        when:
+        messageService.publish(record("id-1")).block(Duration.ofSeconds(5))
+
+        then:
+        thrown(RejectedExecutionException)
+        registry.get("ping.mq.publish.failures").tag("reason", "spill_full").counter().count() == 1
+    }
+}
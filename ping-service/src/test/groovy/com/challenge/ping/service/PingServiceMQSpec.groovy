@@ -10,6 +10,7 @@ import reactor.core.publisher.Mono
 import com.challenge.ping.PingApplication
 import org.springframework.http.ResponseEntity
 import org.springframework.http.HttpStatus
+import org.apache.rocketmq.client.producer.SendResult
 import org.apache.rocketmq.spring.core.RocketMQTemplate
 
 class PingServiceMQSpec extends Specification {
@@ -32,6 +33,10 @@ class PingServiceMQSpec extends Specification {
         
         pingService = new PingService(webClientBuilder, globalRateLimiter, "http://localhost:8081", pingMessageService)
     }
+    
+    def cleanup() {
+        pingMessageService.shutdown()
+    }
 
     def "should send message to MQ for successful ping"() {
         given:
@@ -54,12 +59,13 @@ class PingServiceMQSpec extends Specification {
         def result = pingService.sendPing().block()
 
         then:
-        1 * rocketMQTemplate.send("PING_TOPIC", { message ->
+        1 * rocketMQTemplate.asyncSend("PING_TOPIC", { messages ->
+            def message = messages[0]
             assert message.payload.status == 200
             assert message.payload.message == "World"
             assert message.headers.get("KEYS") != null
             true
-        })
+        }, _, _) >> { args -> args[2].onSuccess(new SendResult()) }
         result.status == PingService.PingStatus.SUCCESS
         result.response == "World"
     }
@@ -72,12 +78,13 @@ class PingServiceMQSpec extends Specification {
         def result = pingService.sendPing().block()
 
         then:
-        1 * rocketMQTemplate.send("PING_TOPIC", { message ->
+        1 * rocketMQTemplate.asyncSend("PING_TOPIC", { messages ->
+            def message = messages[0]
             assert message.payload.status == 429
             assert message.payload.message == PingService.PingStatus.RATE_LIMITED_LOCAL.getDescription()
             assert message.headers.get("KEYS") != null
             true
-        })
+        }, _, _) >> { args -> args[2].onSuccess(new SendResult()) }
         result.status == PingService.PingStatus.RATE_LIMITED_LOCAL
         result.response == PingService.PingStatus.RATE_LIMITED_LOCAL.getDescription()
     }
@@ -99,7 +106,7 @@ class PingServiceMQSpec extends Specification {
         responseSpec.onStatus(_, _) >> responseSpec
         responseSpec.toEntity(String) >> Mono.just(response)
         
-        rocketMQTemplate.send(_, _) >> { throw new RuntimeException("Failed to send message") }
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { throw new RuntimeException("Failed to send message") }
 
         when:
         pingService.sendPing().block()
@@ -113,7 +120,7 @@ class PingServiceMQSpec extends Specification {
         globalRateLimiter.tryAcquire() >> false
         
         // 模拟 RocketMQ 发送消息失败
-        rocketMQTemplate.send(_, _) >> { throw new RuntimeException("Failed to send message") }
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { throw new RuntimeException("Failed to send message") }
 
         when:
         pingService.sendPing().block()
@@ -145,7 +152,7 @@ class PingServiceMQSpec extends Specification {
         )
         
         // 模拟 RocketMQ 发送消息失败
-        rocketMQTemplate.send(_, _) >> { throw new RuntimeException("Failed to send message") }
+        rocketMQTemplate.asyncSend(_, _, _, _) >> { throw new RuntimeException("Failed to send message") }
 
         when:
         pingService.sendPing().block()
@@ -4,14 +4,26 @@ import spock.lang.Specification
 import org.springframework.test.context.ContextConfiguration
 import org.springframework.boot.test.context.SpringBootTest
 import org.springframework.web.reactive.function.client.WebClient
+import org.springframework.web.reactive.function.client.WebClientRequestException
 import org.springframework.web.reactive.function.client.WebClientResponseException
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpMethod
+import io.netty.handler.timeout.ReadTimeoutException
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeoutException
 import java.time.Duration
+import reactor.core.publisher.Hooks
 import reactor.core.publisher.Mono
 import com.challenge.ping.PingApplication
 import org.springframework.http.ResponseEntity
 import org.springframework.http.HttpStatus
 import java.time.LocalDateTime
+import com.challenge.common.id.RequestIdGenerator
 import com.challenge.ping.model.PingRecord
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import com.challenge.common.audit.AuditEventType
+import com.challenge.common.audit.AuditJournal
+import com.challenge.common.stream.PingStreamProtocol
 
 class PingServiceSpec extends Specification {
     
@@ -24,7 +36,9 @@ class PingServiceSpec extends Specification {
         def webClientBuilder = Mock(WebClient.Builder)
         webClient = Mock(WebClient)
         globalRateLimiter = Mock(GlobalRateLimiter)
-        pingMessageService = Mock(PingMessageService)
+        pingMessageService = Mock(PingMessageService) {
+            publish(_) >> Mono.empty()
+        }
 
         webClientBuilder.baseUrl(_) >> webClientBuilder
         webClientBuilder.build() >> webClient
@@ -61,6 +75,7 @@ class PingServiceSpec extends Specification {
         then:
         result.status == PingService.PingStatus.SUCCESS
         result.response == "World"
+        1 * pingMessageService.publish({ it.sentAtMicros != null && it.respondedAtMicros >= it.sentAtMicros }) >> Mono.empty()
     }
     
     def "should handle local rate limiting"() {
@@ -73,6 +88,7 @@ class PingServiceSpec extends Specification {
         then:
         result.status == PingService.PingStatus.RATE_LIMITED_LOCAL
         result.response == PingService.PingStatus.RATE_LIMITED_LOCAL.getDescription()
+        1 * pingMessageService.publish({ it.sentAtMicros == null && it.respondedAtMicros == null && it.createdAtMicros != null }) >> Mono.empty()
     }
     
     def "should handle remote rate limiting"() {
@@ -105,6 +121,212 @@ class PingServiceSpec extends Specification {
         result.response == PingService.PingStatus.RATE_LIMITED_REMOTE.getDescription()
     }
     
+    def "should record pong round trips by status and pings by result"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        pingService.bindTo(registry)
+        def requestHeadersUriSpec = Mock(WebClient.RequestHeadersUriSpec)
+        def requestHeadersSpec = Mock(WebClient.RequestHeadersSpec)
+        def responseSpec = Mock(WebClient.ResponseSpec)
+        def response = Mock(ResponseEntity)
+        response.getStatusCode() >> HttpStatus.OK
+        response.getBody() >> "World"
+        globalRateLimiter.tryAcquire() >>> [true, true, false]
+
+        webClient.get() >> requestHeadersUriSpec
+        requestHeadersUriSpec.uri("/api/pong") >> requestHeadersSpec
+        requestHeadersSpec.retrieve() >> responseSpec
+        responseSpec.onStatus(_, _) >> responseSpec
+        responseSpec.toEntity(String) >>> [
+            Mono.just(response),
+            Mono.error(WebClientResponseException.create(429, "Too Many Requests", null, null, null))
+        ]
+
+        when:
+        3.times { pingService.sendPing().block() }
+
+        then:
+        registry.get("ping.pong.requests").tags("status", "200", "exception", "none").timer().count() == 1
+        registry.get("ping.pong.requests").tag("status", "429").timer().count() == 1
+        registry.get("ping.requests").tag("result", "SUCCESS").timer().count() == 1
+        registry.get("ping.requests").tag("result", "RATE_LIMITED_REMOTE").timer().count() == 1
+        registry.get("ping.requests").tag("result", "RATE_LIMITED_LOCAL").timer().count() == 1
+        registry.get("ping.requests.active").gauge().value() == 0
+        registry.get("ping.pong.requests.active").gauge().value() == 0
+        registry.get("ping.startup.first.success").gauge().value() > 0
+    }
+
+    def "should tag connection failures as IO_ERROR"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        pingService.bindTo(registry)
+        def requestHeadersUriSpec = Mock(WebClient.RequestHeadersUriSpec)
+        def requestHeadersSpec = Mock(WebClient.RequestHeadersSpec)
+        def responseSpec = Mock(WebClient.ResponseSpec)
+        globalRateLimiter.tryAcquire() >> true
+
+        webClient.get() >> requestHeadersUriSpec
+        requestHeadersUriSpec.uri("/api/pong") >> requestHeadersSpec
+        requestHeadersSpec.retrieve() >> responseSpec
+        responseSpec.onStatus(_, _) >> responseSpec
+        responseSpec.toEntity(String) >> Mono.error(new IOException("Connection refused"))
+
+        when:
+        pingService.sendPing().block()
+
+        then:
+        registry.get("ping.pong.requests").tags("status", "IO_ERROR", "exception", "IOException").timer().count() == 1
+        Double.isNaN(registry.get("ping.startup.first.success").gauge().value())
+    }
+
+    def "should write sent and result events to the audit journal"() {
+        given:
+        def journal = Mock(AuditJournal)
+        pingService.auditJournal = journal
+        globalRateLimiter.tryAcquire() >> false
+        String requestId = null
+
+        when:
+        pingService.sendPing().block()
+
+        then:
+        1 * journal.append(AuditEventType.PING_SENT, 0, _, null, 0) >> { args -> requestId = args[2]; true }
+
+        then:
+        1 * journal.append(AuditEventType.PING_RESULT, 429, { it == requestId }, "RATE_LIMITED_LOCAL", { it > 0 })
+    }
+
+    def "should suppress pings while the adaptive throttle holds back without publishing them"() {
+        given:
+        def throttle = Mock(AdaptiveThrottle)
+        def journal = Mock(AuditJournal)
+        def registry = new SimpleMeterRegistry()
+        pingService.adaptiveThrottle = throttle
+        pingService.auditJournal = journal
+        pingService.bindTo(registry)
+        throttle.tryAcquire() >> false
+
+        when:
+        def result = pingService.sendPing().block()
+
+        then:
+        result.status == PingService.PingStatus.THROTTLED
+        result.response == PingService.PingStatus.THROTTLED.getDescription()
+        0 * globalRateLimiter.tryAcquire()
+        0 * webClient.get()
+        0 * pingMessageService.publish(_)
+        1 * journal.append(AuditEventType.PING_RESULT, 429, _, "THROTTLED", { it > 0 })
+        registry.get("ping.requests").tag("result", "THROTTLED").timer().count() == 1
+    }
+
+    def "should feed pong responses back into the adaptive throttle"() {
+        given:
+        def throttle = Mock(AdaptiveThrottle)
+        pingService.adaptiveThrottle = throttle
+        throttle.tryAcquire() >> true
+        globalRateLimiter.tryAcquire() >> true
+        def requestHeadersUriSpec = Mock(WebClient.RequestHeadersUriSpec)
+        def requestHeadersSpec = Mock(WebClient.RequestHeadersSpec)
+        def responseSpec = Mock(WebClient.ResponseSpec)
+        webClient.get() >> requestHeadersUriSpec
+        requestHeadersUriSpec.uri("/api/pong") >> requestHeadersSpec
+        requestHeadersSpec.retrieve() >> responseSpec
+        responseSpec.onStatus(_, _) >> responseSpec
+        responseSpec.toEntity(String) >> response
+
+        when:
+        pingService.sendPing().block()
+
+        then:
+        successes * throttle.onSuccess()
+        rejections * throttle.onRejected(retryAfter)
+        timeouts * throttle.onTimeout()
+
+        where:
+        response                                      | successes | rejections | timeouts | retryAfter
+        Mono.just(ResponseEntity.ok("World"))         | 1         | 0          | 0        | null
+        Mono.error(tooManyRequests("2"))              | 0         | 1          | 0        | Duration.ofSeconds(2)
+        Mono.error(tooManyRequests(null))             | 0         | 1          | 0        | null
+        Mono.error(new WebClientRequestException(ReadTimeoutException.INSTANCE, HttpMethod.GET,
+            URI.create("http://pong/api/pong"), new HttpHeaders()))     | 0 | 0 | 1 | null
+        Mono.error(new WebClientRequestException(new IOException("Connection refused"), HttpMethod.GET,
+            URI.create("http://pong/api/pong"), new HttpHeaders()))     | 0 | 0 | 0 | null
+    }
+
+    private static WebClientResponseException tooManyRequests(String retryAfter) {
+        def headers = new HttpHeaders()
+        if (retryAfter != null) {
+            headers.set(HttpHeaders.RETRY_AFTER, retryAfter)
+        }
+        WebClientResponseException.create(429, "Too Many Requests", headers, new byte[0], null)
+    }
+
+    def "should send pings over the stream transport when it is enabled"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        pingService.bindTo(registry)
+        def throttle = Mock(AdaptiveThrottle)
+        def streamClient = Mock(PongStreamClient)
+        pingService.adaptiveThrottle = throttle
+        pingService.pongStreamClient = streamClient
+        throttle.tryAcquire() >> true
+        globalRateLimiter.tryAcquire() >> true
+        streamClient.isEnabled() >> true
+        streamClient.ping() >> verdict
+
+        when:
+        def result = pingService.sendPing().block()
+
+        then:
+        result.status == status
+        0 * webClient.get()
+        1 * pingMessageService.publish({ it.status == recordStatus && it.sentAtMicros <= it.respondedAtMicros }) >> Mono.empty()
+        successes * throttle.onSuccess()
+        rejections * throttle.onRejected(Duration.ofSeconds(3))
+        timeouts * throttle.onTimeout()
+        registry.get("ping.pong.requests").tag("status", meterStatus).timer().count() == 1
+
+        where:
+        verdict                                                                      | status                                  | recordStatus | meterStatus | successes | rejections | timeouts
+        Mono.just(new PingStreamProtocol.Verdict(1, 200, 0, "World"))                | PingService.PingStatus.SUCCESS          | 200          | "200"       | 1         | 0          | 0
+        Mono.just(new PingStreamProtocol.Verdict(1, 429, 3, "Rate limited"))         | PingService.PingStatus.RATE_LIMITED_REMOTE | 429       | "429"       | 0         | 1          | 0
+        Mono.just(new PingStreamProtocol.Verdict(1, 500, 0, "Unknown error"))        | PingService.PingStatus.RATE_LIMITED_REMOTE | 429       | "500"       | 0         | 0          | 0
+        Mono.error(new TimeoutException("no verdict"))                               | PingService.PingStatus.TIMEOUT          | 504          | "TIMEOUT"   | 0         | 0          | 1
+        Mono.error(new IOException("Pong stream closed"))                            | PingService.PingStatus.RATE_LIMITED_REMOTE | 429       | "IO_ERROR"  | 0         | 0          | 0
+    }
+
+    def "should report response timeouts as a distinct outcome"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        pingService.bindTo(registry)
+        def requestHeadersUriSpec = Mock(WebClient.RequestHeadersUriSpec)
+        def requestHeadersSpec = Mock(WebClient.RequestHeadersSpec)
+        def responseSpec = Mock(WebClient.ResponseSpec)
+        globalRateLimiter.tryAcquire() >> true
+        
+        webClient.get() >> requestHeadersUriSpec
+        requestHeadersUriSpec.uri("/api/pong") >> requestHeadersSpec
+        requestHeadersSpec.retrieve() >> responseSpec
+        responseSpec.onStatus(_, _) >> responseSpec
+        responseSpec.toEntity(String) >> Mono.error(error)
+
+        when:
+        def result = pingService.sendPing().block()
+
+        then:
+        result.status == PingService.PingStatus.TIMEOUT
+        result.response == PingService.PingStatus.TIMEOUT.getDescription()
+        1 * pingMessageService.publish({ it.status == 504 }) >> Mono.empty()
+        registry.get("ping.pong.requests").tag("status", "TIMEOUT").timer().count() == 1
+
+        where:
+        error << [
+            new WebClientRequestException(ReadTimeoutException.INSTANCE, HttpMethod.GET, URI.create("http://pong/api/pong"), new HttpHeaders()),
+            new WebClientRequestException(new TimeoutException("Pool#acquire has been pending for more than 1s"),
+                HttpMethod.GET, URI.create("http://pong/api/pong"), new HttpHeaders())
+        ]
+    }
+    
     def "should handle other remote errors"() {
         given:
         def requestHeadersUriSpec = Mock(WebClient.RequestHeadersUriSpec)
@@ -150,7 +372,41 @@ class PingServiceSpec extends Specification {
         Thread.sleep(100) // 给一点时间让异步操作完成
 
         then:
-        1 * pingMessageService.sendPingMessage(_)
+        1 * pingMessageService.publish(_) >> Mono.empty()
+    }
+
+    def "should count a periodic ping whose record cannot be published as an error"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        pingService.bindTo(registry)
+        globalRateLimiter.tryAcquire() >> false
+        // 没有错误回调时 Reactor 把错误交给 onErrorDropped
+        def dropped = []
+        Hooks.onErrorDropped { dropped << it }
+
+        when:
+        pingService.schedulePeriodicPing()
+
+        then:
+        1 * pingMessageService.publish(_) >> Mono.error(new RejectedExecutionException("落盘日志已满"))
+        registry.get("ping.requests").tag("result", "ERROR").timer().count() == 1
+        dropped.isEmpty()
+
+        cleanup:
+        Hooks.resetOnErrorDropped()
+    }
+
+    def "should skip the periodic ping in load mode"() {
+        given:
+        pingService.loadMode = true
+
+        when:
+        pingService.schedulePeriodicPing()
+
+        then:
+        0 * globalRateLimiter.tryAcquire()
+        0 * webClient.get()
+        0 * pingMessageService.publish(_)
     }
 
     def "should handle null response body"() {
@@ -257,10 +513,11 @@ class PingServiceSpec extends Specification {
         def result = pingService.sendPing().block()
 
         then:
-        1 * pingMessageService.sendPingMessage({ record ->
+        1 * pingMessageService.publish({ record ->
             assert record.requestId != null
+            assert RequestIdGenerator.timestampOf(record.requestId) > 0
             true
-        })
+        }) >> Mono.empty()
         result.status == PingService.PingStatus.SUCCESS
     }
 
@@ -343,4 +600,43 @@ class PingServiceSpec extends Specification {
         baseRecord != differentTimestamp
         baseRecord != differentRequestId
     }
-} 
\ No newline at end of file
+
+    def "should wait for a reserved permit when max wait is configured"() {
+        given:
+        def requestHeadersUriSpec = Mock(WebClient.RequestHeadersUriSpec)
+        def requestHeadersSpec = Mock(WebClient.RequestHeadersSpec)
+        def responseSpec = Mock(WebClient.ResponseSpec)
+        def response = Mock(ResponseEntity)
+        pingService.maxWait = Duration.ofSeconds(1)
+        
+        response.getStatusCode() >> HttpStatus.OK
+        response.getBody() >> "World"
+        
+        webClient.get() >> requestHeadersUriSpec
+        requestHeadersUriSpec.uri("/api/pong") >> requestHeadersSpec
+        requestHeadersSpec.retrieve() >> responseSpec
+        responseSpec.onStatus(_, _) >> responseSpec
+        responseSpec.toEntity(String) >> Mono.just(response)
+
+        when:
+        def result = pingService.sendPing().block()
+
+        then:
+        1 * globalRateLimiter.acquire(Duration.ofSeconds(1)) >> Mono.delay(Duration.ofMillis(50)).thenReturn(true)
+        0 * globalRateLimiter.tryAcquire()
+        result.status == PingService.PingStatus.SUCCESS
+    }
+
+    def "should fall back to local rate limiting when no permit is available within max wait"() {
+        given:
+        pingService.maxWait = Duration.ofMillis(100)
+
+        when:
+        def result = pingService.sendPing().block()
+
+        then:
+        1 * globalRateLimiter.acquire(_) >> Mono.just(false)
+        0 * webClient.get()
+        result.status == PingService.PingStatus.RATE_LIMITED_LOCAL
+    }
+}
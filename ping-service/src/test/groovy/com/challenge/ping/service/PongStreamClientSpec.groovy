@@ -0,0 +1,192 @@
+package com.challenge.ping.service
+
+import com.challenge.common.stream.PingStreamProtocol
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter
+import org.springframework.web.reactive.socket.WebSocketHandler
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient
+import org.springframework.web.reactive.socket.server.support.HandshakeWebSocketService
+import org.springframework.web.server.WebHandler
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import reactor.netty.DisposableServer
+import reactor.netty.http.server.HttpServer
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+
+class PongStreamClientSpec extends Specification {
+
+    DisposableServer server
+    PongStreamClient client
+    // 模拟的 Pong：连接建立时发放的额度，以及是否回复 ping
+    int initialCredits = 8
+    boolean silent = false
+    boolean closeOnFirstPing = false
+    AtomicInteger connections = new AtomicInteger()
+    List<String> instanceIds = new CopyOnWriteArrayList<>()
+    List<String> received = new CopyOnWriteArrayList<>()
+
+    def setup() {
+        def handler = { session ->
+            int connection = connections.incrementAndGet()
+            instanceIds << session.handshakeInfo.headers.getFirst("X-Instance-Id")
+            def replies = session.receive()
+                .map { it.payloadAsText }
+                .doOnNext { received << it }
+                .takeUntil { closeOnFirstPing && connection == 1 }
+                .concatMap { text ->
+                    def ping = PingStreamProtocol.decode(text) as PingStreamProtocol.Ping
+                    if (closeOnFirstPing && connection == 1) {
+                        return Flux.empty()
+                    }
+                    silent ? Flux.empty() : Flux.just("V ${ping.seq()} 200 0 World".toString(), "N 1")
+                }
+            session.send(Flux.concat(Mono.just("N $initialCredits".toString()), replies).map(session.&textMessage))
+        } as WebSocketHandler
+        def webSocketService = new HandshakeWebSocketService()
+        def httpHandler = WebHttpHandlerBuilder
+            .webHandler({ exchange -> webSocketService.handleRequest(exchange, handler) } as WebHandler)
+            .build()
+        server = HttpServer.create().host("127.0.0.1").port(0).handle(new ReactorHttpHandlerAdapter(httpHandler)).bindNow()
+    }
+
+    def cleanup() {
+        client?.close()
+        server?.disposeNow()
+    }
+
+    def client(Map options = [:]) {
+        def port = options.port ?: server.port()
+        client = new PongStreamClient(new ReactorNettyWebSocketClient(),
+            URI.create("ws://127.0.0.1:$port${PingStreamProtocol.PATH}"), "X-Instance-Id", "ping-1",
+            options.responseTimeout ?: Duration.ofSeconds(2), options.maxPending ?: 64,
+            options.reconnectBackoff ?: Duration.ZERO)
+    }
+
+    def "should multiplex concurrent pings over one connection"() {
+        given: "首次建立连接时需要加载 WebSocket 相关的类，放宽超时时间"
+        client(responseTimeout: Duration.ofSeconds(10))
+
+        when:
+        def verdicts = Flux.range(1, 20).flatMap { client.ping() }.collectList().block(Duration.ofSeconds(15))
+
+        then:
+        verdicts.size() == 20
+        verdicts*.status().every { it == 200 }
+        verdicts*.message().every { it == "World" }
+        verdicts*.seq().toSet().size() == 20
+        connections.get() == 1
+        instanceIds == ["ping-1"]
+        client.pending() == 0
+    }
+
+    def "should not send more pings than the credits pong has granted"() {
+        given:
+        initialCredits = 1
+        silent = true
+        client(responseTimeout: Duration.ofMillis(300))
+
+        when:
+        def errors = Flux.range(1, 3)
+            .flatMap { client.ping().map { it as Object }.onErrorResume { Mono.just(it) } }
+            .collectList().block(Duration.ofSeconds(5))
+
+        then:
+        errors.every { it instanceof TimeoutException }
+        received == ["P 1"]
+        client.pending() == 0
+    }
+
+    def "should fail in-flight pings when the connection drops and reconnect on the next ping"() {
+        given:
+        closeOnFirstPing = true
+        client()
+
+        when:
+        client.ping().block(Duration.ofSeconds(5))
+
+        then: "block 把受检异常包装为 RuntimeException"
+        def e = thrown(RuntimeException)
+        e.cause instanceof IOException
+
+        when:
+        def verdict = client.ping().block(Duration.ofSeconds(5))
+
+        then:
+        verdict.status() == 200
+        connections.get() == 2
+    }
+
+    def "should fail fast while pong is unreachable"() {
+        given:
+        def port = server.port()
+        server.disposeNow()
+        client(port: port, reconnectBackoff: Duration.ofMinutes(1))
+
+        when:
+        client.ping().block(Duration.ofSeconds(5))
+
+        then:
+        def first = thrown(RuntimeException)
+        first.cause.message == "Pong stream closed"
+
+        when:
+        client.ping().block(Duration.ofSeconds(5))
+
+        then:
+        def second = thrown(RuntimeException)
+        second.cause.message == "Pong stream unavailable"
+    }
+
+    def "should reject pings beyond the pending limit"() {
+        given:
+        silent = true
+        client(maxPending: 1, responseTimeout: Duration.ofSeconds(5))
+        client.ping().subscribe()
+
+        when:
+        client.ping().block(Duration.ofSeconds(5))
+
+        then:
+        thrown(RejectedExecutionException)
+    }
+
+    def "should fail pending pings and reject new ones after close"() {
+        given:
+        silent = true
+        client()
+        def first = client.ping().toFuture()
+        while (received.isEmpty()) {
+            Thread.sleep(10)
+        }
+
+        when:
+        client.close()
+
+        then:
+        first.handle { value, e -> e }.get() instanceof IOException
+
+        when:
+        client.ping().block(Duration.ofSeconds(5))
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "should reject pings when disabled"() {
+        given:
+        def disabled = PongStreamClient.disabled()
+
+        when:
+        disabled.ping().block(Duration.ofSeconds(1))
+
+        then:
+        !disabled.isEnabled()
+        thrown(IllegalStateException)
+    }
+}
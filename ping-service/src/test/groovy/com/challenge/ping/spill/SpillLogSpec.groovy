@@ -0,0 +1,222 @@
+package com.challenge.ping.spill
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+class SpillLogSpec extends Specification {
+
+    @TempDir
+    Path directory
+
+    List<SpillLog> opened = []
+
+    def cleanup() {
+        opened*.close()
+    }
+
+    def open(long segmentSize = 4096, int maxSegments = 4) {
+        def log = new SpillLog(directory, segmentSize, maxSegments).open()
+        opened << log
+        log
+    }
+
+    static byte[] payload(String text) {
+        text.getBytes("UTF-8")
+    }
+
+    static List<String> texts(SpillLog.Batch batch) {
+        batch.payloads().collect { new String(it, "UTF-8") }
+    }
+
+    def "should read appended records in order without moving the cursor until commit"() {
+        given:
+        def log = open()
+        (1..5).each { assert log.append(payload("record-$it")) }
+
+        when:
+        def first = log.read(3)
+
+        then:
+        texts(first) == ["record-1", "record-2", "record-3"]
+        texts(log.read(3)) == ["record-1", "record-2", "record-3"]
+        log.pending() == 5
+
+        when:
+        log.commit(first)
+
+        then:
+        texts(log.read(10)) == ["record-4", "record-5"]
+        log.pending() == 2
+    }
+
+    def "should roll over to new segments and delete segments once they are replayed"() {
+        given:
+        def log = open(2048, 8)
+        def record = payload("x" * 200)
+
+        when:
+        30.times { assert log.append(record) }
+
+        then:
+        Files.list(directory).filter { it.fileName.toString().endsWith(".log") }.count() > 1
+        log.diskUsage() > 2048
+
+        when:
+        def batch = log.read(30)
+        log.commit(batch)
+
+        then:
+        batch.size() == 30
+        log.pending() == 0
+        Files.list(directory).filter { it.fileName.toString().endsWith(".log") }.count() == 1
+        log.diskUsage() == 2048
+    }
+
+    def "should refuse new records once the disk budget is used up"() {
+        given:
+        def log = open(2048, 2)
+        def record = payload("x" * 500)
+        def accepted = 0
+
+        when:
+        20.times { if (log.append(record)) accepted++ }
+
+        then:
+        accepted == 8
+        log.diskUsage() == 4096
+        !log.append(new byte[4096])
+
+        when: "重放完第一个分段后腾出空间"
+        log.commit(log.read(4))
+
+        then:
+        log.append(record)
+    }
+
+    def "should resume from the committed cursor after a restart"() {
+        given:
+        def log = open()
+        (1..4).each { log.append(payload("record-$it")) }
+        log.commit(log.read(1))
+        log.close()
+
+        when:
+        def reopened = open()
+
+        then:
+        reopened.pending() == 3
+        texts(reopened.read(10)) == ["record-2", "record-3", "record-4"]
+
+        when:
+        reopened.append(payload("record-5"))
+
+        then:
+        texts(reopened.read(10)) == ["record-2", "record-3", "record-4", "record-5"]
+    }
+
+    def "should drop a torn record at the tail on recovery"() {
+        given:
+        def log = open()
+        log.append(payload("record-1"))
+        log.append(payload("record-2"))
+        log.close()
+        // 模拟第二条记录写到一半时进程退出：内容被破坏，CRC 不再匹配
+        def segment = directory.resolve(SpillLog.name(1))
+        FileChannel.open(segment, StandardOpenOption.WRITE).withCloseable { channel ->
+            channel.write(ByteBuffer.wrap("XX".bytes), SpillLog.HEADER_SIZE + SpillLog.RECORD_HEADER_SIZE + 8 + SpillLog.RECORD_HEADER_SIZE)
+        }
+
+        when:
+        def reopened = open()
+        reopened.append(payload("record-3"))
+
+        then:
+        reopened.pending() == 2
+        texts(reopened.read(10)) == ["record-1", "record-3"]
+    }
+
+    def corrupt(long offset, byte[] bytes) {
+        FileChannel.open(directory.resolve(SpillLog.name(1)), StandardOpenOption.WRITE).withCloseable { channel ->
+            channel.write(ByteBuffer.wrap(bytes), offset)
+        }
+    }
+
+    def "should skip a corrupted record while running and keep reading the ones after it"() {
+        given:
+        def log = open()
+        (1..3).each { log.append(payload("record-$it")) }
+        // 破坏第二条记录的内容，长度字段仍然有效
+        corrupt(SpillLog.HEADER_SIZE + SpillLog.RECORD_HEADER_SIZE + 8 + SpillLog.RECORD_HEADER_SIZE, "XX".bytes)
+
+        when:
+        def batch = log.read(10)
+
+        then:
+        texts(batch) == ["record-1", "record-3"]
+        batch.skipped() == 1
+
+        when:
+        log.commit(batch)
+        log.append(payload("record-4"))
+
+        then:
+        log.corrupted() == 1
+        log.pending() == 1
+        texts(log.read(10)) == ["record-4"]
+    }
+
+    def "should give up the rest of the written data when a corrupted length hides the next record"() {
+        given:
+        def log = open()
+        (1..3).each { log.append(payload("record-$it")) }
+        corrupt(SpillLog.HEADER_SIZE + SpillLog.RECORD_HEADER_SIZE + 8, ByteBuffer.allocate(4).putInt(0, length).array())
+
+        when: "只剩损坏的数据时也返回需要提交的批次，积压得以清空"
+        def batch = log.read(10)
+        log.commit(batch)
+
+        then:
+        texts(batch) == ["record-1"]
+        !batch.isEmpty()
+        log.pending() == 0
+        log.corrupted() == 1
+
+        when:
+        log.append(payload("record-4"))
+
+        then:
+        texts(log.read(10)) == ["record-4"]
+
+        where:
+        length << [Integer.MAX_VALUE, -1, 0]
+    }
+
+    def "should allow only one process to use a directory"() {
+        given:
+        open()
+
+        when:
+        new SpillLog(directory, 4096, 4).open()
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "should reject everything when disabled"() {
+        given:
+        def log = SpillLog.disabled()
+
+        expect:
+        !log.isEnabled()
+        !log.append(payload("record"))
+        log.read(10).isEmpty()
+        log.pending() == 0
+        log.diskUsage() == 0
+    }
+}
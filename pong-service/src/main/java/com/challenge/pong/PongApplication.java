@@ -3,10 +3,8 @@ package com.challenge.pong;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
-import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 
 @SpringBootApplication(scanBasePackages = "com.challenge")
-@EnableJpaRepositories(basePackages = "com.challenge.pong.repository")
 @EntityScan(basePackages = "com.challenge.pong.model")
 
 public class PongApplication {
@@ -0,0 +1,205 @@
+package com.challenge.pong.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 基于心跳的副本成员关系，不依赖外部协调服务
+ * 定期向种子地址和已知副本发送心跳，种子地址的主机名会解析出全部 IP（如 k8s headless service），
+ * 收到心跳的一方也会记下发送方，因此新副本启动后各副本很快互相发现；
+ * 超过 failureTimeout 未响应的副本视为已离开，各副本按存活成员重新分摊配额。
+ * 只接受种子地址（及其解析出的地址）上的副本，避免任意客户端注册虚假副本或让本副本向任意地址发送心跳
+ */
+@Slf4j
+public class ClusterMembership implements AutoCloseable {
+
+    /**
+     * 其他副本
+     * @param lastSeen 最近一次收到对方心跳或心跳响应的时间（毫秒）
+     */
+    public record Member(String id, String url, long lastSeen) {}
+
+    private final String selfId;
+    private final String selfUrl;
+    private final List<String> seeds;
+    private final PeerTransport transport;
+    private final Duration heartbeatInterval;
+    private final long failureTimeoutMillis;
+    private final LongSupplier clock;
+    private final Map<String, Member> peers = new ConcurrentHashMap<>();
+
+    // 最近一轮心跳时种子地址解析出的全部地址
+    private volatile Set<String> seedUrls = Set.of();
+
+    // 按ID排序的存活副本（不含自己），成员变化时整体替换
+    private volatile List<Member> live = List.of();
+    private volatile int rank;
+    private ScheduledExecutorService scheduler;
+
+    public ClusterMembership(String selfId, String selfUrl, List<String> seeds, PeerTransport transport,
+                             Duration heartbeatInterval, Duration failureTimeout) {
+        this(selfId, selfUrl, seeds, transport, heartbeatInterval, failureTimeout, System::currentTimeMillis);
+    }
+
+    ClusterMembership(String selfId, String selfUrl, List<String> seeds, PeerTransport transport,
+                      Duration heartbeatInterval, Duration failureTimeout, LongSupplier clock) {
+        this.selfId = selfId;
+        this.selfUrl = selfUrl;
+        this.seeds = List.copyOf(seeds);
+        this.transport = transport;
+        this.heartbeatInterval = heartbeatInterval;
+        this.failureTimeoutMillis = failureTimeout.toMillis();
+        this.clock = clock;
+    }
+
+    public synchronized ClusterMembership start() {
+        if (scheduler == null) {
+            log.info("Joining pong cluster as {} ({}), seeds {}", selfId, selfUrl, seeds);
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "pong-cluster-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = Math.max(1, heartbeatInterval.toMillis());
+            scheduler.scheduleWithFixedDelay(this::heartbeat, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * 向所有种子地址和已知副本发送一轮心跳，并剔除超时的副本
+     */
+    void heartbeat() {
+        try {
+            for (String url : targets()) {
+                transport.heartbeat(url, selfId, selfUrl)
+                    .timeout(Duration.ofMillis(failureTimeoutMillis))
+                    .subscribe(id -> onHeartbeat(id, url),
+                        e -> log.debug("Heartbeat to {} failed: {}", url, e.toString()));
+            }
+            refresh();
+        } catch (RuntimeException e) {
+            log.warn("Cluster heartbeat failed", e);
+        }
+    }
+
+    private Set<String> targets() {
+        Set<String> resolved = new LinkedHashSet<>();
+        for (String seed : seeds) {
+            resolved.addAll(resolve(seed));
+        }
+        seedUrls = Set.copyOf(resolved);
+        Set<String> targets = new LinkedHashSet<>(resolved);
+        for (Member member : peers.values()) {
+            targets.add(member.url());
+        }
+        targets.remove(selfUrl);
+        return targets;
+    }
+
+    /**
+     * 把种子地址的主机名展开为它解析出的全部地址，无法解析时保持原样
+     */
+    private static List<String> resolve(String seed) {
+        URI uri = URI.create(seed);
+        if (uri.getHost() == null) {
+            return List.of(seed);
+        }
+        try {
+            List<String> urls = new ArrayList<>();
+            for (InetAddress address : InetAddress.getAllByName(uri.getHost())) {
+                String host = address.getHostAddress().contains(":")
+                    ? "[" + address.getHostAddress() + "]" : address.getHostAddress();
+                urls.add(uri.getScheme() + "://" + host + (uri.getPort() < 0 ? "" : ":" + uri.getPort()));
+            }
+            return urls;
+        } catch (UnknownHostException e) {
+            return List.of(seed);
+        }
+    }
+
+    /**
+     * 收到其他副本的心跳或心跳响应
+     * @return 地址是否在最近一轮心跳解析出的种子地址中；不在时忽略该副本
+     */
+    public boolean onHeartbeat(String id, String url) {
+        if (!seedUrls.contains(url)) {
+            log.debug("Ignoring heartbeat from {} at unknown address {}", id, url);
+            return false;
+        }
+        if (id == null || id.equals(selfId)) {
+            return true;
+        }
+        peers.put(id, new Member(id, url, clock.getAsLong()));
+        // 新加入或重新上线的副本立即参与分摊
+        if (live.stream().noneMatch(member -> member.id().equals(id))) {
+            refresh();
+        }
+        return true;
+    }
+
+    private synchronized void refresh() {
+        long now = clock.getAsLong();
+        // 长时间没有响应的副本不再发送心跳
+        peers.values().removeIf(member -> now - member.lastSeen() > failureTimeoutMillis * 10);
+        List<Member> alive = peers.values().stream()
+            .filter(member -> now - member.lastSeen() <= failureTimeoutMillis)
+            .sorted(Comparator.comparing(Member::id))
+            .toList();
+        List<String> before = live.stream().map(Member::id).toList();
+        List<String> after = alive.stream().map(Member::id).toList();
+        live = alive;
+        rank = (int) after.stream().filter(id -> id.compareTo(selfId) < 0).count();
+        if (!before.equals(after)) {
+            log.info("Pong cluster membership changed, {} live peers: {}", after.size(), after);
+        }
+    }
+
+    public String selfId() {
+        return selfId;
+    }
+
+    /**
+     * @return 存活的其他副本，按ID排序
+     */
+    public List<Member> livePeers() {
+        return live;
+    }
+
+    /**
+     * @return 存活副本总数（包含自己）
+     */
+    public int size() {
+        return live.size() + 1;
+    }
+
+    /**
+     * @return 自己在所有存活副本中按ID排序的位置，决定分摊余数时的先后
+     */
+    public int rank() {
+        return rank;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
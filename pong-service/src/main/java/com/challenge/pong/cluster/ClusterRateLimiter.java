@@ -0,0 +1,257 @@
+package com.challenge.pong.cluster;
+
+import com.challenge.pong.ratelimit.CallerRateLimiter;
+import com.challenge.pong.ratelimit.KeyedRateLimiter;
+import com.challenge.pong.ratelimit.KeyedRateLimiter.Rate;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * 跨副本共享配额的按调用方限流器
+ * 时间按墙钟划分为与速率窗口等长的时间窗口，每个窗口开始时各副本按存活成员数分得调用方配额的一份
+ * （余数按副本ID顺序分配），窗口内通过 CAS 扣减本地配额，不加锁也不访问网络；
+ * 本地配额用完时同时向所有其他副本借用，最多等待 leaseTimeout，对方最多借出剩余配额的一半。
+ * 所有副本的配额之和始终等于 limit，因此副本数变化不会改变全局速率；成员变化在下一个窗口生效
+ */
+@Slf4j
+public class ClusterRateLimiter implements CallerRateLimiter {
+
+    /**
+     * 某个时间窗口内本副本持有的配额
+     */
+    static final class Slot {
+        final long epoch;
+        final AtomicInteger tokens;
+
+        Slot(long epoch, int tokens) {
+            this.epoch = epoch;
+            this.tokens = new AtomicInteger(tokens);
+        }
+    }
+
+    /**
+     * 单个调用方的限流状态
+     */
+    static final class Entry {
+        final Rate rate;
+        final long windowMillis;
+        final AtomicReference<Slot> slot = new AtomicReference<>(new Slot(Long.MIN_VALUE, 0));
+        volatile long lastAccess;
+
+        Entry(Rate rate, long now) {
+            this.rate = rate;
+            this.windowMillis = Math.max(1, rate.window().toMillis());
+            this.lastAccess = now;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Rate defaultRate;
+    private final Map<String, Rate> overrides;
+    private final int maxKeys;
+    private final long idleTimeoutMillis;
+    private final ClusterMembership membership;
+    private final PeerTransport transport;
+    private final Duration leaseTimeout;
+    private final LongSupplier clock;
+    private final AtomicLong nextSweep = new AtomicLong();
+
+    public ClusterRateLimiter(Rate defaultRate, Map<String, Rate> overrides, int maxKeys, Duration idleTimeout,
+                              ClusterMembership membership, PeerTransport transport, Duration leaseTimeout) {
+        this(defaultRate, overrides, maxKeys, idleTimeout, membership, transport, leaseTimeout,
+            System::currentTimeMillis);
+    }
+
+    ClusterRateLimiter(Rate defaultRate, Map<String, Rate> overrides, int maxKeys, Duration idleTimeout,
+                       ClusterMembership membership, PeerTransport transport, Duration leaseTimeout,
+                       LongSupplier clock) {
+        this.defaultRate = defaultRate;
+        this.overrides = Map.copyOf(overrides);
+        this.maxKeys = Math.max(1, maxKeys);
+        long longestWindow = this.overrides.values().stream()
+            .mapToLong(rate -> rate.window().toMillis())
+            .reduce(defaultRate.window().toMillis(), Math::max);
+        this.idleTimeoutMillis = Math.max(idleTimeout.toMillis(), longestWindow);
+        this.membership = membership;
+        this.transport = transport;
+        this.leaseTimeout = leaseTimeout;
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean tryAcquire(String key) {
+        long now = clock.getAsLong();
+        Entry entry = entry(key, now);
+        return take(current(entry, now).tokens);
+    }
+
+    /**
+     * 本地配额不足时向其他副本借用，借到后再扣减
+     */
+    @Override
+    public Mono<Boolean> acquire(String key) {
+        return Mono.defer(() -> {
+            long now = clock.getAsLong();
+            String resolvedKey = resolve(key, now);
+            Entry entry = entry(resolvedKey, now);
+            Slot slot = current(entry, now);
+            if (take(slot.tokens)) {
+                return Mono.just(true);
+            }
+            List<ClusterMembership.Member> peers = membership.livePeers();
+            if (peers.isEmpty()) {
+                return Mono.just(false);
+            }
+            // 一次借到约一个副本的份额，分摊到各个副本
+            int share = Math.max(1, entry.rate.limit() / membership.size());
+            int wanted = Math.max(1, (share + peers.size() - 1) / peers.size());
+            return borrow(peers, resolvedKey, slot, wanted)
+                .filter(granted -> granted > 0)
+                .next()
+                .map(granted -> take(slot.tokens))
+                .defaultIfEmpty(false);
+        });
+    }
+
+    /**
+     * 同时向所有副本借用，各请求同时开始、共用 leaseTimeout 作为截止时间；
+     * 借到的许可在到达时即加入本地配额，请求方拿到第一份后不再等待，之后到达的留给后续请求
+     */
+    private Flux<Integer> borrow(List<ClusterMembership.Member> peers, String key, Slot slot, int wanted) {
+        Flux<Integer> grants = Flux.fromIterable(peers)
+            .flatMap(peer -> transport.lease(peer.url(), key, slot.epoch, wanted)
+                .timeout(leaseTimeout)
+                .onErrorResume(e -> {
+                    log.debug("Lease from {} failed: {}", peer.id(), e.toString());
+                    return Mono.just(0);
+                }))
+            .doOnNext(granted -> slot.tokens.addAndGet(granted))
+            .cache();
+        // 请求方取消后其余借用仍然完成，对方已经扣减的许可不会丢失
+        grants.subscribe();
+        return grants;
+    }
+
+    /**
+     * 其他副本借用配额
+     * @param epoch 借用方所在的时间窗口，本副本还没进入该窗口时先按该窗口初始化配额
+     * @return 借出的许可数，不超过剩余配额的一半（向上取整）
+     */
+    public int lend(String key, long epoch, int wanted) {
+        long now = clock.getAsLong();
+        Entry entry = entry(resolve(key, now), now);
+        Slot slot = entry.slot.get();
+        while (slot.epoch < epoch) {
+            Slot fresh = new Slot(epoch, share(entry.rate));
+            slot = entry.slot.compareAndSet(slot, fresh) ? fresh : entry.slot.get();
+        }
+        if (slot.epoch != epoch || wanted <= 0) {
+            return 0;
+        }
+        while (true) {
+            int available = slot.tokens.get();
+            int granted = Math.min(wanted, (available + 1) / 2);
+            if (granted <= 0) {
+                return 0;
+            }
+            if (slot.tokens.compareAndSet(available, available - granted)) {
+                log.debug("Lent {} permits of {} to a peer", granted, key);
+                return granted;
+            }
+        }
+    }
+
+    /**
+     * 被限流的调用方在当前时间窗口结束后才能拿到新的配额
+     */
+    @Override
+    public Duration retryAfter(String key) {
+        long now = clock.getAsLong();
+        Entry entry = entries.getOrDefault(resolve(key, now), entries.get(KeyedRateLimiter.OVERFLOW_KEY));
+        if (entry == null) {
+            return Duration.ZERO;
+        }
+        return Duration.ofMillis(entry.windowMillis - Math.floorMod(now, entry.windowMillis));
+    }
+
+    /**
+     * @return 当前跟踪的调用方数量
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private String resolve(String key, long now) {
+        String resolvedKey = (key == null || key.isBlank()) ? KeyedRateLimiter.ANONYMOUS_KEY : key;
+        if (!entries.containsKey(resolvedKey) && entries.size() >= maxKeys) {
+            evictIdle(now);
+            if (entries.size() >= maxKeys) {
+                return KeyedRateLimiter.OVERFLOW_KEY;
+            }
+        }
+        return resolvedKey;
+    }
+
+    private Entry entry(String key, long now) {
+        sweepIfDue(now);
+        String resolvedKey = resolve(key, now);
+        Entry entry = entries.computeIfAbsent(resolvedKey, k -> new Entry(overrides.getOrDefault(k, defaultRate), now));
+        entry.lastAccess = now;
+        return entry;
+    }
+
+    /**
+     * 取当前时间窗口的配额，进入新窗口时按当前成员数重新分摊
+     */
+    private Slot current(Entry entry, long now) {
+        long epoch = Math.floorDiv(now, entry.windowMillis);
+        Slot slot = entry.slot.get();
+        while (slot.epoch < epoch) {
+            Slot fresh = new Slot(epoch, share(entry.rate));
+            slot = entry.slot.compareAndSet(slot, fresh) ? fresh : entry.slot.get();
+        }
+        return slot;
+    }
+
+    /**
+     * 本副本分得的配额：limit 平均分给所有存活副本，余数分给ID排在前面的副本
+     */
+    private int share(Rate rate) {
+        int members = membership.size();
+        int rank = membership.rank();
+        return rate.limit() / members + (rank < rate.limit() % members ? 1 : 0);
+    }
+
+    private static boolean take(AtomicInteger tokens) {
+        while (true) {
+            int available = tokens.get();
+            if (available <= 0) {
+                return false;
+            }
+            if (tokens.compareAndSet(available, available - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now >= due && nextSweep.compareAndSet(due, now + idleTimeoutMillis)) {
+            evictIdle(now);
+        }
+    }
+
+    private void evictIdle(long now) {
+        entries.values().removeIf(entry -> now - entry.lastAccess > idleTimeoutMillis);
+    }
+}
@@ -0,0 +1,35 @@
+package com.challenge.pong.cluster;
+
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+/**
+ * 通过 HTTP 访问其他副本的 /internal/cluster 接口，每个请求带上副本之间共享的密钥
+ */
+public class HttpPeerTransport implements PeerTransport {
+    public static final String SECRET_HEADER = "X-Pong-Cluster-Secret";
+
+    private final WebClient webClient;
+
+    public HttpPeerTransport(WebClient.Builder webClientBuilder, String secret) {
+        this.webClient = webClientBuilder
+            .defaultHeader(SECRET_HEADER, secret)
+            .build();
+    }
+
+    @Override
+    public Mono<String> heartbeat(String peerUrl, String selfId, String selfUrl) {
+        return webClient.post()
+            .uri(peerUrl + "/internal/cluster/heartbeat?id={id}&url={url}", selfId, selfUrl)
+            .retrieve()
+            .bodyToMono(String.class);
+    }
+
+    @Override
+    public Mono<Integer> lease(String peerUrl, String key, long epoch, int wanted) {
+        return webClient.post()
+            .uri(peerUrl + "/internal/cluster/lease?key={key}&epoch={epoch}&wanted={wanted}", key, epoch, wanted)
+            .retrieve()
+            .bodyToMono(Integer.class);
+    }
+}
@@ -0,0 +1,24 @@
+package com.challenge.pong.cluster;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * 副本之间的通信方式
+ * 生产环境由 HttpPeerTransport 访问对方的 /internal/cluster 接口，测试中可以直接连接进程内的多个实例
+ */
+public interface PeerTransport {
+
+    /**
+     * 向对方发送心跳，同时告知自己的身份和地址
+     * @return 对方的实例ID
+     */
+    Mono<String> heartbeat(String peerUrl, String selfId, String selfUrl);
+
+    /**
+     * 向对方借用某个调用方在指定时间窗口内的配额
+     * @param epoch 时间窗口编号（墙钟时间 / 窗口长度）
+     * @param wanted 希望借到的许可数
+     * @return 实际借到的许可数，可能为0
+     */
+    Mono<Integer> lease(String peerUrl, String key, long epoch, int wanted);
+}
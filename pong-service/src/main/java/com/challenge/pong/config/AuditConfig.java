@@ -0,0 +1,44 @@
+package com.challenge.pong.config;
+
+import com.challenge.common.audit.AuditJournal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * 审计日志配置，每个实例写入独立的目录，用 AuditReader 查看
+ */
+@Configuration
+public class AuditConfig {
+
+    @Value("${pong.audit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${pong.audit.directory:logs/pong-service/audit}")
+    private String directory;
+
+    @Value("${pong.audit.ring-capacity:65536}")
+    private int ringCapacity;
+
+    @Value("${pong.audit.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${pong.audit.max-segments:16}")
+    private int maxSegments;
+
+    @Value("${pong.audit.idle-interval:10ms}")
+    private Duration idleInterval;
+
+    @Bean(destroyMethod = "close")
+    public AuditJournal auditJournal() {
+        if (!enabled) {
+            return AuditJournal.disabled();
+        }
+        return new AuditJournal(Path.of(directory), ringCapacity, segmentSize.toBytes(), maxSegments, idleInterval)
+            .start();
+    }
+}
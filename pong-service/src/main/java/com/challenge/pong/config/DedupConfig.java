@@ -0,0 +1,37 @@
+package com.challenge.pong.config;
+
+import com.challenge.pong.dedup.RequestIdFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 消费去重配置，内存过滤只是快速路径，唯一索引 (request_id, timestamp) 保证同一条记录只保存一次
+ */
+@Configuration
+public class DedupConfig {
+
+    @Value("${pong.dedup.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${pong.dedup.window:10m}")
+    private Duration window = Duration.ofMinutes(10);
+
+    @Value("${pong.dedup.expected-insertions:1000000}")
+    private int expectedInsertions = 1_000_000;
+
+    @Value("${pong.dedup.false-positive-rate:0.001}")
+    private double falsePositiveRate = 0.001;
+
+    @Value("${pong.dedup.cache-size:100000}")
+    private int cacheSize = 100_000;
+
+    @Bean
+    public RequestIdFilter requestIdFilter() {
+        return enabled
+            ? new RequestIdFilter(window, expectedInsertions, falsePositiveRate, cacheSize)
+            : RequestIdFilter.disabled();
+    }
+}
@@ -0,0 +1,40 @@
+package com.challenge.pong.config;
+
+import com.challenge.common.codec.RecordCodec;
+import com.challenge.common.codec.RecordMessageConverter;
+import com.challenge.pong.model.PongRecord;
+import org.apache.rocketmq.spring.support.RocketMQMessageConverter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+
+import java.util.List;
+
+/**
+ * 消费端消息转换配置
+ * 二进制记录转换器排在 RocketMQ 默认转换器之前，按消息的 contentType 选择解码方式，
+ * 因此 JSON 与二进制生产者可以同时存在
+ */
+@Configuration
+public class MessageConverterConfig {
+
+    @Bean
+    public CompositeMessageConverter pongRecordMessageConverter(RocketMQMessageConverter rocketMQMessageConverter) {
+        return new CompositeMessageConverter(List.of(
+            new RecordMessageConverter<>(PongRecord.class, MessageConverterConfig::toFields, MessageConverterConfig::toPongRecord),
+            rocketMQMessageConverter.getMessageConverter()));
+    }
+
+    private static RecordCodec.Fields toFields(PongRecord record) {
+        return new RecordCodec.Fields(record.getRequestId(), record.getTimestamp(), record.getStatus(), record.getMessage());
+    }
+
+    private static PongRecord toPongRecord(RecordCodec.Fields fields) {
+        PongRecord record = new PongRecord();
+        record.setRequestId(fields.requestId());
+        record.setTimestamp(fields.timestamp());
+        record.setStatus(fields.status());
+        record.setMessage(fields.message());
+        return record;
+    }
+}
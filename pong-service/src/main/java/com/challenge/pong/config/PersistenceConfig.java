@@ -0,0 +1,53 @@
+package com.challenge.pong.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
+import org.springframework.data.repository.config.BootstrapMode;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+
+/**
+ * 持久化方式配置
+ * 默认使用 JPA，启用 r2dbc profile 时改用响应式的 R2DBC，两者的仓库接口放在同一个包中，按接口类型过滤
+ */
+@Configuration
+public class PersistenceConfig {
+
+    /**
+     * 仓库在上下文刷新完成时才初始化（DEFERRED），开启 pong.startup.background-jpa 时
+     * Hibernate 在后台线程构建 EntityManagerFactory，与其余 Bean 的创建并行
+     */
+    @Configuration
+    @Profile("!r2dbc")
+    @EnableJpaRepositories(basePackages = "com.challenge.pong.repository", bootstrapMode = BootstrapMode.DEFERRED,
+        excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = ReactiveCrudRepository.class))
+    static class JpaPersistenceConfig {
+
+        @Value("${pong.startup.background-jpa:false}")
+        private boolean backgroundJpa = false;
+
+        @Bean
+        EntityManagerFactoryBuilderCustomizer backgroundJpaBootstrap() {
+            return builder -> {
+                if (backgroundJpa) {
+                    builder.setBootstrapExecutor(new SimpleAsyncTaskExecutor("pong-jpa-bootstrap-"));
+                }
+            };
+        }
+    }
+
+    @Configuration
+    @Profile("r2dbc")
+    @EnableR2dbcRepositories(basePackages = "com.challenge.pong.repository",
+        excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = JpaRepository.class))
+    static class R2dbcPersistenceConfig {
+    }
+}
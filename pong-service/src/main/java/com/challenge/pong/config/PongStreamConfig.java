@@ -0,0 +1,36 @@
+package com.challenge.pong.config;
+
+import com.challenge.common.stream.PingStreamProtocol;
+import com.challenge.pong.controller.PongStreamHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+
+import java.util.Map;
+
+/**
+ * 流式 ping 通道配置，与 /api/pong 同时提供，由各 ping 实例自行选择使用哪一种
+ */
+@Configuration
+@ConditionalOnProperty(name = "pong.stream.enabled", havingValue = "true", matchIfMissing = true)
+public class PongStreamConfig {
+
+    // 每个连接允许在途的 ping 数，Ping 端最多同时发送这么多个 ping
+    @Value("${pong.stream.window:256}")
+    private int window = 256;
+
+    @Bean
+    public PongStreamHandler pongStreamHandler() {
+        return new PongStreamHandler(window);
+    }
+
+    @Bean
+    public HandlerMapping pongStreamHandlerMapping(PongStreamHandler pongStreamHandler) {
+        return new SimpleUrlHandlerMapping(Map.of(PingStreamProtocol.PATH, pongStreamHandler),
+            Ordered.HIGHEST_PRECEDENCE);
+    }
+}
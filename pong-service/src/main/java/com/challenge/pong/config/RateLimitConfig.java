@@ -0,0 +1,100 @@
+package com.challenge.pong.config;
+
+import com.challenge.pong.cluster.ClusterMembership;
+import com.challenge.pong.cluster.ClusterRateLimiter;
+import com.challenge.pong.cluster.HttpPeerTransport;
+import com.challenge.pong.cluster.PeerTransport;
+import com.challenge.pong.ratelimit.KeyedRateLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 限流配置
+ * local: 每个副本独立限流，副本数增加时全局速率随之增加；
+ * cluster: 各副本通过心跳互相发现并分摊每个调用方的配额，全局速率与副本数无关
+ */
+@Configuration
+public class RateLimitConfig {
+
+    // 每个调用方的默认速率，格式 <limit>/<window>
+    @Value("${pong.rate-limit.default-rate:1/1s}")
+    private String defaultRate;
+
+    // 按调用方覆盖的速率，格式 <key>=<limit>/<window>,...
+    @Value("${pong.rate-limit.overrides:}")
+    private String overrides;
+
+    @Value("${pong.rate-limit.max-keys:1024}")
+    private int maxKeys;
+
+    @Value("${pong.rate-limit.idle-timeout:5m}")
+    private Duration idleTimeout;
+
+    @Value("${spring.application.instance-id:pong}")
+    private String instanceId;
+
+    // 其他副本访问本副本的地址
+    @Value("${pong.cluster.self-url:http://localhost:8080}")
+    private String selfUrl;
+
+    // 种子地址，逗号分隔；主机名会解析出全部 IP，可以直接使用 k8s headless service
+    @Value("${pong.cluster.peers:}")
+    private String peers;
+
+    @Value("${pong.cluster.heartbeat-interval:500ms}")
+    private Duration heartbeatInterval;
+
+    // 超过该时间没有心跳的副本视为已离开
+    @Value("${pong.cluster.failure-timeout:2s}")
+    private Duration failureTimeout;
+
+    // 向其他副本借用配额的最长等待时间，所有副本同时请求
+    @Value("${pong.cluster.lease-timeout:50ms}")
+    private Duration leaseTimeout;
+
+    // 副本之间共享的密钥，/internal/cluster 接口只接受带有该密钥的请求
+    @Value("${pong.cluster.secret:}")
+    private String secret;
+
+    @Bean
+    @ConditionalOnProperty(name = "pong.rate-limit.mode", havingValue = "local", matchIfMissing = true)
+    public KeyedRateLimiter keyedRateLimiter() {
+        return new KeyedRateLimiter(KeyedRateLimiter.Rate.parse(defaultRate),
+            KeyedRateLimiter.Rate.parseOverrides(overrides), maxKeys, idleTimeout);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "pong.rate-limit.mode", havingValue = "cluster")
+    public PeerTransport peerTransport(WebClient.Builder webClientBuilder) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("pong.cluster.secret (PONG_CLUSTER_SECRET) must be set in cluster mode");
+        }
+        return new HttpPeerTransport(webClientBuilder, secret);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "pong.rate-limit.mode", havingValue = "cluster")
+    public ClusterMembership clusterMembership(PeerTransport peerTransport) {
+        List<String> seeds = Arrays.stream(peers.split(","))
+            .map(String::trim)
+            .filter(peer -> !peer.isEmpty())
+            .toList();
+        return new ClusterMembership(instanceId, selfUrl, seeds, peerTransport, heartbeatInterval, failureTimeout)
+            .start();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "pong.rate-limit.mode", havingValue = "cluster")
+    public ClusterRateLimiter clusterRateLimiter(ClusterMembership clusterMembership, PeerTransport peerTransport) {
+        return new ClusterRateLimiter(KeyedRateLimiter.Rate.parse(defaultRate),
+            KeyedRateLimiter.Rate.parseOverrides(overrides), maxKeys, idleTimeout,
+            clusterMembership, peerTransport, leaseTimeout);
+    }
+}
@@ -0,0 +1,21 @@
+package com.challenge.pong.config;
+
+import com.challenge.common.id.RequestIdGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * pong 处理请求时生成的请求ID（审计日志中使用），按实例ID区分不同实例生成的ID
+ */
+@Configuration
+public class RequestIdConfig {
+
+    @Value("${spring.application.instance-id:pong}")
+    private String instanceId;
+
+    @Bean
+    public RequestIdGenerator requestIdGenerator() {
+        return new RequestIdGenerator(instanceId);
+    }
+}
@@ -0,0 +1,25 @@
+package com.challenge.pong.config;
+
+import com.challenge.pong.stats.PongStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 实时统计配置，由 PongController、流式通道和消息消费者写入，/api/stats 读取
+ */
+@Configuration
+public class StatsConfig {
+
+    @Value("${pong.stats.enabled:true}")
+    private boolean enabled = true;
+
+    // 分别统计的调用方数上限，超出后归入 overflow
+    @Value("${pong.stats.max-requesters:1000}")
+    private int maxRequesters = 1000;
+
+    @Bean
+    public PongStats pongStats() {
+        return enabled ? new PongStats(maxRequesters) : PongStats.disabled();
+    }
+}
@@ -0,0 +1,62 @@
+package com.challenge.pong.config;
+
+import com.challenge.pong.storage.PongRecordMaintenance;
+import com.challenge.pong.storage.PongRecordSummaries;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * pong_records 分区、汇总和保留期配置，表结构见 db/schema.sql
+ * r2dbc profile 使用不分区的 r2dbc-schema.sql，不启用维护任务
+ */
+@Configuration
+@Profile("!r2dbc")
+public class StorageConfig {
+
+    @Value("${pong.storage.maintenance.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${pong.storage.maintenance.interval:1m}")
+    private Duration interval = Duration.ofMinutes(1);
+
+    @Value("${pong.storage.partition.premake-days:3}")
+    private int premakeDays = 3;
+
+    @Value("${pong.storage.retention.raw:7d}")
+    private Duration rawRetention = Duration.ofDays(7);
+
+    @Value("${pong.storage.retention.rollups:90d}")
+    private Duration rollupRetention = Duration.ofDays(90);
+
+    // drop 或 detach
+    @Value("${pong.storage.retention.action:drop}")
+    private String retentionAction = "drop";
+
+    @Value("${pong.storage.rollup.lateness:5m}")
+    private Duration lateness = Duration.ofMinutes(5);
+
+    @Value("${pong.storage.rollup.max-span:1d}")
+    private Duration maxSpan = Duration.ofDays(1);
+
+    @Bean(destroyMethod = "close")
+    public PongRecordMaintenance pongRecordMaintenance(JdbcTemplate jdbcTemplate,
+                                                       PlatformTransactionManager transactionManager) {
+        PongRecordMaintenance maintenance = new PongRecordMaintenance(jdbcTemplate,
+            new TransactionTemplate(transactionManager), premakeDays, rawRetention, rollupRetention, lateness,
+            maxSpan, PongRecordMaintenance.RetentionAction.parse(retentionAction), Clock.systemDefaultZone());
+        return enabled ? maintenance.start(interval) : maintenance;
+    }
+
+    @Bean
+    public PongRecordSummaries pongRecordSummaries(JdbcTemplate jdbcTemplate) {
+        return new PongRecordSummaries(jdbcTemplate);
+    }
+}
@@ -0,0 +1,36 @@
+package com.challenge.pong.config;
+
+import com.challenge.pong.trace.ConsumerLagMonitor;
+import com.challenge.pong.trace.LatencyTracer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 端到端延迟追踪和消费积压配置，由 MQConsumerService 使用
+ */
+@Configuration
+public class TraceConfig {
+
+    @Value("${pong.trace.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${pong.trace.lag.enabled:true}")
+    private boolean lagEnabled = true;
+
+    // 向 Broker 查询最大 offset 的间隔
+    @Value("${pong.trace.lag.interval:15s}")
+    private Duration lagInterval = Duration.ofSeconds(15);
+
+    @Bean
+    public LatencyTracer latencyTracer() {
+        return enabled ? new LatencyTracer() : LatencyTracer.disabled();
+    }
+
+    @Bean(destroyMethod = "close")
+    public ConsumerLagMonitor consumerLagMonitor() {
+        return lagEnabled ? new ConsumerLagMonitor().start(lagInterval) : ConsumerLagMonitor.disabled();
+    }
+}
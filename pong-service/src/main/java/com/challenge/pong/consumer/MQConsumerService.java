@@ -1,31 +1,198 @@
 package com.challenge.pong.consumer;
 
+import com.challenge.common.trace.TraceClock;
 import com.challenge.pong.model.PongRecord;
 import com.challenge.pong.service.PongMessageService;
+import com.challenge.pong.stats.PongStats;
+import com.challenge.pong.trace.ConsumerLagMonitor;
+import com.challenge.pong.trace.LatencyTracer;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.apache.rocketmq.spring.core.RocketMQPushConsumerLifecycleListener;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 @Slf4j
 @Component
 public class MQConsumerService {
+    /**
+     * 消费模式：single 逐条消费，batch 整批交给持久层
+     */
+    public enum Mode {
+        SINGLE, BATCH;
+
+        public static Mode from(String value) {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
     @Autowired
     private PongMessageService messageService;
 
+    // 按 contentType 在二进制与 JSON 之间协商的转换器，见 MessageConverterConfig
+    @Autowired
+    private MessageConverter messageConverter;
+
+    // 实时统计，记录保存成功后计数并记录延迟
+    @Autowired
+    private PongStats stats = PongStats.disabled();
+
+    // 按消息属性中的时刻统计各阶段延迟
+    @Autowired
+    private LatencyTracer tracer = LatencyTracer.disabled();
+
+    // 按 topic 统计相对 Broker 最大 offset 的消费积压
+    @Autowired
+    private ConsumerLagMonitor lagMonitor = ConsumerLagMonitor.disabled();
+
+    @Value("${pong.consumer.mode:single}")
+    private String mode = "single";
+
+    // 消费线程数
+    @Value("${pong.consumer.threads:20}")
+    private int threads = 20;
+
+    // batch 模式下每次回调最多处理的消息数
+    @Value("${pong.consumer.batch-size:32}")
+    private int batchSize = 32;
+
+    // 每次从 Broker 拉取的消息数
+    @Value("${pong.consumer.pull-batch-size:32}")
+    private int pullBatchSize = 32;
+
+    // 每个队列已拉取未消费完成的消息上限，超出后暂停拉取该队列
+    @Value("${pong.consumer.max-in-flight-per-queue:1000}")
+    private int maxInFlightPerQueue = 1000;
+
+    // 最大重试次数，超出后 Broker 将消息转入死信队列 %DLQ%pong-consumer-group
+    @Value("${pong.consumer.max-reconsume-times:16}")
+    private int maxReconsumeTimes = 16;
+
+    /**
+     * 按配置调整消费者，batch 模式下用整批监听器替换默认的逐条监听器
+     */
+    void configure(DefaultMQPushConsumer consumer) {
+        Mode consumeMode = Mode.from(mode);
+        consumer.setConsumeThreadMin(Math.max(1, threads));
+        consumer.setConsumeThreadMax(Math.max(1, threads));
+        consumer.setPullBatchSize(Math.max(1, pullBatchSize));
+        consumer.setPullThresholdForQueue(Math.max(1, maxInFlightPerQueue));
+        consumer.setMaxReconsumeTimes(maxReconsumeTimes);
+        if (consumeMode == Mode.BATCH) {
+            consumer.setConsumeMessageBatchMaxSize(Math.max(1, batchSize));
+            consumer.setMessageListener((MessageListenerConcurrently) this::consumeBatch);
+        }
+        lagMonitor.watch(consumer);
+        log.info("Configured consumer {} in {} mode: {} threads, batch size {}, max in-flight per queue {}",
+            consumer.getConsumerGroup(), consumeMode, threads, batchSize, maxInFlightPerQueue);
+    }
+
+    /**
+     * 整批消费：只确认从头开始连续保存成功的消息，其余消息交给 Broker 重新投递，
+     * 重试次数耗尽后进入死信队列。统计和链路耗时只记录本次实际写入的消息，重复投递的不再计入
+     */
+    ConsumeConcurrentlyStatus consumeBatch(List<MessageExt> messages, ConsumeConcurrentlyContext context) {
+        long received = tracer.now();
+        List<PongRecord> records = new ArrayList<>(messages.size());
+        for (MessageExt message : messages) {
+            PongRecord record = convert(message);
+            if (record == null) {
+                break;
+            }
+            records.add(record);
+        }
+        PongMessageService.BatchResult result = records.isEmpty() ? null : messageService.consumePongResponses(records);
+        int saved = result == null ? 0 : result.acknowledged();
+        for (int i = 0; i < saved; i++) {
+            if (result.isWritten(i)) {
+                stats.recordConsumed(records.get(i), createdAt(messages.get(i)));
+                tracer.recordPersisted(messages.get(i), received);
+            }
+        }
+        if (saved == messages.size()) {
+            return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+        }
+        log.warn("batch partially consumed: {} of {} messages saved, retrying from MsgId: {}",
+            saved, messages.size(), messages.get(saved).getMsgId());
+        if (saved == 0) {
+            return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+        }
+        // ackIndex 之后的消息会被重新投递
+        context.setAckIndex(saved - 1);
+        return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+    }
+
+    /**
+     * @return ping 生成记录的时刻（epoch 微秒），旧版本 ping 发送的消息没有该属性
+     */
+    private static Long createdAt(MessageExt message) {
+        return TraceClock.parse(message.getUserProperty(TraceClock.CREATED_AT));
+    }
+
+    /**
+     * 直接从原始字节解码，二进制消息体不能先转成字符串
+     * @return 无法解码时返回 null
+     */
+    private PongRecord convert(MessageExt message) {
+        try {
+            MessageBuilder<byte[]> builder = MessageBuilder.withPayload(message.getBody());
+            String contentType = message.getUserProperty(MessageHeaders.CONTENT_TYPE);
+            if (contentType != null) {
+                builder.setHeader(MessageHeaders.CONTENT_TYPE, contentType);
+            }
+            PongRecord record = (PongRecord) messageConverter.fromMessage(builder.build(), PongRecord.class);
+            if (record == null) {
+                log.error("unsupported message content, MsgId: {}, content type: {}", message.getMsgId(), contentType);
+            }
+            return record;
+        } catch (Exception e) {
+            log.error("message conversion failed, MsgId: {}, reconsume times: {}",
+                message.getMsgId(), message.getReconsumeTimes(), e);
+            return null;
+        }
+    }
+
     @Service
     @RocketMQMessageListener(topic = "PING_TOPIC", consumerGroup = "pong-consumer-group")
-    public class PongResponseConsumers implements RocketMQListener<PongRecord> {
+    public class PongResponseConsumers implements RocketMQListener<MessageExt>, RocketMQPushConsumerLifecycleListener {
         @Override
-        public void onMessage(PongRecord message) {
+        public void onMessage(MessageExt message) {
+            long received = tracer.now();
+            PongRecord record = convert(message);
+            if (record == null) {
+                // 无法解码的消息同样交给 Broker 重试，最终进入死信队列
+                throw new IllegalArgumentException("message conversion failed, MsgId: " + message.getMsgId());
+            }
             try {
-                messageService.consumePongResponse(message);
+                if (messageService.consumePongResponse(record)) {
+                    stats.recordConsumed(record, createdAt(message));
+                    tracer.recordPersisted(message, received);
+                }
             } catch (Exception e) {
                 log.error("message processing failed: {}", e.getMessage(), e);
+                // 抛出异常让 Broker 重新投递，重试耗尽后进入死信队列
+                throw e;
             }
         }
+
+        @Override
+        public void prepareStart(DefaultMQPushConsumer consumer) {
+            configure(consumer);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,74 @@
+package com.challenge.pong.controller;
+
+import com.challenge.pong.cluster.ClusterMembership;
+import com.challenge.pong.cluster.ClusterRateLimiter;
+import com.challenge.pong.cluster.HttpPeerTransport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * 副本之间的心跳和配额借用接口，仅在集群限流模式下启用
+ * 与公开接口共用端口，请求必须带有 pong.cluster.secret，否则返回 403
+ */
+@RestController
+@RequestMapping("/internal/cluster")
+@ConditionalOnProperty(name = "pong.rate-limit.mode", havingValue = "cluster")
+public class ClusterController {
+
+    @Autowired
+    private ClusterMembership membership;
+
+    @Autowired
+    private ClusterRateLimiter rateLimiter;
+
+    @Value("${pong.cluster.secret:}")
+    private String secret = "";
+
+    /**
+     * 记下发送心跳的副本，地址不在种子地址解析结果中的心跳返回 403
+     * @return 本副本的实例ID
+     */
+    @PostMapping("/heartbeat")
+    public Mono<String> heartbeat(@RequestHeader(value = HttpPeerTransport.SECRET_HEADER, required = false) String token,
+                                  @RequestParam String id, @RequestParam String url) {
+        return authorize(token).then(Mono.fromSupplier(() -> {
+            if (!membership.onHeartbeat(id, url)) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Unknown peer address");
+            }
+            return membership.selfId();
+        }));
+    }
+
+    /**
+     * 从本副本当前窗口的剩余配额中借出一部分
+     * @return 借出的许可数
+     */
+    @PostMapping("/lease")
+    public Mono<Integer> lease(@RequestHeader(value = HttpPeerTransport.SECRET_HEADER, required = false) String token,
+                               @RequestParam String key, @RequestParam long epoch, @RequestParam int wanted) {
+        return authorize(token).then(Mono.fromSupplier(() -> rateLimiter.lend(key, epoch, wanted)));
+    }
+
+    /**
+     * 按固定时间比较密钥，没有配置密钥时拒绝所有请求
+     */
+    private Mono<Void> authorize(String token) {
+        if (secret.isEmpty() || token == null || !MessageDigest.isEqual(
+                secret.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "Invalid cluster secret"));
+        }
+        return Mono.empty();
+    }
+}
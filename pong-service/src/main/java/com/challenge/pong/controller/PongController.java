@@ -1,16 +1,21 @@
 package com.challenge.pong.controller;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
 import lombok.extern.slf4j.Slf4j;
+import com.challenge.common.audit.AuditEventType;
+import com.challenge.common.audit.AuditJournal;
+import com.challenge.common.id.RequestIdGenerator;
+import com.challenge.pong.ratelimit.CallerRateLimiter;
 import com.challenge.pong.service.PongMessageService;
-import java.util.UUID;
+import com.challenge.pong.stats.PongStats;
+import java.time.Duration;
 
 @RestController
 @RequestMapping("/api")
@@ -19,63 +24,79 @@ public class PongController {
     // 响应数据结构：包含消息内容、状态码和请求ID
     private record PongResponse(String message, int status, String requestId) {}
     
-    // 用于记录上一次请求的时间戳
-    private volatile long lastRequestTime = 0;
-    // 定义请求间隔时间为1秒
-    private static final long INTERVAL_MS = 1000; 
-    // 用于记录限流相关的日志
-    private static final Logger RATE_LIMIT_LOG = LoggerFactory.getLogger("RATE_LIMIT");
-    // 用于记录审计相关的日志
-    private static final Logger AUDIT_LOG = LoggerFactory.getLogger("AUDIT");
+    // 调用方身份请求头，由 ping 服务填入自己的实例ID
+    public static final String INSTANCE_HEADER = "X-Instance-Id";
+    
+    // 放行和限流时的响应内容，流式通道返回相同的内容
+    static final String ACCEPTED_MESSAGE = "World";
+    static final String RATE_LIMITED_MESSAGE = "Rate limited by Pong service";
     
     @Autowired
     private PongMessageService messageService;
     
+    // 按调用方分别限流的限流器，单实例或集群模式
+    @Autowired
+    private CallerRateLimiter rateLimiter;
+    
+    // 审计日志，处理结果和限流都记为审计事件
+    @Autowired
+    private AuditJournal auditJournal = AuditJournal.disabled();
+    
+    // 实时统计，按状态码和调用方计数
+    @Autowired
+    private PongStats stats = PongStats.disabled();
+    
+    // 按时间排序的请求ID，每个线程独立生成
+    @Autowired
+    private RequestIdGenerator requestIdGenerator = RequestIdGenerator.local();
+    
     /**
      * 处理ping请求的端点
-     * 实现了基于时间间隔的简单限流机制
+     * 按调用方身份分别限流，不同调用方之间互不影响；集群模式下限额在所有副本之间共享
+     * @param instanceId 调用方实例ID，未携带时归为匿名调用方
      * @return 响应实体
      */
     @GetMapping("/pong")
-    public Mono<ResponseEntity<String>> handlePing() {
-        return Mono.fromSupplier(() -> {
+    public Mono<ResponseEntity<String>> handlePing(
+            @RequestHeader(value = INSTANCE_HEADER, required = false) String instanceId) {
+        return Mono.defer(() -> {
             // 记录请求处理开始
-            log.info("Processing ping request");
-            // 获取当前时间戳
-            long currentTime = System.currentTimeMillis();
-            // 标记是否通过限流检查
-            boolean acquired = false;
+            log.debug("Processing ping request");
             // 生成唯一请求ID
-            String requestId = UUID.randomUUID().toString();
-            
-            // 使用同步块检查和更新限流状态
-            synchronized (this) {
-                if (currentTime - lastRequestTime >= INTERVAL_MS) {
-                    acquired = true;
-                    lastRequestTime = currentTime;
+            String requestId = requestIdGenerator.next();
+            // 检查该调用方的限流状态，集群模式下本地配额不足时会向其他副本借用
+            return rateLimiter.acquire(instanceId).map(acquired -> {
+                // 根据限流检查结果构造响应
+                var response = acquired 
+                    ? new PongResponse(ACCEPTED_MESSAGE, 200, requestId)
+                    : new PongResponse(RATE_LIMITED_MESSAGE, 429, requestId);
+                
+                // 记录请求处理结果
+                auditJournal.append(acquired ? AuditEventType.PONG_ACCEPTED : AuditEventType.PONG_RATE_LIMITED,
+                    response.status(), requestId, instanceId, 0);
+                stats.recordDecision(instanceId, response.status());
+                
+                // 根据响应状态返回不同的HTTP响应
+                if (response.status() == 200) {
+                    return ResponseEntity.ok(response.message());
+                } else if (response.status() == 429) {
+                    // Retry-After 以秒为单位，向上取整，调用方据此暂停发送
+                    return ResponseEntity.status(429)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds(rateLimiter, instanceId)))
+                        .body(response.message());
+                } else {
+                    return ResponseEntity.internalServerError().body("Unknown error");
                 }
-            }
-            
-            // 根据限流检查结果构造响应
-            var response = acquired 
-                ? new PongResponse("World", 200, requestId)
-                : new PongResponse("Rate limited by Pong service", 429, requestId);
-            
-            // 记录请求处理结果
-            if (acquired) {
-                AUDIT_LOG.info("Request processed successfully");
-            } else {
-                RATE_LIMIT_LOG.info("Request rate limited");
-            }
-            
-            // 根据响应状态返回不同的HTTP响应
-            if (response.status() == 200) {
-                return ResponseEntity.ok(response.message());
-            } else if (response.status() == 429) {
-                return ResponseEntity.status(429).body(response.message());
-            } else {
-                return ResponseEntity.internalServerError().body("Unknown error");
-            }
+            });
         });
     }
+    
+    /**
+     * Retry-After 以秒为单位，向上取整且至少为1
+     */
+    static long retryAfterSeconds(CallerRateLimiter rateLimiter, String instanceId) {
+        Duration wait = rateLimiter.retryAfter(instanceId);
+        long millis = wait == null ? 0 : wait.toMillis();
+        return Math.max(1, (millis + 999) / 1000);
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,99 @@
+package com.challenge.pong.controller;
+
+import com.challenge.common.audit.AuditEventType;
+import com.challenge.common.audit.AuditJournal;
+import com.challenge.common.id.RequestIdGenerator;
+import com.challenge.common.stream.PingStreamProtocol;
+import com.challenge.common.stream.PingStreamProtocol.Ping;
+import com.challenge.common.stream.PingStreamProtocol.RequestN;
+import com.challenge.common.stream.PingStreamProtocol.Verdict;
+import com.challenge.pong.ratelimit.CallerRateLimiter;
+import com.challenge.pong.stats.PongStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * 流式 ping 通道，与 /api/pong 的限流和审计语义相同
+ * 一个 ping 实例保持一个 WebSocket 连接，连续发送 ping 帧并按序收到处理结果，省去每次请求的连接和报文头开销；
+ * 连接建立时发放 window 个额度，每处理完半个窗口再补发，Ping 端没有额度时不再发送
+ */
+@Slf4j
+public class PongStreamHandler implements WebSocketHandler {
+
+    @Autowired
+    private CallerRateLimiter rateLimiter;
+
+    @Autowired
+    private AuditJournal auditJournal = AuditJournal.disabled();
+
+    @Autowired
+    private PongStats stats = PongStats.disabled();
+
+    @Autowired
+    private RequestIdGenerator requestIdGenerator = RequestIdGenerator.local();
+
+    // 每个连接允许在途的 ping 数
+    private final int window;
+
+    public PongStreamHandler(int window) {
+        this.window = Math.max(2, window);
+    }
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        // 调用方身份取自握手请求头，与 HTTP 接口一致
+        String instanceId = session.getHandshakeInfo().getHeaders().getFirst(PongController.INSTANCE_HEADER);
+        log.info("Ping stream opened by {} ({})", instanceId, session.getId());
+        int replenish = window / 2;
+        int[] processed = {0};
+        Flux<String> verdicts = session.receive()
+            .map(WebSocketMessage::getPayloadAsText)
+            .concatMap(text -> decode(text, session))
+            // 按到达顺序返回结果，集群模式下借用配额时可以同时处理多个
+            .flatMapSequential(ping -> verdict(ping, instanceId), window)
+            .concatMapIterable(verdict -> {
+                // 单线程按序处理，计数不需要同步
+                if (++processed[0] < replenish) {
+                    return List.of(PingStreamProtocol.encode(verdict));
+                }
+                processed[0] = 0;
+                return List.of(PingStreamProtocol.encode(verdict), PingStreamProtocol.encode(new RequestN(replenish)));
+            });
+        Flux<String> frames = Flux.concat(Mono.just(PingStreamProtocol.encode(new RequestN(window))), verdicts);
+        return session.send(frames.map(session::textMessage))
+            .doFinally(signal -> log.info("Ping stream closed by {} ({}): {}", instanceId, session.getId(), signal));
+    }
+
+    private static Mono<Ping> decode(String text, WebSocketSession session) {
+        try {
+            if (PingStreamProtocol.decode(text) instanceof Ping ping) {
+                return Mono.just(ping);
+            }
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring frame on {}: {}", session.getId(), e.getMessage());
+        }
+        return Mono.empty();
+    }
+
+    private Mono<Verdict> verdict(Ping ping, String instanceId) {
+        return Mono.defer(() -> {
+            String requestId = requestIdGenerator.next();
+            return rateLimiter.acquire(instanceId).map(acquired -> {
+                auditJournal.append(acquired ? AuditEventType.PONG_ACCEPTED : AuditEventType.PONG_RATE_LIMITED,
+                    acquired ? 200 : 429, requestId, instanceId, 0);
+                stats.recordDecision(instanceId, acquired ? 200 : 429);
+                return acquired
+                    ? new Verdict(ping.seq(), 200, 0, PongController.ACCEPTED_MESSAGE)
+                    : new Verdict(ping.seq(), 429, PongController.retryAfterSeconds(rateLimiter, instanceId),
+                        PongController.RATE_LIMITED_MESSAGE);
+            });
+        });
+    }
+}
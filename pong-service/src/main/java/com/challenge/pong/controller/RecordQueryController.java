@@ -0,0 +1,57 @@
+package com.challenge.pong.controller;
+
+import com.challenge.pong.model.PongRecord;
+import com.challenge.pong.service.PongRecordReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+
+/**
+ * 查询已保存的 pong 记录
+ */
+@RestController
+@RequestMapping("/api/records")
+public class RecordQueryController {
+
+    @Autowired
+    private PongRecordReader reader;
+
+    // 范围查询每页读取的记录数
+    @Value("${pong.query.page-size:500}")
+    private int pageSize = 500;
+
+    /**
+     * 按请求ID查询，重复投递的消息可能对应多条记录
+     */
+    @GetMapping(params = "requestId")
+    public Flux<PongRecord> byRequestId(@RequestParam String requestId) {
+        return reader.findByRequestId(requestId);
+    }
+
+    /**
+     * 按时间范围（和状态码）导出记录，以 NDJSON 逐行输出，按 (timestamp, id) 排序；
+     * 结果按页读取，客户端读得慢时不会继续查询，导出大量记录也只占用少量内存
+     * @param from 起始时间（含），续传时传入上次收到的最后一条记录的 timestamp
+     * @param to 结束时间（不含）
+     * @param afterId 续传时传入上次收到的最后一条记录的 id，只返回排在它之后的记录
+     * @param limit 最多返回的记录数，不传时返回全部
+     */
+    @GetMapping(params = {"from", "to"}, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<PongRecord> byRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Integer status,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(required = false) Long limit) {
+        Flux<PongRecord> records = reader.stream(from, afterId, to, status, pageSize);
+        return limit == null ? records : records.take(Math.max(0, limit), true);
+    }
+}
@@ -0,0 +1,41 @@
+package com.challenge.pong.controller;
+
+import com.challenge.pong.storage.PongRecordSummaries;
+import com.challenge.pong.storage.PongRecordSummaries.MinuteCount;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 按分钟和状态码统计 pong 记录，优先读取汇总表
+ */
+@RestController
+@RequestMapping("/api/records")
+@Profile("!r2dbc")
+public class RecordSummaryController {
+
+    @Autowired
+    private PongRecordSummaries summaries;
+
+    /**
+     * @param from 起始时间（ISO 格式，如 2024-01-01T00:00:00），向下取整到分钟
+     * @param to 结束时间（不含），向下取整到分钟
+     */
+    @GetMapping("/summary")
+    public Mono<List<MinuteCount>> summary(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        // JDBC 查询会阻塞，放到专用线程池执行
+        return Mono.fromCallable(() -> summaries.countsByMinute(from, to))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+}
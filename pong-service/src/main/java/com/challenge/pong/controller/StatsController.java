@@ -0,0 +1,31 @@
+package com.challenge.pong.controller;
+
+import com.challenge.pong.stats.PongStats;
+import com.challenge.pong.stats.PongStats.View;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * 实时统计接口，数据全部来自内存，不查询数据库
+ */
+@RestController
+@RequestMapping("/api")
+public class StatsController {
+
+    @Autowired
+    private PongStats stats = PongStats.disabled();
+
+    /**
+     * @return 当前秒（second）、最近一分钟（minute）和最近一小时（hour）的放行/限流决定、
+     * 已保存记录数和消费延迟分位数
+     */
+    @GetMapping("/stats")
+    public Mono<Map<String, View>> stats() {
+        return Mono.fromSupplier(stats::snapshot);
+    }
+}
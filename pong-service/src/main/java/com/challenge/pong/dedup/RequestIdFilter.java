@@ -0,0 +1,157 @@
+package com.challenge.pong.dedup;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * 最近保存过的 requestId，消费时在写库之前过滤重复投递的消息
+ * 布隆过滤器判断"一定没见过"，绝大多数新消息只需一次位图检查；布隆过滤器命中时再查精确的最近ID集合，
+ * 确认重复才跳过写库，未确认（误判或已被移出集合）的消息照常写入，由数据库唯一索引最终去重。
+ * 两者都分为当前和上一代，按时间或容量轮换，内存占用有上限；只在记录写入成功后才加入，
+ * 写入失败重新投递的消息不会被误判为重复
+ */
+public class RequestIdFilter implements MeterBinder {
+    private static final RequestIdFilter DISABLED = new RequestIdFilter();
+
+    /**
+     * 两代布隆过滤器和最近ID集合，轮换时整体替换
+     */
+    private record State(BloomFilter<CharSequence> bloom, BloomFilter<CharSequence> previousBloom,
+                         AtomicInteger bloomInserted, long rotateAt,
+                         Set<String> ids, Set<String> previousIds, AtomicInteger idsInserted) {}
+
+    private final boolean enabled;
+    private final long halfWindowNanos;
+    private final int expectedInsertions;
+    private final double falsePositiveRate;
+    private final int cacheGeneration;
+    private final LongSupplier nanoTime;
+    private final AtomicReference<State> state;
+
+    private Counter skipped;
+    private Counter unconfirmed;
+
+    private RequestIdFilter() {
+        this.enabled = false;
+        this.halfWindowNanos = 0;
+        this.expectedInsertions = 0;
+        this.falsePositiveRate = 0;
+        this.cacheGeneration = 0;
+        this.nanoTime = System::nanoTime;
+        this.state = null;
+        registerMeters(new CompositeMeterRegistry());
+    }
+
+    /**
+     * @param window 记住一个 requestId 的时间，至少为半个窗口，最多一个窗口
+     * @param expectedInsertions 每代布隆过滤器的容量，达到后提前轮换
+     * @param cacheSize 精确的最近ID集合的总容量，两代各占一半
+     */
+    public RequestIdFilter(Duration window, int expectedInsertions, double falsePositiveRate, int cacheSize) {
+        this(window, expectedInsertions, falsePositiveRate, cacheSize, System::nanoTime);
+    }
+
+    RequestIdFilter(Duration window, int expectedInsertions, double falsePositiveRate, int cacheSize,
+                    LongSupplier nanoTime) {
+        this.enabled = true;
+        this.halfWindowNanos = Math.max(1, window.toNanos() / 2);
+        this.expectedInsertions = Math.max(1, expectedInsertions);
+        this.falsePositiveRate = falsePositiveRate;
+        this.cacheGeneration = Math.max(1, cacheSize / 2);
+        this.nanoTime = nanoTime;
+        this.state = new AtomicReference<>(new State(bloom(), bloom(), new AtomicInteger(),
+            nanoTime.getAsLong() + halfWindowNanos, ConcurrentHashMap.newKeySet(), Set.of(), new AtomicInteger()));
+        registerMeters(new CompositeMeterRegistry());
+    }
+
+    public static RequestIdFilter disabled() {
+        return DISABLED;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        registerMeters(registry);
+    }
+
+    private void registerMeters(MeterRegistry registry) {
+        skipped = Counter.builder("pong.dedup.skipped")
+            .description("Redelivered records recognised in memory and not written again")
+            .register(registry);
+        unconfirmed = Counter.builder("pong.dedup.unconfirmed")
+            .description("Bloom filter hits not confirmed by the recent id cache, left to the unique index")
+            .register(registry);
+    }
+
+    /**
+     * @return 确认最近已经保存过该 requestId；返回 false 时可能仍是重复的，需要由数据库去重
+     */
+    public boolean isDuplicate(String requestId) {
+        if (!enabled || requestId == null) {
+            return false;
+        }
+        State current = current();
+        if (!current.bloom().mightContain(requestId) && !current.previousBloom().mightContain(requestId)) {
+            return false;
+        }
+        if (current.ids().contains(requestId) || current.previousIds().contains(requestId)) {
+            skipped.increment();
+            return true;
+        }
+        unconfirmed.increment();
+        return false;
+    }
+
+    /**
+     * 记录已经写入数据库（包括因唯一索引冲突而忽略）的 requestId
+     */
+    public void remember(String requestId) {
+        if (!enabled || requestId == null) {
+            return;
+        }
+        State current = current();
+        current.bloom().put(requestId);
+        if (current.ids().add(requestId)) {
+            current.idsInserted().incrementAndGet();
+        }
+        if (current.bloomInserted().incrementAndGet() >= expectedInsertions
+                || current.idsInserted().get() >= cacheGeneration) {
+            rotate(current);
+        }
+    }
+
+    private State current() {
+        State current = state.get();
+        return nanoTime.getAsLong() - current.rotateAt() >= 0 ? rotate(current) : current;
+    }
+
+    /**
+     * 到期或布隆过滤器写满时两者一起轮换；只有最近ID集合写满时只轮换集合，布隆过滤器继续覆盖更长的时间
+     */
+    private State rotate(State current) {
+        boolean bloomDue = nanoTime.getAsLong() - current.rotateAt() >= 0
+            || current.bloomInserted().get() >= expectedInsertions;
+        State next = bloomDue
+            ? new State(bloom(), current.bloom(), new AtomicInteger(), nanoTime.getAsLong() + halfWindowNanos,
+                ConcurrentHashMap.newKeySet(), current.ids(), new AtomicInteger())
+            : new State(current.bloom(), current.previousBloom(), current.bloomInserted(), current.rotateAt(),
+                ConcurrentHashMap.newKeySet(), current.ids(), new AtomicInteger());
+        // 其他线程已经轮换时使用它的结果
+        return state.compareAndSet(current, next) ? next : state.get();
+    }
+
+    private BloomFilter<CharSequence> bloom() {
+        return BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedInsertions, falsePositiveRate);
+    }
+}
@@ -5,6 +5,10 @@ import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.DialectOverride;
+import org.hibernate.annotations.SQLInsert;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.jdbc.Expectation;
 
 import java.time.LocalDateTime;
 
@@ -13,9 +17,21 @@ import java.time.LocalDateTime;
 @ToString
 @Entity
 @Table(name = "pong_records")
+@org.springframework.data.relational.core.mapping.Table("pong_records")
+// 重复投递的记录与已有记录的 (request_id, timestamp) 冲突时不插入，也不检查影响行数；列顺序与 Hibernate 生成的一致。
+// 只忽略去重索引上的冲突，主键冲突照常报错，消息交给 Broker 重试而不是被静默丢弃。
+// 测试使用的 H2（PostgreSQL 兼容模式）不支持冲突目标，改用不带目标的写法
+@SQLInsert(sql = "INSERT INTO pong_records (message, request_id, status, timestamp, id) VALUES (?, ?, ?, ?, ?) "
+    + "ON CONFLICT (request_id, timestamp) DO NOTHING", verify = Expectation.None.class)
+@DialectOverride.SQLInsert(dialect = H2Dialect.class, override = @SQLInsert(
+    sql = "INSERT INTO pong_records (message, request_id, status, timestamp, id) VALUES (?, ?, ?, ?, ?) "
+        + "ON CONFLICT DO NOTHING", verify = Expectation.None.class))
 public class PongRecord {
+    // 使用池化序列分配主键，Hibernate 可以预先分配一段 id 并批量插入
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @org.springframework.data.annotation.Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pong_records_seq")
+    @SequenceGenerator(name = "pong_records_seq", sequenceName = "pong_records_seq", allocationSize = 100)
     private Long id;
     
     private String message;
@@ -0,0 +1,32 @@
+package com.challenge.pong.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * 按调用方限流的限流器
+ * 单实例模式由 KeyedRateLimiter 在本地判断；集群模式下各副本分摊全局配额，本地配额用完时需要向其他副本借用
+ */
+public interface CallerRateLimiter {
+
+    /**
+     * 只使用本地状态为指定调用方尝试获取许可
+     * @param key 调用方标识，为空时视为匿名调用方
+     * @return 获取成功返回true，否则返回false
+     */
+    boolean tryAcquire(String key);
+
+    /**
+     * 为指定调用方获取许可，本地配额不足时可以异步地向其他副本借用
+     */
+    default Mono<Boolean> acquire(String key) {
+        return Mono.fromSupplier(() -> tryAcquire(key));
+    }
+
+    /**
+     * 被限流后调用方至少需要等待的时间，用于 429 响应的 Retry-After
+     * @param key 调用方标识，为空时视为匿名调用方
+     */
+    Duration retryAfter(String key);
+}
@@ -0,0 +1,186 @@
+package com.challenge.pong.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 按调用方分别限流的无锁限流器
+ * 每个调用方（如 ping 实例ID）拥有独立的 GCRA 状态，通过 CAS 更新，不同调用方之间互不竞争。
+ * 调用方状态保存在有界表中：空闲超过 idleTimeout 的条目会被清理；表满时新调用方共享一个溢出配额
+ */
+@Slf4j
+public class KeyedRateLimiter implements CallerRateLimiter {
+    // 没有携带身份的请求使用的键
+    public static final String ANONYMOUS_KEY = "anonymous";
+    // 表满时新调用方共享的键
+    public static final String OVERFLOW_KEY = "overflow";
+
+    /**
+     * 速率：每个 window 内允许 limit 次请求
+     */
+    public record Rate(int limit, Duration window) {
+        public Rate {
+            limit = Math.max(1, limit);
+        }
+
+        /**
+         * 解析 "limit/window" 格式，例如 "5/1s"
+         */
+        public static Rate parse(String value) {
+            String[] parts = value.trim().split("/");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid rate '" + value + "', expected <limit>/<window>");
+            }
+            return new Rate(Integer.parseInt(parts[0].trim()), DurationStyle.detectAndParse(parts[1].trim()));
+        }
+
+        /**
+         * 解析 "key=limit/window,key=limit/window" 格式的按调用方速率配置
+         */
+        public static Map<String, Rate> parseOverrides(String value) {
+            Map<String, Rate> overrides = new ConcurrentHashMap<>();
+            if (value == null || value.isBlank()) {
+                return overrides;
+            }
+            for (String item : value.split(",")) {
+                String[] pair = item.split("=", 2);
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("Invalid rate override '" + item + "', expected <key>=<rate>");
+                }
+                overrides.put(pair[0].trim(), parse(pair[1]));
+            }
+            return overrides;
+        }
+    }
+
+    /**
+     * 单个调用方的限流状态
+     */
+    static final class Entry {
+        // 发射间隔（毫秒）
+        final long interval;
+        // 突发容差（毫秒）
+        final long tolerance;
+        // 理论到达时间
+        final AtomicLong tat = new AtomicLong();
+        // 最近一次访问时间，用于清理空闲条目
+        volatile long lastAccess;
+
+        Entry(Rate rate, long now) {
+            this.interval = Math.max(1, rate.window().toMillis() / rate.limit());
+            this.tolerance = interval * (rate.limit() - 1);
+            this.lastAccess = now;
+        }
+
+        boolean tryAcquire(long now) {
+            lastAccess = now;
+            while (true) {
+                long current = tat.get();
+                long effective = Math.max(current, now);
+                if (effective - tolerance > now) {
+                    return false;
+                }
+                if (tat.compareAndSet(current, effective + interval)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return 距离下一个许可可用还需等待的毫秒数
+         */
+        long waitMillis(long now) {
+            return Math.max(0, tat.get() - tolerance - now);
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Rate defaultRate;
+    private final Map<String, Rate> overrides;
+    private final int maxKeys;
+    private final long idleTimeoutMillis;
+    private final LongSupplier clock;
+    // 下一次定期清理的时间
+    private final AtomicLong nextSweep = new AtomicLong();
+
+    public KeyedRateLimiter(Rate defaultRate, Map<String, Rate> overrides, int maxKeys, Duration idleTimeout) {
+        this(defaultRate, overrides, maxKeys, idleTimeout, System::currentTimeMillis);
+    }
+
+    KeyedRateLimiter(Rate defaultRate, Map<String, Rate> overrides, int maxKeys, Duration idleTimeout,
+                     LongSupplier clock) {
+        this.defaultRate = defaultRate;
+        this.overrides = Map.copyOf(overrides);
+        this.maxKeys = Math.max(1, maxKeys);
+        // 空闲时间至少要覆盖最长的时间窗口，否则清理后重建的条目可能多放行请求
+        long longestWindow = this.overrides.values().stream()
+            .mapToLong(rate -> rate.window().toMillis())
+            .reduce(defaultRate.window().toMillis(), Math::max);
+        this.idleTimeoutMillis = Math.max(idleTimeout.toMillis(), longestWindow);
+        this.clock = clock;
+    }
+
+    /**
+     * 为指定调用方尝试获取许可
+     * @param key 调用方标识，为空时视为匿名调用方
+     * @return 获取成功返回true，否则返回false
+     */
+    @Override
+    public boolean tryAcquire(String key) {
+        long now = clock.getAsLong();
+        sweepIfDue(now);
+
+        String resolvedKey = (key == null || key.isBlank()) ? ANONYMOUS_KEY : key;
+        Entry entry = entries.get(resolvedKey);
+        if (entry == null) {
+            if (entries.size() >= maxKeys) {
+                evictIdle(now);
+                if (entries.size() >= maxKeys) {
+                    log.debug("Rate limiter table full, {} shares the overflow quota", resolvedKey);
+                    resolvedKey = OVERFLOW_KEY;
+                }
+            }
+            entry = entries.computeIfAbsent(resolvedKey, k -> new Entry(rateFor(k), now));
+        }
+        return entry.tryAcquire(now);
+    }
+
+    /**
+     * 被限流后调用方至少需要等待的时间，用于 429 响应的 Retry-After
+     * @param key 调用方标识，为空时视为匿名调用方
+     */
+    @Override
+    public Duration retryAfter(String key) {
+        String resolvedKey = (key == null || key.isBlank()) ? ANONYMOUS_KEY : key;
+        Entry entry = entries.getOrDefault(resolvedKey, entries.get(OVERFLOW_KEY));
+        return entry == null ? Duration.ZERO : Duration.ofMillis(entry.waitMillis(clock.getAsLong()));
+    }
+
+    /**
+     * @return 当前跟踪的调用方数量
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private Rate rateFor(String key) {
+        return overrides.getOrDefault(key, defaultRate);
+    }
+
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now >= due && nextSweep.compareAndSet(due, now + idleTimeoutMillis)) {
+            evictIdle(now);
+        }
+    }
+
+    private void evictIdle(long now) {
+        entries.values().removeIf(entry -> now - entry.lastAccess > idleTimeoutMillis);
+    }
+}
@@ -2,6 +2,30 @@ package com.challenge.pong.repository;
 
 import com.challenge.pong.model.PongRecord;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 public interface PongRecordRepository extends JpaRepository<PongRecord, Long> {
-} 
\ No newline at end of file
+
+    List<PongRecord> findByRequestId(String requestId);
+
+    /**
+     * keyset 分页：取 (timestamp, id) 排在 (afterTimestamp, afterId) 之后、timestamp 早于 to 的一页记录
+     */
+    @Query(value = "SELECT * FROM pong_records WHERE timestamp < :to "
+        + "AND (timestamp, id) > (:afterTimestamp, :afterId) ORDER BY timestamp, id LIMIT :limit", nativeQuery = true)
+    List<PongRecord> findPage(@Param("to") LocalDateTime to, @Param("afterTimestamp") LocalDateTime afterTimestamp,
+                              @Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 只取指定状态码的一页记录，见 {@link #findPage}
+     */
+    @Query(value = "SELECT * FROM pong_records WHERE status = :status AND timestamp < :to "
+        + "AND (timestamp, id) > (:afterTimestamp, :afterId) ORDER BY timestamp, id LIMIT :limit", nativeQuery = true)
+    List<PongRecord> findPageByStatus(@Param("status") int status, @Param("to") LocalDateTime to,
+                                      @Param("afterTimestamp") LocalDateTime afterTimestamp,
+                                      @Param("afterId") long afterId, @Param("limit") int limit);
+}
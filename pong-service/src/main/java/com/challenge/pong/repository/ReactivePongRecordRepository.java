@@ -0,0 +1,34 @@
+package com.challenge.pong.repository;
+
+import com.challenge.pong.model.PongRecord;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+
+/**
+ * 基于 R2DBC 的响应式记录仓库，仅在 r2dbc profile 下启用
+ * 新记录的主键由数据库序列生成，写入请使用 ReactivePongRecordWriter
+ */
+public interface ReactivePongRecordRepository extends R2dbcRepository<PongRecord, Long> {
+
+    Flux<PongRecord> findByRequestId(String requestId);
+
+    Flux<PongRecord> findByTimestampBetweenOrderByTimestamp(LocalDateTime from, LocalDateTime to);
+
+    /**
+     * keyset 分页：取 (timestamp, id) 排在 (afterTimestamp, afterId) 之后、timestamp 早于 to 的一页记录
+     */
+    @Query("SELECT * FROM pong_records WHERE timestamp < :to "
+        + "AND (timestamp, id) > (:afterTimestamp, :afterId) ORDER BY timestamp, id LIMIT :limit")
+    Flux<PongRecord> findPage(LocalDateTime to, LocalDateTime afterTimestamp, long afterId, int limit);
+
+    /**
+     * 只取指定状态码的一页记录，见 {@link #findPage}
+     */
+    @Query("SELECT * FROM pong_records WHERE status = :status AND timestamp < :to "
+        + "AND (timestamp, id) > (:afterTimestamp, :afterId) ORDER BY timestamp, id LIMIT :limit")
+    Flux<PongRecord> findPageByStatus(int status, LocalDateTime to, LocalDateTime afterTimestamp, long afterId,
+                                      int limit);
+}
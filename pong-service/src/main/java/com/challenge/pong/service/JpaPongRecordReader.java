@@ -0,0 +1,42 @@
+package com.challenge.pong.service;
+
+import com.challenge.pong.model.PongRecord;
+import com.challenge.pong.repository.PongRecordRepository;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 基于 JPA 仓库的记录查询，阻塞的查询放到专用线程池执行
+ */
+@Component
+@Profile("!r2dbc")
+public class JpaPongRecordReader implements PongRecordReader {
+    private final PongRecordRepository repository;
+
+    public JpaPongRecordReader(PongRecordRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public Flux<PongRecord> findByRequestId(String requestId) {
+        return query(() -> repository.findByRequestId(requestId));
+    }
+
+    @Override
+    public Flux<PongRecord> findPage(LocalDateTime to, Integer status, LocalDateTime afterTimestamp, long afterId,
+                                     int limit) {
+        return query(() -> status == null
+            ? repository.findPage(to, afterTimestamp, afterId, limit)
+            : repository.findPageByStatus(status, to, afterTimestamp, afterId, limit));
+    }
+
+    private static Flux<PongRecord> query(Supplier<List<PongRecord>> query) {
+        return Flux.defer(() -> Flux.fromIterable(query.get())).subscribeOn(Schedulers.boundedElastic());
+    }
+}
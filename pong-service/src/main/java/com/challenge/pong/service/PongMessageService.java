@@ -1,29 +1,92 @@
 package com.challenge.pong.service;
 
+import com.challenge.pong.dedup.RequestIdFilter;
 import com.challenge.pong.model.PongRecord;
-import com.challenge.pong.repository.PongRecordRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class PongMessageService {
-    private final PongRecordRepository repository;
+    private final PongRecordWriter batchWriter;
+
+    // 过滤最近已经保存过的 requestId，重复投递的消息不再写库；未识别的重复由唯一索引忽略
+    @Autowired
+    private RequestIdFilter requestIdFilter = RequestIdFilter.disabled();
 
+    /**
+     * 整批保存的结果
+     * @param acknowledged 从头开始连续保存成功（或已经保存过）的记录数，其后的记录需要重新投递
+     * @param written 本次实际写入的记录下标，不含最近已经保存过而被跳过的记录
+     */
+    public record BatchResult(int acknowledged, BitSet written) {
+        public boolean isWritten(int index) {
+            return written.get(index);
+        }
+    }
     
+    /**
+     * 保存一条记录，记录随所在批次提交后才返回，保证消息确认前已经落库
+     * 最近已经保存过的记录直接返回，不再写入
+     * @return 本次是否写入了该记录
+     */
     public boolean consumePongResponse(PongRecord record) {
         if (record == null) {
             return false;
         }
+        if (requestIdFilter.isDuplicate(record.getRequestId())) {
+            log.debug("duplicate message skipped: {}", record.getRequestId());
+            return false;
+        }
         try {
-            repository.save(record);
+            batchWriter.write(record).join();
+            requestIdFilter.remember(record.getRequestId());
             log.info("message saved to database: {}", record);
         } catch (Exception e) {
-            log.error("handle message failed: {}", e.getMessage(), e);
-            throw new RuntimeException("handle message failed", e);
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            log.error("handle message failed: {}", cause.getMessage(), cause);
+            throw new RuntimeException("handle message failed", cause);
         }
         return true;
     }
-} 
\ No newline at end of file
+
+    /**
+     * 整批保存消费到的记录，批内失败的记录会单独重试一次，最近已经保存过的记录不再写入
+     */
+    public BatchResult consumePongResponses(List<PongRecord> records) {
+        List<PongRecord> fresh = new ArrayList<>(records.size());
+        for (PongRecord record : records) {
+            if (!requestIdFilter.isDuplicate(record.getRequestId())) {
+                fresh.add(record);
+            }
+        }
+        if (fresh.size() < records.size()) {
+            log.debug("{} duplicate messages skipped in batch", records.size() - fresh.size());
+        }
+        List<CompletableFuture<Void>> results = fresh.isEmpty() ? List.of() : batchWriter.writeBatch(fresh);
+        BitSet written = new BitSet(records.size());
+        int next = 0;
+        for (int i = 0; i < records.size(); i++) {
+            if (next < fresh.size() && fresh.get(next) == records.get(i)) {
+                try {
+                    results.get(next++).join();
+                    requestIdFilter.remember(records.get(i).getRequestId());
+                    written.set(i);
+                } catch (CompletionException e) {
+                    log.error("handle message failed: {}", records.get(i), e.getCause());
+                    return new BatchResult(i, written);
+                }
+            }
+        }
+        return new BatchResult(records.size(), written);
+    }
+}
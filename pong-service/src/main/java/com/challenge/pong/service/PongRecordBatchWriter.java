@@ -0,0 +1,185 @@
+package com.challenge.pong.service;
+
+import com.challenge.pong.model.PongRecord;
+import com.challenge.pong.repository.PongRecordRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pong 记录批量写入器
+ * 多个消费线程提交的记录先进入有界队列，由写入线程按数量或等待时间攒批，
+ * 通过一次 saveAll 批量插入（配合池化序列和 JDBC 批处理生成多行 INSERT），
+ * 写入吞吐随消费并发增长，而不是受限于单条记录的数据库往返时间
+ */
+@Slf4j
+@Component
+@Profile("!r2dbc")
+public class PongRecordBatchWriter implements PongRecordWriter {
+
+    /**
+     * 等待写入的记录及其完成通知
+     */
+    private record Pending(PongRecord record, CompletableFuture<Void> future) {}
+
+    private final PongRecordRepository repository;
+
+    // 每批最多写入的记录数，应与 hibernate.jdbc.batch_size 保持一致
+    @Value("${pong.persistence.batch-size:100}")
+    private int batchSize = 100;
+
+    // 攒批的最长等待时间
+    @Value("${pong.persistence.linger:20ms}")
+    private Duration linger = Duration.ofMillis(20);
+
+    // 待写入队列容量，队列满时直接拒绝
+    @Value("${pong.persistence.queue-capacity:10000}")
+    private int queueCapacity = 10000;
+
+    // 写入线程数，多个线程可以重叠数据库往返
+    @Value("${pong.persistence.writer-threads:2}")
+    private int writerThreads = 2;
+
+    private volatile boolean running = true;
+    private volatile BlockingQueue<Pending> queue;
+    private volatile List<Thread> writers;
+
+    public PongRecordBatchWriter(PongRecordRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * 提交一条记录
+     * @return 记录所在批次提交后完成；队列已满或写入失败时异常结束
+     */
+    @Override
+    public CompletableFuture<Void> write(PongRecord record) {
+        ensureStarted();
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new RejectedExecutionException("批量写入器已关闭"));
+        } else if (!queue.offer(new Pending(record, future))) {
+            future.completeExceptionally(new RejectedExecutionException("批量写入队列已满"));
+        }
+        return future;
+    }
+
+    /**
+     * 在调用线程上直接写入一批已经攒好的记录，按 batch-size 分段提交
+     * @return 与 records 一一对应的写入结果，方法返回时均已完成
+     */
+    @Override
+    public List<CompletableFuture<Void>> writeBatch(List<PongRecord> records) {
+        List<Pending> pendings = records.stream()
+            .map(record -> new Pending(record, new CompletableFuture<>()))
+            .toList();
+        int size = Math.max(1, batchSize);
+        for (int from = 0; from < pendings.size(); from += size) {
+            flush(pendings.subList(from, Math.min(from + size, pendings.size())));
+        }
+        return pendings.stream().map(Pending::future).toList();
+    }
+
+    /**
+     * 首次写入时按注入的配置创建队列并启动写入线程
+     */
+    private void ensureStarted() {
+        if (writers == null) {
+            synchronized (this) {
+                if (writers == null) {
+                    queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+                    List<Thread> threads = new ArrayList<>();
+                    for (int i = 0; i < Math.max(1, writerThreads); i++) {
+                        Thread thread = new Thread(this::writeLoop, "pong-batch-writer-" + i);
+                        thread.setDaemon(true);
+                        thread.start();
+                        threads.add(thread);
+                    }
+                    writers = threads;
+                }
+            }
+        }
+    }
+
+    /**
+     * 写入循环：取到第一条记录后，在 linger 时间内尽量凑满一批再写入
+     */
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + linger.toNanos();
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(pending -> pending.future()
+                    .completeExceptionally(new RejectedExecutionException("批量写入器已关闭")));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        try {
+            repository.saveAll(batch.stream().map(Pending::record).toList());
+            log.info("batch saved to database: {} records", batch.size());
+            batch.forEach(pending -> pending.future().complete(null));
+        } catch (Exception e) {
+            log.error("batch save failed, retrying records one by one: {}", e.getMessage(), e);
+            // 整批失败时逐条重试，避免一条坏记录拖累同批的其他记录
+            for (Pending pending : batch) {
+                try {
+                    pending.record().setId(null);
+                    repository.save(pending.record());
+                    pending.future().complete(null);
+                } catch (Exception single) {
+                    pending.future().completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止接收新记录，并在退出前写入队列中剩余的记录
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (writers != null) {
+            for (Thread writer : writers) {
+                writer.join(linger.toMillis() + 5000);
+                writer.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.challenge.pong.service;
+
+import com.challenge.pong.model.PongRecord;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * Pong 记录查询接口
+ * 默认由 JPA 仓库实现，启用 r2dbc profile 时改用响应式仓库
+ */
+public interface PongRecordReader {
+
+    Flux<PongRecord> findByRequestId(String requestId);
+
+    /**
+     * 读取一页记录，按 (timestamp, id) 排序
+     * @param status 只返回该状态码的记录，为 null 时不过滤
+     * @param afterTimestamp 与 afterId 一起组成游标，只返回排在游标之后的记录
+     */
+    Flux<PongRecord> findPage(LocalDateTime to, Integer status, LocalDateTime afterTimestamp, long afterId, int limit);
+
+    /**
+     * 按 keyset 分页依次读取 [from, to) 内的记录，每次只查询一页，下游消费完才读取下一页，
+     * 内存占用与总行数无关，也不会像 OFFSET 分页那样越往后越慢
+     * @param afterId 为 null 时从 from 开始；续传时 from 和 afterId 传入上次收到的最后一条记录的时间和 id
+     */
+    default Flux<PongRecord> stream(LocalDateTime from, Long afterId, LocalDateTime to, Integer status, int pageSize) {
+        int size = Math.max(1, pageSize);
+        return findPage(to, status, from, afterId == null ? Long.MIN_VALUE : afterId, size).collectList()
+            .expand(page -> {
+                if (page.size() < size) {
+                    return Mono.empty();
+                }
+                PongRecord last = page.get(page.size() - 1);
+                return findPage(to, status, last.getTimestamp(), last.getId(), size).collectList();
+            })
+            .flatMapIterable(page -> page, 1);
+    }
+}
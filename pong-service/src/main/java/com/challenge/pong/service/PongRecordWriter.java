@@ -0,0 +1,25 @@
+package com.challenge.pong.service;
+
+import com.challenge.pong.model.PongRecord;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Pong 记录写入接口
+ * 默认由 JPA 批量写入器实现，启用 r2dbc profile 时改用响应式写入器
+ */
+public interface PongRecordWriter {
+
+    /**
+     * 提交一条记录
+     * @return 记录提交后完成；写入失败时异常结束
+     */
+    CompletableFuture<Void> write(PongRecord record);
+
+    /**
+     * 写入一批已经攒好的记录
+     * @return 与 records 一一对应的写入结果
+     */
+    List<CompletableFuture<Void>> writeBatch(List<PongRecord> records);
+}
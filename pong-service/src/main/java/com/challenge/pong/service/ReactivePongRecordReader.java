@@ -0,0 +1,35 @@
+package com.challenge.pong.service;
+
+import com.challenge.pong.model.PongRecord;
+import com.challenge.pong.repository.ReactivePongRecordRepository;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+
+/**
+ * 基于 R2DBC 仓库的记录查询，仅在 r2dbc profile 下启用
+ */
+@Component
+@Profile("r2dbc")
+public class ReactivePongRecordReader implements PongRecordReader {
+    private final ReactivePongRecordRepository repository;
+
+    public ReactivePongRecordReader(ReactivePongRecordRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public Flux<PongRecord> findByRequestId(String requestId) {
+        return repository.findByRequestId(requestId);
+    }
+
+    @Override
+    public Flux<PongRecord> findPage(LocalDateTime to, Integer status, LocalDateTime afterTimestamp, long afterId,
+                                     int limit) {
+        return status == null
+            ? repository.findPage(to, afterTimestamp, afterId, limit)
+            : repository.findPageByStatus(status, to, afterTimestamp, afterId, limit);
+    }
+}
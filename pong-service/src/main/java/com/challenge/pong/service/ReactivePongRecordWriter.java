@@ -0,0 +1,125 @@
+package com.challenge.pong.service;
+
+import com.challenge.pong.model.PongRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 基于 R2DBC 的响应式记录写入器，仅在 r2dbc profile 下启用
+ * 一批记录拼成一条多行 INSERT，主键取自与 JPA 共用的 pong_records_seq 序列，
+ * 写入过程不占用线程，连接由 R2DBC 连接池复用
+ */
+@Slf4j
+@Component
+@Profile("r2dbc")
+public class ReactivePongRecordWriter implements PongRecordWriter {
+    private static final String INSERT = "INSERT INTO pong_records (id, message, status, timestamp, request_id) VALUES ";
+    private static final String VALUES = "(nextval('pong_records_seq'), :message%1$d, :status%1$d, :timestamp%1$d, :requestId%1$d)";
+    // 重复投递的记录与已有记录的 (request_id, timestamp) 冲突时跳过，不影响同一条语句中的其他记录；主键冲突照常报错
+    private static final String ON_CONFLICT = " ON CONFLICT (request_id, timestamp) DO NOTHING";
+    // H2（PostgreSQL 兼容模式）不支持冲突目标
+    private static final String H2_ON_CONFLICT = " ON CONFLICT DO NOTHING";
+
+    private final DatabaseClient databaseClient;
+    private final String onConflict;
+
+    // 每条 INSERT 最多包含的记录数
+    @Value("${pong.persistence.batch-size:100}")
+    private int batchSize = 100;
+
+    public ReactivePongRecordWriter(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+        this.onConflict = "H2".equalsIgnoreCase(databaseClient.getConnectionFactory().getMetadata().getName())
+            ? H2_ON_CONFLICT : ON_CONFLICT;
+    }
+
+    /**
+     * 保存一条记录
+     */
+    public Mono<Void> save(PongRecord record) {
+        return saveAll(List.of(record)).then();
+    }
+
+    /**
+     * 以一条多行 INSERT 保存一批记录，已经保存过的记录不会重复插入
+     * @return 插入的行数，不含重复的记录
+     */
+    public Mono<Long> saveAll(List<PongRecord> records) {
+        if (records.isEmpty()) {
+            return Mono.just(0L);
+        }
+        List<String> values = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            values.add(String.format(VALUES, i));
+        }
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(INSERT + String.join(", ", values) + onConflict);
+        for (int i = 0; i < records.size(); i++) {
+            PongRecord record = records.get(i);
+            spec = bind(spec, "message" + i, record.getMessage(), String.class);
+            spec = spec.bind("status" + i, record.getStatus());
+            spec = bind(spec, "timestamp" + i, record.getTimestamp(), LocalDateTime.class);
+            spec = bind(spec, "requestId" + i, record.getRequestId(), String.class);
+        }
+        return spec.fetch().rowsUpdated();
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bind(DatabaseClient.GenericExecuteSpec spec,
+                                                          String name, Object value, Class<?> type) {
+        return value == null ? spec.bindNull(name, type) : spec.bind(name, value);
+    }
+
+    @Override
+    public CompletableFuture<Void> write(PongRecord record) {
+        return save(record).toFuture();
+    }
+
+    /**
+     * 按 batch-size 分段写入，整段失败时逐条重试，避免一条坏记录拖累同批的其他记录
+     * @return 与 records 一一对应的写入结果，全部写入完成后才会结束
+     */
+    @Override
+    public List<CompletableFuture<Void>> writeBatch(List<PongRecord> records) {
+        List<CompletableFuture<Void>> futures = records.stream()
+            .map(record -> new CompletableFuture<Void>())
+            .toList();
+        int size = Math.max(1, batchSize);
+        Flux.range(0, (records.size() + size - 1) / size)
+            .concatMap(chunk -> {
+                int from = chunk * size;
+                int to = Math.min(from + size, records.size());
+                return saveChunk(records.subList(from, to), futures.subList(from, to));
+            })
+            .subscribe();
+        return futures;
+    }
+
+    private Mono<Void> saveChunk(List<PongRecord> records, List<CompletableFuture<Void>> futures) {
+        return saveAll(records)
+            .doOnNext(rows -> {
+                log.info("batch saved to database: {} records", rows);
+                futures.forEach(future -> future.complete(null));
+            })
+            .then()
+            .onErrorResume(e -> {
+                log.error("batch save failed, retrying records one by one: {}", e.getMessage(), e);
+                return Flux.range(0, records.size())
+                    .concatMap(i -> save(records.get(i))
+                        .doOnSuccess(v -> futures.get(i).complete(null))
+                        .onErrorResume(single -> {
+                            futures.get(i).completeExceptionally(single);
+                            return Mono.empty();
+                        }))
+                    .then();
+            });
+    }
+}
@@ -0,0 +1,278 @@
+package com.challenge.pong.stats;
+
+import com.challenge.pong.model.PongRecord;
+import com.challenge.pong.ratelimit.KeyedRateLimiter;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * 内存中的实时统计，不查询数据库
+ * 按秒和按分钟各保留 60 个环形桶，每个桶按状态码计数（LongAdder），并用 HdrHistogram 记录消费延迟；
+ * 进入新的时间单位时通过 CAS 换入新桶，写入不加锁。全局计数保存在单独的一组时间桶中，查询最多合并 60 个桶，与流量大小无关。
+ * 放行和限流的决定另外按调用方分别计数，调用方数超过上限时归入 overflow；按调用方的明细需要合并查询范围内
+ * 出现过的每个调用方的时间桶，开销与活跃调用方数成正比，上限为 maxRequesters * 60 个桶
+ */
+public class PongStats {
+    private static final PongStats DISABLED = new PongStats(false, 1, System::currentTimeMillis);
+
+    private static final int SECONDS = 60;
+    private static final int MINUTES = 60;
+    private static final long SECOND_MILLIS = 1000;
+    private static final long MINUTE_MILLIS = 60 * SECOND_MILLIS;
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    /**
+     * 某个时间单位内的计数
+     */
+    static final class Bucket {
+        final long epoch;
+        // 放行和限流的决定，按响应状态码计数
+        final Map<Integer, LongAdder> decisions = new ConcurrentHashMap<>();
+        // 消费并保存的记录，按记录的状态码计数
+        final Map<Integer, LongAdder> records = new ConcurrentHashMap<>();
+        // 从 ping 生成记录到 pong 保存完成的延迟（毫秒），第一次记录时才创建
+        final AtomicReference<ConcurrentHistogram> lag = new AtomicReference<>();
+        // 生成时刻晚于保存时刻的记录数，两台主机的时钟不同步时出现，不计入延迟
+        final LongAdder skewed = new LongAdder();
+
+        Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+
+        ConcurrentHistogram lag() {
+            ConcurrentHistogram histogram = lag.get();
+            if (histogram == null) {
+                lag.compareAndSet(null, new ConcurrentHistogram(SIGNIFICANT_DIGITS));
+                histogram = lag.get();
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * 固定数量的环形时间桶，每个桶对应一个时间单位
+     */
+    static final class Ring {
+        private final AtomicReferenceArray<Bucket> buckets;
+        private final long unitMillis;
+
+        Ring(int size, long unitMillis) {
+            this.buckets = new AtomicReferenceArray<>(size);
+            this.unitMillis = unitMillis;
+        }
+
+        Bucket current(long now) {
+            long epoch = Math.floorDiv(now, unitMillis);
+            int index = (int) Math.floorMod(epoch, (long) buckets.length());
+            Bucket bucket = buckets.get(index);
+            while (bucket == null || bucket.epoch < epoch) {
+                Bucket fresh = new Bucket(epoch);
+                bucket = buckets.compareAndSet(index, bucket, fresh) ? fresh : buckets.get(index);
+            }
+            return bucket;
+        }
+
+        /**
+         * 依次处理最近 units 个时间单位（含当前）的桶，过期的桶跳过
+         */
+        void forEach(long now, int units, Consumer<Bucket> action) {
+            long epoch = Math.floorDiv(now, unitMillis);
+            for (int i = 0; i < buckets.length(); i++) {
+                Bucket bucket = buckets.get(i);
+                if (bucket != null && bucket.epoch > epoch - units && bucket.epoch <= epoch) {
+                    action.accept(bucket);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按秒和按分钟的两组时间桶
+     */
+    static final class Windows {
+        final Ring seconds = new Ring(SECONDS, SECOND_MILLIS);
+        final Ring minutes = new Ring(MINUTES, MINUTE_MILLIS);
+        volatile long lastSeen;
+    }
+
+    /**
+     * 消费延迟的分位数（毫秒）
+     * @param skewed 因主机时钟不同步得到负延迟而未计入的记录数
+     */
+    public record Lag(long count, long p50, long p90, long p99, long max, long skewed) {}
+
+    /**
+     * 一个时间范围内的统计
+     * @param decisions 放行和限流的决定，按状态码计数
+     * @param records 消费并保存的记录，按状态码计数
+     * @param requesters 按调用方区分的决定
+     */
+    public record View(Map<Integer, Long> decisions, Map<Integer, Long> records, Lag lag,
+                       Map<String, Map<Integer, Long>> requesters) {}
+
+    private final boolean enabled;
+    private final int maxRequesters;
+    private final LongSupplier clock;
+    private final Windows totals = new Windows();
+    private final Map<String, Windows> requesters = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong();
+
+    public PongStats(int maxRequesters) {
+        this(true, maxRequesters, System::currentTimeMillis);
+    }
+
+    PongStats(boolean enabled, int maxRequesters, LongSupplier clock) {
+        this.enabled = enabled;
+        this.maxRequesters = Math.max(1, maxRequesters);
+        this.clock = clock;
+    }
+
+    public static PongStats disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * 记录一次放行或限流的决定
+     * @param requester 调用方实例ID，未携带时归为匿名调用方
+     */
+    public void recordDecision(String requester, int status) {
+        if (!enabled) {
+            return;
+        }
+        long now = clock.getAsLong();
+        count(totals.seconds.current(now).decisions, status);
+        count(totals.minutes.current(now).decisions, status);
+        Windows windows = requester(requester, now);
+        count(windows.seconds.current(now).decisions, status);
+        count(windows.minutes.current(now).decisions, status);
+    }
+
+    /**
+     * 记录一条已保存的记录
+     * @param createdAtMicros ping 生成记录的时刻（epoch 微秒，消息属性 TRACE_CREATED_AT），缺失时只计数不统计延迟
+     */
+    public void recordConsumed(PongRecord record, Long createdAtMicros) {
+        if (!enabled || record == null) {
+            return;
+        }
+        long now = clock.getAsLong();
+        Bucket second = totals.seconds.current(now);
+        Bucket minute = totals.minutes.current(now);
+        count(second.records, record.getStatus());
+        count(minute.records, record.getStatus());
+        if (createdAtMicros == null) {
+            return;
+        }
+        long lagMillis = now - Math.floorDiv(createdAtMicros, 1000L);
+        if (lagMillis < 0) {
+            second.skewed.increment();
+            minute.skewed.increment();
+        } else {
+            second.lag().recordValue(lagMillis);
+            minute.lag().recordValue(lagMillis);
+        }
+    }
+
+    /**
+     * @return 当前秒、最近一分钟和最近一小时的统计，按该顺序排列
+     */
+    public Map<String, View> snapshot() {
+        long now = clock.getAsLong();
+        Map<String, View> views = new LinkedHashMap<>();
+        views.put("second", view(now, windows -> windows.seconds, 1));
+        views.put("minute", view(now, windows -> windows.seconds, SECONDS));
+        views.put("hour", view(now, windows -> windows.minutes, MINUTES));
+        return views;
+    }
+
+    private View view(long now, Function<Windows, Ring> ring, int units) {
+        Map<Integer, Long> decisions = new TreeMap<>();
+        Map<Integer, Long> records = new TreeMap<>();
+        Histogram lag = new Histogram(SIGNIFICANT_DIGITS);
+        LongAdder skewed = new LongAdder();
+        Ring totalRing = ring.apply(totals);
+        totalRing.forEach(now, units, bucket -> {
+            sum(bucket.decisions, decisions);
+            sum(bucket.records, records);
+            skewed.add(bucket.skewed.sum());
+            ConcurrentHistogram histogram = bucket.lag.get();
+            if (histogram != null) {
+                lag.add(histogram);
+            }
+        });
+        Map<String, Map<Integer, Long>> byRequester = new TreeMap<>();
+        long window = units * totalRing.unitMillis;
+        requesters.forEach((requester, windows) -> {
+            // 查询范围内没有出现过的调用方不必合并
+            if (now - windows.lastSeen >= window) {
+                return;
+            }
+            Map<Integer, Long> counts = new TreeMap<>();
+            ring.apply(windows).forEach(now, units, bucket -> sum(bucket.decisions, counts));
+            if (!counts.isEmpty()) {
+                byRequester.put(requester, counts);
+            }
+        });
+        return new View(decisions, records, new Lag(lag.getTotalCount(), lag.getValueAtPercentile(50),
+            lag.getValueAtPercentile(90), lag.getValueAtPercentile(99), lag.getMaxValue(), skewed.sum()), byRequester);
+    }
+
+    /**
+     * @return 当前跟踪的调用方数量
+     */
+    public int requesters() {
+        return requesters.size();
+    }
+
+    private Windows requester(String requester, long now) {
+        String key = (requester == null || requester.isBlank()) ? KeyedRateLimiter.ANONYMOUS_KEY : requester;
+        Windows windows = requesters.get(key);
+        if (windows == null) {
+            if (requesters.size() >= maxRequesters) {
+                sweepIfDue(now);
+                if (requesters.size() >= maxRequesters) {
+                    key = KeyedRateLimiter.OVERFLOW_KEY;
+                }
+            }
+            windows = requesters.computeIfAbsent(key, k -> new Windows());
+        }
+        windows.lastSeen = now;
+        return windows;
+    }
+
+    /**
+     * 调用方已满时清理一小时内没有出现过的调用方，每分钟最多清理一次
+     */
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now >= due && nextSweep.compareAndSet(due, now + MINUTE_MILLIS)) {
+            long idle = TimeUnit.MINUTES.toMillis(MINUTES);
+            requesters.values().removeIf(windows -> now - windows.lastSeen > idle);
+        }
+    }
+
+    private static void count(Map<Integer, LongAdder> counts, int status) {
+        LongAdder adder = counts.get(status);
+        if (adder == null) {
+            adder = counts.computeIfAbsent(status, k -> new LongAdder());
+        }
+        adder.increment();
+    }
+
+    private static void sum(Map<Integer, LongAdder> counts, Map<Integer, Long> into) {
+        counts.forEach((status, adder) -> into.merge(status, adder.sum(), Long::sum));
+    }
+}
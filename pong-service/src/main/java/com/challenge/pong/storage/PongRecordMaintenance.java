@@ -0,0 +1,463 @@
+package com.challenge.pong.storage;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * pong_records 的分区、汇总和过期清理任务
+ * 每轮依次：提前创建未来几天的按天分区，并把默认分区中的记录移入对应的新分区；
+ * 把已结束的分钟按状态码汇总到 pong_record_rollups，写入时间（ingested_at）在上一轮之后的晚到记录所在的分钟整分钟重新汇总；
+ * 按日期顺序删除（或分离）超过保留期、已经汇总且近期没有晚到记录的分区，并清理过期的汇总数据。
+ * 分区删除后才到达的记录落入默认分区，计入汇总后删除，每条记录只计一次。
+ * 多个副本同时运行时通过 pong_storage_state 中 rollup 行的行锁串行汇总和删除分区，分区的创建可以重复执行
+ */
+@Slf4j
+public class PongRecordMaintenance implements MeterBinder, AutoCloseable {
+    static final String TABLE = "pong_records";
+    static final String PARTITION_PREFIX = TABLE + "_p";
+    static final String DEFAULT_PARTITION = TABLE + "_default";
+    static final String ROLLUP_STATE = "rollup";
+    static final String INGEST_STATE = "rollup-ingest";
+    static final String EXPIRE_STATE = "expire";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    /**
+     * 过期分区的处理方式
+     */
+    public enum RetentionAction {
+        // 直接删除
+        DROP,
+        // 从 pong_records 分离为独立的表，归档后手动删除
+        DETACH;
+
+        public static RetentionAction parse(String value) {
+            return valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactions;
+    private final int premakeDays;
+    private final int rawRetentionDays;
+    private final Duration rollupRetention;
+    private final Duration lateness;
+    private final Duration maxRollupSpan;
+    private final RetentionAction retentionAction;
+    private final Clock clock;
+
+    private volatile LocalDateTime rolledUpTo;
+    private volatile Boolean partitioned;
+    private ScheduledExecutorService scheduler;
+
+    private Timer successTimer;
+    private Timer failureTimer;
+
+    /**
+     * @param premakeDays 提前创建的分区天数（不含当天）
+     * @param rawRetention 原始记录保留时间，按天向下取整，至少1天
+     * @param rollupRetention 汇总数据保留时间
+     * @param lateness 每轮重新汇总最近这段时间，容纳晚到的记录（如消息重试）；也是写入事务从开始到提交的最长时间，
+     *                 按写入时间查找晚到记录时向前多查这么久
+     * @param maxRollupSpan 每轮最多汇总的时间跨度，积压时分多轮追上
+     */
+    public PongRecordMaintenance(JdbcTemplate jdbc, TransactionTemplate transactions, int premakeDays,
+                                 Duration rawRetention, Duration rollupRetention, Duration lateness,
+                                 Duration maxRollupSpan, RetentionAction retentionAction, Clock clock) {
+        this.jdbc = jdbc;
+        this.transactions = transactions;
+        this.premakeDays = Math.max(0, premakeDays);
+        this.rawRetentionDays = (int) Math.max(1, rawRetention.toDays());
+        this.rollupRetention = rollupRetention;
+        this.lateness = lateness;
+        this.maxRollupSpan = maxRollupSpan.compareTo(lateness) > 0 ? maxRollupSpan : lateness.plusMinutes(1);
+        this.retentionAction = retentionAction;
+        this.clock = clock;
+        registerMeters(new CompositeMeterRegistry());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        registerMeters(registry);
+    }
+
+    private void registerMeters(MeterRegistry registry) {
+        successTimer = maintenanceTimer(registry, "success");
+        failureTimer = maintenanceTimer(registry, "failure");
+        Gauge.builder("pong.storage.rollup.lag", this, PongRecordMaintenance::rollupLagSeconds)
+            .description("How far the per-minute rollups trail behind the current time")
+            .baseUnit("seconds")
+            .register(registry);
+    }
+
+    private static Timer maintenanceTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("pong.storage.maintenance")
+            .description("Duration of one partition, rollup and retention pass")
+            .tag("outcome", outcome)
+            .register(registry);
+    }
+
+    public synchronized PongRecordMaintenance start(Duration interval) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "pong-storage-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = Math.max(1, interval.toMillis());
+            scheduler.scheduleWithFixedDelay(this::runOnce, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * 执行一轮维护，失败时记录日志，下一轮重试
+     */
+    public void runOnce() {
+        long start = System.nanoTime();
+        try {
+            ensurePartitions();
+            rollUp();
+            expire();
+            successTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (RuntimeException e) {
+            log.warn("pong_records maintenance failed: {}", e.getMessage(), e);
+            failureTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 创建当天及之后 premakeDays 天的分区，以及默认分区中还有记录、且尚未过期的日期的分区
+     */
+    void ensurePartitions() {
+        if (!isPartitioned()) {
+            return;
+        }
+        List<String> existing = partitions();
+        Set<LocalDate> stranded = new TreeSet<>(defaultPartitionDays(progress(EXPIRE_STATE)));
+        Set<LocalDate> days = new TreeSet<>(stranded);
+        LocalDate today = LocalDate.now(clock);
+        for (int i = 0; i <= premakeDays; i++) {
+            days.add(today.plusDays(i));
+        }
+        for (LocalDate day : days) {
+            String name = partitionName(day);
+            if (existing.contains(name)) {
+                continue;
+            }
+            try {
+                if (stranded.contains(day)) {
+                    movePartition(day, name);
+                } else {
+                    jdbc.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF " + TABLE
+                        + " FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')");
+                    log.info("Created partition {}", name);
+                }
+            } catch (DataAccessException e) {
+                // 其他副本同时创建
+                log.warn("Failed to create partition {}: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 默认分区中有该日期的记录时不能直接创建分区：在同一个事务中建表、把这些记录从默认分区移入，再挂到 pong_records 上
+     */
+    private void movePartition(LocalDate day, String name) {
+        transactions.executeWithoutResult(status -> {
+            jdbc.execute("CREATE TABLE " + name + " (LIKE " + TABLE + " INCLUDING DEFAULTS)");
+            int moved = jdbc.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION
+                + " WHERE timestamp >= ? AND timestamp < ? RETURNING *) INSERT INTO " + name + " SELECT * FROM moved",
+                day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+            jdbc.execute("ALTER TABLE " + TABLE + " ATTACH PARTITION " + name
+                + " FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')");
+            log.info("Created partition {} with {} records moved from {}", name, moved, DEFAULT_PARTITION);
+        });
+    }
+
+    /**
+     * @param expired 此前的日期已经过期，不再为其创建分区，为 null 时返回所有日期
+     * @return 默认分区中记录的日期
+     */
+    private List<LocalDate> defaultPartitionDays(LocalDateTime expired) {
+        String sql = "SELECT DISTINCT CAST(timestamp AS DATE) FROM " + DEFAULT_PARTITION;
+        return expired == null
+            ? jdbc.queryForList(sql + " WHERE timestamp IS NOT NULL", LocalDate.class)
+            : jdbc.queryForList(sql + " WHERE timestamp >= ?", LocalDate.class, expired);
+    }
+
+    /**
+     * 汇总上一轮进度减去 lateness 到当前整分钟之间的记录，整段先删除再插入，重复执行结果不变；
+     * 此前的分钟中有上一轮之后写入的晚到记录（如落盘重放、积压消费）时，整分钟重新汇总。
+     * 已过期的分钟原始记录不全，不再重新汇总，其晚到记录由 {@link #expire()} 累加
+     * @return 写入的汇总行数
+     */
+    int rollUp() {
+        LocalDateTime now = LocalDateTime.now(clock).truncatedTo(ChronoUnit.MINUTES);
+        jdbc.update("INSERT INTO pong_storage_state (name) SELECT ? WHERE NOT EXISTS "
+            + "(SELECT 1 FROM pong_storage_state WHERE name = ?)", ROLLUP_STATE, ROLLUP_STATE);
+        Integer rows = transactions.execute(status -> {
+            // 行锁让多个副本依次汇总，后到的副本看到已推进的进度
+            LocalDateTime watermark = lockRollupState();
+            LocalDateTime expired = progress(EXPIRE_STATE);
+            LocalDateTime ingested = progress(INGEST_STATE);
+            // 写入时间取数据库时间，与 ingested_at 的默认值一致，不受两边时钟偏差影响
+            LocalDateTime ingestedTo = jdbc.queryForObject("SELECT localtimestamp", LocalDateTime.class);
+            LocalDateTime from;
+            if (watermark == null) {
+                LocalDateTime first = jdbc.queryForObject("SELECT min(timestamp) FROM " + TABLE, LocalDateTime.class);
+                from = first == null ? now : first.truncatedTo(ChronoUnit.MINUTES);
+            } else {
+                from = watermark.minus(lateness).truncatedTo(ChronoUnit.MINUTES);
+            }
+            if (expired != null && from.isBefore(expired)) {
+                from = expired;
+            }
+            LocalDateTime to = from.plus(maxRollupSpan).isBefore(now) ? from.plus(maxRollupSpan) : now;
+            int written = 0;
+            if (from.isBefore(to)) {
+                written += aggregate(from, to);
+            }
+            if (ingested != null) {
+                written += rollUpLate(ingested.minus(lateness), from, expired);
+            }
+            setProgress(INGEST_STATE, ingestedTo);
+            if (watermark == null || to.isAfter(watermark)) {
+                setProgress(ROLLUP_STATE, to);
+                watermark = to;
+            }
+            rolledUpTo = watermark;
+            return written;
+        });
+        log.debug("Rolled up pong_records until {}: {} rows", rolledUpTo, rows);
+        return rows == null ? 0 : rows;
+    }
+
+    /**
+     * 重新汇总 ingestedSince 之后写入、落在 [expired, before) 中的记录所在的分钟
+     */
+    private int rollUpLate(LocalDateTime ingestedSince, LocalDateTime before, LocalDateTime expired) {
+        String sql = "SELECT DISTINCT date_trunc('minute', timestamp) FROM " + TABLE
+            + " WHERE ingested_at >= ? AND timestamp < ?";
+        List<LocalDateTime> minutes = expired == null
+            ? jdbc.queryForList(sql, LocalDateTime.class, ingestedSince, before)
+            : jdbc.queryForList(sql + " AND timestamp >= ?", LocalDateTime.class, ingestedSince, before, expired);
+        int written = 0;
+        for (LocalDateTime minute : minutes) {
+            written += aggregate(minute, minute.plusMinutes(1));
+        }
+        if (!minutes.isEmpty()) {
+            log.info("Rolled up {} minutes again for late records", minutes.size());
+        }
+        return written;
+    }
+
+    private int aggregate(LocalDateTime from, LocalDateTime to) {
+        jdbc.update("DELETE FROM pong_record_rollups WHERE minute_start >= ? AND minute_start < ?", from, to);
+        return jdbc.update("INSERT INTO pong_record_rollups (minute_start, status, record_count) "
+            + "SELECT date_trunc('minute', timestamp), status, count(*) FROM " + TABLE
+            + " WHERE timestamp >= ? AND timestamp < ? GROUP BY date_trunc('minute', timestamp), status",
+            from, to);
+    }
+
+    /**
+     * 按日期顺序删除或分离超过保留期且已经汇总的分区，遇到还不能过期的分区即停止，保证 expire 进度之前没有留下分区；
+     * 然后把分区删除后才到达的记录计入汇总，并清理过期的汇总数据
+     */
+    void expire() {
+        if (isPartitioned()) {
+            LocalDate cutoff = LocalDate.now(clock).minusDays(rawRetentionDays);
+            for (String name : new TreeSet<>(partitions())) {
+                LocalDate day = partitionDay(name);
+                if (day == null) {
+                    continue;
+                }
+                // 只处理整天都在保留期之外的分区
+                if (day.plusDays(1).isAfter(cutoff) || !expirePartition(name, day)) {
+                    break;
+                }
+            }
+            expireLateRecords();
+        }
+        int deleted = jdbc.update("DELETE FROM pong_record_rollups WHERE minute_start < ?",
+            LocalDateTime.now(clock).minus(rollupRetention));
+        if (deleted > 0) {
+            log.info("Deleted {} expired rollup rows", deleted);
+        }
+    }
+
+    /**
+     * 在持有汇总行锁的事务中删除或分离分区：该日期必须已经汇总，分区中没有可能还没重新汇总的晚到记录，
+     * 默认分区中也没有该日期及之前、还没移入分区的记录
+     * @return 是否已过期
+     */
+    private boolean expirePartition(String name, LocalDate day) {
+        LocalDateTime end = day.plusDays(1).atStartOfDay();
+        try {
+            Boolean expired = transactions.execute(status -> {
+                LocalDateTime watermark = lockRollupState();
+                LocalDateTime ingested = progress(INGEST_STATE);
+                LocalDateTime previous = progress(EXPIRE_STATE);
+                if (watermark == null || ingested == null || end.isAfter(watermark)) {
+                    return false;
+                }
+                if (exists("SELECT 1 FROM " + name + " WHERE ingested_at >= ?", ingested.minus(lateness))) {
+                    log.info("Partition {} received late records, expiring it after they are rolled up", name);
+                    return false;
+                }
+                if (previous == null
+                        ? exists("SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE timestamp < ?", end)
+                        : exists("SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE timestamp >= ? AND timestamp < ?",
+                            previous, end)) {
+                    log.warn("{} holds records up to {}, expiring {} after they are moved", DEFAULT_PARTITION, day, name);
+                    return false;
+                }
+                jdbc.execute(retentionAction == RetentionAction.DROP
+                    ? "DROP TABLE IF EXISTS " + name
+                    : "ALTER TABLE " + TABLE + " DETACH PARTITION " + name);
+                if (previous == null || end.isAfter(previous)) {
+                    setProgress(EXPIRE_STATE, end);
+                }
+                return true;
+            });
+            if (Boolean.TRUE.equals(expired)) {
+                log.info("Expired partition {} ({})", name, retentionAction);
+                return true;
+            }
+        } catch (DataAccessException e) {
+            log.warn("Failed to expire partition {}: {}", name, e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * 分区过期后才到达的记录落入默认分区，原始记录已不完整，不能整分钟重新汇总：
+     * 删除这些记录并把条数累加到汇总中，删除和累加在同一条语句中，每条记录只计一次
+     */
+    private void expireLateRecords() {
+        LocalDateTime expired = progress(EXPIRE_STATE);
+        if (expired == null) {
+            return;
+        }
+        int rows = jdbc.update("WITH expired AS (DELETE FROM " + DEFAULT_PARTITION
+            + " WHERE timestamp < ? RETURNING timestamp, status) "
+            + "INSERT INTO pong_record_rollups (minute_start, status, record_count) "
+            + "SELECT date_trunc('minute', timestamp), status, count(*) FROM expired "
+            + "GROUP BY date_trunc('minute', timestamp), status ON CONFLICT (minute_start, status) "
+            + "DO UPDATE SET record_count = pong_record_rollups.record_count + EXCLUDED.record_count", expired);
+        if (rows > 0) {
+            log.info("Added late records of expired days to {} rollup rows", rows);
+        }
+    }
+
+    private LocalDateTime lockRollupState() {
+        return jdbc.queryForObject("SELECT progress FROM pong_storage_state WHERE name = ? FOR UPDATE",
+            LocalDateTime.class, ROLLUP_STATE);
+    }
+
+    /**
+     * @return 进度，还没有记录时为 null
+     */
+    private LocalDateTime progress(String name) {
+        List<LocalDateTime> progress = jdbc.queryForList("SELECT progress FROM pong_storage_state WHERE name = ?",
+            LocalDateTime.class, name);
+        return progress.isEmpty() ? null : progress.get(0);
+    }
+
+    /**
+     * 只在持有汇总行锁时调用，不会与其他副本同时插入
+     */
+    private void setProgress(String name, LocalDateTime progress) {
+        if (jdbc.update("UPDATE pong_storage_state SET progress = ? WHERE name = ?", progress, name) == 0) {
+            jdbc.update("INSERT INTO pong_storage_state (name, progress) VALUES (?, ?)", name, progress);
+        }
+    }
+
+    private boolean exists(String query, Object... args) {
+        return Boolean.TRUE.equals(jdbc.queryForObject("SELECT EXISTS (" + query + ")", Boolean.class, args));
+    }
+
+    /**
+     * pong_records 是否为分区表；旧版本由 Hibernate 创建的普通表不做分区维护
+     */
+    boolean isPartitioned() {
+        Boolean result = partitioned;
+        if (result == null) {
+            try {
+                Integer count = jdbc.queryForObject("SELECT count(*) FROM pg_partitioned_table pt "
+                    + "JOIN pg_class c ON c.oid = pt.partrelid WHERE c.relname = ?", Integer.class, TABLE);
+                result = count != null && count > 0;
+            } catch (DataAccessException e) {
+                result = false;
+            }
+            if (!result) {
+                log.warn("{} is not a partitioned table, partitions will not be created or expired", TABLE);
+            }
+            partitioned = result;
+        }
+        return result;
+    }
+
+    private List<String> partitions() {
+        return jdbc.queryForList("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+            + "JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = ?", String.class, TABLE);
+    }
+
+    /**
+     * @return 汇总进度，此前的原始记录已经汇总；还没有完成过汇总时为 null
+     */
+    public LocalDateTime rolledUpTo() {
+        return rolledUpTo;
+    }
+
+    private double rollupLagSeconds() {
+        LocalDateTime watermark = rolledUpTo;
+        return watermark == null ? 0 : Duration.between(watermark, LocalDateTime.now(clock)).toSeconds();
+    }
+
+    static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + PARTITION_SUFFIX.format(day);
+    }
+
+    /**
+     * @return 分区对应的日期，默认分区或无法识别的表返回 null
+     */
+    static LocalDate partitionDay(String name) {
+        if (!name.startsWith(PARTITION_PREFIX)) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(name.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
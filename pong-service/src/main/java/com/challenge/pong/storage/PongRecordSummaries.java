@@ -0,0 +1,58 @@
+package com.challenge.pong.storage;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按分钟和状态码统计记录数
+ * 已汇总的时间段读 pong_record_rollups，只有汇总进度之后的最近几分钟才扫描原始记录
+ */
+public class PongRecordSummaries {
+
+    /**
+     * 某一分钟内某个状态码的记录数
+     */
+    public record MinuteCount(LocalDateTime minute, int status, long count) {}
+
+    private static final RowMapper<MinuteCount> MAPPER = (rs, rowNum) -> new MinuteCount(
+        rs.getObject("minute_start", LocalDateTime.class), rs.getInt("status"), rs.getLong("record_count"));
+
+    private final JdbcTemplate jdbc;
+
+    public PongRecordSummaries(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * @param from 起始时间，向下取整到分钟
+     * @param to 结束时间（不含），向下取整到分钟
+     * @return 按分钟、状态码排序的记录数，没有记录的分钟不返回
+     */
+    public List<MinuteCount> countsByMinute(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime start = from.truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime end = to.truncatedTo(ChronoUnit.MINUTES);
+        List<MinuteCount> counts = new ArrayList<>();
+        if (!start.isBefore(end)) {
+            return counts;
+        }
+        LocalDateTime watermark = jdbc.query("SELECT progress FROM pong_storage_state WHERE name = ?",
+                (rs, rowNum) -> rs.getObject(1, LocalDateTime.class), PongRecordMaintenance.ROLLUP_STATE)
+            .stream().filter(value -> value != null).findFirst().orElse(start);
+        LocalDateTime boundary = watermark.isBefore(start) ? start : watermark.isAfter(end) ? end : watermark;
+        if (start.isBefore(boundary)) {
+            counts.addAll(jdbc.query("SELECT minute_start, status, record_count FROM pong_record_rollups "
+                + "WHERE minute_start >= ? AND minute_start < ? ORDER BY minute_start, status", MAPPER, start, boundary));
+        }
+        if (boundary.isBefore(end)) {
+            counts.addAll(jdbc.query("SELECT date_trunc('minute', timestamp) AS minute_start, status, count(*) AS record_count FROM "
+                + PongRecordMaintenance.TABLE + " WHERE timestamp >= ? AND timestamp < ? "
+                + "GROUP BY date_trunc('minute', timestamp), status ORDER BY minute_start, status", MAPPER, boundary, end));
+        }
+        return counts;
+    }
+}
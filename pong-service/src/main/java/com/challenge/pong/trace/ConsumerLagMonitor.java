@@ -0,0 +1,198 @@
+package com.challenge.pong.trace;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.store.ReadOffsetType;
+import org.apache.rocketmq.client.impl.consumer.DefaultMQPushConsumerImpl;
+import org.apache.rocketmq.common.ServiceState;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按 topic 统计消费积压：本实例分配到的每个队列在 Broker 上的最大 offset 减去已消费的 offset
+ * 每个副本只统计自己的队列，各副本之和即消费组的总积压；重试 topic（%RETRY%）单独统计。
+ * 定时向 Broker 查询最大 offset，查询失败的 topic 保留上一次的值
+ */
+@Slf4j
+public class ConsumerLagMonitor implements MeterBinder, AutoCloseable {
+    private static final ConsumerLagMonitor DISABLED = new ConsumerLagMonitor(false);
+
+    /**
+     * 一个消费者的队列和 offset
+     */
+    interface Offsets {
+        String group();
+
+        /**
+         * @return 当前分配到的队列及已消费的 offset，尚未开始消费的队列不包含在内
+         */
+        Map<MessageQueue, Long> consumed();
+
+        long maxOffset(MessageQueue queue) throws Exception;
+    }
+
+    private final boolean enabled;
+    private final List<Offsets> watched = new CopyOnWriteArrayList<>();
+    // group 和 topic -> 积压的消息数
+    private final Map<List<String>, AtomicLong> lags = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry = new CompositeMeterRegistry();
+    private ScheduledExecutorService scheduler;
+
+    public ConsumerLagMonitor() {
+        this(true);
+    }
+
+    private ConsumerLagMonitor(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public static ConsumerLagMonitor disabled() {
+        return DISABLED;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        lags.forEach((key, lag) -> register(registry, key, lag));
+    }
+
+    private static void register(MeterRegistry registry, List<String> key, AtomicLong lag) {
+        Gauge.builder("pong.consumer.lag", lag, AtomicLong::get)
+            .description("Messages on the broker not yet consumed from the queues assigned to this instance")
+            .tag("group", key.get(0))
+            .tag("topic", key.get(1))
+            .register(registry);
+    }
+
+    /**
+     * 统计该消费者的积压，消费者启动前的查询会被跳过
+     */
+    public void watch(DefaultMQPushConsumer consumer) {
+        watch(offsets(consumer));
+    }
+
+    void watch(Offsets offsets) {
+        if (enabled) {
+            watched.add(offsets);
+        }
+    }
+
+    public synchronized ConsumerLagMonitor start(Duration interval) {
+        if (enabled && scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "pong-consumer-lag");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = Math.max(1, interval.toMillis());
+            scheduler.scheduleWithFixedDelay(this::refresh, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * 查询一次所有消费者的积压；不再分配给本实例的 topic 归零
+     */
+    public void refresh() {
+        for (Offsets offsets : watched) {
+            Map<String, Long> byTopic = new HashMap<>();
+            Set<String> failed = new HashSet<>();
+            offsets.consumed().forEach((queue, consumed) -> {
+                try {
+                    long lag = Math.max(0, offsets.maxOffset(queue) - consumed);
+                    byTopic.merge(queue.getTopic(), lag, Long::sum);
+                } catch (Exception e) {
+                    log.debug("failed to query max offset of {}: {}", queue, e.getMessage());
+                    failed.add(queue.getTopic());
+                }
+            });
+            lags.forEach((key, lag) -> {
+                if (key.get(0).equals(offsets.group()) && !byTopic.containsKey(key.get(1))
+                        && !failed.contains(key.get(1))) {
+                    lag.set(0);
+                }
+            });
+            byTopic.forEach((topic, lag) -> {
+                if (!failed.contains(topic)) {
+                    lagValue(offsets.group(), topic).set(lag);
+                }
+            });
+        }
+    }
+
+    private AtomicLong lagValue(String group, String topic) {
+        return lags.computeIfAbsent(List.of(group, topic), key -> {
+            AtomicLong lag = new AtomicLong();
+            register(registry, key, lag);
+            return lag;
+        });
+    }
+
+    /**
+     * @return 积压的消息数，未统计过的 topic 返回 0
+     */
+    public long lag(String group, String topic) {
+        AtomicLong lag = lags.get(List.of(group, topic));
+        return lag == null ? 0 : lag.get();
+    }
+
+    /**
+     * 客户端没有公开接口提供本实例分配到的队列和内存中的消费 offset，Broker 最大 offset 的公开查询
+     * 在 DefaultMQAdminExt（rocketmq-tools，未引入）中且只能按整个消费组统计，
+     * 推送消费者上的 maxOffset、getOffsetStore 同样已废弃，因此对消费者内部实现的访问集中在这里
+     */
+    @SuppressWarnings("deprecation")
+    private static Offsets offsets(DefaultMQPushConsumer consumer) {
+        return new Offsets() {
+            @Override
+            public String group() {
+                return consumer.getConsumerGroup();
+            }
+
+            @Override
+            public Map<MessageQueue, Long> consumed() {
+                DefaultMQPushConsumerImpl impl = consumer.getDefaultMQPushConsumerImpl();
+                Map<MessageQueue, Long> consumed = new HashMap<>();
+                if (impl == null || impl.getServiceState() != ServiceState.RUNNING) {
+                    return consumed;
+                }
+                for (MessageQueue queue : impl.getRebalanceImpl().getProcessQueueTable().keySet()) {
+                    long offset = impl.getOffsetStore().readOffset(queue, ReadOffsetType.READ_FROM_MEMORY);
+                    if (offset >= 0) {
+                        consumed.put(queue, offset);
+                    }
+                }
+                return consumed;
+            }
+
+            @Override
+            public long maxOffset(MessageQueue queue) throws Exception {
+                return consumer.getDefaultMQPushConsumerImpl().maxOffset(queue);
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
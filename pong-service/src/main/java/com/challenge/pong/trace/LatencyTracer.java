@@ -0,0 +1,110 @@
+package com.challenge.pong.trace;
+
+import com.challenge.common.trace.TraceClock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按阶段统计一条 ping 记录从发出请求到保存完成的延迟
+ * ping 在消息属性中写入请求、响应和发送的时刻（见 TraceClock），消费者记录收到消息的时刻，保存成功后计算：
+ * http（请求到响应）、publish（响应到交给 RocketMQ，含攒批）、broker（发送到消费者收到，含 Broker 存储和拉取排队）、
+ * persist（收到到保存完成）和 end_to_end（请求到保存完成）。
+ * 时刻来自不同主机，时钟不同步可能得到负数，这些样本不计入直方图而是单独计数
+ */
+public class LatencyTracer implements MeterBinder {
+    private static final LatencyTracer DISABLED = new LatencyTracer(false);
+
+    /**
+     * 延迟阶段，指标中以小写的 stage 标签区分
+     */
+    public enum Stage {
+        HTTP, PUBLISH, BROKER, PERSIST, END_TO_END;
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final boolean enabled;
+    private final Map<Stage, Timer> timers = new EnumMap<>(Stage.class);
+    private final Map<Stage, Counter> skewed = new EnumMap<>(Stage.class);
+
+    public LatencyTracer() {
+        this(true);
+    }
+
+    private LatencyTracer(boolean enabled) {
+        this.enabled = enabled;
+        registerMeters(new CompositeMeterRegistry());
+    }
+
+    public static LatencyTracer disabled() {
+        return DISABLED;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        registerMeters(registry);
+    }
+
+    private void registerMeters(MeterRegistry registry) {
+        for (Stage stage : Stage.values()) {
+            timers.put(stage, Timer.builder("pong.trace.latency")
+                .description("Latency of each stage between sending a ping and persisting its record")
+                .tag("stage", stage.tag())
+                .publishPercentileHistogram()
+                .register(registry));
+            skewed.put(stage, Counter.builder("pong.trace.skewed")
+                .description("Trace samples dropped because the clocks of two hosts disagree")
+                .tag("stage", stage.tag())
+                .register(registry));
+        }
+    }
+
+    /**
+     * @return 消费者收到消息的时刻，传给 {@link #recordPersisted}
+     */
+    public long now() {
+        return TraceClock.nowMicros();
+    }
+
+    /**
+     * 记录已保存消息的各阶段延迟，缺少某个时刻（旧版本 ping、落盘重放的记录）的阶段跳过
+     * @param receivedMicros 消费者收到消息的时刻
+     */
+    public void recordPersisted(MessageExt message, long receivedMicros) {
+        if (!enabled) {
+            return;
+        }
+        Long sentAt = TraceClock.parse(message.getUserProperty(TraceClock.SENT_AT));
+        Long respondedAt = TraceClock.parse(message.getUserProperty(TraceClock.RESPONDED_AT));
+        Long publishedAt = TraceClock.parse(message.getUserProperty(TraceClock.PUBLISHED_AT));
+        long persistedAt = TraceClock.nowMicros();
+        record(Stage.HTTP, sentAt, respondedAt);
+        record(Stage.PUBLISH, respondedAt, publishedAt);
+        record(Stage.BROKER, publishedAt, receivedMicros);
+        record(Stage.PERSIST, receivedMicros, persistedAt);
+        record(Stage.END_TO_END, sentAt, persistedAt);
+    }
+
+    private void record(Stage stage, Long from, Long to) {
+        if (from == null || to == null) {
+            return;
+        }
+        long micros = to - from;
+        if (micros < 0) {
+            skewed.get(stage).increment();
+        } else {
+            timers.get(stage).record(micros, TimeUnit.MICROSECONDS);
+        }
+    }
+}
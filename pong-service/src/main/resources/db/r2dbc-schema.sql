@@ -0,0 +1,16 @@
+-- r2dbc profile 下没有 Hibernate 自动建表，与 JPA 生成的表结构保持一致
+CREATE SEQUENCE IF NOT EXISTS pong_records_seq START WITH 1 INCREMENT BY 100;
+
+CREATE TABLE IF NOT EXISTS pong_records (
+    id BIGINT NOT NULL PRIMARY KEY,
+    message VARCHAR(255),
+    status INTEGER NOT NULL,
+    timestamp TIMESTAMP(6),
+    request_id VARCHAR(255)
+);
+
+-- 查询接口使用的索引，与 schema.sql 一致
+CREATE INDEX IF NOT EXISTS pong_records_timestamp_id_idx ON pong_records (timestamp, id);
+CREATE INDEX IF NOT EXISTS pong_records_status_timestamp_id_idx ON pong_records (status, timestamp, id);
+-- 重复投递的记录由 ON CONFLICT (request_id, timestamp) DO NOTHING 忽略，同时用于按 requestId 查询
+CREATE UNIQUE INDEX IF NOT EXISTS pong_records_request_id_uidx ON pong_records (request_id, timestamp);
@@ -0,0 +1,63 @@
+-- JPA（默认）方式下的表结构，启动时执行，所有语句都可以重复执行
+-- pong_records 按 timestamp 以天为单位分区，分区由 PongRecordMaintenance 提前创建并在过期后删除或分离；
+-- 分区表的主键必须包含分区键，这里不设主键，id 由序列保证唯一。
+-- 旧版本由 Hibernate 创建的非分区 pong_records 保持原样，只做汇总
+CREATE SEQUENCE IF NOT EXISTS pong_records_seq START WITH 1 INCREMENT BY 100;
+
+CREATE TABLE IF NOT EXISTS pong_records (
+    id BIGINT NOT NULL,
+    message VARCHAR(255),
+    status INTEGER NOT NULL,
+    timestamp TIMESTAMP(6),
+    request_id VARCHAR(255),
+    ingested_at TIMESTAMP(6) DEFAULT localtimestamp
+) PARTITION BY RANGE (timestamp);
+
+-- 没有对应分区的记录（包括 timestamp 为空）落入默认分区，避免写入失败。
+-- 只有分区表才能创建；DO 的过程体用单引号而不是 $$ 括起，启动时的脚本按分号拆分语句，不会拆开引号中的内容
+DO '
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(''pong_records'')) THEN
+        CREATE TABLE IF NOT EXISTS pong_records_default PARTITION OF pong_records DEFAULT;
+    END IF;
+END';
+
+-- 旧版本由 Hibernate 以 IDENTITY 生成 id，序列从 1 开始会分配到已有的 id。Hibernate 按 allocationSize（100）
+-- 把序列值当作一段 id 的上界，因此序列至少要推进到 max(id) + 100；序列已经足够大时不做修改
+DO '
+DECLARE
+    floor_id BIGINT;
+BEGIN
+    SELECT max(id) + 100 INTO floor_id FROM pong_records;
+    IF floor_id IS NOT NULL AND floor_id > (SELECT last_value FROM pong_records_seq) THEN
+        PERFORM setval(''pong_records_seq'', floor_id, false);
+    END IF;
+END';
+
+-- 写入数据库的时间，汇总任务据此重新汇总收到晚到记录的分钟；升级前的记录为空，不会被重新汇总。
+-- 按写入顺序增长，BRIN 索引很小，写入开销低
+ALTER TABLE pong_records ADD COLUMN IF NOT EXISTS ingested_at TIMESTAMP(6);
+ALTER TABLE pong_records ALTER COLUMN ingested_at SET DEFAULT localtimestamp;
+CREATE INDEX IF NOT EXISTS pong_records_ingested_at_idx ON pong_records USING brin (ingested_at);
+
+-- 按时间和按状态码的范围查询以 (timestamp, id) 做 keyset 分页，索引顺序与排序一致
+CREATE INDEX IF NOT EXISTS pong_records_timestamp_id_idx ON pong_records (timestamp, id);
+CREATE INDEX IF NOT EXISTS pong_records_status_timestamp_id_idx ON pong_records (status, timestamp, id);
+-- 同一个 ping 记录（requestId 和 ping 端生成的 timestamp 相同）只保存一次，重复投递的消息由 ON CONFLICT (request_id, timestamp) DO NOTHING 忽略；
+-- 分区表的唯一索引必须包含分区键 timestamp。同时用于按 requestId 查询
+CREATE UNIQUE INDEX IF NOT EXISTS pong_records_request_id_uidx ON pong_records (request_id, timestamp);
+
+-- 按分钟和状态码汇总的记录数，统计查询优先读这张表
+CREATE TABLE IF NOT EXISTS pong_record_rollups (
+    minute_start TIMESTAMP(0) NOT NULL,
+    status INTEGER NOT NULL,
+    record_count BIGINT NOT NULL,
+    PRIMARY KEY (minute_start, status)
+);
+
+-- 维护任务的进度：rollup 之前的分钟已经汇总；rollup-ingest 之前写入的晚到记录已经重新汇总；
+-- expire 之前的原始记录所在分区已经删除或分离
+CREATE TABLE IF NOT EXISTS pong_storage_state (
+    name VARCHAR(64) NOT NULL PRIMARY KEY,
+    progress TIMESTAMP(6)
+);
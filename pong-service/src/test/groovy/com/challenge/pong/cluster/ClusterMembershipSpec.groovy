@@ -0,0 +1,149 @@
+package com.challenge.pong.cluster
+
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicLong
+
+class ClusterMembershipSpec extends Specification {
+
+    AtomicLong now = new AtomicLong(1_700_000_000_000L)
+    List<String> contacted = new CopyOnWriteArrayList<>()
+    // 地址 -> 实例ID，不在表中的地址不可达
+    Map<String, String> reachable = [:]
+
+    PeerTransport transport = new PeerTransport() {
+        @Override
+        Mono<String> heartbeat(String peerUrl, String selfId, String selfUrl) {
+            contacted << peerUrl
+            reachable.containsKey(peerUrl) ? Mono.just(reachable[peerUrl]) : Mono.error(new IOException("unreachable"))
+        }
+
+        @Override
+        Mono<Integer> lease(String peerUrl, String key, long epoch, int wanted) {
+            Mono.just(0)
+        }
+    }
+
+    def membership(String id = "pong-b", List<String> seeds = []) {
+        new ClusterMembership(id, "http://${id}:8080", seeds, transport,
+            Duration.ofMillis(500), Duration.ofSeconds(2), now::get)
+    }
+
+    def "should discover peers from seeds and rank members by id"() {
+        given:
+        reachable["http://pong-a"] = "pong-a"
+        reachable["http://pong-c"] = "pong-c"
+        def membership = membership("pong-b", ["http://pong-a", "http://pong-c", "http://pong-d"])
+
+        when:
+        membership.heartbeat()
+
+        then:
+        membership.livePeers()*.id == ["pong-a", "pong-c"]
+        membership.size() == 3
+        membership.rank() == 1
+    }
+
+    def "should add peers that send heartbeats from seed addresses and ignore itself"() {
+        given:
+        def membership = membership("pong-b", ["pong-a", "http://pong-b:8080"])
+        membership.heartbeat()
+        contacted.clear()
+
+        when:
+        def accepted = [membership.onHeartbeat("pong-a", "pong-a"),
+                        membership.onHeartbeat("pong-b", "http://pong-b:8080"),
+                        membership.onHeartbeat(null, "pong-a")]
+
+        then:
+        accepted == [true, true, true]
+        membership.livePeers()*.url == ["pong-a"]
+        membership.rank() == 1
+
+        when: "之后的心跳也发给通过心跳认识的副本"
+        membership.heartbeat()
+
+        then:
+        contacted == ["pong-a"]
+    }
+
+    def "should ignore heartbeats from addresses the seeds do not resolve to"() {
+        given:
+        def membership = membership("pong-b", ["http://localhost:8080"])
+
+        expect: "第一轮心跳之前没有可接受的地址"
+        !membership.onHeartbeat("pong-a", "http://127.0.0.1:8080")
+
+        when:
+        membership.heartbeat()
+
+        then:
+        !membership.onHeartbeat("pong-x", "http://169.254.169.254")
+        !membership.onHeartbeat("pong-y", "http://localhost:8080")
+        membership.onHeartbeat("pong-a", "http://127.0.0.1:8080")
+        membership.livePeers()*.id == ["pong-a"]
+    }
+
+    def "should drop peers that stop answering until they answer again"() {
+        given:
+        def membership = membership("pong-b", ["pong-a"])
+        membership.heartbeat()
+        contacted.clear()
+        membership.onHeartbeat("pong-a", "pong-a")
+
+        when:
+        now.addAndGet(2001)
+        membership.heartbeat()
+
+        then:
+        contacted == ["pong-a"]
+        membership.livePeers().isEmpty()
+        membership.size() == 1
+        membership.rank() == 0
+
+        when: "长时间之后重新响应，再次加入"
+        now.addAndGet(20_000)
+        membership.heartbeat()
+        reachable["pong-a"] = "pong-a"
+        membership.heartbeat()
+
+        then:
+        membership.livePeers()*.id == ["pong-a"]
+    }
+
+    def "should expand seed host names to every resolved address"() {
+        given:
+        def membership = membership("pong-b", ["http://localhost:8080", "pong-static"])
+
+        when:
+        membership.heartbeat()
+
+        then:
+        contacted.contains("http://127.0.0.1:8080")
+        contacted.contains("pong-static")
+        !contacted.contains("http://localhost:8080")
+    }
+
+    def "should send heartbeats in the background until closed"() {
+        given:
+        reachable["http://pong-a"] = "pong-a"
+        def membership = new ClusterMembership("pong-b", "http://pong-b", ["http://pong-a"], transport,
+            Duration.ofMillis(10), Duration.ofSeconds(2))
+
+        when:
+        membership.start()
+        def deadline = System.currentTimeMillis() + 5000
+        while (membership.livePeers().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+
+        then:
+        membership.livePeers()*.id == ["pong-a"]
+
+        cleanup:
+        membership.close()
+    }
+}
@@ -0,0 +1,266 @@
+package com.challenge.pong.cluster
+
+import com.challenge.pong.ratelimit.KeyedRateLimiter
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+class ClusterRateLimiterSpec extends Specification {
+
+    // 从一个时间窗口的起点开始
+    AtomicLong now = new AtomicLong(1_700_000_000_000L)
+    InProcessTransport transport = new InProcessTransport()
+
+    /**
+     * 进程内的副本，心跳和借用直接调用对方的方法
+     */
+    static class InProcessTransport implements PeerTransport {
+        Map<String, ClusterRateLimiter> limiters = [:]
+        Map<String, ClusterMembership> memberships = [:]
+        Set<String> down = []
+        // 借用响应的延迟，对方在收到请求时已经扣减
+        Map<String, Duration> delays = [:]
+        List<String> events = new CopyOnWriteArrayList<>()
+        AtomicInteger leases = new AtomicInteger()
+
+        @Override
+        Mono<String> heartbeat(String peerUrl, String selfId, String selfUrl) {
+            if (!memberships.containsKey(peerUrl) || down.contains(peerUrl)) {
+                return Mono.error(new IOException("${peerUrl} unreachable"))
+            }
+            memberships[peerUrl].onHeartbeat(selfId, selfUrl)
+            Mono.just(memberships[peerUrl].selfId())
+        }
+
+        @Override
+        Mono<Integer> lease(String peerUrl, String key, long epoch, int wanted) {
+            if (down.contains(peerUrl)) {
+                return Mono.error(new IOException("${peerUrl} unreachable"))
+            }
+            leases.incrementAndGet()
+            events << "lease ${peerUrl}".toString()
+            Mono.fromSupplier { limiters[peerUrl].lend(key, epoch, wanted) }
+                .delayElement(delays[peerUrl] ?: Duration.ZERO)
+                .doOnNext { events << "granted ${peerUrl}".toString() }
+        }
+    }
+
+    def node(String id, String rate = "6/1s", List<String> seeds = ["node-a", "node-b", "node-c"], int maxKeys = 16) {
+        def membership = new ClusterMembership(id, id, seeds, transport,
+            Duration.ofMillis(500), Duration.ofSeconds(2), now::get)
+        def limiter = new ClusterRateLimiter(KeyedRateLimiter.Rate.parse(rate), [:], maxKeys, Duration.ofMinutes(5),
+            membership, transport, Duration.ofMillis(50), now::get)
+        transport.memberships[id] = membership
+        transport.limiters[id] = limiter
+        limiter
+    }
+
+    def heartbeats() {
+        transport.memberships.values()*.heartbeat()
+    }
+
+    def "should keep the global limit regardless of how many replicas serve the caller"() {
+        given:
+        def nodes = ["node-a", "node-b", "node-c"].collect { node(it) }
+        heartbeats()
+
+        when: "同一个窗口内轮流向三个副本发送 12 次请求"
+        def accepted = (0..<12).count { nodes[it % 3].acquire("ping-1").block() }
+
+        then:
+        accepted == 6
+        transport.memberships.values().every { it.size() == 3 }
+    }
+
+    def "should lease quota from peers once the local share is used up"() {
+        given:
+        def a = node("node-a", "4/1s", ["node-b"])
+        node("node-b", "4/1s", ["node-a"])
+        heartbeats()
+
+        expect: "本地 2 个配额用完后向 node-b 借用剩余的 2 个"
+        (1..4).every { a.acquire("ping-1").block() }
+        !a.acquire("ping-1").block()
+        transport.leases.get() > 0
+    }
+
+    def "should serve a one-per-window caller from a replica with no share of its own"() {
+        given:
+        def a = node("node-a", "1/1s", ["node-b"])
+        def b = node("node-b", "1/1s", ["node-a"])
+        heartbeats()
+
+        expect: "余数分给 ID 较小的 node-a，node-b 只能借用"
+        !b.tryAcquire("ping-1")
+        b.acquire("ping-1").block()
+        !a.acquire("ping-1").block()
+
+        when:
+        now.addAndGet(1000)
+
+        then:
+        a.acquire("ping-1").block()
+        !b.acquire("ping-1").block()
+    }
+
+    def "should keep local decisions free of network calls"() {
+        given:
+        def nodes = ["node-a", "node-b"].collect { node(it, "4/1s", ["node-a", "node-b"]) }
+        heartbeats()
+
+        expect:
+        nodes.every { it.tryAcquire("ping-1") && it.tryAcquire("ping-1") && !it.tryAcquire("ping-1") }
+        transport.leases.get() == 0
+    }
+
+    def "should rebalance shares when a replica leaves or joins"() {
+        given: "只接受种子地址上的副本，node-c 稍后才启动"
+        def a = node("node-a", "4/1s", ["node-b", "node-c"])
+        node("node-b", "4/1s", ["node-a"])
+        heartbeats()
+
+        when: "node-b 停止响应，超过 failure-timeout 后 node-a 独占全部配额"
+        transport.down << "node-b"
+        now.addAndGet(3000)
+        transport.memberships["node-a"].heartbeat()
+
+        then:
+        transport.memberships["node-a"].size() == 1
+        (1..4).every { a.tryAcquire("ping-1") }
+        !a.acquire("ping-1").block()
+
+        when: "node-c 加入后从下一个窗口起两者各分一半"
+        node("node-c", "4/1s", ["node-a"])
+        transport.memberships["node-c"].heartbeat()
+        now.addAndGet(1000)
+
+        then:
+        transport.memberships["node-a"].livePeers()*.id == ["node-c"]
+        a.tryAcquire("ping-1")
+        a.tryAcquire("ping-1")
+        !a.tryAcquire("ping-1")
+    }
+
+    def "should give a borrower at most half of the remaining quota"() {
+        given:
+        def a = node("node-a", "10/1s", [])
+        long epoch = now.get().intdiv(1000)
+
+        expect:
+        a.lend("ping-1", epoch, 100) == 5
+        a.lend("ping-1", epoch, 2) == 2
+        a.lend("ping-1", epoch - 1, 1) == 0
+        a.lend("ping-1", epoch, 0) == 0
+        (1..3).every { a.tryAcquire("ping-1") }
+        !a.tryAcquire("ping-1")
+    }
+
+    def "should ask every peer at once and keep grants that arrive after the first"() {
+        given:
+        def nodes = ["node-a", "node-b", "node-c"].collect { node(it) }
+        heartbeats()
+        def a = nodes[0]
+        transport.delays["node-b"] = Duration.ofMillis(20)
+        transport.delays["node-c"] = Duration.ofMillis(30)
+
+        when: "本地 2 个配额用完后，向 node-b 和 node-c 各借 1 个"
+        a.tryAcquire("ping-1")
+        a.tryAcquire("ping-1")
+        def accepted = a.acquire("ping-1").block()
+        Thread.sleep(100)
+
+        then: "两个请求都在任何响应之前发出"
+        accepted
+        transport.events.take(2).toSet() == ["lease node-b", "lease node-c"] as Set
+        a.tryAcquire("ping-1")
+        !a.tryAcquire("ping-1")
+    }
+
+    def "should wait for slow peers no longer than one lease timeout in total"() {
+        given:
+        def nodes = ["node-a", "node-b", "node-c"].collect { node(it) }
+        heartbeats()
+        def a = nodes[0]
+        transport.delays["node-b"] = Duration.ofSeconds(1)
+        transport.delays["node-c"] = Duration.ofSeconds(1)
+        2.times { a.tryAcquire("ping-1") }
+
+        when:
+        long start = System.nanoTime()
+        def accepted = a.acquire("ping-1").block()
+        long elapsedMillis = (System.nanoTime() - start).intdiv(1_000_000)
+
+        then:
+        !accepted
+        elapsedMillis < 500
+    }
+
+    def "should treat unreachable peers as having nothing to lend"() {
+        given:
+        def a = node("node-a", "2/1s", ["node-b"])
+        node("node-b", "2/1s", ["node-a"])
+        heartbeats()
+        transport.down << "node-b"
+
+        expect:
+        a.acquire("ping-1").block()
+        !a.acquire("ping-1").block()
+    }
+
+    def "should never exceed the global limit under concurrent load across replicas"() {
+        given:
+        def nodes = ["node-a", "node-b", "node-c"].collect { node(it, "300/1s") }
+        heartbeats()
+        def accepted = new AtomicInteger()
+        def start = new CountDownLatch(1)
+        def threads = (0..<6).collect { index ->
+            Thread.start {
+                start.await()
+                500.times {
+                    if (nodes[(index + it) % 3].acquire("ping-1").block()) {
+                        accepted.incrementAndGet()
+                    }
+                }
+            }
+        }
+
+        when:
+        start.countDown()
+        threads*.join(TimeUnit.SECONDS.toMillis(30))
+
+        then:
+        accepted.get() == 300
+    }
+
+    def "should report the rest of the window as retry-after"() {
+        given:
+        def a = node("node-a", "1/1s", [])
+        a.tryAcquire("ping-1")
+
+        when:
+        now.addAndGet(300)
+
+        then:
+        a.retryAfter("ping-1") == Duration.ofMillis(700)
+        a.retryAfter("unknown") == Duration.ZERO
+    }
+
+    def "should share an overflow quota once the caller table is full"() {
+        given:
+        def a = node("node-a", "1/1s", [], 2)
+
+        expect:
+        a.tryAcquire("ping-1")
+        a.tryAcquire("ping-2")
+        a.tryAcquire("ping-3")
+        !a.tryAcquire("ping-4")
+        a.size() == 2 || a.size() == 3
+        a.retryAfter("ping-4") == Duration.ofMillis(1000)
+    }
+}
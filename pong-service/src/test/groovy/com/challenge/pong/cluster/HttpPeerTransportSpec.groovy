@@ -0,0 +1,47 @@
+package com.challenge.pong.cluster
+
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpStatus
+import org.springframework.http.MediaType
+import org.springframework.web.reactive.function.client.ClientResponse
+import org.springframework.web.reactive.function.client.ExchangeFunction
+import org.springframework.web.reactive.function.client.WebClient
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+
+class HttpPeerTransportSpec extends Specification {
+
+    def requests = []
+
+    def transport(String body) {
+        new HttpPeerTransport(WebClient.builder().exchangeFunction({ request ->
+            requests << request
+            Mono.just(ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body)
+                .build())
+        } as ExchangeFunction), "s3cret")
+    }
+
+    def "should post heartbeats with its own identity"() {
+        when:
+        def id = transport("pong-a").heartbeat("http://10.0.0.1:8080", "pong-b", "http://10.0.0.2:8080").block()
+
+        then:
+        id == "pong-a"
+        requests[0].method().name() == "POST"
+        requests[0].url().toString() ==
+            "http://10.0.0.1:8080/internal/cluster/heartbeat?id=pong-b&url=http%3A%2F%2F10.0.0.2%3A8080"
+        requests[0].headers().getFirst(HttpPeerTransport.SECRET_HEADER) == "s3cret"
+    }
+
+    def "should post lease requests and read the granted permits"() {
+        when:
+        def granted = transport("3").lease("http://10.0.0.1:8080", "ping 1", 42L, 5).block()
+
+        then:
+        granted == 3
+        requests[0].url().toString() == "http://10.0.0.1:8080/internal/cluster/lease?key=ping%201&epoch=42&wanted=5"
+        requests[0].headers().getFirst(HttpPeerTransport.SECRET_HEADER) == "s3cret"
+    }
+}
@@ -0,0 +1,57 @@
+package com.challenge.pong.config
+
+import com.challenge.pong.model.PongRecord
+import com.challenge.pong.repository.PongRecordRepository
+import com.challenge.pong.repository.ReactivePongRecordRepository
+import org.springframework.boot.autoconfigure.AutoConfigurations
+import org.springframework.boot.autoconfigure.domain.EntityScan
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationAutoConfiguration
+import org.springframework.boot.test.context.runner.ApplicationContextRunner
+import org.springframework.context.annotation.Configuration
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+
+/**
+ * 默认（JPA）方式下只注册 JPA 仓库，并可在后台线程初始化 Hibernate
+ */
+class PersistenceConfigSpec extends Specification {
+
+    @Configuration
+    @EntityScan(basePackageClasses = PongRecord)
+    static class Entities {
+    }
+
+    def runner = new ApplicationContextRunner()
+        .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration, SqlInitializationAutoConfiguration,
+            HibernateJpaAutoConfiguration))
+        .withUserConfiguration(Entities, PersistenceConfig)
+        .withPropertyValues(
+            "spring.datasource.url=jdbc:h2:mem:pong-${UUID.randomUUID()};MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+            "spring.sql.init.mode=always",
+            "spring.sql.init.schema-locations=classpath:db/r2dbc-schema.sql",
+            "spring.jpa.hibernate.ddl-auto=none")
+
+    def "should register only the JPA repository and bootstrap Hibernate #mode"() {
+        expect:
+        runner.withPropertyValues("pong.startup.background-jpa=$background").run { context ->
+            assert context.startupFailure == null
+            assert context.getBeansOfType(ReactivePongRecordRepository).isEmpty()
+            assert (context.getBean("&entityManagerFactory", LocalContainerEntityManagerFactoryBean)
+                .bootstrapExecutor != null) == background
+
+            def repository = context.getBean(PongRecordRepository)
+            repository.save(new PongRecord(message: "World", status: 200, timestamp: LocalDateTime.now(),
+                requestId: "id-1"))
+            assert repository.findByRequestId("id-1")*.status == [200]
+        }
+
+        where:
+        mode                  | background
+        "on the main thread"  | false
+        "in the background"   | true
+    }
+}
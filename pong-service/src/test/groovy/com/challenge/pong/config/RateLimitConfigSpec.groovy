@@ -0,0 +1,65 @@
+package com.challenge.pong.config
+
+import com.challenge.pong.cluster.PeerTransport
+import org.springframework.web.reactive.function.client.WebClient
+import spock.lang.Specification
+
+import java.time.Duration
+
+class RateLimitConfigSpec extends Specification {
+
+    RateLimitConfig config = new RateLimitConfig(
+        defaultRate: "2/1s",
+        overrides: "ping-9=5/1s",
+        maxKeys: 16,
+        idleTimeout: Duration.ofMinutes(5),
+        instanceId: "pong-a",
+        selfUrl: "http://pong-a:8080",
+        peers: " http://pong-b:8080, ,http://pong-c:8080 ",
+        heartbeatInterval: Duration.ofSeconds(1),
+        failureTimeout: Duration.ofSeconds(2),
+        leaseTimeout: Duration.ofMillis(50),
+        secret: "s3cret")
+
+    def "should build the single-instance limiter from the configured rates"() {
+        when:
+        def limiter = config.keyedRateLimiter()
+
+        then:
+        limiter.tryAcquire("ping-1")
+        limiter.tryAcquire("ping-1")
+        !limiter.tryAcquire("ping-1")
+        (1..5).every { limiter.tryAcquire("ping-9") }
+    }
+
+    def "should build the cluster limiter with a started membership"() {
+        given:
+        def transport = config.peerTransport(WebClient.builder())
+
+        when:
+        def membership = config.clusterMembership(Mock(PeerTransport))
+        def limiter = config.clusterRateLimiter(membership, transport)
+
+        then:
+        transport != null
+        membership.selfId() == "pong-a"
+        limiter.tryAcquire("ping-1")
+
+        cleanup:
+        membership?.close()
+    }
+
+    def "should refuse to run the cluster limiter without a shared secret"() {
+        given:
+        config.secret = secret
+
+        when:
+        config.peerTransport(WebClient.builder())
+
+        then:
+        thrown(IllegalStateException)
+
+        where:
+        secret << [null, "", "  "]
+    }
+}
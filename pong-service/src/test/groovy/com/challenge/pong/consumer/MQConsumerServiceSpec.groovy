@@ -1,7 +1,20 @@
 package com.challenge.pong.consumer
 
+import com.challenge.common.trace.TraceClock
 import com.challenge.pong.model.PongRecord
 import com.challenge.pong.service.PongMessageService
+import com.challenge.pong.stats.PongStats
+import com.challenge.pong.trace.ConsumerLagMonitor
+import com.challenge.pong.trace.LatencyTracer
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently
+import org.apache.rocketmq.common.message.MessageExt
+import org.apache.rocketmq.common.message.MessageQueue
+import com.challenge.pong.config.MessageConverterConfig
+import org.apache.rocketmq.spring.support.RocketMQMessageConverter
+import org.springframework.messaging.MessageHeaders
 import spock.lang.Specification
 import java.time.LocalDateTime
 
@@ -10,10 +23,11 @@ class MQConsumerServiceSpec extends Specification {
     MQConsumerService mqConsumerService
     PongMessageService messageService
     MQConsumerService.PongResponseConsumers consumer
+    def messageConverter = new MessageConverterConfig().pongRecordMessageConverter(new RocketMQMessageConverter())
     
     def setup() {
         messageService = Mock(PongMessageService)
-        mqConsumerService = new MQConsumerService(messageService: messageService)
+        mqConsumerService = new MQConsumerService(messageService: messageService, messageConverter: messageConverter)
         consumer = new MQConsumerService.PongResponseConsumers(mqConsumerService)
     }
     
@@ -28,23 +42,44 @@ class MQConsumerServiceSpec extends Specification {
         )
         
         when:
-        consumer.onMessage(record)
+        consumer.onMessage(message(record))
         
         then:
-        1 * messageService.consumePongResponse(record) >> true
+        1 * messageService.consumePongResponse({
+            it.message == "Test message" && it.status == 200 && it.timestamp == timestamp && it.requestId == "test-id"
+        }) >> true
         noExceptionThrown()
     }
     
-    def "should handle null message gracefully"() {
+    def "should handle binary message successfully"() {
+        given:
+        def record = new PongRecord(
+            message: "Test message",
+            status: 429,
+            timestamp: LocalDateTime.of(2024, 5, 1, 12, 0),
+            requestId: UUID.randomUUID().toString()
+        )
+        
         when:
-        consumer.onMessage(null)
+        consumer.onMessage(binaryMessage(record))
         
         then:
-        1 * messageService.consumePongResponse(null) >> false
+        1 * messageService.consumePongResponse({
+            it.message == "Test message" && it.status == 429 && it.timestamp == record.timestamp && it.requestId == record.requestId
+        }) >> true
         noExceptionThrown()
     }
     
-    def "should handle message processing exception"() {
+    def "should redeliver message that cannot be decoded"() {
+        when:
+        consumer.onMessage(new MessageExt(body: "not json".bytes, msgId: "broken"))
+        
+        then:
+        0 * messageService.consumePongResponse(_)
+        thrown(IllegalArgumentException)
+    }
+    
+    def "should rethrow message processing exception so the message is redelivered"() {
         given:
         def record = new PongRecord(
             message: "Test message",
@@ -55,11 +90,12 @@ class MQConsumerServiceSpec extends Specification {
         def expectedException = new RuntimeException("handle message failed")
         
         when:
-        consumer.onMessage(record)
+        consumer.onMessage(message(record))
         
         then:
-        1 * messageService.consumePongResponse(record) >> { throw expectedException }
-        noExceptionThrown()
+        1 * messageService.consumePongResponse(_) >> { throw expectedException }
+        def e = thrown(RuntimeException)
+        e == expectedException
     }
     
     def "should handle message with missing fields"() {
@@ -67,10 +103,207 @@ class MQConsumerServiceSpec extends Specification {
         def record = new PongRecord()
         
         when:
-        consumer.onMessage(record)
+        consumer.onMessage(message(record))
         
         then:
-        1 * messageService.consumePongResponse(record) >> true
+        1 * messageService.consumePongResponse({ it.requestId == null && it.message == null }) >> true
         noExceptionThrown()
     }
-} 
\ No newline at end of file
+
+    def "should keep the default listener in single mode"() {
+        given:
+        def pushConsumer = new DefaultMQPushConsumer("pong-consumer-group")
+        def defaultListener = Mock(MessageListenerConcurrently)
+        pushConsumer.setMessageListener(defaultListener)
+        mqConsumerService.threads = 4
+        mqConsumerService.maxInFlightPerQueue = 200
+
+        when:
+        consumer.prepareStart(pushConsumer)
+
+        then:
+        pushConsumer.messageListener.is(defaultListener)
+        pushConsumer.consumeMessageBatchMaxSize == 1
+        pushConsumer.consumeThreadMin == 4
+        pushConsumer.consumeThreadMax == 4
+        pushConsumer.pullThresholdForQueue == 200
+    }
+
+    def "should install the batch listener in batch mode"() {
+        given:
+        def pushConsumer = new DefaultMQPushConsumer("pong-consumer-group")
+        mqConsumerService.mode = "batch"
+        mqConsumerService.batchSize = 64
+        mqConsumerService.pullBatchSize = 128
+        mqConsumerService.maxReconsumeTimes = 3
+
+        when:
+        consumer.prepareStart(pushConsumer)
+
+        then:
+        pushConsumer.messageListener instanceof MessageListenerConcurrently
+        pushConsumer.consumeMessageBatchMaxSize == 64
+        pushConsumer.pullBatchSize == 128
+        pushConsumer.maxReconsumeTimes == 3
+    }
+
+    def "should hand the whole batch to the persistence layer"() {
+        given:
+        def messages = (1..3).collect { message("id-$it") }
+        def context = new ConsumeConcurrentlyContext(new MessageQueue())
+
+        when:
+        def status = mqConsumerService.consumeBatch(messages, context)
+
+        then:
+        1 * messageService.consumePongResponses({ it*.requestId == ["id-1", "id-2", "id-3"] }) >> written(3)
+        status == ConsumeConcurrentlyStatus.CONSUME_SUCCESS
+        context.ackIndex == Integer.MAX_VALUE
+    }
+
+    def "should redeliver messages after the first failed record"() {
+        given:
+        def messages = (1..4).collect { message("id-$it") }
+        def context = new ConsumeConcurrentlyContext(new MessageQueue())
+
+        when:
+        def status = mqConsumerService.consumeBatch(messages, context)
+
+        then:
+        1 * messageService.consumePongResponses(_) >> written(2)
+        status == ConsumeConcurrentlyStatus.CONSUME_SUCCESS
+        context.ackIndex == 1
+    }
+
+    def "should count only saved records in the live stats with the time ping created them"() {
+        given:
+        def stats = Mock(PongStats)
+        mqConsumerService.stats = stats
+        def messages = (1..3).collect { message("id-$it") }
+        messages[0].putUserProperty(TraceClock.CREATED_AT, "1000")
+        def single = message("single")
+        single.putUserProperty(TraceClock.CREATED_AT, "2000")
+
+        when:
+        consumer.onMessage(single)
+        mqConsumerService.consumeBatch(messages, new ConsumeConcurrentlyContext(new MessageQueue()))
+
+        then:
+        1 * messageService.consumePongResponse(_) >> true
+        1 * messageService.consumePongResponses(_) >> written(2)
+        1 * stats.recordConsumed({ it.requestId == "single" }, 2000L)
+        1 * stats.recordConsumed({ it.requestId == "id-1" }, 1000L)
+        1 * stats.recordConsumed({ it.requestId == "id-2" }, null)
+        0 * stats.recordConsumed(_, _)
+    }
+
+    def "should trace saved records and watch the lag of the configured consumer"() {
+        given:
+        def tracer = Mock(LatencyTracer)
+        def lagMonitor = Mock(ConsumerLagMonitor)
+        mqConsumerService.tracer = tracer
+        mqConsumerService.lagMonitor = lagMonitor
+        def pushConsumer = new DefaultMQPushConsumer("pong-consumer-group")
+        def single = message("single")
+        def messages = (1..3).collect { message("id-$it") }
+
+        when:
+        consumer.prepareStart(pushConsumer)
+        consumer.onMessage(single)
+        mqConsumerService.consumeBatch(messages, new ConsumeConcurrentlyContext(new MessageQueue()))
+
+        then:
+        1 * lagMonitor.watch(pushConsumer)
+        2 * tracer.now() >> 42L
+        1 * messageService.consumePongResponse(_) >> true
+        1 * messageService.consumePongResponses(_) >> written(2)
+        1 * tracer.recordPersisted(single, 42L)
+        1 * tracer.recordPersisted(messages[0], 42L)
+        1 * tracer.recordPersisted(messages[1], 42L)
+        0 * tracer.recordPersisted(_, _)
+    }
+
+    def "should redeliver the whole batch when nothing was saved"() {
+        given:
+        def messages = (1..2).collect { message("id-$it") }
+
+        when:
+        def status = mqConsumerService.consumeBatch(messages, new ConsumeConcurrentlyContext(new MessageQueue()))
+
+        then:
+        1 * messageService.consumePongResponses(_) >> written(0)
+        status == ConsumeConcurrentlyStatus.RECONSUME_LATER
+    }
+
+    def "should only save records before an undecodable message"() {
+        given:
+        def broken = new MessageExt(body: "not json".bytes, msgId: "broken")
+        def messages = [message("id-1"), broken, binaryMessage(new PongRecord(requestId: "id-3", status: 200))]
+        def context = new ConsumeConcurrentlyContext(new MessageQueue())
+
+        when:
+        def status = mqConsumerService.consumeBatch(messages, context)
+
+        then:
+        1 * messageService.consumePongResponses({ it*.requestId == ["id-1"] }) >> written(1)
+        status == ConsumeConcurrentlyStatus.CONSUME_SUCCESS
+        context.ackIndex == 0
+    }
+
+    def "should not count or trace records skipped as already saved"() {
+        given:
+        def stats = Mock(PongStats)
+        def tracer = Mock(LatencyTracer)
+        mqConsumerService.stats = stats
+        mqConsumerService.tracer = tracer
+        def single = message("single")
+        def messages = (1..3).collect { message("id-$it") }
+        def context = new ConsumeConcurrentlyContext(new MessageQueue())
+
+        when:
+        consumer.onMessage(single)
+        def status = mqConsumerService.consumeBatch(messages, context)
+
+        then:
+        1 * messageService.consumePongResponse(_) >> false
+        1 * messageService.consumePongResponses(_) >> new PongMessageService.BatchResult(3, BitSet.valueOf([0b010] as long[]))
+        1 * stats.recordConsumed({ it.requestId == "id-2" }, _)
+        0 * stats.recordConsumed(_, _)
+        1 * tracer.recordPersisted(messages[1], _)
+        0 * tracer.recordPersisted(_, _)
+        status == ConsumeConcurrentlyStatus.CONSUME_SUCCESS
+        context.ackIndex == Integer.MAX_VALUE
+    }
+
+    /**
+     * 前 acknowledged 条记录都由本次写入
+     */
+    private static PongMessageService.BatchResult written(int acknowledged) {
+        def written = new BitSet()
+        written.set(0, acknowledged)
+        new PongMessageService.BatchResult(acknowledged, written)
+    }
+
+    private MessageExt message(String requestId) {
+        message(new PongRecord(message: "World", status: 200, timestamp: LocalDateTime.now(), requestId: requestId))
+    }
+
+    /**
+     * 模拟 JSON 生产者：不带 contentType 属性的 JSON 消息体
+     */
+    private MessageExt message(PongRecord record) {
+        def payload = new RocketMQMessageConverter().messageConverter.toMessage(record, null).payload
+        def body = payload instanceof String ? payload.getBytes("UTF-8") : payload as byte[]
+        new MessageExt(body: body, msgId: record.requestId)
+    }
+
+    /**
+     * 模拟二进制生产者：contentType 会作为用户属性随消息传递
+     */
+    private MessageExt binaryMessage(PongRecord record) {
+        def converted = messageConverter.toMessage(record, null)
+        def message = new MessageExt(body: converted.payload as byte[], msgId: record.requestId)
+        message.putUserProperty(MessageHeaders.CONTENT_TYPE, converted.headers[MessageHeaders.CONTENT_TYPE].toString())
+        message
+    }
+}
@@ -0,0 +1,69 @@
+package com.challenge.pong.controller
+
+import com.challenge.pong.cluster.ClusterMembership
+import com.challenge.pong.cluster.ClusterRateLimiter
+import org.springframework.http.HttpStatus
+import org.springframework.web.server.ResponseStatusException
+import spock.lang.Specification
+import spock.lang.Subject
+
+class ClusterControllerSpec extends Specification {
+
+    ClusterMembership membership = Mock()
+    ClusterRateLimiter rateLimiter = Mock()
+
+    @Subject
+    ClusterController controller = new ClusterController(membership: membership, rateLimiter: rateLimiter,
+        secret: "s3cret")
+
+    def "should record the sender of a heartbeat and answer with its own id"() {
+        given:
+        membership.selfId() >> "pong-a"
+
+        when:
+        def id = controller.heartbeat("s3cret", "pong-b", "http://10.0.0.2:8080").block()
+
+        then:
+        1 * membership.onHeartbeat("pong-b", "http://10.0.0.2:8080") >> true
+        id == "pong-a"
+    }
+
+    def "should reject heartbeats from addresses outside the seeds"() {
+        given:
+        membership.onHeartbeat("pong-x", "http://attacker:8080") >> false
+
+        when:
+        controller.heartbeat("s3cret", "pong-x", "http://attacker:8080").block()
+
+        then:
+        def e = thrown(ResponseStatusException)
+        e.statusCode == HttpStatus.FORBIDDEN
+    }
+
+    def "should lend quota from the local budget"() {
+        given:
+        rateLimiter.lend("ping-1", 42L, 3) >> 2
+
+        expect:
+        controller.lease("s3cret", "ping-1", 42L, 3).block() == 2
+    }
+
+    def "should reject requests without the cluster secret"() {
+        given:
+        def unconfigured = new ClusterController(membership: membership, rateLimiter: rateLimiter)
+
+        when:
+        call(token == "none" ? unconfigured : controller, token == "none" ? "s3cret" : token)
+
+        then:
+        def e = thrown(ResponseStatusException)
+        e.statusCode == HttpStatus.FORBIDDEN
+        0 * membership.onHeartbeat(*_)
+        0 * rateLimiter.lend(*_)
+
+        where: "none 表示本副本没有配置密钥"
+        [token, call] << [[null, "wrong", "s3cret-", "none"], [
+            { c, t -> c.heartbeat(t, "pong-b", "http://10.0.0.2:8080").block() },
+            { c, t -> c.lease(t, "ping-1", 42L, 3).block() }]].combinations()
+    }
+}
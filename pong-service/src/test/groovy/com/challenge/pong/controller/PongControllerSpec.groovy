@@ -1,9 +1,16 @@
 package com.challenge.pong.controller
 
+import com.challenge.common.id.RequestIdGenerator
+import org.springframework.http.HttpHeaders
 import org.springframework.http.ResponseEntity
 import reactor.core.publisher.Mono
 import spock.lang.Specification
 import spock.lang.Subject
+import com.challenge.common.audit.AuditEventType
+import com.challenge.common.audit.AuditJournal
+import com.challenge.pong.ratelimit.KeyedRateLimiter
+import com.challenge.pong.stats.PongStats
+import java.time.Duration
 
 class PongControllerSpec extends Specification {
 
@@ -11,12 +18,13 @@ class PongControllerSpec extends Specification {
     PongController controller
     
     def setup() {
-        controller = new PongController()
+        def rateLimiter = new KeyedRateLimiter(KeyedRateLimiter.Rate.parse("1/1s"), [:], 16, Duration.ofMinutes(5))
+        controller = new PongController(rateLimiter: rateLimiter)
     }
     
     def "should handle successful ping request"() {
         when:
-        def result = controller.handlePing().block()
+        def result = controller.handlePing(null).block()
         
         then:
         result instanceof ResponseEntity
@@ -27,24 +35,25 @@ class PongControllerSpec extends Specification {
     
     def "should handle rate limiting"() {
         given:
-        controller.handlePing().block() // 消耗第一个配额
+        controller.handlePing(null).block() // 消耗第一个配额
         
         when:
-        def result = controller.handlePing().block()
+        def result = controller.handlePing(null).block()
         
         then:
         result instanceof ResponseEntity
         result.statusCodeValue == 429
         result.body == "Rate limited by Pong service"
+        result.headers.getFirst(HttpHeaders.RETRY_AFTER) == "1"
     }
     
     def "should verify rate limiter permits recovery"() {
         given:
-        controller.handlePing().block() // 消耗配额
+        controller.handlePing(null).block() // 消耗配额
         
         when:
         Thread.sleep(1100) // 等待超过1秒让令牌桶恢复
-        def result = controller.handlePing().block()
+        def result = controller.handlePing(null).block()
         
         then:
         result instanceof ResponseEntity
@@ -55,7 +64,7 @@ class PongControllerSpec extends Specification {
     def "should handle concurrent requests correctly"() {
         when:
         def results = (1..3).collect { 
-            controller.handlePing() 
+            controller.handlePing(null) 
         }.collect { mono ->
             mono.block()
         }
@@ -84,4 +93,47 @@ class PongControllerSpec extends Specification {
         result.statusCodeValue == 500
         result.body == "Unknown error"
     }
-} 
\ No newline at end of file
+    def "should rate limit each caller independently"() {
+        when:
+        def first = controller.handlePing("ping-1").block()
+        def second = controller.handlePing("ping-2").block()
+        def repeated = controller.handlePing("ping-1").block()
+        
+        then:
+        first.statusCodeValue == 200
+        second.statusCodeValue == 200
+        repeated.statusCodeValue == 429
+    }
+
+    def "should record accepted and rate limited requests in the audit journal"() {
+        given:
+        def journal = Mock(AuditJournal)
+        controller.auditJournal = journal
+
+        when:
+        controller.handlePing("ping-a").block()
+        controller.handlePing("ping-a").block()
+
+        then:
+        1 * journal.append(AuditEventType.PONG_ACCEPTED, 200, { it ==~ /[0-9a-f-]{36}/ && RequestIdGenerator.timestampOf(it) > 0 }, "ping-a", 0)
+
+        then:
+        1 * journal.append(AuditEventType.PONG_RATE_LIMITED, 429, _, "ping-a", 0)
+    }
+
+    def "should count each decision in the live stats"() {
+        given:
+        def stats = Mock(PongStats)
+        controller.stats = stats
+
+        when:
+        controller.handlePing("ping-a").block()
+        controller.handlePing("ping-a").block()
+
+        then:
+        1 * stats.recordDecision("ping-a", 200)
+
+        then:
+        1 * stats.recordDecision("ping-a", 429)
+    }
+}
@@ -0,0 +1,113 @@
+package com.challenge.pong.controller
+
+import com.challenge.common.audit.AuditEventType
+import com.challenge.common.audit.AuditJournal
+import com.challenge.common.stream.PingStreamProtocol
+import com.challenge.pong.config.PongStreamConfig
+import com.challenge.pong.ratelimit.KeyedRateLimiter
+import org.springframework.http.HttpHeaders
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping
+import org.springframework.web.reactive.socket.WebSocketHandler
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient
+import org.springframework.web.reactive.socket.server.support.HandshakeWebSocketService
+import org.springframework.web.server.WebHandler
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder
+import reactor.core.publisher.Flux
+import reactor.netty.DisposableServer
+import reactor.netty.http.HttpProtocol
+import reactor.netty.http.server.HttpServer
+import spock.lang.Specification
+
+import java.time.Duration
+
+class PongStreamHandlerSpec extends Specification {
+
+    PongStreamHandler handler
+    AuditJournal journal = Mock(AuditJournal)
+    DisposableServer server
+
+    def setup() {
+        handler = new PongStreamHandler(4)
+        handler.rateLimiter = new KeyedRateLimiter(KeyedRateLimiter.Rate.parse("2/1s"), [:], 16, Duration.ofMinutes(5))
+        handler.auditJournal = journal
+        def webSocketService = new HandshakeWebSocketService()
+        def httpHandler = WebHttpHandlerBuilder
+            .webHandler({ exchange -> webSocketService.handleRequest(exchange, handler) } as WebHandler)
+            .build()
+        // 与 pong 服务相同，同时支持 h2c 和 HTTP/1.1
+        server = HttpServer.create()
+            .host("127.0.0.1")
+            .port(0)
+            .protocol(HttpProtocol.H2C, HttpProtocol.HTTP11)
+            .handle(new ReactorHttpHandlerAdapter(httpHandler))
+            .bindNow()
+    }
+
+    def cleanup() {
+        server?.disposeNow()
+    }
+
+    /**
+     * 以 instanceId 的身份发送 frames，返回收到的前 expected 帧
+     */
+    List<String> exchange(String instanceId, List<String> frames, int expected) {
+        def headers = new HttpHeaders()
+        headers.set(PongController.INSTANCE_HEADER, instanceId)
+        def received = []
+        new ReactorNettyWebSocketClient().execute(
+            URI.create("ws://127.0.0.1:${server.port()}${PingStreamProtocol.PATH}"), headers,
+            { session ->
+                session.send(Flux.fromIterable(frames).map(session.&textMessage))
+                    .and(session.receive().map { it.payloadAsText }.take(expected).doOnNext { received << it })
+            } as WebSocketHandler)
+            .block(Duration.ofSeconds(5))
+        received
+    }
+
+    def "should answer pings in order with the same rate limit as the HTTP endpoint"() {
+        when:
+        def frames = exchange("ping-1", ["P 1", "P 2", "P 3"], 5)
+
+        then: "先发放一个窗口的额度，每处理半个窗口补发一次"
+        frames == ["N 4",
+                   "V 1 200 0 World",
+                   "V 2 200 0 World",
+                   "N 2",
+                   "V 3 429 1 Rate limited by Pong service"]
+    }
+
+    def "should rate limit each caller separately and audit every verdict"() {
+        when:
+        def first = exchange("ping-1", ["P 1", "P 2", "P 3"], 5)
+        def second = exchange("ping-2", ["P 1"], 2)
+
+        then:
+        first[4].startsWith("V 3 429")
+        second == ["N 4", "V 1 200 0 World"]
+        2 * journal.append(AuditEventType.PONG_ACCEPTED, 200, _, "ping-1", 0)
+        1 * journal.append(AuditEventType.PONG_RATE_LIMITED, 429, _, "ping-1", 0)
+        1 * journal.append(AuditEventType.PONG_ACCEPTED, 200, _, "ping-2", 0)
+    }
+
+    def "should ignore frames it does not understand"() {
+        when:
+        def frames = exchange("ping-1", ["hello", "N 10", "P 7"], 2)
+
+        then:
+        frames == ["N 4", "V 7 200 0 World"]
+    }
+
+    def "should map the stream path to the handler"() {
+        given:
+        def config = new PongStreamConfig(window: 8)
+
+        when:
+        def streamHandler = config.pongStreamHandler()
+        def mapping = config.pongStreamHandlerMapping(streamHandler) as SimpleUrlHandlerMapping
+
+        then:
+        mapping.urlMap == [(PingStreamProtocol.PATH): streamHandler]
+        streamHandler.window == 8
+    }
+}
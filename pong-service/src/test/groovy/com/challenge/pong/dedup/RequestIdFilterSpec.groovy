@@ -0,0 +1,96 @@
+package com.challenge.pong.dedup
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+
+class RequestIdFilterSpec extends Specification {
+
+    long now = 0
+    def registry = new SimpleMeterRegistry()
+
+    @Subject
+    RequestIdFilter filter = filter(1000, 100)
+
+    def filter(int expectedInsertions, int cacheSize) {
+        def filter = new RequestIdFilter(Duration.ofMinutes(10), expectedInsertions, 0.001, cacheSize, { now })
+        filter.bindTo(registry)
+        filter
+    }
+
+    def count(String name) {
+        registry.get(name).counter().count()
+    }
+
+    def "should only report ids that were remembered"() {
+        when:
+        filter.remember("id-1")
+        filter.remember(null)
+
+        then:
+        filter.isDuplicate("id-1")
+        !filter.isDuplicate("id-2")
+        !filter.isDuplicate(null)
+        count("pong.dedup.skipped") == 1
+    }
+
+    def "should forget ids between half a window and a full window"() {
+        given:
+        filter.remember("id-1")
+
+        when: "过了半个窗口，id-1 进入上一代"
+        now += TimeUnit.MINUTES.toNanos(5)
+        filter.remember("id-2")
+
+        then:
+        filter.isDuplicate("id-1")
+        filter.isDuplicate("id-2")
+
+        when: "再过半个窗口，上一代被丢弃"
+        now += TimeUnit.MINUTES.toNanos(5)
+
+        then:
+        !filter.isDuplicate("id-1")
+        filter.isDuplicate("id-2")
+    }
+
+    def "should keep the most recent ids when the cache rotates before the bloom filter"() {
+        given: "集合每代 2 个，布隆过滤器仍然记得更早的 ID"
+        def small = filter(1000, 4)
+
+        when:
+        (1..5).each { small.remember("id-$it") }
+
+        then:
+        (3..5).every { small.isDuplicate("id-$it") }
+        !small.isDuplicate("id-1")
+        count("pong.dedup.unconfirmed") == 1
+    }
+
+    def "should rotate early when the bloom filter is full"() {
+        given:
+        def small = filter(2, 100)
+
+        when:
+        (1..5).each { small.remember("id-$it") }
+
+        then:
+        !small.isDuplicate("id-1")
+        !small.isDuplicate("id-2")
+        (3..5).every { small.isDuplicate("id-$it") }
+    }
+
+    def "should never report duplicates when disabled"() {
+        given:
+        def disabled = RequestIdFilter.disabled()
+
+        when:
+        disabled.remember("id-1")
+
+        then:
+        !disabled.isDuplicate("id-1")
+    }
+}
@@ -0,0 +1,161 @@
+package com.challenge.pong.ratelimit
+
+import spock.lang.Specification
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+class KeyedRateLimiterSpec extends Specification {
+
+    AtomicLong now = new AtomicLong(1_700_000_000_000L)
+
+    def limiter(String defaultRate, Map overrides = [:], int maxKeys = 16, Duration idleTimeout = Duration.ofSeconds(10)) {
+        new KeyedRateLimiter(KeyedRateLimiter.Rate.parse(defaultRate), overrides, maxKeys, idleTimeout, now::get)
+    }
+
+    def "should allow one request per interval for a single caller"() {
+        given:
+        def limiter = limiter("1/1s")
+
+        expect:
+        limiter.tryAcquire("ping-1")
+        !limiter.tryAcquire("ping-1")
+
+        when:
+        now.addAndGet(999)
+
+        then:
+        !limiter.tryAcquire("ping-1")
+
+        when:
+        now.addAndGet(1)
+
+        then:
+        limiter.tryAcquire("ping-1")
+    }
+
+    def "should keep separate quotas per caller"() {
+        given:
+        def limiter = limiter("1/1s")
+
+        expect:
+        limiter.tryAcquire("ping-1")
+        limiter.tryAcquire("ping-2")
+        limiter.tryAcquire("ping-3")
+        !limiter.tryAcquire("ping-2")
+    }
+
+    def "should report how long a rejected caller has to wait"() {
+        given:
+        def limiter = limiter("2/1s")
+
+        expect:
+        limiter.retryAfter("ping-1") == Duration.ZERO
+        limiter.tryAcquire("ping-1")
+        limiter.tryAcquire("ping-1")
+        !limiter.tryAcquire("ping-1")
+        limiter.retryAfter("ping-1") == Duration.ofMillis(500)
+
+        when:
+        now.addAndGet(200)
+
+        then:
+        limiter.retryAfter("ping-1") == Duration.ofMillis(300)
+        limiter.retryAfter("ping-2") == Duration.ZERO
+    }
+
+    def "should treat missing identity as the anonymous caller"() {
+        given:
+        def limiter = limiter("1/1s")
+
+        expect:
+        limiter.tryAcquire(null)
+        !limiter.tryAcquire("")
+        !limiter.tryAcquire(KeyedRateLimiter.ANONYMOUS_KEY)
+    }
+
+    def "should apply per-caller rate overrides"() {
+        given:
+        def limiter = limiter("1/1s", KeyedRateLimiter.Rate.parseOverrides("ping-fast=3/1s"))
+
+        expect:
+        (1..4).collect { limiter.tryAcquire("ping-fast") } == [true, true, true, false]
+        (1..2).collect { limiter.tryAcquire("ping-slow") } == [true, false]
+    }
+
+    def "should route new callers to the overflow quota when the table is full"() {
+        given:
+        def limiter = limiter("1/1s", [:], 2)
+        limiter.tryAcquire("ping-1")
+        limiter.tryAcquire("ping-2")
+
+        expect:
+        limiter.tryAcquire("ping-3")
+        !limiter.tryAcquire("ping-4")
+        limiter.size() == 3
+    }
+
+    def "should evict idle callers and admit new ones"() {
+        given:
+        def limiter = limiter("1/1s", [:], 2, Duration.ofSeconds(10))
+        limiter.tryAcquire("ping-1")
+        limiter.tryAcquire("ping-2")
+
+        when:
+        now.addAndGet(Duration.ofSeconds(11).toMillis())
+        def admitted = limiter.tryAcquire("ping-3")
+
+        then:
+        admitted
+        limiter.size() == 1
+    }
+
+    def "should not evict callers before their window has passed"() {
+        given: "空闲超时小于时间窗口时以时间窗口为准"
+        def limiter = limiter("1/1m", [:], 16, Duration.ofSeconds(1))
+        limiter.tryAcquire("ping-1")
+
+        when:
+        now.addAndGet(Duration.ofSeconds(30).toMillis())
+
+        then:
+        !limiter.tryAcquire("ping-1")
+    }
+
+    def "should grant exactly one permit per caller under concurrent access"() {
+        given:
+        def limiter = new KeyedRateLimiter(KeyedRateLimiter.Rate.parse("1/10s"), [:], 16, Duration.ofMinutes(1))
+        def results = Collections.synchronizedList([])
+        def startLatch = new CountDownLatch(1)
+        def completionLatch = new CountDownLatch(40)
+
+        when:
+        40.times { i ->
+            Thread.start {
+                try {
+                    startLatch.await(5, TimeUnit.SECONDS)
+                    results.add(["ping-${i % 4}".toString(), limiter.tryAcquire("ping-${i % 4}")])
+                } finally {
+                    completionLatch.countDown()
+                }
+            }
+        }
+        startLatch.countDown()
+
+        then:
+        completionLatch.await(5, TimeUnit.SECONDS)
+        results.findAll { it[1] }.collect { it[0] }.sort() == ["ping-0", "ping-1", "ping-2", "ping-3"]
+    }
+
+    def "should reject malformed rate configuration"() {
+        when:
+        KeyedRateLimiter.Rate.parse(value)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        value << ["5", "x/1s", "1/forever"]
+    }
+}
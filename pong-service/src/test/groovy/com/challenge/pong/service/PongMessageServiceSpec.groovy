@@ -1,18 +1,19 @@
 package com.challenge.pong.service
 
+import com.challenge.pong.dedup.RequestIdFilter
 import com.challenge.pong.model.PongRecord
-import com.challenge.pong.repository.PongRecordRepository
 import spock.lang.Specification
 import java.time.LocalDateTime
+import java.util.concurrent.CompletableFuture
 
 class PongMessageServiceSpec extends Specification {
     
     PongMessageService messageService
-    PongRecordRepository repository
+    PongRecordBatchWriter batchWriter
     
     def setup() {
-        repository = Mock(PongRecordRepository)
-        messageService = new PongMessageService(repository)
+        batchWriter = Mock(PongRecordBatchWriter)
+        messageService = new PongMessageService(batchWriter)
     }
     
     def "should successfully consume and save pong response"() {
@@ -29,7 +30,7 @@ class PongMessageServiceSpec extends Specification {
         def result = messageService.consumePongResponse(record)
         
         then:
-        1 * repository.save(record) >> record
+        1 * batchWriter.write(record) >> CompletableFuture.completedFuture(null)
         result == true
         noExceptionThrown()
     }
@@ -40,7 +41,7 @@ class PongMessageServiceSpec extends Specification {
         
         then:
         result == false
-        0 * repository.save(_)
+        0 * batchWriter.write(_)
     }
     
     def "should handle record with missing fields"() {
@@ -51,7 +52,7 @@ class PongMessageServiceSpec extends Specification {
         def result = messageService.consumePongResponse(record)
         
         then:
-        1 * repository.save(record) >> record
+        1 * batchWriter.write(record) >> CompletableFuture.completedFuture(null)
         result == true
         noExceptionThrown()
     }
@@ -70,7 +71,7 @@ class PongMessageServiceSpec extends Specification {
         def result = messageService.consumePongResponse(record)
         
         then:
-        1 * repository.save({ savedRecord ->
+        1 * batchWriter.write({ savedRecord ->
             verifyAll(savedRecord) {
                 it.message == record.message
                 it.status == record.status
@@ -78,7 +79,7 @@ class PongMessageServiceSpec extends Specification {
                 it.requestId == record.requestId
             }
             true
-        }) >> record
+        }) >> CompletableFuture.completedFuture(null)
         result == true
         noExceptionThrown()
     }
@@ -95,14 +96,81 @@ class PongMessageServiceSpec extends Specification {
         def expectedException = new RuntimeException("database connection failed")
         
         when:
-        repository.save(record) >> { throw expectedException }
         messageService.consumePongResponse(record)
         
         then:
         def thrown = thrown(RuntimeException)
         thrown.message == "handle message failed"
         thrown.cause == expectedException
-        1 * repository.save(record) >> { throw expectedException }
+        1 * batchWriter.write(record) >> CompletableFuture.failedFuture(expectedException)
     }
     
-} 
\ No newline at end of file
+    def "should return the number of leading records saved in a batch"() {
+        given:
+        def records = (1..3).collect { new PongRecord(message: "World", status: 200, requestId: "id-$it") }
+        
+        when:
+        def saved = messageService.consumePongResponses(records)
+        
+        then:
+        1 * batchWriter.writeBatch(records) >> [
+            CompletableFuture.completedFuture(null),
+            CompletableFuture.failedFuture(new RuntimeException("bad record")),
+            CompletableFuture.completedFuture(null)
+        ]
+        saved.acknowledged() == 1
+        saved.written() == BitSet.valueOf([0b1] as long[])
+    }
+
+    def "should skip records the filter has already seen and remember the ones it saved"() {
+        given:
+        def filter = Mock(RequestIdFilter)
+        messageService.requestIdFilter = filter
+        def records = ["id-1", "id-2", "id-3", "id-4"].collect { new PongRecord(requestId: it, status: 200) }
+
+        when:
+        def saved = messageService.consumePongResponses(records)
+
+        then:
+        filter.isDuplicate("id-1") >> true
+        filter.isDuplicate("id-3") >> true
+        1 * batchWriter.writeBatch({ it*.requestId == ["id-2", "id-4"] }) >> [
+            CompletableFuture.completedFuture(null), CompletableFuture.completedFuture(null)]
+        1 * filter.remember("id-2")
+        1 * filter.remember("id-4")
+        saved.acknowledged() == 4
+        (0..3).collect { saved.isWritten(it) } == [false, true, false, true]
+    }
+
+    def "should not remember records that failed to save"() {
+        given:
+        def filter = Mock(RequestIdFilter)
+        messageService.requestIdFilter = filter
+        def records = ["id-1", "id-2", "id-3"].collect { new PongRecord(requestId: it, status: 200) }
+
+        when:
+        def saved = messageService.consumePongResponses(records)
+
+        then:
+        filter.isDuplicate("id-2") >> true
+        1 * batchWriter.writeBatch(_) >> [CompletableFuture.failedFuture(new IllegalStateException("db down")),
+                                          CompletableFuture.completedFuture(null)]
+        0 * filter.remember("id-1")
+        saved.acknowledged() == 0
+        saved.written().isEmpty()
+    }
+
+    def "should acknowledge a single redelivered record without writing it"() {
+        given:
+        def filter = Mock(RequestIdFilter)
+        messageService.requestIdFilter = filter
+
+        when:
+        def result = messageService.consumePongResponse(new PongRecord(requestId: "id-1"))
+
+        then:
+        filter.isDuplicate("id-1") >> true
+        0 * batchWriter.write(_)
+        !result
+    }
+}
@@ -0,0 +1,133 @@
+package com.challenge.pong.service
+
+import com.challenge.pong.model.PongRecord
+import com.challenge.pong.repository.PongRecordRepository
+import spock.lang.Specification
+import java.time.Duration
+import java.time.LocalDateTime
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+class PongRecordBatchWriterSpec extends Specification {
+
+    PongRecordRepository repository
+    PongRecordBatchWriter batchWriter
+    List<List<String>> batches
+
+    def setup() {
+        repository = Mock(PongRecordRepository)
+        batchWriter = new PongRecordBatchWriter(repository)
+        batchWriter.writerThreads = 1
+        batches = new CopyOnWriteArrayList<>()
+    }
+
+    def cleanup() {
+        batchWriter.shutdown()
+    }
+
+    def record(String requestId) {
+        new PongRecord(message: "World", status: 200, timestamp: LocalDateTime.now(), requestId: requestId)
+    }
+
+    def "should save records written together in one batch"() {
+        given:
+        batchWriter.linger = Duration.ofMillis(200)
+        repository.saveAll(_) >> { args -> batches << args[0]*.requestId; args[0] }
+
+        when:
+        def futures = (1..5).collect { batchWriter.write(record("id-$it")) }
+        CompletableFuture.allOf(futures as CompletableFuture[]).get(5, TimeUnit.SECONDS)
+
+        then:
+        batches == [["id-1", "id-2", "id-3", "id-4", "id-5"]]
+        0 * repository.save(_)
+    }
+
+    def "should split batches at the configured size"() {
+        given:
+        batchWriter.batchSize = 2
+        batchWriter.linger = Duration.ofSeconds(10)
+        repository.saveAll(_) >> { args -> batches << args[0]*.requestId; args[0] }
+
+        when:
+        def futures = (1..4).collect { batchWriter.write(record("id-$it")) }
+        CompletableFuture.allOf(futures as CompletableFuture[]).get(5, TimeUnit.SECONDS)
+
+        then:
+        batches*.size() == [2, 2]
+    }
+
+    def "should write a prepared batch on the calling thread in batch-size chunks"() {
+        given:
+        batchWriter.batchSize = 2
+        repository.saveAll(_) >> { args -> batches << args[0]*.requestId; args[0] }
+
+        when:
+        def futures = batchWriter.writeBatch((1..3).collect { record("id-$it") })
+
+        then:
+        futures.every { it.isDone() && !it.isCompletedExceptionally() }
+        batches == [["id-1", "id-2"], ["id-3"]]
+    }
+
+    def "should retry records one by one when the batch fails"() {
+        given:
+        def good = record("good")
+        def bad = record("bad")
+        batchWriter.linger = Duration.ofMillis(200)
+        repository.saveAll(_) >> { throw new RuntimeException("batch failed") }
+        repository.save(good) >> good
+        repository.save(bad) >> { throw new RuntimeException("bad record") }
+
+        when:
+        def goodFuture = batchWriter.write(good)
+        def badFuture = batchWriter.write(bad)
+        goodFuture.get(5, TimeUnit.SECONDS)
+        badFuture.get(5, TimeUnit.SECONDS)
+
+        then:
+        def e = thrown(ExecutionException)
+        e.cause.message == "bad record"
+        goodFuture.isDone() && !goodFuture.isCompletedExceptionally()
+    }
+
+    def "should reject records when the queue is full"() {
+        given:
+        batchWriter.queueCapacity = 1
+        batchWriter.batchSize = 1
+        def release = new CompletableFuture()
+        def saving = new CountDownLatch(1)
+        repository.saveAll(_) >> { args -> saving.countDown(); release.get(5, TimeUnit.SECONDS); args[0] }
+        batchWriter.write(record("saving"))
+        assert saving.await(5, TimeUnit.SECONDS)
+        batchWriter.write(record("queued"))
+
+        when:
+        batchWriter.write(record("overflow")).get(1, TimeUnit.SECONDS)
+
+        then:
+        def e = thrown(ExecutionException)
+        e.cause instanceof RejectedExecutionException
+
+        cleanup:
+        release.complete(null)
+    }
+
+    def "should reject records after shutdown"() {
+        given:
+        repository.saveAll(_) >> { args -> args[0] }
+        batchWriter.write(record("id-1")).get(5, TimeUnit.SECONDS)
+        batchWriter.shutdown()
+
+        when:
+        batchWriter.write(record("id-2")).get(1, TimeUnit.SECONDS)
+
+        then:
+        def e = thrown(ExecutionException)
+        e.cause instanceof RejectedExecutionException
+    }
+}
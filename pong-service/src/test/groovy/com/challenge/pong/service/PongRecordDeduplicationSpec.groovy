@@ -0,0 +1,119 @@
+package com.challenge.pong.service
+
+import com.challenge.pong.dedup.RequestIdFilter
+import com.challenge.pong.model.PongRecord
+import com.challenge.pong.repository.PongRecordRepository
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.r2dbc.spi.ConnectionFactories
+import org.h2.jdbcx.JdbcDataSource
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy
+import org.springframework.core.io.ClassPathResource
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.init.ScriptUtils
+import org.springframework.orm.jpa.JpaTransactionManager
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean
+import org.springframework.orm.jpa.SharedEntityManagerCreator
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter
+import org.springframework.r2dbc.core.DatabaseClient
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource
+import org.springframework.transaction.interceptor.TransactionInterceptor
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.LocalDateTime
+
+/**
+ * 重复投递的记录经过两种写入器都只保存一次，表结构与 r2dbc-schema.sql 相同（含唯一索引）
+ */
+class PongRecordDeduplicationSpec extends Specification {
+
+    static final LocalDateTime T = LocalDateTime.of(2024, 3, 10, 12, 0, 0, 123_456_000)
+
+    JdbcTemplate jdbc
+    PongRecordBatchWriter jpaWriter
+    ReactivePongRecordWriter reactiveWriter
+
+    def setup() {
+        def name = "pong-${UUID.randomUUID()}"
+        def dataSource = new JdbcDataSource()
+        dataSource.setURL("jdbc:h2:mem:$name;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+        jdbc = new JdbcTemplate(dataSource)
+        dataSource.connection.withCloseable { ScriptUtils.executeSqlScript(it, new ClassPathResource("db/r2dbc-schema.sql")) }
+
+        def factory = new LocalContainerEntityManagerFactoryBean(dataSource: dataSource,
+            jpaVendorAdapter: new HibernateJpaVendorAdapter())
+        factory.setPackagesToScan(PongRecord.package.name)
+        factory.jpaPropertyMap.put("hibernate.physical_naming_strategy", CamelCaseToUnderscoresNamingStrategy.name)
+        factory.afterPropertiesSet()
+        def repositories = new JpaRepositoryFactory(SharedEntityManagerCreator.createSharedEntityManager(factory.object))
+        // 与 Spring Data 的仓库代理一样按 @Transactional 开启事务
+        def interceptor = new TransactionInterceptor(new JpaTransactionManager(factory.object),
+            new AnnotationTransactionAttributeSource())
+        repositories.addRepositoryProxyPostProcessor({ proxy, info -> proxy.addAdvice(interceptor) })
+        jpaWriter = new PongRecordBatchWriter(repositories.getRepository(PongRecordRepository))
+
+        reactiveWriter = new ReactivePongRecordWriter(DatabaseClient.create(
+            ConnectionFactories.get("r2dbc:h2:mem:///$name;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")))
+    }
+
+    def cleanup() {
+        jpaWriter.shutdown()
+    }
+
+    def record(String requestId, LocalDateTime timestamp = T) {
+        new PongRecord(message: "World", status: 200, timestamp: timestamp, requestId: requestId)
+    }
+
+    List<Map> rows() {
+        jdbc.queryForList("SELECT message, status, timestamp, request_id FROM pong_records ORDER BY request_id")
+            .collect { [message: it.MESSAGE, status: it.STATUS, timestamp: it.TIMESTAMP.toLocalDateTime(), requestId: it.REQUEST_ID] }
+    }
+
+    def "should store a redelivered record once through the #type writer"() {
+        given:
+        def writer = type == "jpa" ? jpaWriter : reactiveWriter
+
+        when: "同一批内和跨批次的重复记录"
+        writer.writeBatch([record("id-1"), record("id-2"), record("id-1")])*.get()
+        writer.writeBatch([record("id-2"), record("id-3")])*.get()
+        writer.write(record("id-3")).get()
+
+        then:
+        rows() == ["id-1", "id-2", "id-3"].collect { [message: "World", status: 200, timestamp: T, requestId: it] }
+
+        where:
+        type << ["jpa", "r2dbc"]
+    }
+
+    def "should keep records that share a request id but not the ping timestamp"() {
+        when:
+        jpaWriter.writeBatch([record("id-1"), record("id-1", T.plusSeconds(1)), record(null), record(null)])*.get()
+
+        then:
+        rows()*.requestId == [null, null, "id-1", "id-1"]
+    }
+
+    def "should skip redeliveries in memory and leave the rest to the unique index"() {
+        given:
+        def service = new PongMessageService(jpaWriter)
+        def filter = new RequestIdFilter(Duration.ofMinutes(10), 1000, 0.001, 1000)
+        def registry = new SimpleMeterRegistry()
+        filter.bindTo(registry)
+        service.requestIdFilter = filter
+        jpaWriter.linger = Duration.ZERO
+
+        when:
+        def first = service.consumePongResponses([record("id-1"), record("id-2")])
+        def redelivered = service.consumePongResponse(record("id-1"))
+        def second = service.consumePongResponses([record("id-2"), record("id-3")])
+
+        then:
+        first.acknowledged() == 2
+        !redelivered
+        second.acknowledged() == 2
+        (0..1).collect { second.isWritten(it) } == [false, true]
+        registry.get("pong.dedup.skipped").counter().count() == 2
+        rows()*.requestId == ["id-1", "id-2", "id-3"]
+    }
+}
@@ -0,0 +1,147 @@
+package com.challenge.pong.service
+
+import com.challenge.pong.controller.RecordQueryController
+import com.challenge.pong.model.PongRecord
+import com.challenge.pong.repository.PongRecordRepository
+import com.challenge.pong.repository.ReactivePongRecordRepository
+import io.r2dbc.spi.ConnectionFactories
+import org.h2.jdbcx.JdbcDataSource
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy
+import org.springframework.core.io.ClassPathResource
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate
+import org.springframework.data.r2dbc.repository.support.R2dbcRepositoryFactory
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.init.ScriptUtils
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean
+import org.springframework.orm.jpa.SharedEntityManagerCreator
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter
+import reactor.core.publisher.Flux
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+
+/**
+ * JPA 和 R2DBC 两种实现查询同一个 PostgreSQL 兼容模式的内存 H2
+ */
+class PongRecordReaderSpec extends Specification {
+
+    static final LocalDateTime T = LocalDateTime.of(2024, 3, 10, 12, 0)
+
+    @Shared
+    JpaPongRecordReader jpaReader
+    @Shared
+    ReactivePongRecordReader reactiveReader
+    @Shared
+    List<PongRecord> saved
+
+    def setupSpec() {
+        def name = "pong-${UUID.randomUUID()}"
+        def dataSource = new JdbcDataSource()
+        dataSource.setURL("jdbc:h2:mem:$name;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+        def jdbc = new JdbcTemplate(dataSource)
+        dataSource.connection.withCloseable { ScriptUtils.executeSqlScript(it, new ClassPathResource("db/r2dbc-schema.sql")) }
+        // 每秒 3 条记录（状态码 200、429、200），同一秒内的记录按 id 排序
+        (0..<8).each { second ->
+            [200, 429, 200].eachWithIndex { status, i ->
+                jdbc.update("INSERT INTO pong_records (id, message, status, timestamp, request_id) "
+                    + "VALUES (nextval('pong_records_seq'), ?, ?, ?, ?)",
+                    "World", status, T.plusSeconds(second), "req-$second-$i")
+            }
+        }
+        saved = jdbc.query("SELECT * FROM pong_records ORDER BY timestamp, id", { rs, i ->
+            new PongRecord(id: rs.getLong("id"), status: rs.getInt("status"),
+                timestamp: rs.getObject("timestamp", LocalDateTime), requestId: rs.getString("request_id"))
+        })
+
+        def factory = new LocalContainerEntityManagerFactoryBean(dataSource: dataSource,
+            jpaVendorAdapter: new HibernateJpaVendorAdapter())
+        factory.setPackagesToScan(PongRecord.package.name)
+        factory.jpaPropertyMap.put("hibernate.physical_naming_strategy", CamelCaseToUnderscoresNamingStrategy.name)
+        factory.afterPropertiesSet()
+        def entityManager = SharedEntityManagerCreator.createSharedEntityManager(factory.object)
+        jpaReader = new JpaPongRecordReader(new JpaRepositoryFactory(entityManager).getRepository(PongRecordRepository))
+
+        def connectionFactory = ConnectionFactories.get("r2dbc:h2:mem:///$name;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+        reactiveReader = new ReactivePongRecordReader(new R2dbcRepositoryFactory(new R2dbcEntityTemplate(connectionFactory))
+            .getRepository(ReactivePongRecordRepository))
+    }
+
+    def readers() {
+        [jpa: jpaReader, r2dbc: reactiveReader]
+    }
+
+    def "should stream a time range in (timestamp, id) order across pages with ties on page boundaries using #type"() {
+        when: "每页 4 条，同一秒的 3 条记录会跨页"
+        def records = readers()[type].stream(T.plusSeconds(1), null, T.plusSeconds(6), null, 4).collectList().block()
+
+        then:
+        records*.id == saved.findAll { it.timestamp >= T.plusSeconds(1) && it.timestamp < T.plusSeconds(6) }*.id
+        records.size() == 15
+
+        where:
+        type << ["jpa", "r2dbc"]
+    }
+
+    def "should filter by status and resume after a cursor using #type"() {
+        given:
+        def reader = readers()[type]
+        def rateLimited = saved.findAll { it.status == 429 }
+        def cursor = saved[4]
+
+        expect:
+        reader.stream(T, null, T.plusDays(1), 429, 3).collectList().block()*.id == rateLimited*.id
+        reader.stream(cursor.timestamp, cursor.id, T.plusDays(1), null, 5).collectList().block()*.id == saved.drop(5)*.id
+        reader.stream(T.plusSeconds(8), null, T.plusDays(1), null, 5).collectList().block().isEmpty()
+
+        where:
+        type << ["jpa", "r2dbc"]
+    }
+
+    def "should find records by request id using #type"() {
+        expect:
+        readers()[type].findByRequestId("req-3-1").collectList().block()*.timestamp == [T.plusSeconds(3)]
+        readers()[type].findByRequestId("missing").collectList().block().isEmpty()
+
+        where:
+        type << ["jpa", "r2dbc"]
+    }
+
+    def "should only query the pages the subscriber asks for"() {
+        given:
+        def pages = []
+        def reader = new PongRecordReader() {
+            Flux<PongRecord> findByRequestId(String requestId) {
+                Flux.empty()
+            }
+
+            Flux<PongRecord> findPage(LocalDateTime to, Integer status, LocalDateTime afterTimestamp, long afterId,
+                                      int limit) {
+                pages << afterId
+                Flux.fromIterable(saved.findAll {
+                    it.timestamp < to && (it.timestamp > afterTimestamp || it.timestamp == afterTimestamp && it.id > afterId)
+                }.take(limit))
+            }
+        }
+
+        when:
+        def records = reader.stream(T, null, T.plusDays(1), null, 2).take(5).collectList().block()
+
+        then:
+        records*.id == saved.take(5)*.id
+        pages.size() <= 4
+        pages[0] == Long.MIN_VALUE
+    }
+
+    def "should serve range exports and request id lookups over the records API"() {
+        given:
+        def controller = new RecordQueryController(reader: jpaReader, pageSize: 2)
+
+        expect:
+        controller.byRange(T, T.plusDays(1), 200, null, 3).collectList().block()*.id ==
+            saved.findAll { it.status == 200 }.take(3)*.id
+        controller.byRange(T, T.plusDays(1), null, null, null).count().block() == saved.size()
+        controller.byRequestId("req-0-2").collectList().block()*.id == [saved[2].id]
+    }
+}
@@ -0,0 +1,142 @@
+package com.challenge.pong.service
+
+import com.challenge.pong.model.PongRecord
+import com.challenge.pong.repository.ReactivePongRecordRepository
+import io.r2dbc.spi.ConnectionFactories
+import io.r2dbc.spi.ConnectionFactory
+import io.r2dbc.spi.ConnectionFactoryMetadata
+import org.springframework.core.io.ClassPathResource
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate
+import org.springframework.data.r2dbc.repository.support.R2dbcRepositoryFactory
+import org.springframework.r2dbc.connection.init.ScriptUtils
+import org.springframework.r2dbc.core.DatabaseClient
+import reactor.core.publisher.Mono
+import reactor.test.StepVerifier
+import spock.lang.Specification
+import java.time.Duration
+import java.time.LocalDateTime
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * 使用 PostgreSQL 兼容模式的内存 H2 代替真实数据库
+ */
+class ReactivePongRecordWriterSpec extends Specification {
+
+    ConnectionFactory connectionFactory
+    DatabaseClient databaseClient
+    ReactivePongRecordWriter writer
+    ReactivePongRecordRepository repository
+
+    def setup() {
+        connectionFactory = ConnectionFactories.get("r2dbc:h2:mem:///pong-${UUID.randomUUID()};MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+        Mono.usingWhen(Mono.from(connectionFactory.create()),
+            { connection -> ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/r2dbc-schema.sql")) },
+            { connection -> connection.close() })
+            .block(Duration.ofSeconds(5))
+        databaseClient = DatabaseClient.create(connectionFactory)
+        writer = new ReactivePongRecordWriter(databaseClient)
+        repository = new R2dbcRepositoryFactory(new R2dbcEntityTemplate(connectionFactory))
+            .getRepository(ReactivePongRecordRepository)
+    }
+
+    def record(String requestId, LocalDateTime timestamp = LocalDateTime.now()) {
+        new PongRecord(message: "World", status: 200, timestamp: timestamp, requestId: requestId)
+    }
+
+    def "should save a record and query it back by request id"() {
+        when:
+        StepVerifier.create(writer.save(record("id-1"))).verifyComplete()
+
+        then:
+        StepVerifier.create(repository.findByRequestId("id-1"))
+            .assertNext { saved ->
+                assert saved.id != null
+                assert saved.message == "World"
+                assert saved.status == 200
+            }
+            .verifyComplete()
+    }
+
+    def "should only skip conflicts on the dedup key on PostgreSQL"() {
+        given:
+        def metadata = Stub(ConnectionFactoryMetadata) { getName() >> "PostgreSQL" }
+        def sql = []
+        def client = Mock(DatabaseClient) {
+            getConnectionFactory() >> Stub(ConnectionFactory) { getMetadata() >> metadata }
+        }
+
+        when:
+        new ReactivePongRecordWriter(client).saveAll([record("id-1")])
+
+        then:
+        1 * client.sql(_ as String) >> { String statement -> sql << statement; throw new IllegalStateException("stop") }
+        thrown(IllegalStateException)
+        sql[0].endsWith(" ON CONFLICT (request_id, timestamp) DO NOTHING")
+    }
+
+    def "should insert a batch with one statement and distinct ids"() {
+        given:
+        def records = (1..5).collect { record("id-$it") }
+
+        expect:
+        StepVerifier.create(writer.saveAll(records)).expectNext(5L).verifyComplete()
+        StepVerifier.create(repository.findAll().map { it.id }.distinct().count()).expectNext(5L).verifyComplete()
+    }
+
+    def "should save records with missing fields"() {
+        expect:
+        StepVerifier.create(writer.save(new PongRecord())).verifyComplete()
+        StepVerifier.create(repository.count()).expectNext(1L).verifyComplete()
+    }
+
+    def "should query records in a time range ordered by timestamp"() {
+        given:
+        def base = LocalDateTime.of(2024, 1, 1, 0, 0)
+        writer.saveAll([record("late", base.plusMinutes(2)), record("early", base.plusMinutes(1)),
+                        record("outside", base.plusHours(1))]).block(Duration.ofSeconds(5))
+
+        expect:
+        StepVerifier.create(repository.findByTimestampBetweenOrderByTimestamp(base, base.plusMinutes(10)).map { it.requestId })
+            .expectNext("early", "late")
+            .verifyComplete()
+    }
+
+    def "should complete batch futures in chunks"() {
+        given:
+        writer.batchSize = 2
+        def records = (1..5).collect { record("id-$it") }
+
+        when:
+        def futures = writer.writeBatch(records)
+        CompletableFuture.allOf(futures as CompletableFuture[]).get(5, TimeUnit.SECONDS)
+
+        then:
+        futures.size() == 5
+        repository.count().block(Duration.ofSeconds(5)) == 5
+    }
+
+    def "should fail only the bad record when a chunk fails"() {
+        given:
+        def tooLong = record("x" * 300)
+        def records = [record("id-1"), tooLong, record("id-3")]
+
+        when:
+        def futures = writer.writeBatch(records)
+        CompletableFuture.allOf(futures as CompletableFuture[]).handle { v, e -> null }.get(5, TimeUnit.SECONDS)
+
+        then:
+        !futures[0].isCompletedExceptionally()
+        futures[1].isCompletedExceptionally()
+        !futures[2].isCompletedExceptionally()
+        repository.count().block(Duration.ofSeconds(5)) == 2
+    }
+
+    def "should write a single record through the writer interface"() {
+        when:
+        writer.write(record("id-1")).get(5, TimeUnit.SECONDS)
+
+        then:
+        repository.findByRequestId("id-1").count().block(Duration.ofSeconds(5)) == 1
+    }
+}
@@ -0,0 +1,178 @@
+package com.challenge.pong.stats
+
+import com.challenge.pong.controller.StatsController
+import com.challenge.pong.model.PongRecord
+import com.challenge.pong.ratelimit.KeyedRateLimiter
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.time.LocalDateTime
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class PongStatsSpec extends Specification {
+
+    // 对齐到整分钟，便于推算每个时间桶
+    long now = TimeUnit.MINUTES.toMillis(28_000_000)
+
+    @Subject
+    PongStats stats = new PongStats(true, 3, { now })
+
+    PongRecord record(int status) {
+        new PongRecord(status: status, requestId: UUID.randomUUID().toString(), timestamp: LocalDateTime.now())
+    }
+
+    /**
+     * @return lagMillis 毫秒之前生成记录的时刻（epoch 微秒）
+     */
+    long createdAt(long lagMillis) {
+        (now - lagMillis) * 1000
+    }
+
+    static boolean close(long actual, long expected) {
+        Math.abs(actual - expected) <= expected * 0.01
+    }
+
+    def "should count decisions per status and per requester in every view"() {
+        when:
+        stats.recordDecision("ping-1", 200)
+        stats.recordDecision("ping-1", 429)
+        stats.recordDecision("ping-2", 200)
+        stats.recordDecision(null, 200)
+        def views = stats.snapshot()
+
+        then:
+        views.keySet() as List == ["second", "minute", "hour"]
+        views.values().every { it.decisions() == [200: 3L, 429: 1L] }
+        views.second.requesters() == ["anonymous": [200: 1L], "ping-1": [200: 1L, 429: 1L], "ping-2": [200: 1L]]
+    }
+
+    def "should age counts out of shorter windows first"() {
+        given:
+        stats.recordDecision("ping-1", 200)
+
+        when: "10 秒后"
+        now += 10_000
+        stats.recordDecision("ping-1", 429)
+        def views = stats.snapshot()
+
+        then:
+        views.second.decisions() == [429: 1L]
+        views.minute.decisions() == [200: 1L, 429: 1L]
+        views.hour.decisions() == [200: 1L, 429: 1L]
+
+        when: "2 分钟后"
+        now += 120_000
+        views = stats.snapshot()
+
+        then:
+        views.second.decisions().isEmpty()
+        views.minute.decisions().isEmpty()
+        views.minute.requesters().isEmpty()
+        views.hour.decisions() == [200: 1L, 429: 1L]
+
+        when: "超过 1 小时后，复用的时间桶不会带上旧计数"
+        now += TimeUnit.HOURS.toMillis(1)
+        stats.recordDecision("ping-1", 200)
+        views = stats.snapshot()
+
+        then:
+        views.values().every { it.decisions() == [200: 1L] }
+    }
+
+    def "should count consumed records and their lag percentiles"() {
+        when:
+        (1..100).each { stats.recordConsumed(record(200), createdAt(it * 10)) }
+        stats.recordConsumed(record(504), createdAt(5_000))
+        stats.recordConsumed(new PongRecord(status: 200), null)
+        stats.recordConsumed(null, createdAt(10))
+        def view = stats.snapshot().minute
+
+        then:
+        view.records() == [200: 101L, 504: 1L]
+        view.decisions().isEmpty()
+        view.lag().count() == 101
+        view.lag().skewed() == 0
+        // 两位有效数字，误差在 1% 左右
+        close(view.lag().p50(), 510)
+        close(view.lag().p99(), 1_000)
+        close(view.lag().max(), 5_000)
+    }
+
+    def "should compute lag from the epoch creation time regardless of the record timestamp"() {
+        when: "记录中的本地时间相差数小时，不影响延迟"
+        stats.recordConsumed(new PongRecord(status: 200, timestamp: LocalDateTime.of(2000, 1, 1, 0, 0)), createdAt(250))
+        stats.recordConsumed(record(200), createdAt(-3_000))
+        def view = stats.snapshot().second
+
+        then: "生成时刻晚于当前时刻说明时钟不同步，单独计数而不是记为 0"
+        view.records() == [200: 2L]
+        view.lag().count() == 1
+        close(view.lag().max(), 250)
+        view.lag().skewed() == 1
+        stats.snapshot().hour.lag().skewed() == 1
+    }
+
+    def "should fold requesters beyond the limit into overflow until idle ones are swept"() {
+        when:
+        ["ping-1", "ping-2", "ping-3", "ping-4"].each { stats.recordDecision(it, 200) }
+
+        then:
+        stats.requesters() == 4
+        stats.snapshot().second.requesters().keySet() == ["ping-1", "ping-2", "ping-3", KeyedRateLimiter.OVERFLOW_KEY] as Set
+
+        when: "所有调用方空闲超过 1 小时"
+        now += TimeUnit.MINUTES.toMillis(61)
+        stats.recordDecision("ping-5", 200)
+
+        then:
+        stats.requesters() == 1
+        stats.snapshot().second.requesters().keySet() == ["ping-5"] as Set
+    }
+
+    def "should not lose counts under concurrent writers"() {
+        given:
+        def pool = Executors.newFixedThreadPool(8)
+        def done = new CountDownLatch(8)
+
+        when:
+        8.times { thread ->
+            pool.submit {
+                1000.times { stats.recordDecision("ping-${thread % 2}", it % 2 == 0 ? 200 : 429) }
+                done.countDown()
+            }
+        }
+        done.await(10, TimeUnit.SECONDS)
+        def view = stats.snapshot().second
+
+        then:
+        view.decisions() == [200: 4000L, 429: 4000L]
+        view.requesters()."ping-0" == [200: 2000L, 429: 2000L]
+
+        cleanup:
+        pool.shutdown()
+    }
+
+    def "should ignore everything when disabled"() {
+        given:
+        def disabled = PongStats.disabled()
+
+        when:
+        disabled.recordDecision("ping-1", 200)
+        disabled.recordConsumed(record(200), createdAt(10))
+
+        then:
+        disabled.requesters() == 0
+        disabled.snapshot().values().every { it.decisions().isEmpty() && it.records().isEmpty() && it.lag().count() == 0 }
+    }
+
+    def "should serve the snapshot over the stats API"() {
+        given:
+        stats.recordDecision("ping-1", 429)
+        def controller = new StatsController(stats: stats)
+
+        expect:
+        controller.stats().block().hour.decisions() == [429: 1L]
+    }
+}
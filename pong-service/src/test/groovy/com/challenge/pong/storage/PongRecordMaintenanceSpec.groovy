@@ -0,0 +1,352 @@
+package com.challenge.pong.storage
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.h2.jdbcx.JdbcDataSource
+import org.springframework.jdbc.BadSqlGrammarException
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.DataSourceTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import spock.lang.Specification
+
+import java.sql.SQLException
+import java.time.Clock
+import java.time.Duration
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.time.ZoneOffset
+
+/**
+ * 汇总和保留期逻辑使用 PostgreSQL 兼容模式的内存 H2（不支持分区，用普通表代替），
+ * 分区的创建和过期通过模拟的 JdbcTemplate 验证执行的 DDL
+ */
+class PongRecordMaintenanceSpec extends Specification {
+
+    static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 10, 12, 30, 20)
+
+    JdbcTemplate jdbc
+    TransactionTemplate transactions
+    Clock clock = Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneOffset.UTC)
+
+    def setup() {
+        def dataSource = new JdbcDataSource()
+        dataSource.setURL("jdbc:h2:mem:pong-${UUID.randomUUID()};MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+        jdbc = new JdbcTemplate(dataSource)
+        transactions = new TransactionTemplate(new DataSourceTransactionManager(dataSource))
+        jdbc.execute("CREATE TABLE pong_records (id BIGINT NOT NULL, message VARCHAR(255), status INTEGER NOT NULL, "
+            + "timestamp TIMESTAMP(6), request_id VARCHAR(255), ingested_at TIMESTAMP(6) DEFAULT LOCALTIMESTAMP)")
+        jdbc.execute("CREATE TABLE pong_record_rollups (minute_start TIMESTAMP(0) NOT NULL, status INTEGER NOT NULL, "
+            + "record_count BIGINT NOT NULL, PRIMARY KEY (minute_start, status))")
+        jdbc.execute("CREATE TABLE pong_storage_state (name VARCHAR(64) NOT NULL PRIMARY KEY, progress TIMESTAMP(6))")
+    }
+
+    def maintenance(Map options = [:]) {
+        new PongRecordMaintenance(options.jdbc ?: jdbc, transactions, 2, Duration.ofDays(7), Duration.ofDays(30),
+            options.lateness ?: Duration.ofMinutes(5), options.maxSpan ?: Duration.ofDays(1),
+            options.action ?: PongRecordMaintenance.RetentionAction.DROP, options.clock ?: clock)
+    }
+
+    def insert(LocalDateTime timestamp, int status, int count = 1) {
+        count.times {
+            jdbc.update("INSERT INTO pong_records (id, message, status, timestamp, request_id) VALUES (?, ?, ?, ?, ?)",
+                UUID.randomUUID().mostSignificantBits, "World", status, timestamp, UUID.randomUUID().toString())
+        }
+    }
+
+    /**
+     * 模拟分区表上的维护：rollup、rollup-ingest、expire 三个进度固定返回给定值
+     */
+    def partitionedJdbc(Map progress = [:], List<String> partitions = ["pong_records_default", "pong_records_p20240310"]) {
+        def mockJdbc = Mock(JdbcTemplate)
+        mockJdbc.queryForObject({ it.contains("pg_partitioned_table") }, Integer, "pong_records") >> 1
+        mockJdbc.queryForList({ it.contains("pg_inherits") }, String, "pong_records") >> partitions
+        mockJdbc.queryForObject({ it.contains("FOR UPDATE") }, LocalDateTime, "rollup") >> progress.rollup
+        mockJdbc.queryForList({ it.contains("FROM pong_storage_state") }, LocalDateTime, _) >> { args ->
+            progress[args[2][0]] ? [progress[args[2][0]]] : []
+        }
+        mockJdbc
+    }
+
+    List<Map> rollups() {
+        jdbc.queryForList("SELECT minute_start, status, record_count FROM pong_record_rollups ORDER BY minute_start, status")
+            .collect { [minute: it.MINUTE_START.toLocalDateTime(), status: it.STATUS, count: it.RECORD_COUNT] }
+    }
+
+    def "should roll finished minutes up by status and leave the current minute alone"() {
+        given:
+        insert(NOW.withMinute(28).withSecond(5), 200, 3)
+        insert(NOW.withMinute(28).withSecond(59), 429, 2)
+        insert(NOW.withMinute(29).withSecond(0), 200)
+        insert(NOW.withSecond(1), 200)
+        def maintenance = maintenance()
+
+        when:
+        maintenance.rollUp()
+
+        then:
+        rollups() == [
+            [minute: NOW.withMinute(28).withSecond(0), status: 200, count: 3],
+            [minute: NOW.withMinute(28).withSecond(0), status: 429, count: 2],
+            [minute: NOW.withMinute(29).withSecond(0), status: 200, count: 1]]
+        maintenance.rolledUpTo() == NOW.withSecond(0)
+    }
+
+    def "should pick up late records within the lateness window without double counting"() {
+        given:
+        insert(NOW.withMinute(28), 200)
+        def maintenance = maintenance()
+        maintenance.rollUp()
+
+        when: "之前的分钟又到达一条记录，重复汇总"
+        insert(NOW.withMinute(28).withSecond(30), 200)
+        maintenance.rollUp()
+        maintenance.rollUp()
+
+        then:
+        rollups() == [[minute: NOW.withMinute(28).withSecond(0), status: 200, count: 2]]
+    }
+
+    def "should roll up minutes again for records that arrive after the lateness window"() {
+        given:
+        insert(NOW.minusMinutes(30), 200)
+        insert(NOW.minusMinutes(31), 200)
+        def maintenance = maintenance()
+        maintenance.rollUp()
+
+        when: "落盘重放的记录在半小时后才写入"
+        insert(NOW.minusMinutes(30).plusSeconds(10), 200)
+        insert(NOW.minusMinutes(30).plusSeconds(20), 429)
+        maintenance.rollUp()
+        maintenance.rollUp()
+
+        then:
+        rollups() == [
+            [minute: NOW.minusMinutes(31).withSecond(0), status: 200, count: 1],
+            [minute: NOW.minusMinutes(30).withSecond(0), status: 200, count: 2],
+            [minute: NOW.minusMinutes(30).withSecond(0), status: 429, count: 1]]
+    }
+
+    def "should not roll up minutes of expired partitions again"() {
+        given: "两小时前的分区已经删除，汇总中保留着当时的条数"
+        def maintenance = maintenance()
+        maintenance.rollUp()
+        jdbc.update("INSERT INTO pong_storage_state VALUES ('expire', ?)", NOW.minusHours(1).withMinute(0).withSecond(0))
+        jdbc.update("INSERT INTO pong_record_rollups VALUES (?, 200, 5)", NOW.minusHours(2).withSecond(0))
+
+        when:
+        insert(NOW.minusHours(2), 200)
+        maintenance.rollUp()
+
+        then:
+        rollups() == [[minute: NOW.minusHours(2).withSecond(0), status: 200, count: 5]]
+    }
+
+    def "should catch up a large backlog in bounded steps"() {
+        given:
+        insert(NOW.minusHours(3), 200)
+        insert(NOW.minusHours(1), 200)
+        def maintenance = maintenance(maxSpan: Duration.ofHours(1))
+
+        when:
+        maintenance.rollUp()
+
+        then:
+        rollups()*.count == [1]
+        maintenance.rolledUpTo() == NOW.minusHours(2).withSecond(0)
+
+        when:
+        4.times { maintenance.rollUp() }
+
+        then:
+        rollups()*.count == [1, 1]
+        maintenance.rolledUpTo() == NOW.withSecond(0)
+    }
+
+    def "should start from the current minute when there are no records"() {
+        when:
+        maintenance().rollUp()
+
+        then:
+        rollups().isEmpty()
+        jdbc.queryForObject("SELECT progress FROM pong_storage_state WHERE name = 'rollup'", LocalDateTime) == NOW.withSecond(0)
+    }
+
+    def "should delete rollups past their retention"() {
+        given:
+        jdbc.update("INSERT INTO pong_record_rollups VALUES (?, 200, 5)", NOW.minusDays(31))
+        jdbc.update("INSERT INTO pong_record_rollups VALUES (?, 200, 7)", NOW.minusDays(29))
+
+        when:
+        maintenance().runOnce()
+
+        then:
+        rollups()*.count == [7]
+    }
+
+    def "should create missing partitions ahead of time"() {
+        given:
+        def mockJdbc = partitionedJdbc()
+        mockJdbc.queryForList({ it.contains("FROM pong_records_default") }, LocalDate) >> []
+
+        when:
+        maintenance(jdbc: mockJdbc).ensurePartitions()
+
+        then:
+        1 * mockJdbc.execute("CREATE TABLE IF NOT EXISTS pong_records_p20240311 PARTITION OF pong_records "
+            + "FOR VALUES FROM ('2024-03-11') TO ('2024-03-12')")
+        1 * mockJdbc.execute("CREATE TABLE IF NOT EXISTS pong_records_p20240312 PARTITION OF pong_records "
+            + "FOR VALUES FROM ('2024-03-12') TO ('2024-03-13')")
+        0 * mockJdbc.execute(_)
+    }
+
+    def "should move records out of the default partition into the partition created for their day"() {
+        given: "默认分区中有昨天（分区缺失）和后天（提前创建前写入）的记录"
+        def mockJdbc = partitionedJdbc(expire: LocalDateTime.of(2024, 3, 2, 0, 0))
+        mockJdbc.queryForList({ it.contains("FROM pong_records_default WHERE timestamp >= ?") }, LocalDate,
+            LocalDateTime.of(2024, 3, 2, 0, 0)) >> [LocalDate.of(2024, 3, 9), LocalDate.of(2024, 3, 12)]
+
+        when:
+        maintenance(jdbc: mockJdbc).ensurePartitions()
+
+        then:
+        1 * mockJdbc.execute("CREATE TABLE pong_records_p20240309 (LIKE pong_records INCLUDING DEFAULTS)")
+        1 * mockJdbc.update("WITH moved AS (DELETE FROM pong_records_default WHERE timestamp >= ? AND timestamp < ? "
+            + "RETURNING *) INSERT INTO pong_records_p20240309 SELECT * FROM moved",
+            LocalDateTime.of(2024, 3, 9, 0, 0), LocalDateTime.of(2024, 3, 10, 0, 0)) >> 3
+
+        then:
+        1 * mockJdbc.execute("ALTER TABLE pong_records ATTACH PARTITION pong_records_p20240309 "
+            + "FOR VALUES FROM ('2024-03-09') TO ('2024-03-10')")
+        1 * mockJdbc.execute("CREATE TABLE IF NOT EXISTS pong_records_p20240311 PARTITION OF pong_records "
+            + "FOR VALUES FROM ('2024-03-11') TO ('2024-03-12')")
+        1 * mockJdbc.execute("CREATE TABLE pong_records_p20240312 (LIKE pong_records INCLUDING DEFAULTS)")
+        1 * mockJdbc.execute({ it.contains("ATTACH PARTITION pong_records_p20240312") })
+        0 * mockJdbc.execute(_)
+    }
+
+    def "should keep creating partitions when one of them fails"() {
+        given:
+        def mockJdbc = partitionedJdbc()
+        mockJdbc.queryForList({ it.contains("FROM pong_records_default WHERE timestamp IS NOT NULL") }, LocalDate) >>
+            [LocalDate.of(2024, 3, 11)]
+
+        when:
+        maintenance(jdbc: mockJdbc).ensurePartitions()
+
+        then:
+        1 * mockJdbc.execute({ it.startsWith("CREATE TABLE pong_records_p20240311") }) >> {
+            throw new BadSqlGrammarException("create", "CREATE TABLE", new SQLException("already exists"))
+        }
+        1 * mockJdbc.execute({ it.startsWith("CREATE TABLE IF NOT EXISTS pong_records_p20240312") })
+    }
+
+    def "should expire partitions past retention in order until one has not been rolled up"() {
+        given:
+        def mockJdbc = partitionedJdbc(
+            [rollup: LocalDateTime.of(2024, 3, 2, 10, 0), "rollup-ingest": LocalDateTime.of(2024, 3, 10, 12, 0)],
+            ["pong_records_default", "pong_records_p20240303", "pong_records_p20240301", "pong_records_p20240302",
+             "pong_records_p20240310", "something_else"])
+        mockJdbc.queryForObject({ it.startsWith("SELECT EXISTS") }, Boolean, *_) >> false
+        def maintenance = maintenance(jdbc: mockJdbc, action: action)
+
+        when:
+        maintenance.expire()
+
+        then: "03-01 已过期且已汇总；03-02 还没有汇总完，之后的分区都不处理"
+        1 * mockJdbc.execute(sql)
+        0 * mockJdbc.execute(_)
+        1 * mockJdbc.update("INSERT INTO pong_storage_state (name, progress) VALUES (?, ?)", "expire",
+            LocalDateTime.of(2024, 3, 2, 0, 0))
+
+        where:
+        action                                           | sql
+        PongRecordMaintenance.RetentionAction.DROP       | "DROP TABLE IF EXISTS pong_records_p20240301"
+        PongRecordMaintenance.RetentionAction.DETACH     | "ALTER TABLE pong_records DETACH PARTITION pong_records_p20240301"
+    }
+
+    def "should keep a partition with records that may not have been rolled up"() {
+        given:
+        def mockJdbc = partitionedJdbc(
+            [rollup: LocalDateTime.of(2024, 3, 10, 12, 0), "rollup-ingest": LocalDateTime.of(2024, 3, 10, 12, 0),
+             expire: LocalDateTime.of(2024, 3, 1, 0, 0)],
+            ["pong_records_p20240301", "pong_records_p20240302"])
+        mockJdbc.queryForObject({ it.contains(query) }, Boolean, *_) >> true
+        mockJdbc.queryForObject({ it.startsWith("SELECT EXISTS") }, Boolean, *_) >> false
+
+        when:
+        maintenance(jdbc: mockJdbc).expire()
+
+        then:
+        0 * mockJdbc.execute(_)
+
+        where: "分区中有刚写入的晚到记录，或默认分区中还有该日期及之前的记录"
+        query << ["FROM pong_records_p20240301 WHERE ingested_at >= ?",
+                  "FROM pong_records_default WHERE timestamp >= ? AND timestamp < ?"]
+    }
+
+    def "should count records that arrive after their partition expired once and delete them"() {
+        given:
+        def expired = LocalDateTime.of(2024, 3, 2, 0, 0)
+        def mockJdbc = partitionedJdbc([expire: expired], [])
+
+        when:
+        maintenance(jdbc: mockJdbc).expire()
+
+        then:
+        1 * mockJdbc.update({ it.startsWith("WITH expired AS (DELETE FROM pong_records_default WHERE timestamp < ?") &&
+            it.contains("record_count = pong_record_rollups.record_count + EXCLUDED.record_count") }, expired) >> 2
+    }
+
+    def "should skip partition management on an unpartitioned table"() {
+        when: "H2 没有 pg_partitioned_table"
+        def maintenance = maintenance()
+        maintenance.ensurePartitions()
+
+        then:
+        !maintenance.isPartitioned()
+    }
+
+    def "should record maintenance runs and rollup lag"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        def healthy = maintenance()
+        healthy.bindTo(registry)
+        healthy.runOnce()
+        def broken = maintenance(jdbc: Mock(JdbcTemplate) { update(*_) >> { throw new IllegalStateException("down") } })
+        broken.bindTo(registry)
+
+        when:
+        broken.runOnce()
+
+        then:
+        registry.get("pong.storage.maintenance").tag("outcome", "success").timer().count() == 1
+        registry.get("pong.storage.maintenance").tag("outcome", "failure").timer().count() == 1
+        registry.get("pong.storage.rollup.lag").gauge().value() == 20
+    }
+
+    def "should run on a schedule until closed"() {
+        given:
+        def maintenance = maintenance()
+
+        when:
+        maintenance.start(Duration.ofMillis(10))
+        def deadline = System.currentTimeMillis() + 5000
+        while (maintenance.rolledUpTo() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+
+        then:
+        maintenance.rolledUpTo() == NOW.withSecond(0)
+
+        cleanup:
+        maintenance.close()
+    }
+
+    def "should name partitions by day"() {
+        expect:
+        PongRecordMaintenance.partitionName(LocalDate.of(2024, 1, 5)) == "pong_records_p20240105"
+        PongRecordMaintenance.partitionDay("pong_records_p20240105") == LocalDate.of(2024, 1, 5)
+        PongRecordMaintenance.partitionDay("pong_records_default") == null
+        PongRecordMaintenance.partitionDay("pong_records_pxyz") == null
+        PongRecordMaintenance.RetentionAction.parse(" detach ") == PongRecordMaintenance.RetentionAction.DETACH
+    }
+}
@@ -0,0 +1,62 @@
+package com.challenge.pong.storage
+
+import org.springframework.core.io.ClassPathResource
+import org.springframework.jdbc.datasource.init.ScriptUtils
+import spock.lang.Specification
+
+import java.sql.Connection
+import java.sql.Statement
+
+/**
+ * 启动时 spring.sql.init 按分号拆分 db/schema.sql 并逐条执行；构建环境中没有 PostgreSQL，
+ * 这里按同样的方式拆分脚本，检查已有的非分区 pong_records 不会让任何一条语句失败
+ */
+class PongRecordSchemaSpec extends Specification {
+
+    List<String> statements() {
+        def executed = []
+        def statement = Mock(Statement) {
+            execute(_) >> { String sql -> executed << sql; false }
+        }
+        def connection = Mock(Connection) {
+            createStatement() >> statement
+        }
+        ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/schema.sql"))
+        executed
+    }
+
+    def "should only create the default partition when pong_records is partitioned"() {
+        when:
+        def statements = statements()
+        def partitionOf = statements.findAll { it.contains("PARTITION OF") }
+
+        then: "DO 块作为一条语句执行，先检查 pg_partitioned_table"
+        partitionOf.size() == 1
+        partitionOf[0].startsWith("DO '")
+        partitionOf[0].endsWith("END'")
+        partitionOf[0].indexOf("pg_partitioned_table") < partitionOf[0].indexOf("PARTITION OF")
+    }
+
+    def "should move the id sequence past ids assigned before the upgrade"() {
+        when:
+        def statements = statements()
+        def setval = statements.findAll { it.contains("setval") }
+
+        then: "在建表之后执行，只向前推进序列"
+        setval.size() == 1
+        setval[0].startsWith("DO '")
+        setval[0].contains("max(id) + 100")
+        setval[0].contains("> (SELECT last_value FROM pong_records_seq)")
+        statements.indexOf(setval[0]) > statements.findIndexOf { it.startsWith("CREATE TABLE IF NOT EXISTS pong_records (") }
+    }
+
+    def "should leave an existing unpartitioned table in place and add the ingest time column"() {
+        when:
+        def statements = statements()
+
+        then:
+        statements.findAll { it.startsWith("CREATE TABLE") }.every { it.startsWith("CREATE TABLE IF NOT EXISTS") }
+        statements.contains("ALTER TABLE pong_records ADD COLUMN IF NOT EXISTS ingested_at TIMESTAMP(6)")
+        !statements.any { it.startsWith("DROP") }
+    }
+}
@@ -0,0 +1,88 @@
+package com.challenge.pong.storage
+
+import com.challenge.pong.controller.RecordSummaryController
+import com.challenge.pong.storage.PongRecordSummaries.MinuteCount
+import org.h2.jdbcx.JdbcDataSource
+import org.springframework.jdbc.core.JdbcTemplate
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.time.LocalDateTime
+
+class PongRecordSummariesSpec extends Specification {
+
+    static final LocalDateTime T = LocalDateTime.of(2024, 3, 10, 12, 0)
+
+    JdbcTemplate jdbc
+
+    @Subject
+    PongRecordSummaries summaries
+
+    def setup() {
+        def dataSource = new JdbcDataSource()
+        dataSource.setURL("jdbc:h2:mem:pong-${UUID.randomUUID()};MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+        jdbc = new JdbcTemplate(dataSource)
+        jdbc.execute("CREATE TABLE pong_records (id BIGINT NOT NULL, message VARCHAR(255), status INTEGER NOT NULL, "
+            + "timestamp TIMESTAMP(6), request_id VARCHAR(255))")
+        jdbc.execute("CREATE TABLE pong_record_rollups (minute_start TIMESTAMP(0) NOT NULL, status INTEGER NOT NULL, "
+            + "record_count BIGINT NOT NULL, PRIMARY KEY (minute_start, status))")
+        jdbc.execute("CREATE TABLE pong_storage_state (name VARCHAR(64) NOT NULL PRIMARY KEY, progress TIMESTAMP(6))")
+        summaries = new PongRecordSummaries(jdbc)
+    }
+
+    def insert(LocalDateTime timestamp, int status) {
+        jdbc.update("INSERT INTO pong_records (id, message, status, timestamp, request_id) VALUES (?, ?, ?, ?, ?)",
+            UUID.randomUUID().mostSignificantBits, "World", status, timestamp, UUID.randomUUID().toString())
+    }
+
+    def "should read rolled up minutes from the rollup table and later minutes from raw records"() {
+        given: "汇总到 12:02，汇总表中的数字和原始记录不同，用来区分数据来源"
+        jdbc.update("INSERT INTO pong_storage_state (name, progress) VALUES (?, ?)", PongRecordMaintenance.ROLLUP_STATE,
+            T.plusMinutes(2))
+        jdbc.update("INSERT INTO pong_record_rollups (minute_start, status, record_count) VALUES (?, 200, 10)", T)
+        jdbc.update("INSERT INTO pong_record_rollups (minute_start, status, record_count) VALUES (?, 429, 4)",
+            T.plusMinutes(1))
+        insert(T.plusSeconds(5), 200)
+        insert(T.plusMinutes(2).plusSeconds(1), 200)
+        insert(T.plusMinutes(2).plusSeconds(30), 200)
+        insert(T.plusMinutes(3).plusSeconds(59), 429)
+        insert(T.plusMinutes(4), 200)
+
+        expect:
+        summaries.countsByMinute(T.plusSeconds(30), T.plusMinutes(4).plusSeconds(10)) == [
+            new MinuteCount(T, 200, 10),
+            new MinuteCount(T.plusMinutes(1), 429, 4),
+            new MinuteCount(T.plusMinutes(2), 200, 2),
+            new MinuteCount(T.plusMinutes(3), 429, 1)]
+    }
+
+    def "should scan raw records when nothing has been rolled up yet"() {
+        given:
+        insert(T.plusSeconds(1), 200)
+        insert(T.plusMinutes(1), 200)
+
+        expect:
+        summaries.countsByMinute(T, T.plusMinutes(1)) == [new MinuteCount(T, 200, 1)]
+        summaries.countsByMinute(T.plusMinutes(1), T.plusMinutes(1)).isEmpty()
+    }
+
+    def "should only use the rollup table for ranges before the watermark"() {
+        given:
+        jdbc.update("INSERT INTO pong_storage_state (name, progress) VALUES (?, ?)", PongRecordMaintenance.ROLLUP_STATE,
+            T.plusHours(1))
+        jdbc.update("INSERT INTO pong_record_rollups (minute_start, status, record_count) VALUES (?, 200, 3)", T)
+        insert(T.plusSeconds(1), 200)
+
+        expect:
+        summaries.countsByMinute(T, T.plusMinutes(5)) == [new MinuteCount(T, 200, 3)]
+    }
+
+    def "should serve summaries over the records API"() {
+        given:
+        insert(T.plusSeconds(1), 200)
+        def controller = new RecordSummaryController(summaries: summaries)
+
+        expect:
+        controller.summary(T, T.plusMinutes(1)).block() == [new MinuteCount(T, 200, 1)]
+    }
+}
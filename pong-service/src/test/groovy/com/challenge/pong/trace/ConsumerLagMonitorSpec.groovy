@@ -0,0 +1,132 @@
+package com.challenge.pong.trace
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer
+import org.apache.rocketmq.client.consumer.store.OffsetStore
+import org.apache.rocketmq.client.consumer.store.ReadOffsetType
+import org.apache.rocketmq.client.exception.MQClientException
+import org.apache.rocketmq.client.impl.consumer.DefaultMQPushConsumerImpl
+import org.apache.rocketmq.client.impl.consumer.ProcessQueue
+import org.apache.rocketmq.client.impl.consumer.RebalanceImpl
+import org.apache.rocketmq.common.ServiceState
+import org.apache.rocketmq.common.message.MessageQueue
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+
+class ConsumerLagMonitorSpec extends Specification {
+
+    static final MessageQueue Q0 = new MessageQueue("PING_TOPIC", "broker-a", 0)
+    static final MessageQueue Q1 = new MessageQueue("PING_TOPIC", "broker-a", 1)
+    static final MessageQueue RETRY = new MessageQueue("%RETRY%pong-consumer-group", "broker-a", 0)
+
+    def registry = new SimpleMeterRegistry()
+    def monitor = new ConsumerLagMonitor()
+
+    def setup() {
+        monitor.bindTo(registry)
+    }
+
+    def offsets(Map<MessageQueue, Long> consumed, Map<MessageQueue, Long> max) {
+        new ConsumerLagMonitor.Offsets() {
+            String group() {
+                "pong-consumer-group"
+            }
+
+            Map<MessageQueue, Long> consumed() {
+                consumed
+            }
+
+            long maxOffset(MessageQueue queue) {
+                if (!max.containsKey(queue)) {
+                    throw new MQClientException("broker unavailable", null)
+                }
+                max[queue]
+            }
+        }
+    }
+
+    def gauge(String topic) {
+        registry.get("pong.consumer.lag").tag("topic", topic).tag("group", "pong-consumer-group").gauge().value()
+    }
+
+    def "should sum the lag of the assigned queues by topic"() {
+        given:
+        monitor.watch(offsets([(Q0): 90L, (Q1): 100L, (RETRY): 5L], [(Q0): 100L, (Q1): 130L, (RETRY): 5L]))
+
+        when:
+        monitor.refresh()
+
+        then:
+        gauge("PING_TOPIC") == 40
+        gauge("%RETRY%pong-consumer-group") == 0
+        monitor.lag("pong-consumer-group", "PING_TOPIC") == 40
+        monitor.lag("pong-consumer-group", "OTHER") == 0
+    }
+
+    def "should keep the last value when the broker cannot be queried and reset topics no longer assigned"() {
+        given:
+        def consumed = [(Q0): 90L, (RETRY): 0L]
+        def max = [(Q0): 100L, (RETRY): 3L]
+        monitor.watch(offsets(consumed, max))
+        monitor.refresh()
+
+        when: "PING_TOPIC 查询失败，重试队列被分配给其他副本"
+        max.remove(Q0)
+        consumed.remove(RETRY)
+        monitor.refresh()
+
+        then:
+        gauge("PING_TOPIC") == 10
+        gauge("%RETRY%pong-consumer-group") == 0
+    }
+
+    def "should read offsets from a running push consumer"() {
+        given:
+        def consumer = Mock(DefaultMQPushConsumer)
+        def impl = Mock(DefaultMQPushConsumerImpl)
+        def rebalance = Mock(RebalanceImpl)
+        def store = Mock(OffsetStore)
+        consumer.getConsumerGroup() >> "pong-consumer-group"
+        consumer.getDefaultMQPushConsumerImpl() >> impl
+        impl.getRebalanceImpl() >> rebalance
+        impl.getOffsetStore() >> store
+        rebalance.getProcessQueueTable() >> new ConcurrentHashMap([(Q0): new ProcessQueue(), (Q1): new ProcessQueue()])
+        store.readOffset(Q0, ReadOffsetType.READ_FROM_MEMORY) >> 7L
+        store.readOffset(Q1, ReadOffsetType.READ_FROM_MEMORY) >> -1L
+        impl.maxOffset(Q0) >> 12L
+        monitor.watch(consumer)
+
+        when: "启动前不查询"
+        impl.getServiceState() >> ServiceState.CREATE_JUST >> ServiceState.RUNNING
+        monitor.refresh()
+
+        then:
+        registry.find("pong.consumer.lag").gauges().isEmpty()
+
+        when:
+        monitor.refresh()
+
+        then:
+        gauge("PING_TOPIC") == 5
+    }
+
+    def "should refresh on a schedule until closed and do nothing when disabled"() {
+        given:
+        monitor.watch(offsets([(Q0): 1L], [(Q0): 4L]))
+
+        when:
+        monitor.start(Duration.ofMillis(10))
+        def deadline = System.currentTimeMillis() + 5000
+        while (monitor.lag("pong-consumer-group", "PING_TOPIC") == 0 && System.currentTimeMillis() < deadline) {
+            sleep(10)
+        }
+        monitor.close()
+        ConsumerLagMonitor.disabled().watch(Mock(DefaultMQPushConsumer))
+        ConsumerLagMonitor.disabled().start(Duration.ofMillis(10)).refresh()
+
+        then:
+        monitor.lag("pong-consumer-group", "PING_TOPIC") == 3
+    }
+}
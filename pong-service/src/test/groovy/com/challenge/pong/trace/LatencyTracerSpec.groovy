@@ -0,0 +1,68 @@
+package com.challenge.pong.trace
+
+import com.challenge.common.trace.TraceClock
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.apache.rocketmq.common.message.MessageExt
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class LatencyTracerSpec extends Specification {
+
+    def registry = new SimpleMeterRegistry()
+    def tracer = new LatencyTracer()
+
+    def setup() {
+        tracer.bindTo(registry)
+    }
+
+    def message(Map<String, Long> properties) {
+        def message = new MessageExt()
+        properties.each { name, micros -> message.putUserProperty(name, String.valueOf(micros)) }
+        message
+    }
+
+    def timer(String stage) {
+        registry.get("pong.trace.latency").tag("stage", stage).timer()
+    }
+
+    def "should split the latency of a persisted record into stages"() {
+        given:
+        def received = tracer.now()
+        def sent = received - 9_000
+
+        when:
+        tracer.recordPersisted(message((TraceClock.SENT_AT): sent, (TraceClock.RESPONDED_AT): sent + 2_000,
+            (TraceClock.PUBLISHED_AT): sent + 5_000), received)
+
+        then:
+        timer("http").totalTime(TimeUnit.MICROSECONDS) == 2_000
+        timer("publish").totalTime(TimeUnit.MICROSECONDS) == 3_000
+        timer("broker").totalTime(TimeUnit.MICROSECONDS) == 4_000
+        timer("persist").count() == 1
+        timer("end_to_end").totalTime(TimeUnit.MICROSECONDS) >= 9_000
+    }
+
+    def "should skip stages with missing timestamps and count skewed clocks"() {
+        given: "落盘重放的记录只有发送时刻，且发送主机的时钟快了"
+        def received = tracer.now()
+
+        when:
+        tracer.recordPersisted(message((TraceClock.PUBLISHED_AT): received + 1_000), received)
+        tracer.recordPersisted(new MessageExt(), received)
+
+        then:
+        timer("http").count() == 0
+        timer("broker").count() == 0
+        timer("persist").count() == 2
+        registry.get("pong.trace.skewed").tag("stage", "broker").counter().count() == 1
+    }
+
+    def "should ignore records when disabled"() {
+        when:
+        LatencyTracer.disabled().recordPersisted(message((TraceClock.SENT_AT): 1L), 2L)
+
+        then:
+        noExceptionThrown()
+    }
+}
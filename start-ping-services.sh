@@ -1,9 +1,10 @@
 #!/bin/sh
 
-# 启动三个ping服务实例
+# 启动三个ping服务实例，落盘目录有进程锁，每个实例使用各自的目录
 java $JAVA_OPTS \
   -DSPRING_APPLICATION_NAME=ping-service \
   -DSPRING_APPLICATION_INSTANCE_ID=ping-1 \
+  -DPING_SPILL_DIR=data/ping-service/spill/ping-1 \
   -DSERVER_PORT=8081 \
   -DPONG_SERVICE_URL=$PONG_SERVICE_URL \
   -jar ping-service.jar &
@@ -11,6 +12,7 @@ java $JAVA_OPTS \
 java $JAVA_OPTS \
   -DSPRING_APPLICATION_NAME=ping-service \
   -DSPRING_APPLICATION_INSTANCE_ID=ping-2 \
+  -DPING_SPILL_DIR=data/ping-service/spill/ping-2 \
   -DSERVER_PORT=8082 \
   -DPONG_SERVICE_URL=$PONG_SERVICE_URL \
   -jar ping-service.jar &
@@ -18,6 +20,7 @@ java $JAVA_OPTS \
 java $JAVA_OPTS \
   -DSPRING_APPLICATION_NAME=ping-service \
   -DSPRING_APPLICATION_INSTANCE_ID=ping-3 \
+  -DPING_SPILL_DIR=data/ping-service/spill/ping-3 \
   -DSERVER_PORT=8083 \
   -DPONG_SERVICE_URL=$PONG_SERVICE_URL \
   -jar ping-service.jar &